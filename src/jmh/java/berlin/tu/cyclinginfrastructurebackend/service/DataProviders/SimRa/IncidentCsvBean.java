@@ -1,4 +1,4 @@
-package berlin.tu.cyclinginfrastructurebackend.service.dto;
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
 
 import com.opencsv.bean.CsvBindByName;
 import lombok.Data;
@@ -0,0 +1,90 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link SimRaFileParser} with the former OpenCSV bean-binding parser
+ * on synthetic rides of realistic shape (1 Hz GPS samples, a metadata row and a few incidents,
+ * every fifth GPS row shortened the way older app versions write them).
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimRaFileParserBenchmark {
+
+    /** Number of GPS rows; 3600 is a one-hour ride at 1 Hz. */
+    @Param({"600", "3600"})
+    public int points;
+
+    private byte[] file;
+    private final SimRaFileParser streamingParser = new SimRaFileParser();
+    private final OpenCsvSimRaFileParser openCsvParser = new OpenCsvSimRaFileParser();
+
+    @Setup
+    public void createFile() {
+        file = syntheticRide(points, 42L).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Ride streaming() throws IOException {
+        return streamingParser.parse(new ByteArrayInputStream(file), "VM-benchmark");
+    }
+
+    @Benchmark
+    public Ride openCsvBeanBinding() throws IOException {
+        return openCsvParser.parse(new ByteArrayInputStream(file), "VM-benchmark");
+    }
+
+    static String syntheticRide(int points, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(points * 96);
+        sb.append("72#2\n");
+        sb.append("key,lat,lon,ts,bike,childCheckBox,trailerCheckBox,pLoc,incident,"
+                + "i1,i2,i3,i4,i5,i6,i7,i8,i9,scary,desc,i10\n");
+        sb.append("0,,,,1,0,0,1,-5,,,,,,,,,,,,\n");
+        for (int i = 1; i <= 3; i++) {
+            sb.append(i).append(",52.51").append(i).append(",13.39").append(i)
+                    .append(",1710498").append(i).append("00000,,,,,2,0,1,0,0,0,0,1,0,0,1,\"close pass, again\",0\n");
+        }
+        sb.append("=========================\n");
+        sb.append("72#2\n");
+        sb.append("lat,lon,X,Y,Z,timeStamp,acc,a,b,c\n");
+
+        double lat = 52.5;
+        double lon = 13.4;
+        long timestamp = 1_710_498_000_000L;
+        for (int i = 0; i < points; i++) {
+            lat += (random.nextDouble() - 0.3) * 0.0001;
+            lon += (random.nextDouble() - 0.3) * 0.0001;
+            timestamp += 1000;
+            if (i % 5 == 0) {
+                // accelerometer-only rows omit the trailing gyroscope columns
+                sb.append(",,").append(String.format(Locale.ROOT, "%.6f,%.6f,%.6f", random.nextGaussian(),
+                        random.nextGaussian(), 9.81 + random.nextGaussian())).append(',').append(timestamp).append('\n');
+            } else {
+                sb.append(String.format(Locale.ROOT, "%.8f,%.8f,%.6f,%.6f,%.6f,%d,%.1f,%.6f,%.6f,%.6f\n",
+                        lat, lon, random.nextGaussian(), random.nextGaussian(), 9.81 + random.nextGaussian(),
+                        timestamp, 3.0 + random.nextDouble() * 10, random.nextGaussian(), random.nextGaussian(),
+                        random.nextGaussian()));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import com.graphhopper.util.DistanceCalcEarth;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link EdgeTimeline} with the former per-edge scan over all GPS points for assigning
+ * timestamps to the matched edges of a ride. The synthetic ride is a 1 Hz random walk at cycling
+ * speed with a few metres of GPS noise; the matched path has one edge per 20 samples, which is
+ * about the edge length of an inner-city street network, given by its midpoint as in production.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EdgeTimelineBenchmark {
+
+    /** Number of GPS samples; 3600 is a one-hour ride at 1 Hz. */
+    @Param({"600", "3600"})
+    public int points;
+
+    private List<RidePoint> track;
+    private double[] midpointLats;
+    private double[] midpointLons;
+
+    @Setup
+    public void createRide() {
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+        Random random = new Random(42L);
+        track = new ArrayList<>(points);
+        int edges = points / 20;
+        midpointLats = new double[edges];
+        midpointLons = new double[edges];
+
+        double lat = 52.5;
+        double lon = 13.4;
+        double heading = 0;
+        for (int i = 0; i < points; i++) {
+            // about 5 m/s with slowly changing heading
+            heading += random.nextGaussian() * 0.1;
+            lat += Math.cos(heading) * 0.000045;
+            lon += Math.sin(heading) * 0.000074;
+            if (i % 20 == 10 && i / 20 < edges) {
+                midpointLats[i / 20] = lat;
+                midpointLons[i / 20] = lon;
+            }
+
+            RidePoint point = new RidePoint();
+            point.setTimestamp(1_710_498_000_000L + i * 1000L);
+            point.setLocation(geometryFactory.createPoint(new Coordinate(
+                    lon + random.nextGaussian() * 0.00005, lat + random.nextGaussian() * 0.00003)));
+            track.add(point);
+        }
+    }
+
+    @Benchmark
+    public Long[] edgeTimeline() {
+        return EdgeTimeline.of(track).timesAlongPath(midpointLats, midpointLons);
+    }
+
+    @Benchmark
+    public Long[] nearestPointScan() {
+        Long[] times = new Long[midpointLats.length];
+        for (int e = 0; e < midpointLats.length; e++) {
+            RidePoint closest = null;
+            double minDistance = Double.MAX_VALUE;
+            for (RidePoint point : track) {
+                double distance = DistanceCalcEarth.DIST_EARTH.calcDist(midpointLats[e], midpointLons[e],
+                        point.getLocation().getY(), point.getLocation().getX());
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closest = point;
+                }
+            }
+            times[e] = closest != null ? closest.getTimestamp() : null;
+        }
+        return times;
+    }
+}
@@ -0,0 +1,163 @@
+package berlin.tu.cyclinginfrastructurebackend.benchmark;
+
+import berlin.tu.cyclinginfrastructurebackend.util.TimeOrderedUuid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Compares random (version 4) and time-ordered (version 7) UUID primary keys on PostgreSQL.
+ * <p>
+ * Active with the {@code id-benchmark} profile only. For each id kind a table shaped like
+ * {@code ride_points} is filled with {@code benchmark.ids.rows} rows in batches of
+ * {@code benchmark.ids.batch-rows}, each batch committed on its own as during an import. The
+ * runner logs the insert throughput of the first and the last tenth of the rows, the final size
+ * of the primary key index and how many of its blocks had to be read from outside
+ * PostgreSQL's buffer cache. The tables are dropped afterwards.
+ */
+@Component
+@Profile("id-benchmark")
+public class IdIndexBenchmarkRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(IdIndexBenchmarkRunner.class);
+    // a one-hour ride at 1 Hz
+    private static final int SAMPLES_PER_RIDE = 3600;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${benchmark.ids.rows:10000000}")
+    private long rows;
+
+    @Value("${benchmark.ids.batch-rows:50000}")
+    private int batchRows;
+
+    public IdIndexBenchmarkRunner(JdbcTemplate jdbcTemplate, ConfigurableApplicationContext context) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (rows <= 0 || batchRows <= 0) {
+            throw new IllegalArgumentException("benchmark.ids.rows and benchmark.ids.batch-rows must be positive");
+        }
+        try {
+            measure("random", UUID::randomUUID);
+            measure("time_ordered", TimeOrderedUuid::next);
+        } finally {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    private void measure(String kind, Supplier<UUID> ids) {
+        String table = "id_benchmark_" + kind;
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        jdbcTemplate.execute("""
+                CREATE TABLE %s (
+                    id uuid PRIMARY KEY,
+                    ride_id uuid NOT NULL,
+                    "timestamp" bigint,
+                    x double precision,
+                    y double precision,
+                    z double precision
+                )
+                """.formatted(table));
+
+        try {
+            long tenth = Math.max(1, rows / 10);
+            long firstTenthNanos = 0;
+            long lastTenthNanos = 0;
+            long start = System.nanoTime();
+            for (long inserted = 0; inserted < rows; ) {
+                int size = (int) Math.min(batchRows, rows - inserted);
+                long batchStart = System.nanoTime();
+                insertBatch(table, ids, inserted, size);
+                long batchNanos = System.nanoTime() - batchStart;
+                if (inserted < tenth) firstTenthNanos += batchNanos;
+                if (inserted >= rows - tenth) lastTenthNanos += batchNanos;
+                inserted += size;
+            }
+            long totalNanos = System.nanoTime() - start;
+
+            jdbcTemplate.execute("ANALYZE " + table);
+            Map<String, Object> index = jdbcTemplate.queryForMap("""
+                    SELECT pg_relation_size(indexrelid) AS index_bytes,
+                           COALESCE(idx_blks_read, 0) AS blocks_read,
+                           COALESCE(idx_blks_hit, 0) AS blocks_hit
+                    FROM pg_statio_user_indexes
+                    WHERE relname = ?
+                    """, table);
+            long indexBytes = ((Number) index.get("index_bytes")).longValue();
+            long blocksRead = ((Number) index.get("blocks_read")).longValue();
+            long blocksHit = ((Number) index.get("blocks_hit")).longValue();
+
+            log.info("{} ids: {} rows in {} s ({} rows/s overall, {} rows/s in the first tenth, "
+                            + "{} rows/s in the last tenth); primary key index {} MB, {} blocks read, "
+                            + "{}% buffer cache hits",
+                    kind, rows, String.format("%.1f", totalNanos / 1e9),
+                    perSecond(rows, totalNanos), perSecond(tenth, firstTenthNanos),
+                    perSecond(tenth, lastTenthNanos), indexBytes / (1024 * 1024), blocksRead,
+                    String.format("%.1f", blocksRead + blocksHit == 0
+                            ? 100.0 : 100.0 * blocksHit / (blocksRead + blocksHit)));
+        } finally {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    private void insertBatch(String table, Supplier<UUID> ids, long firstRow, int size) {
+        UUID[] idArray = new UUID[size];
+        UUID[] rideIds = new UUID[size];
+        Long[] timestamps = new Long[size];
+        Double[] x = new Double[size];
+        Double[] y = new Double[size];
+        Double[] z = new Double[size];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        UUID rideId = ids.get();
+        for (int i = 0; i < size; i++) {
+            // a new ride every SAMPLES_PER_RIDE rows
+            if ((firstRow + i) % SAMPLES_PER_RIDE == 0) rideId = ids.get();
+            idArray[i] = ids.get();
+            rideIds[i] = rideId;
+            timestamps[i] = now + i;
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+            z[i] = random.nextDouble();
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO %s (id, ride_id, "timestamp", x, y, z)
+                    SELECT p.id, p.ride_id, p.ts, p.x, p.y, p.z
+                    FROM unnest(?, ?, ?, ?, ?, ?) AS p(id, ride_id, ts, x, y, z)
+                    """.formatted(table))) {
+                statement.setArray(1, connection.createArrayOf("uuid", idArray));
+                statement.setArray(2, connection.createArrayOf("uuid", rideIds));
+                statement.setArray(3, connection.createArrayOf("bigint", timestamps));
+                statement.setArray(4, connection.createArrayOf("float8", x));
+                statement.setArray(5, connection.createArrayOf("float8", y));
+                statement.setArray(6, connection.createArrayOf("float8", z));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private static long perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : Math.round(count / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,269 @@
+package berlin.tu.cyclinginfrastructurebackend.benchmark;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa.SimRaFileParser;
+import berlin.tu.cyclinginfrastructurebackend.service.DetourAnalysisService;
+import berlin.tu.cyclinginfrastructurebackend.service.DetourAnalysisService.RoutedRide;
+import berlin.tu.cyclinginfrastructurebackend.service.MapMatchingService;
+import berlin.tu.cyclinginfrastructurebackend.service.MapMatchingService.MatchedRide;
+import berlin.tu.cyclinginfrastructurebackend.service.ObservationThinner;
+import berlin.tu.cyclinginfrastructurebackend.util.ImportMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many rides per second parsing, map matching and the routing part of the detour
+ * analysis sustain on their own, without PostgreSQL.
+ * <p>
+ * Active with the {@code benchmark} profile only. The ride files are read into memory up front,
+ * then for every configured thread count each stage runs over all rides before the next one
+ * starts, so a stage is never slowed down by another. Nothing is written to the database.
+ * Optionally, matching with observation thinning is compared against matching every sample.
+ */
+@Component
+@Profile("benchmark")
+public class StageBenchmarkRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StageBenchmarkRunner.class);
+
+    private final SimRaFileParser parser;
+    private final MapMatchingService mapMatchingService;
+    private final DetourAnalysisService detourAnalysisService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${benchmark.data-path:${simra.data.path}}")
+    private String dataPath;
+
+    @Value("${benchmark.max-rides:500}")
+    private int maxRides;
+
+    @Value("${benchmark.warmup-rides:50}")
+    private int warmupRides;
+
+    @Value("${benchmark.threads:1,2,4,8}")
+    private int[] threadCounts;
+
+    @Value("${benchmark.compare-thinning:false}")
+    private boolean compareThinning;
+
+    // Thinning to compare against; independent of import.thinning.*, which is off by default
+    @Value("${benchmark.thinning.min-distance-meters:10}")
+    private double thinningMinDistanceMeters;
+
+    @Value("${benchmark.thinning.tolerance-meters:5}")
+    private double thinningToleranceMeters;
+
+    @Value("${import.thinning.max-gap-meters:250}")
+    private double thinningMaxGapMeters;
+
+    public StageBenchmarkRunner(SimRaFileParser parser,
+                                MapMatchingService mapMatchingService,
+                                DetourAnalysisService detourAnalysisService,
+                                ConfigurableApplicationContext context) {
+        this.parser = parser;
+        this.mapMatchingService = mapMatchingService;
+        this.detourAnalysisService = detourAnalysisService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<RideFile> files = loadFiles();
+        if (files.isEmpty()) {
+            log.warn("No SimRa ride files found below {}", dataPath);
+        } else {
+            int maxThreads = Arrays.stream(threadCounts).max().orElse(1);
+            ExecutorService pool = Executors.newFixedThreadPool(maxThreads);
+            try {
+                log.info("Warming up with {} rides", Math.min(warmupRides, files.size()));
+                runStages(pool, maxThreads, files.subList(0, Math.min(warmupRides, files.size())), new ImportMetrics());
+
+                for (int threads : threadCounts) {
+                    ImportMetrics metrics = new ImportMetrics();
+                    log.info("Benchmarking {} rides with {} threads", files.size(), threads);
+                    runStages(pool, threads, files, metrics);
+                    metrics.recordMatcherPool(mapMatchingService.matcherPoolStats());
+                    metrics.recordEdgeGeometryCache(mapMatchingService.edgeGeometryCacheStats());
+                    metrics.recordShortestPathCache(detourAnalysisService.shortestPathCacheStats());
+                    metrics.finish();
+                    metrics.printSummary();
+                }
+
+                if (compareThinning) {
+                    compareThinning(files);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        System.exit(SpringApplication.exit(context));
+    }
+
+    private void runStages(ExecutorService pool, int threads, List<RideFile> files, ImportMetrics metrics)
+            throws Exception {
+        List<Ride> parsed = runStage(pool, threads, files, ImportMetrics.Stage.PARSE, metrics, file -> {
+            long start = System.nanoTime();
+            try {
+                Ride ride = parser.parse(new ByteArrayInputStream(file.content()), file.name());
+                metrics.recordParse(System.nanoTime() - start);
+                return ride;
+            } catch (IOException e) {
+                metrics.recordFileInvalid();
+                return null;
+            }
+        });
+
+        List<MatchedRide> matched = runStage(pool, threads, parsed, ImportMetrics.Stage.MATCH, metrics, ride -> {
+            long start = System.nanoTime();
+            MatchedRide result;
+            try {
+                result = mapMatchingService.match(ride);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            metrics.recordMapMatch(System.nanoTime() - start, result != null);
+            return result;
+        });
+
+        List<RoutedRide> routed = runStage(pool, threads, matched, ImportMetrics.Stage.ANALYZE, metrics,
+                ride -> detourAnalysisService.route(ride.ride()));
+        routed.forEach(ride -> metrics.recordFileProcessed());
+    }
+
+    /**
+     * Matches every ride with and without observation thinning on one thread and reports the
+     * time saved and how many traversed edges both results share.
+     */
+    private void compareThinning(List<RideFile> files) throws InterruptedException {
+        ObservationThinner thinner = new ObservationThinner(
+                thinningMinDistanceMeters, thinningToleranceMeters, thinningMaxGapMeters);
+        long fullNanos = 0;
+        long thinnedNanos = 0;
+        double agreementSum = 0;
+        int compared = 0;
+
+        for (RideFile file : files) {
+            Ride full;
+            Ride thinned;
+            try {
+                full = parser.parse(new ByteArrayInputStream(file.content()), file.name());
+                thinned = parser.parse(new ByteArrayInputStream(file.content()), file.name());
+            } catch (IOException e) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            MatchedRide fullMatch = mapMatchingService.match(full, ObservationThinner.disabled());
+            long middle = System.nanoTime();
+            MatchedRide thinnedMatch = mapMatchingService.match(thinned, thinner);
+            long end = System.nanoTime();
+
+            if (fullMatch == null || thinnedMatch == null
+                    || fullMatch.edges().isEmpty() || thinnedMatch.edges().isEmpty()) {
+                continue;
+            }
+            fullNanos += middle - start;
+            thinnedNanos += end - middle;
+            agreementSum += edgeAgreement(full.getTraversedEdgeIds(), thinned.getTraversedEdgeIds());
+            compared++;
+        }
+
+        if (compared == 0) {
+            log.warn("Thinning comparison: no ride was matched both ways.");
+            return;
+        }
+        log.info("Thinning comparison ({} m / {} m) over {} rides: match time {} ms unthinned, {} ms thinned "
+                        + "({}% saved), mean edge agreement {}%",
+                thinningMinDistanceMeters, thinningToleranceMeters, compared, fullNanos / 1_000_000, thinnedNanos / 1_000_000,
+                String.format("%.1f", 100.0 * (fullNanos - thinnedNanos) / fullNanos),
+                String.format("%.1f", 100.0 * agreementSum / compared));
+    }
+
+    // Jaccard similarity of the traversed edge sets
+    private static double edgeAgreement(List<Integer> a, List<Integer> b) {
+        Set<Integer> union = new HashSet<>(a);
+        union.addAll(b);
+        Set<Integer> intersection = new HashSet<>(a);
+        intersection.retainAll(new HashSet<>(b));
+        return union.isEmpty() ? 1.0 : intersection.size() / (double) union.size();
+    }
+
+    /**
+     * Runs {@code work} over all inputs on {@code threads} workers that pull the next input as
+     * soon as they are done, and records every item's latency for the stage.
+     *
+     * @return the non-null results in no particular order
+     */
+    private <I, O> List<O> runStage(ExecutorService pool, int threads, List<I> inputs, ImportMetrics.Stage stage,
+                                    ImportMetrics metrics, Function<I, O> work) throws Exception {
+        List<O> results = Collections.synchronizedList(new ArrayList<>(inputs.size()));
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < inputs.size()) {
+                    long start = System.nanoTime();
+                    O result = work.apply(inputs.get(index));
+                    metrics.recordStage(stage, System.nanoTime() - start);
+                    if (result != null) results.add(result);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        return results;
+    }
+
+    private List<RideFile> loadFiles() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(Path.of(dataPath))) {
+            paths = walk.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().startsWith("VM"))
+                    .filter(path -> path.toString().contains("Rides"))
+                    .sorted()
+                    .limit(Math.max(1, maxRides))
+                    .toList();
+        }
+
+        List<RideFile> files = new ArrayList<>(paths.size());
+        long bytes = 0;
+        for (Path path : paths) {
+            byte[] content = Files.readAllBytes(path);
+            bytes += content.length;
+            files.add(new RideFile(path.getFileName().toString(), content));
+        }
+        log.info("Loaded {} ride files ({} MB) from {}", files.size(), bytes / (1024 * 1024), dataPath);
+        return files;
+    }
+
+    private record RideFile(String name, byte[] content) {
+    }
+}
@@ -7,12 +7,20 @@ import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
-import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Configures a dedicated thread pool for detour analysis work.
  * Sized to match available CPU cores since the bottleneck is
- * CPU-bound GraphHopper routing, not I/O.
+ * CPU-bound GraphHopper routing, not I/O. At runtime the pool is
+ * resized by {@code AnalysisConcurrencyTuner}.
+ * <p>
+ * The SimRa import gets one pool per pipeline stage: file parsing,
+ * CPU-bound map matching (sized to the cores) and database persistence.
+ * Persistence gets the Hikari connections that remain when the analysis
+ * pool has grown to the tuner's maximum. Long rides are map matched in
+ * windows, which run on a pool of their own, so a matching thread never
+ * waits for a window queued behind itself.
  */
 @Configuration
 public class AsyncConfig {
@@ -20,15 +28,41 @@ public class AsyncConfig {
     @Value("${pipeline.analysis.thread-pool-size:8}")
     private int threadPoolSize;
 
+    @Value("${pipeline.analysis.concurrency.max-threads:0}")
+    private int analysisMaxThreads;
+
+    @Value("${pipeline.analysis.concurrency.adaptive:false}")
+    private boolean analysisAdaptive;
+
     @Value("${pipeline.scheduler.thread-pool-size:6}")
     private int schedulerThreadPoolSize;
 
+    @Value("${pipeline.import.parse-thread-pool-size:2}")
+    private int importParseThreads;
+
+    @Value("${pipeline.import.match-thread-pool-size:0}")
+    private int importMatchThreads;
+
+    @Value("${pipeline.import.persist-thread-pool-size:0}")
+    private int importPersistThreads;
+
+    @Value("${pipeline.import.match-chunk-thread-pool-size:0}")
+    private int importMatchChunkThreads;
+
+    @Value("${pipeline.import.queue-capacity:64}")
+    private int importQueueCapacity;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int hikariMaximumPoolSize;
+
     @Bean(name = "analysisExecutor")
-    public Executor analysisExecutor() {
+    public ThreadPoolTaskExecutor analysisExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(threadPoolSize);
         executor.setMaxPoolSize(threadPoolSize);
-        executor.setQueueCapacity(1000);    // backpressure - one batch worth of work at a time
+        // DetourAnalysisScheduler never queues more than one ride per worker, and
+        // AnalysisConcurrencyTuner may resize the pool up to the configured maximum
+        executor.setQueueCapacity(Math.max(threadPoolSize, analysisMaxThreads));
         executor.setThreadNamePrefix("detour-analysis-");
         executor.setWaitForTasksToCompleteOnShutdown(true);
         executor.setAwaitTerminationSeconds(60);
@@ -36,6 +70,60 @@ public class AsyncConfig {
         return executor;
     }
 
+    @Bean(name = "importParseExecutor")
+    public ThreadPoolTaskExecutor importParseExecutor() {
+        return importStageExecutor(Math.max(1, importParseThreads), "import-parse-");
+    }
+
+    @Bean(name = "importMatchExecutor")
+    public ThreadPoolTaskExecutor importMatchExecutor() {
+        int threads = importMatchThreads > 0
+                ? importMatchThreads
+                : Runtime.getRuntime().availableProcessors();
+        return importStageExecutor(threads, "import-match-");
+    }
+
+    @Bean(name = "matchChunkExecutor")
+    public ThreadPoolTaskExecutor matchChunkExecutor() {
+        int threads = importMatchChunkThreads > 0
+                ? importMatchChunkThreads
+                : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(importQueueCapacity);
+        // A full queue makes the matching thread match the window itself instead of failing
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("import-match-chunk-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "importPersistExecutor")
+    public ThreadPoolTaskExecutor importPersistExecutor() {
+        // Never more writers than connections; by default leave one per analysis worker, counting
+        // the workers AnalysisConcurrencyTuner may add
+        int analysisWorkers = analysisAdaptive ? Math.max(threadPoolSize, analysisMaxThreads) : threadPoolSize;
+        int threads = importPersistThreads > 0
+                ? Math.min(importPersistThreads, hikariMaximumPoolSize)
+                : Math.max(1, hikariMaximumPoolSize - analysisWorkers);
+        return importStageExecutor(threads, "import-persist-");
+    }
+
+    private ThreadPoolTaskExecutor importStageExecutor(int threads, String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(importQueueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
     @Bean
     public TaskScheduler taskScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
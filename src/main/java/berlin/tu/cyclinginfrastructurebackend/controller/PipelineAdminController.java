@@ -0,0 +1,49 @@
+package berlin.tu.cyclinginfrastructurebackend.controller;
+
+import berlin.tu.cyclinginfrastructurebackend.service.AnalysisConcurrencyTuner;
+import berlin.tu.cyclinginfrastructurebackend.service.AnalysisVersionService;
+import berlin.tu.cyclinginfrastructurebackend.service.dto.api.AnalysisConcurrencyDto;
+import berlin.tu.cyclinginfrastructurebackend.service.dto.api.AnalysisVersionDto;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+public class PipelineAdminController {
+
+    private final AnalysisConcurrencyTuner analysisConcurrencyTuner;
+    private final AnalysisVersionService analysisVersionService;
+
+    public PipelineAdminController(AnalysisConcurrencyTuner analysisConcurrencyTuner,
+                                   AnalysisVersionService analysisVersionService) {
+        this.analysisConcurrencyTuner = analysisConcurrencyTuner;
+        this.analysisVersionService = analysisVersionService;
+    }
+
+    @GetMapping("/api/admin/analysis/concurrency")
+    public AnalysisConcurrencyDto analysisConcurrency() {
+        return analysisConcurrencyTuner.getStatus();
+    }
+
+    @GetMapping("/api/admin/analysis/versions")
+    public List<AnalysisVersionDto> analysisVersions() {
+        return analysisVersionService.versions();
+    }
+
+    @PostMapping("/api/admin/analysis/versions/{version}/activate")
+    public AnalysisVersionDto activateAnalysisVersion(@PathVariable String version) {
+        return analysisVersionService.activate(version);
+    }
+
+    @DeleteMapping("/api/admin/analysis/versions/{version}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void discardAnalysisVersion(@PathVariable String version) {
+        analysisVersionService.discard(version);
+    }
+}
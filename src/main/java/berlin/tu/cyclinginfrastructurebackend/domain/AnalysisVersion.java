@@ -0,0 +1,34 @@
+package berlin.tu.cyclinginfrastructurebackend.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A set of detour analysis parameters, identified by its version. Exactly one version is
+ * active: its results are the ones in {@code rides} and {@code segment_events}. Rides analyzed
+ * with any other version keep their results in {@code ride_analysis_results} and
+ * {@code candidate_segment_events} until that version is activated.
+ */
+@Entity
+@Table(name = "analysis_versions")
+@Getter
+@Setter
+@NoArgsConstructor
+public class AnalysisVersion {
+
+    @Id
+    @Column(length = 64)
+    private String version;
+
+    private double proximityMeters;
+    private double detourThreshold;
+    private double minimumOverlapRatio;
+
+    @Column(columnDefinition = "boolean not null default false")
+    private boolean active;
+
+    private Long createdAt;     // epoch ms
+    private Long activatedAt;   // epoch ms
+}
@@ -0,0 +1,54 @@
+package berlin.tu.cyclinginfrastructurebackend.domain;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideIntent;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.SegmentEventType;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.DayOfWeek;
+import java.util.UUID;
+
+/**
+ * A {@link SegmentEvent} produced with an {@link AnalysisVersion} that is not the active one.
+ * Holds only the columns the analysis sets; the events move to {@code segment_events} when
+ * their version is activated, taking over the enrichment of the events they replace.
+ */
+@Entity
+@Table(name = "candidate_segment_events", indexes = {
+        @Index(name = "idx_candidate_event_version_ride", columnList = "analysis_version, ride_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class CandidateSegmentEvent {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "analysis_version", length = 64, nullable = false)
+    private String analysisVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SegmentEventType eventType;
+
+    @Column(name = "segment_id", nullable = false)
+    private Long segmentId;
+
+    @Column(name = "ride_id", nullable = false)
+    private UUID rideId;
+
+    @Column(nullable = false)
+    private Long eventTimestamp;
+
+    @Enumerated(EnumType.STRING)
+    private DayOfWeek dayOfWeek;
+
+    private Integer hourOfDay;
+    private Double pathBearingDegrees;
+
+    @Enumerated(EnumType.STRING)
+    private RideIntent rideIntent;
+}
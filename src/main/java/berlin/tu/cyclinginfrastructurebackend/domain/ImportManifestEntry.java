@@ -0,0 +1,38 @@
+package berlin.tu.cyclinginfrastructurebackend.domain;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ImportOutcome;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One record per SimRa source file the importer has attempted, keyed by its path relative to
+ * {@code simra.data.path}. Size and modification time identify the file version: a file is only
+ * picked up again if either changes, so rides and known-bad files are not re-parsed on every
+ * scan or restart.
+ */
+@Entity
+@Table(name = "import_manifest")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportManifestEntry {
+
+    @Id
+    @Column(length = 1024)
+    private String path;
+
+    private long fileSize;
+
+    private long lastModified;  // epoch ms
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private ImportOutcome outcome;
+
+    @Column(columnDefinition = "text")
+    private String failureReason;
+
+    private Long processedAt;   // epoch ms
+}
@@ -9,7 +9,9 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.UuidGenerator;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -18,14 +20,18 @@ import java.util.Map;
 import java.util.UUID;
 
 @Entity
-@Table(name = "rides")
+@Table(name = "rides", indexes = {
+        @Index(name = "idx_rides_fingerprint", columnList = "fingerprint", unique = true),
+        @Index(name = "idx_rides_start_time", columnList = "startTime")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 public class Ride {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.VERSION_7)
     private UUID id;
 
     @Enumerated(EnumType.STRING)
@@ -40,6 +46,10 @@ public class Ride {
     @OneToMany(mappedBy = "ride", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<RidePoint> ridePoints = new ArrayList<>();
 
+    // Compact alternative to ridePoints, see RideTrackCodec; a ride uses one or the other
+    @Column(columnDefinition = "bytea")
+    private byte[] track;
+
     @OneToMany(mappedBy = "ride", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Incident> incidents = new ArrayList<>();
 
@@ -48,9 +58,18 @@ public class Ride {
     private Long startTime;
     private Long endTime;
 
+    // Hash of the raw recording used to reject re-uploads, see SimRaFileParser#fingerprint
+    private Long fingerprint;
+
     @Column(columnDefinition = "geometry(LineString,4326)")
     private LineString trajectory;
 
+    // First and last raw GPS fix; the trajectory is replaced by the matched path on import
+    @Column(columnDefinition = "geometry(Point,4326)")
+    private Point startPoint;
+    @Column(columnDefinition = "geometry(Point,4326)")
+    private Point endPoint;
+
     @ElementCollection
     @CollectionTable(
             name = "ride_edges",
@@ -74,6 +93,10 @@ public class Ride {
     @Enumerated(EnumType.STRING)
     private RideIntent rideIntent;
 
+    // analysis parameter set the results above were produced with, see AnalysisVersion
+    @Column(length = 64)
+    private String analysisVersion;
+
     @Column(columnDefinition = "geometry(LineString,4326)")
     private LineString shortestPath;
 
@@ -0,0 +1,59 @@
+package berlin.tu.cyclinginfrastructurebackend.domain;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideIntent;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RouteComparisonType;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * The ride-level result of analyzing a ride with an {@link AnalysisVersion} that is not the
+ * active one. Copied into {@code rides} when the version is activated. A row with status
+ * ANALYZING marks a ride claimed for re-analysis.
+ */
+@Entity
+@Table(name = "ride_analysis_results", indexes = {
+        @Index(name = "idx_ride_analysis_results_version_status", columnList = "analysis_version, status")
+})
+@IdClass(RideAnalysisResult.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+public class RideAnalysisResult {
+
+    @Id
+    @Column(name = "ride_id")
+    private UUID rideId;
+
+    @Id
+    @Column(name = "analysis_version", length = 64)
+    private String analysisVersion;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Double shortestPathDistance;
+    private Boolean isDetour;
+    private Double overlapRatio;
+
+    @Enumerated(EnumType.STRING)
+    private RouteComparisonType routeComparisonType;
+
+    @Enumerated(EnumType.STRING)
+    private RideIntent rideIntent;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private UUID rideId;
+        private String analysisVersion;
+    }
+}
@@ -13,6 +13,7 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.DayOfWeek;
 import java.time.Instant;
@@ -40,7 +41,8 @@ public class SegmentEvent {
     private static final ZoneId BERLIN_ZONE = ZoneId.of("Europe/Berlin");
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.VERSION_7)
     private UUID id;
 
     @Enumerated(EnumType.STRING)
@@ -135,6 +137,9 @@ public class SegmentEvent {
     @Enumerated(EnumType.STRING)
     private RideIntent rideIntent;
 
+    @Column(length = 64)
+    private String analysisVersion;
+
     public static SegmentEvent of(SegmentEventType type,
                                   StreetSegment segment,
                                   Ride ride,
@@ -147,6 +152,7 @@ public class SegmentEvent {
         event.eventTimestamp = eventTimestamp;
         event.pathBearingDegrees = pathBearingDegrees;
         event.rideIntent = ride.getRideIntent();
+        event.analysisVersion = ride.getAnalysisVersion();
 
         ZonedDateTime berlinTime = Instant.ofEpochMilli(eventTimestamp).atZone(BERLIN_ZONE);
         event.dayOfWeek = berlinTime.getDayOfWeek();
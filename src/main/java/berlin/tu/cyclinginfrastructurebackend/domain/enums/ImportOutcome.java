@@ -0,0 +1,10 @@
+package berlin.tu.cyclinginfrastructurebackend.domain.enums;
+
+public enum ImportOutcome {
+    IMPORTED,           // Ride stored (PENDING, or SKIPPED when origin and destination are too close)
+    SKIPPED,            // Parsed, but rejected by the quality gate; reason in failure_reason
+    INVALID,            // Not a readable SimRa file
+    MATCH_FAILED,       // Map matching found no path
+    ERROR,              // Unexpected exception; retried after the next restart
+    ARCHIVE_READ        // Export bundle whose entries all have an outcome of their own
+}
@@ -0,0 +1,10 @@
+package berlin.tu.cyclinginfrastructurebackend.domain.enums;
+
+public enum RideRejectionReason {
+    NO_GPS_POINTS,          // No row with a usable location
+    OUTSIDE_REGION,         // At least one point outside the configured region of interest
+    IMPLAUSIBLE_JUMP,       // Two consecutive fixes imply a speed no bicycle reaches
+    POOR_GPS_ACCURACY,      // Median reported accuracy above the limit
+    TOO_SHORT,              // Recording shorter than the minimum duration
+    DUPLICATE               // Same recording already imported, possibly under another filename
+}
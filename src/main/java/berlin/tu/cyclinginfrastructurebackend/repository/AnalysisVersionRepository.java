@@ -0,0 +1,218 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.AnalysisVersion;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Analysis parameter versions and the set-based statements that activate one.
+ * <p>
+ * Rows of a version are locked {@code FOR SHARE} by every analysis that writes results and
+ * {@code FOR UPDATE} by the activation, so an analysis either finishes before the switch and
+ * is promoted with it, or starts after it and writes to the live tables directly.
+ */
+@Repository
+public class AnalysisVersionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AnalysisVersionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void register(String version, double proximityMeters, double detourThreshold,
+                         double minimumOverlapRatio, long createdAt) {
+        jdbcTemplate.update("""
+                INSERT INTO analysis_versions (version, proximity_meters, detour_threshold, minimum_overlap_ratio,
+                                               active, created_at)
+                VALUES (?, ?, ?, ?, false, ?)
+                ON CONFLICT (version) DO NOTHING
+                """, version, proximityMeters, detourThreshold, minimumOverlapRatio, createdAt);
+    }
+
+    /**
+     * Makes the version active if no version is, which is the case on the first start with
+     * versioned analyses: the existing results are then taken to be the configured version's.
+     *
+     * @return whether the version was activated
+     */
+    public boolean activateIfNoneActive(String version, long activatedAt) {
+        // serializes instances starting at the same time
+        jdbcTemplate.execute("LOCK TABLE analysis_versions IN SHARE ROW EXCLUSIVE MODE");
+        return jdbcTemplate.update("""
+                UPDATE analysis_versions
+                SET active = true, activated_at = ?
+                WHERE version = ?
+                  AND NOT EXISTS (SELECT 1 FROM analysis_versions WHERE active)
+                """, activatedAt, version) > 0;
+    }
+
+    public List<AnalysisVersion> findAll() {
+        return jdbcTemplate.query("""
+                SELECT version, proximity_meters, detour_threshold, minimum_overlap_ratio, active,
+                       created_at, activated_at
+                FROM analysis_versions
+                ORDER BY created_at, version
+                """, (resultSet, rowNum) -> {
+            AnalysisVersion version = new AnalysisVersion();
+            version.setVersion(resultSet.getString("version"));
+            version.setProximityMeters(resultSet.getDouble("proximity_meters"));
+            version.setDetourThreshold(resultSet.getDouble("detour_threshold"));
+            version.setMinimumOverlapRatio(resultSet.getDouble("minimum_overlap_ratio"));
+            version.setActive(resultSet.getBoolean("active"));
+            version.setCreatedAt(resultSet.getObject("created_at", Long.class));
+            version.setActivatedAt(resultSet.getObject("activated_at", Long.class));
+            return version;
+        });
+    }
+
+    /**
+     * Locks the version against activation for the rest of the transaction.
+     *
+     * @return whether the version is active, or {@code null} if it is not registered
+     */
+    public Boolean lockShared(String version) {
+        return jdbcTemplate.query("SELECT active FROM analysis_versions WHERE version = ? FOR SHARE",
+                (resultSet, rowNum) -> resultSet.getBoolean(1), version).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Waits for the analyses writing results of the version and locks it for the rest of the
+     * transaction.
+     *
+     * @return whether the version is active, or {@code null} if it is not registered
+     */
+    public Boolean lockExclusive(String version) {
+        return jdbcTemplate.query("SELECT active FROM analysis_versions WHERE version = ? FOR UPDATE",
+                (resultSet, rowNum) -> resultSet.getBoolean(1), version).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * @return ride results of the version by status, including ANALYZING for claimed rides
+     */
+    public Map<String, Long> countResultsByStatus(String version) {
+        return jdbcTemplate.query("""
+                        SELECT status, COUNT(*) FROM ride_analysis_results
+                        WHERE analysis_version = ?
+                        GROUP BY status
+                        """, (resultSet, rowNum) -> Map.entry(resultSet.getString(1), resultSet.getLong(2)), version)
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * @return analyzed rides without a result of the version yet
+     */
+    public long countRidesToReanalyze(String version) {
+        Long count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM rides r
+                WHERE r.status IN ('PROCESSED', 'SKIPPED')
+                  AND NOT EXISTS (
+                      SELECT 1 FROM ride_analysis_results a
+                      WHERE a.ride_id = r.id AND a.analysis_version = ?
+                  )
+                """, Long.class, version);
+        return count != null ? count : 0;
+    }
+
+    public long countCandidateEvents(String version) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM candidate_segment_events WHERE analysis_version = ?", Long.class, version);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Replaces the live results of every ride analyzed with the version by the version's:
+     * the ride columns, and the segment events, which keep the enrichment of the event they
+     * replace on the same ride, segment and type. Then makes the version the active one.
+     * Expects {@link #lockExclusive} to be held and no ride of the version to be ANALYZING.
+     *
+     * @return the number of rides promoted
+     */
+    public int promote(String version, long activatedAt) {
+        int rides = jdbcTemplate.update("""
+                UPDATE rides r
+                SET status = a.status,
+                    shortest_path_distance = COALESCE(a.shortest_path_distance, r.shortest_path_distance),
+                    is_detour = a.is_detour,
+                    overlap_ratio = a.overlap_ratio,
+                    route_comparison_type = a.route_comparison_type,
+                    ride_intent = a.ride_intent,
+                    analysis_version = a.analysis_version
+                FROM ride_analysis_results a
+                WHERE a.analysis_version = ?
+                  AND r.id = a.ride_id
+                """, version);
+
+        jdbcTemplate.update("""
+                WITH replaced AS (
+                    DELETE FROM segment_events e
+                    USING ride_analysis_results a
+                    WHERE a.analysis_version = ?
+                      AND e.ride_id = a.ride_id
+                    RETURNING e.*
+                ),
+                previous AS (
+                    SELECT DISTINCT ON (ride_id, segment_id, event_type) *
+                    FROM replaced
+                    ORDER BY ride_id, segment_id, event_type, id
+                )
+                INSERT INTO segment_events (
+                    id, event_type, segment_id, ride_id, event_timestamp, day_of_week, hour_of_day,
+                    path_bearing_degrees, ride_intent, analysis_version,
+                    weather_enriched, weather_processing_status, temperature2m, precipitation, wind_speed10m,
+                    wind_direction10m, weather_code, relative_wind_angle_degrees, wind_exposure,
+                    berlin_open_data_enriched, berlin_open_data_processing_status,
+                    ohsome_enriched, ohsome_processing_status, surface, smoothness, lit, highway,
+                    cycleway_type, cycleway_location, cycleway_surface, cycleway_width, bicycle_oneway,
+                    traffic_enriched, traffic_processing_status, traffic_enrichment_status, traffic_condition,
+                    traffic_source_type, traffic_volume_kfz, traffic_speed_kfz, traffic_volume_pkw,
+                    traffic_speed_pkw, traffic_volume_lkw, traffic_speed_lkw
+                )
+                SELECT c.id, c.event_type, c.segment_id, c.ride_id, c.event_timestamp, c.day_of_week, c.hour_of_day,
+                       c.path_bearing_degrees, c.ride_intent, c.analysis_version,
+                       COALESCE(p.weather_enriched, false),
+                       CASE WHEN p.weather_enriched THEN 'DONE' ELSE 'PENDING' END,
+                       p.temperature2m, p.precipitation, p.wind_speed10m,
+                       p.wind_direction10m, p.weather_code, p.relative_wind_angle_degrees, p.wind_exposure,
+                       COALESCE(p.berlin_open_data_enriched, false),
+                       CASE WHEN p.berlin_open_data_enriched THEN 'DONE' ELSE 'PENDING' END,
+                       COALESCE(p.ohsome_enriched, false),
+                       CASE WHEN p.ohsome_enriched THEN 'DONE' ELSE 'PENDING' END,
+                       p.surface, p.smoothness, p.lit, p.highway,
+                       p.cycleway_type, p.cycleway_location, p.cycleway_surface, p.cycleway_width, p.bicycle_oneway,
+                       COALESCE(p.traffic_enriched, false),
+                       CASE WHEN p.traffic_enriched THEN 'DONE' ELSE 'PENDING' END,
+                       p.traffic_enrichment_status, p.traffic_condition,
+                       p.traffic_source_type, p.traffic_volume_kfz, p.traffic_speed_kfz, p.traffic_volume_pkw,
+                       p.traffic_speed_pkw, p.traffic_volume_lkw, p.traffic_speed_lkw
+                FROM candidate_segment_events c
+                LEFT JOIN previous p
+                       ON p.ride_id = c.ride_id AND p.segment_id = c.segment_id AND p.event_type = c.event_type
+                WHERE c.analysis_version = ?
+                ORDER BY c.segment_id
+                """, version, version);
+
+        jdbcTemplate.update("DELETE FROM candidate_segment_events WHERE analysis_version = ?", version);
+        jdbcTemplate.update("DELETE FROM ride_analysis_results WHERE analysis_version = ?", version);
+        jdbcTemplate.update("""
+                UPDATE analysis_versions
+                SET active = (version = ?),
+                    activated_at = CASE WHEN version = ? THEN ? ELSE activated_at END
+                """, version, version, activatedAt);
+        return rides;
+    }
+
+    /**
+     * Deletes an inactive version with its candidate results.
+     */
+    public void delete(String version) {
+        jdbcTemplate.update("DELETE FROM candidate_segment_events WHERE analysis_version = ?", version);
+        jdbcTemplate.update("DELETE FROM ride_analysis_results WHERE analysis_version = ?", version);
+        jdbcTemplate.update("DELETE FROM analysis_versions WHERE version = ? AND NOT active", version);
+    }
+}
@@ -0,0 +1,132 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Encodes rows in PostgreSQL's binary COPY format: a fixed signature, then per row a field count
+ * followed by length-prefixed values in each column type's binary send representation, and a
+ * {@code -1} trailer. Geometries are written as EWKB, which PostGIS accepts as the binary input
+ * of a {@code geometry} column.
+ * <p>
+ * Values must match the column types exactly (e.g. {@code int4} vs {@code int8}); the server
+ * rejects the whole COPY otherwise.
+ */
+final class BinaryCopyWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private final DataOutputStream out;
+    private final WKBWriter wkbWriter = new WKBWriter(2, ByteOrderValues.BIG_ENDIAN, true);
+
+    BinaryCopyWriter(OutputStream target) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        out.write(SIGNATURE);
+        out.writeInt(0); // flags
+        out.writeInt(0); // header extension length
+    }
+
+    void startRow(int columnCount) throws IOException {
+        out.writeShort(columnCount);
+    }
+
+    void writeUuid(UUID value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    void writeInt(Integer value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(4);
+        out.writeInt(value);
+    }
+
+    void writeLong(Long value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(8);
+        out.writeLong(value);
+    }
+
+    void writeDouble(Double value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(8);
+        out.writeDouble(value);
+    }
+
+    void writeBoolean(Boolean value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(1);
+        out.writeByte(value ? 1 : 0);
+    }
+
+    void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void writeBytes(byte[] value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    /** Writes an enum the way Hibernate stores {@code EnumType.STRING} columns. */
+    void writeEnum(Enum<?> value) throws IOException {
+        writeText(value != null ? value.name() : null);
+    }
+
+    void writeGeometry(Geometry value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] ewkb = wkbWriter.write(value);
+        out.writeInt(ewkb.length);
+        out.write(ewkb);
+    }
+
+    void writeNull() throws IOException {
+        out.writeInt(-1);
+    }
+
+    /** Writes the trailer and closes the underlying stream, which completes the COPY. */
+    @Override
+    public void close() throws IOException {
+        out.writeShort(-1);
+        out.close();
+    }
+}
@@ -0,0 +1,53 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+
+/**
+ * Set-based writes of {@code import_manifest} rows that share one outcome, used when many files
+ * are recorded at once. The rows arrive as parallel arrays and are upserted with one
+ * {@code INSERT ... SELECT FROM unnest(...)} instead of one statement per file.
+ */
+@Repository
+public class ImportManifestBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ImportManifestBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param paths        manifest keys, each at most once
+     * @param sizes        file size per path
+     * @param lastModified modification time (epoch ms) per path
+     * @return the number of rows written
+     */
+    public int upsertAll(String[] paths, Long[] sizes, Long[] lastModified, String outcome, long processedAt) {
+        if (paths.length == 0) return 0;
+
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO import_manifest (path, file_size, last_modified, outcome, failure_reason, processed_at)
+                    SELECT f.path, f.file_size, f.last_modified, ?, NULL, ?
+                    FROM unnest(?, ?, ?) AS f(path, file_size, last_modified)
+                    ON CONFLICT (path) DO UPDATE SET
+                        file_size = EXCLUDED.file_size,
+                        last_modified = EXCLUDED.last_modified,
+                        outcome = EXCLUDED.outcome,
+                        failure_reason = EXCLUDED.failure_reason,
+                        processed_at = EXCLUDED.processed_at
+                    """)) {
+                statement.setString(1, outcome);
+                statement.setLong(2, processedAt);
+                statement.setArray(3, connection.createArrayOf("text", paths));
+                statement.setArray(4, connection.createArrayOf("bigint", sizes));
+                statement.setArray(5, connection.createArrayOf("bigint", lastModified));
+                return statement.executeUpdate();
+            }
+        });
+    }
+}
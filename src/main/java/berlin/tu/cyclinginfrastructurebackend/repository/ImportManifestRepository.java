@@ -0,0 +1,38 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.ImportManifestEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ImportManifestRepository extends JpaRepository<ImportManifestEntry, String> {
+
+    /**
+     * Path, size and modification time of every file whose outcome is final. ERROR entries are
+     * left out so files that hit an unexpected exception are retried after a restart.
+     */
+    @Query("""
+            SELECT m.path, m.fileSize, m.lastModified FROM ImportManifestEntry m
+            WHERE m.outcome <> berlin.tu.cyclinginfrastructurebackend.domain.enums.ImportOutcome.ERROR
+            """)
+    List<Object[]> findSettledFileStamps();
+
+    @Modifying
+    @Transactional
+    @Query(value = """
+        INSERT INTO import_manifest (path, file_size, last_modified, outcome, failure_reason, processed_at)
+        VALUES (:path, :fileSize, :lastModified, :outcome, :failureReason, :processedAt)
+        ON CONFLICT (path) DO UPDATE SET
+            file_size = EXCLUDED.file_size,
+            last_modified = EXCLUDED.last_modified,
+            outcome = EXCLUDED.outcome,
+            failure_reason = EXCLUDED.failure_reason,
+            processed_at = EXCLUDED.processed_at
+        """, nativeQuery = true)
+    void upsert(String path, long fileSize, long lastModified, String outcome, String failureReason, long processedAt);
+}
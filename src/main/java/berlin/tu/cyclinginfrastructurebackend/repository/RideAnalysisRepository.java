@@ -0,0 +1,236 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.BikeType;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read and write path of the detour analysis, which needs only a fraction of a ride.
+ * <p>
+ * Loading the {@link Ride} entity pulls every {@code ride_points} row with its sensor columns
+ * and loads the edge list, bearings and timestamps as separate lazy collections.
+ * {@link #findForAnalysis} fetches everything the analysis reads in one query instead: the ride
+ * columns, the compact track (or the positions and timestamps of legacy point rows) and the
+ * edge arrays aggregated in PostgreSQL. {@link #saveResult} writes back only the columns the
+ * analysis sets; {@link #saveCandidateResult} keeps the result of an analysis version that is
+ * not active yet apart from them.
+ */
+@Repository
+public class RideAnalysisRepository {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RideAnalysisRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Loads the ride for the analysis. Its traversed edge ids are the distinct edges of
+     * {@code ride_edges} in ascending order, not the traversal order: the table has no order
+     * column, and the analysis only uses them as a set.
+     *
+     * @return a detached ride holding only the fields the analysis reads, or empty if there is
+     * no such ride
+     */
+    public Optional<Ride> findForAnalysis(UUID rideId) {
+        List<Ride> rides = jdbcTemplate.query("""
+                SELECT r.status, r.bike_type, r.child_transport, r.trailer_attached, r.start_time, r.end_time,
+                       r.actual_distance, ST_AsBinary(r.trajectory) AS trajectory, r.track,
+                       e.edge_ids, b.edge_ids AS bearing_edge_ids, b.bearings,
+                       t.edge_ids AS timestamp_edge_ids, t.timestamps,
+                       p.lats AS point_lats, p.lons AS point_lons, p.timestamps AS point_timestamps
+                FROM rides r
+                CROSS JOIN LATERAL (
+                    SELECT array_agg(DISTINCT edge_id) AS edge_ids FROM ride_edges WHERE ride_id = r.id
+                ) e
+                CROSS JOIN LATERAL (
+                    SELECT array_agg(edge_id) AS edge_ids, array_agg(bearing_degrees) AS bearings
+                    FROM ride_edge_bearings WHERE ride_id = r.id
+                ) b
+                CROSS JOIN LATERAL (
+                    SELECT array_agg(edge_id) AS edge_ids, array_agg("timestamp") AS timestamps
+                    FROM ride_edge_timestamps WHERE ride_id = r.id
+                ) t
+                CROSS JOIN LATERAL (
+                    SELECT array_agg(ST_Y(location) ORDER BY sequence_index, "timestamp") AS lats,
+                           array_agg(ST_X(location) ORDER BY sequence_index, "timestamp") AS lons,
+                           array_agg("timestamp" ORDER BY sequence_index, "timestamp") AS timestamps
+                    FROM ride_points
+                    WHERE ride_id = r.id AND r.track IS NULL AND location IS NOT NULL
+                ) p
+                WHERE r.id = ?
+                """, (resultSet, rowNum) -> toRide(rideId, resultSet), rideId);
+        return rides.stream().findFirst();
+    }
+
+    /**
+     * Writes the analysis result of a processed ride: status, shortest path and its edges,
+     * distances, the route comparison, the ride intent and the analysis version.
+     */
+    public void saveResult(Ride ride) {
+        byte[] shortestPath = ride.getShortestPath() != null ? new WKBWriter().write(ride.getShortestPath()) : null;
+        jdbcTemplate.update("""
+                UPDATE rides
+                SET status = ?, shortest_path = ST_GeomFromWKB(?, 4326), shortest_path_distance = ?,
+                    actual_distance = ?, is_detour = ?, overlap_ratio = ?, route_comparison_type = ?,
+                    ride_intent = ?, analysis_version = ?
+                WHERE id = ?
+                """, statement -> {
+            statement.setString(1, name(ride.getStatus()));
+            statement.setBytes(2, shortestPath);
+            statement.setObject(3, ride.getShortestPathDistance(), Types.DOUBLE);
+            statement.setObject(4, ride.getActualDistance(), Types.DOUBLE);
+            statement.setObject(5, ride.getIsDetour(), Types.BOOLEAN);
+            statement.setObject(6, ride.getOverlapRatio(), Types.DOUBLE);
+            statement.setString(7, name(ride.getRouteComparisonType()));
+            statement.setString(8, name(ride.getRideIntent()));
+            statement.setString(9, ride.getAnalysisVersion());
+            statement.setObject(10, ride.getId());
+        });
+        saveShortestPathEdges(ride);
+    }
+
+    /**
+     * Writes the result of re-analyzing a ride with a version that is not active to
+     * {@code ride_analysis_results}, leaving the ride's live columns untouched.
+     */
+    public void saveCandidateResult(Ride ride) {
+        jdbcTemplate.update("""
+                INSERT INTO ride_analysis_results (ride_id, analysis_version, status, shortest_path_distance,
+                                                   is_detour, overlap_ratio, route_comparison_type, ride_intent)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (ride_id, analysis_version) DO UPDATE
+                SET status = EXCLUDED.status, shortest_path_distance = EXCLUDED.shortest_path_distance,
+                    is_detour = EXCLUDED.is_detour, overlap_ratio = EXCLUDED.overlap_ratio,
+                    route_comparison_type = EXCLUDED.route_comparison_type, ride_intent = EXCLUDED.ride_intent
+                """, statement -> {
+            statement.setObject(1, ride.getId());
+            statement.setString(2, ride.getAnalysisVersion());
+            statement.setString(3, name(ride.getStatus()));
+            statement.setObject(4, ride.getShortestPathDistance(), Types.DOUBLE);
+            statement.setObject(5, ride.getIsDetour(), Types.BOOLEAN);
+            statement.setObject(6, ride.getOverlapRatio(), Types.DOUBLE);
+            statement.setString(7, name(ride.getRouteComparisonType()));
+            statement.setString(8, name(ride.getRideIntent()));
+        });
+    }
+
+    /**
+     * Records the status of re-analyzing a ride with a version that is not active.
+     */
+    public void saveCandidateStatus(UUID rideId, String version, Status status) {
+        jdbcTemplate.update("""
+                INSERT INTO ride_analysis_results (ride_id, analysis_version, status)
+                VALUES (?, ?, ?)
+                ON CONFLICT (ride_id, analysis_version) DO UPDATE SET status = EXCLUDED.status
+                """, rideId, version, status.name());
+    }
+
+    private void saveShortestPathEdges(Ride ride) {
+        jdbcTemplate.update("DELETE FROM ride_shortest_path_edges WHERE ride_id = ?", ride.getId());
+        List<Integer> edgeIds = ride.getShortestPathEdgeIds().stream()
+                .filter(edgeId -> edgeId != null)
+                .toList();
+        if (edgeIds.isEmpty()) return;
+
+        jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO ride_shortest_path_edges (ride_id, edge_id)
+                    SELECT ?, edge_id FROM unnest(?) AS edge_id
+                    """)) {
+                statement.setObject(1, ride.getId());
+                statement.setArray(2, connection.createArrayOf("integer", edgeIds.toArray()));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private static Ride toRide(UUID rideId, ResultSet resultSet) throws SQLException {
+        Ride ride = new Ride();
+        ride.setId(rideId);
+        ride.setStatus(Status.valueOf(resultSet.getString("status")));
+        String bikeType = resultSet.getString("bike_type");
+        ride.setBikeType(bikeType != null ? BikeType.valueOf(bikeType) : null);
+        ride.setChildTransport(resultSet.getObject("child_transport", Boolean.class));
+        ride.setTrailerAttached(resultSet.getObject("trailer_attached", Boolean.class));
+        ride.setStartTime(resultSet.getObject("start_time", Long.class));
+        ride.setEndTime(resultSet.getObject("end_time", Long.class));
+        ride.setActualDistance(resultSet.getObject("actual_distance", Double.class));
+        ride.setTrajectory(lineString(resultSet.getBytes("trajectory")));
+        ride.setTrack(resultSet.getBytes("track"));
+
+        ride.setTraversedEdgeIds(new ArrayList<>(List.of(array(resultSet, "edge_ids", new Integer[0]))));
+        ride.setTraversedEdgeBearings(map(array(resultSet, "bearing_edge_ids", new Integer[0]),
+                array(resultSet, "bearings", new Double[0])));
+        ride.setTraversedEdgeTimestamps(map(array(resultSet, "timestamp_edge_ids", new Integer[0]),
+                array(resultSet, "timestamps", new Long[0])));
+
+        Double[] lats = array(resultSet, "point_lats", new Double[0]);
+        Double[] lons = array(resultSet, "point_lons", new Double[0]);
+        Long[] timestamps = array(resultSet, "point_timestamps", new Long[0]);
+        List<RidePoint> points = new ArrayList<>(lats.length);
+        for (int i = 0; i < lats.length; i++) {
+            RidePoint point = new RidePoint();
+            point.setLocation(GEOMETRY_FACTORY.createPoint(new Coordinate(lons[i], lats[i])));
+            point.setTimestamp(timestamps[i]);
+            point.setSequenceIndex(i);
+            points.add(point);
+        }
+        ride.setRidePoints(points);
+        return ride;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] array(ResultSet resultSet, String column, T[] empty) throws SQLException {
+        Array array = resultSet.getArray(column);
+        return array != null ? (T[]) array.getArray() : empty;
+    }
+
+    private static <V> Map<Integer, V> map(Integer[] keys, V[] values) {
+        Map<Integer, V> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    private static LineString lineString(byte[] wkb) {
+        if (wkb == null) return null;
+        try {
+            Geometry geometry = new WKBReader(GEOMETRY_FACTORY).read(wkb);
+            return geometry instanceof LineString lineString ? lineString : null;
+        } catch (ParseException e) {
+            throw new IllegalStateException("Unreadable ride trajectory", e);
+        }
+    }
+
+    private static String name(Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+}
@@ -0,0 +1,200 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Incident;
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ParticipantType;
+import berlin.tu.cyclinginfrastructurebackend.util.TimeOrderedUuid;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bulk insert path for freshly imported rides. Instead of cascading thousands of
+ * {@link RidePoint} entities and the edge element collections through Hibernate batching,
+ * the ride row and all of its child rows are streamed with PostgreSQL binary COPY on the
+ * transaction's own connection, so a ride still appears atomically or not at all.
+ * <p>
+ * Only meant for inserting new rides straight after map matching: nothing is merged into the
+ * persistence context, and rows with {@code null} element-collection values are skipped the
+ * same way Hibernate skips them.
+ */
+@Repository
+public class RideCopyRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RideCopyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void insert(Ride ride) {
+        if (ride.getId() == null) {
+            ride.setId(TimeOrderedUuid.next());
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try {
+                copyRide(connection, ride);
+                copyRidePoints(connection, ride);
+                copyIncidents(connection, ride);
+                copyEdges(connection, ride);
+            } catch (IOException e) {
+                throw new UncheckedIOException("COPY of ride " + ride.getId() + " failed", e);
+            }
+            return null;
+        });
+    }
+
+    private void copyRide(Connection connection, Ride ride) throws SQLException, IOException {
+        try (BinaryCopyWriter writer = open(connection, """
+                COPY rides (id, bike_type, child_transport, trailer_attached, phone_location,
+                            original_filename, start_time, end_time, trajectory, status, actual_distance, track,
+                            fingerprint, start_point, end_point)
+                FROM STDIN (FORMAT BINARY)
+                """)) {
+            writer.startRow(15);
+            writer.writeUuid(ride.getId());
+            writer.writeEnum(ride.getBikeType());
+            writer.writeBoolean(ride.getChildTransport());
+            writer.writeBoolean(ride.getTrailerAttached());
+            writer.writeEnum(ride.getPhoneLocation());
+            writer.writeText(ride.getOriginalFilename());
+            writer.writeLong(ride.getStartTime());
+            writer.writeLong(ride.getEndTime());
+            writer.writeGeometry(ride.getTrajectory());
+            writer.writeEnum(ride.getStatus());
+            writer.writeDouble(ride.getActualDistance());
+            writer.writeBytes(ride.getTrack());
+            writer.writeLong(ride.getFingerprint());
+            writer.writeGeometry(ride.getStartPoint());
+            writer.writeGeometry(ride.getEndPoint());
+        }
+    }
+
+    private void copyRidePoints(Connection connection, Ride ride) throws SQLException, IOException {
+        List<RidePoint> points = ride.getRidePoints();
+        if (points.isEmpty()) return;
+
+        try (BinaryCopyWriter writer = open(connection, """
+                COPY ride_points (id, ride_id, location, "timestamp", x, y, z, gps_accuracy, a, b, c, sequence_index)
+                FROM STDIN (FORMAT BINARY)
+                """)) {
+            for (RidePoint point : points) {
+                if (point.getId() == null) {
+                    point.setId(TimeOrderedUuid.next());
+                }
+                writer.startRow(12);
+                writer.writeUuid(point.getId());
+                writer.writeUuid(ride.getId());
+                writer.writeGeometry(point.getLocation());
+                writer.writeLong(point.getTimestamp());
+                writer.writeDouble(point.getX());
+                writer.writeDouble(point.getY());
+                writer.writeDouble(point.getZ());
+                writer.writeDouble(point.getGpsAccuracy());
+                writer.writeDouble(point.getA());
+                writer.writeDouble(point.getB());
+                writer.writeDouble(point.getC());
+                writer.writeInt(point.getSequenceIndex());
+            }
+        }
+    }
+
+    private void copyIncidents(Connection connection, Ride ride) throws SQLException, IOException {
+        List<Incident> incidents = ride.getIncidents();
+        if (incidents.isEmpty()) return;
+
+        try (BinaryCopyWriter writer = open(connection, """
+                COPY incidents (id, ride_id, incident_key, location, "timestamp", incident_type, scary, description)
+                FROM STDIN (FORMAT BINARY)
+                """)) {
+            for (Incident incident : incidents) {
+                if (incident.getId() == null) {
+                    incident.setId(UUID.randomUUID());
+                }
+                writer.startRow(8);
+                writer.writeUuid(incident.getId());
+                writer.writeUuid(ride.getId());
+                writer.writeInt(incident.getIncidentKey());
+                writer.writeGeometry(incident.getLocation());
+                writer.writeLong(incident.getTimestamp());
+                writer.writeEnum(incident.getIncidentType());
+                writer.writeBoolean(incident.getScary());
+                writer.writeText(incident.getDescription());
+            }
+        }
+
+        boolean hasParticipants = incidents.stream().anyMatch(i -> !i.getInvolvedParticipants().isEmpty());
+        if (!hasParticipants) return;
+
+        try (BinaryCopyWriter writer = open(connection, """
+                COPY incident_participants (incident_id, participant_type) FROM STDIN (FORMAT BINARY)
+                """)) {
+            for (Incident incident : incidents) {
+                for (ParticipantType participant : incident.getInvolvedParticipants()) {
+                    writer.startRow(2);
+                    writer.writeUuid(incident.getId());
+                    writer.writeEnum(participant);
+                }
+            }
+        }
+    }
+
+    private void copyEdges(Connection connection, Ride ride) throws SQLException, IOException {
+        if (!ride.getTraversedEdgeIds().isEmpty()) {
+            try (BinaryCopyWriter writer = open(connection,
+                    "COPY ride_edges (ride_id, edge_id) FROM STDIN (FORMAT BINARY)")) {
+                for (Integer edgeId : ride.getTraversedEdgeIds()) {
+                    if (edgeId == null) continue;
+                    writer.startRow(2);
+                    writer.writeUuid(ride.getId());
+                    writer.writeInt(edgeId);
+                }
+            }
+        }
+
+        if (!ride.getTraversedEdgeBearings().isEmpty()) {
+            try (BinaryCopyWriter writer = open(connection,
+                    "COPY ride_edge_bearings (ride_id, edge_id, bearing_degrees) FROM STDIN (FORMAT BINARY)")) {
+                for (Map.Entry<Integer, Double> entry : ride.getTraversedEdgeBearings().entrySet()) {
+                    if (entry.getValue() == null) continue;
+                    writer.startRow(3);
+                    writer.writeUuid(ride.getId());
+                    writer.writeInt(entry.getKey());
+                    writer.writeDouble(entry.getValue());
+                }
+            }
+        }
+
+        if (!ride.getTraversedEdgeTimestamps().isEmpty()) {
+            try (BinaryCopyWriter writer = open(connection,
+                    "COPY ride_edge_timestamps (ride_id, edge_id, \"timestamp\") FROM STDIN (FORMAT BINARY)")) {
+                for (Map.Entry<Integer, Long> entry : ride.getTraversedEdgeTimestamps().entrySet()) {
+                    if (entry.getValue() == null) continue;
+                    writer.startRow(3);
+                    writer.writeUuid(ride.getId());
+                    writer.writeInt(entry.getKey());
+                    writer.writeLong(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private BinaryCopyWriter open(Connection connection, String copySql) throws SQLException, IOException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        return new BinaryCopyWriter(new PGCopyOutputStream(pgConnection, copySql));
+    }
+}
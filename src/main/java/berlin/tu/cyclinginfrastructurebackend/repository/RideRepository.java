@@ -10,6 +10,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -18,37 +20,87 @@ public interface RideRepository extends JpaRepository<Ride, UUID> {
     @Query("SELECT r.originalFilename FROM Ride r")
     Set<String> findAllOriginalFilenames();
 
+    /**
+     * Finds a stored ride that is the same recording: either the same fingerprint, or start and
+     * end time within {@code toleranceMs} and first and last raw GPS fix within
+     * {@code radiusMeters}. The second case also catches re-exports with slightly different values
+     * and rides imported before fingerprints existed; {@code toleranceMs = 0} disables it. Rides
+     * imported before the raw endpoints were stored fall back to their {@code ride_points} rows.
+     */
+    @Query(value = """
+            SELECT r.id FROM rides r
+            WHERE r.fingerprint = :fingerprint
+               OR (:toleranceMs > 0
+                   AND r.start_time BETWEEN :startTime - :toleranceMs AND :startTime + :toleranceMs
+                   AND r.end_time BETWEEN :endTime - :toleranceMs AND :endTime + :toleranceMs
+                   AND ST_DWithin(COALESCE(r.start_point,
+                                           (SELECT rp.location FROM ride_points rp
+                                            WHERE rp.ride_id = r.id AND rp.location IS NOT NULL
+                                            ORDER BY rp.sequence_index LIMIT 1))::geography,
+                                  ST_SetSRID(ST_MakePoint(:startLon, :startLat), 4326)::geography, :radiusMeters)
+                   AND ST_DWithin(COALESCE(r.end_point,
+                                           (SELECT rp.location FROM ride_points rp
+                                            WHERE rp.ride_id = r.id AND rp.location IS NOT NULL
+                                            ORDER BY rp.sequence_index DESC LIMIT 1))::geography,
+                                  ST_SetSRID(ST_MakePoint(:endLon, :endLat), 4326)::geography, :radiusMeters))
+            LIMIT 1
+            """, nativeQuery = true)
+    Optional<UUID> findDuplicateOf(
+            @Param("fingerprint") long fingerprint,
+            @Param("startTime") long startTime,
+            @Param("endTime") long endTime,
+            @Param("toleranceMs") long toleranceMs,
+            @Param("startLon") double startLon,
+            @Param("startLat") double startLat,
+            @Param("endLon") double endLon,
+            @Param("endLat") double endLat,
+            @Param("radiusMeters") double radiusMeters);
+
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Transactional
     @Query("UPDATE Ride r SET r.status = :status WHERE r.id = :id")
     int updateStatus(UUID id, Status status);
 
     /**
-     * Calculates which share of the shortest path's physical length is covered by a
-     * metric buffer around the actual route.
+     * Rides that still keep their track as {@code ride_points} rows. Rides currently being
+     * analyzed are left for a later pass.
      */
     @Query(value = """
-            WITH paths AS (
-                SELECT ST_Transform(ST_GeomFromText(:shortestPathWkt, 4326), 25833) AS shortest_path,
-                       ST_Transform(ST_GeomFromText(:actualPathWkt, 4326), 25833) AS actual_path
-            ), lengths AS (
-                SELECT ST_Length(shortest_path) AS shortest_length,
-                       ST_Length(ST_Intersection(
-                           shortest_path,
-                           ST_Buffer(actual_path, :proximityMeters)
-                       )) AS covered_length
-                FROM paths
-            )
-            SELECT CASE
-                       WHEN shortest_length <= 0 THEN NULL
-                       ELSE LEAST(1.0, GREATEST(0.0, covered_length / shortest_length))
-                   END
-            FROM lengths
+            SELECT r.id FROM rides r
+            WHERE r.track IS NULL
+              AND r.status <> 'ANALYZING'
+              AND EXISTS (SELECT 1 FROM ride_points rp WHERE rp.ride_id = r.id)
+            LIMIT :limit
             """, nativeQuery = true)
-    Double calculateSpatialLengthOverlap(
-            @Param("actualPathWkt") String actualPathWkt,
-            @Param("shortestPathWkt") String shortestPathWkt,
-            @Param("proximityMeters") double proximityMeters);
+    List<UUID> findRideIdsWithPointRows(@Param("limit") int limit);
+
+    /**
+     * Row-locks a ride for track conversion so it cannot be claimed for analysis meanwhile.
+     * Returns nothing if the ride was claimed in the meantime.
+     */
+    @Query(value = "SELECT r.id FROM rides r WHERE r.id = :rideId AND r.status <> 'ANALYZING' FOR UPDATE",
+            nativeQuery = true)
+    List<UUID> lockForTrackConversion(@Param("rideId") UUID rideId);
+
+    /**
+     * lat, lon, timestamp, gps_accuracy, x, y, z, a, b, c of a ride's points in track order.
+     */
+    @Query(value = """
+            SELECT ST_Y(rp.location), ST_X(rp.location), rp."timestamp", rp.gps_accuracy,
+                   rp.x, rp.y, rp.z, rp.a, rp.b, rp.c
+            FROM ride_points rp
+            WHERE rp.ride_id = :rideId
+            ORDER BY rp.sequence_index, rp."timestamp"
+            """, nativeQuery = true)
+    List<Object[]> findTrackRows(@Param("rideId") UUID rideId);
+
+    @Modifying
+    @Query(value = "UPDATE rides SET track = :track WHERE id = :rideId", nativeQuery = true)
+    int updateTrack(@Param("rideId") UUID rideId, @Param("track") byte[] track);
+
+    @Modifying
+    @Query(value = "DELETE FROM ride_points WHERE ride_id = :rideId", nativeQuery = true)
+    int deleteRidePoints(@Param("rideId") UUID rideId);
 
     long countByStatus(Status status);
 
@@ -0,0 +1,106 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+
+/**
+ * Set-based writes of the {@code street_segments} usage, avoidance and preference counters.
+ * <p>
+ * Counter deltas arrive as parallel arrays and are applied with one {@code UPDATE ... FROM
+ * unnest(...)} that also recomputes both ratios, instead of one statement per segment. The rows
+ * are locked in ascending id order first, the same order segment creation and every other
+ * counter write use, so concurrent writers cannot deadlock.
+ */
+@Repository
+public class SegmentCounterRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SegmentCounterRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds the deltas to the counters of existing segments; ids without a row are ignored.
+     *
+     * @param ids        segment ids, each at most once
+     * @param usage      usage count delta per id
+     * @param avoidance  avoidance count delta per id
+     * @param preference preference count delta per id
+     * @return the number of segments updated
+     */
+    public int addDeltas(Long[] ids, Integer[] usage, Integer[] avoidance, Integer[] preference) {
+        if (ids.length == 0) return 0;
+
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            Array idArray = connection.createArrayOf("bigint", ids);
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    UPDATE street_segments s
+                    SET usage_count = s.usage_count + d.usage,
+                        avoidance_count = s.avoidance_count + d.avoidance,
+                        preference_count = s.preference_count + d.preference,
+                        avoidance_ratio = CAST(s.avoidance_count + d.avoidance AS double precision)
+                                          / NULLIF(s.usage_count + d.usage + s.avoidance_count + d.avoidance, 0),
+                        preference_ratio = CAST(s.preference_count + d.preference AS double precision)
+                                           / NULLIF(s.usage_count + d.usage, 0)
+                    FROM unnest(?, ?, ?, ?) AS d(id, usage, avoidance, preference),
+                         (SELECT id FROM street_segments WHERE id = ANY(?) ORDER BY id FOR UPDATE) locked
+                    WHERE s.id = d.id
+                      AND locked.id = d.id
+                    """)) {
+                statement.setArray(1, idArray);
+                statement.setArray(2, connection.createArrayOf("integer", usage));
+                statement.setArray(3, connection.createArrayOf("integer", avoidance));
+                statement.setArray(4, connection.createArrayOf("integer", preference));
+                statement.setArray(5, idArray);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Recounts every segment's counters from the rows they summarise: usage from
+     * {@code ride_edges}, avoidance and preference from {@code segment_events}. Only segments
+     * whose stored counters differ are written.
+     *
+     * @return the number of segments corrected
+     */
+    public int recount() {
+        return jdbcTemplate.update("""
+                UPDATE street_segments s
+                SET usage_count = c.usage_count,
+                    avoidance_count = c.avoidance_count,
+                    preference_count = c.preference_count,
+                    avoidance_ratio = CAST(c.avoidance_count AS double precision)
+                                      / NULLIF(c.usage_count + c.avoidance_count, 0),
+                    preference_ratio = CAST(c.preference_count AS double precision)
+                                       / NULLIF(c.usage_count, 0)
+                FROM (
+                    SELECT seg.id,
+                           COALESCE(u.usage_count, 0) AS usage_count,
+                           COALESCE(e.avoidance_count, 0) AS avoidance_count,
+                           COALESCE(e.preference_count, 0) AS preference_count
+                    FROM street_segments seg
+                    LEFT JOIN (
+                        SELECT edge_id, COUNT(*) AS usage_count
+                        FROM ride_edges
+                        GROUP BY edge_id
+                    ) u ON u.edge_id = seg.id
+                    LEFT JOIN (
+                        SELECT segment_id,
+                               COUNT(*) FILTER (WHERE event_type = 'AVOIDANCE') AS avoidance_count,
+                               COUNT(*) FILTER (WHERE event_type = 'PREFERENCE') AS preference_count
+                        FROM segment_events
+                        GROUP BY segment_id
+                    ) e ON e.segment_id = seg.id
+                ) c
+                WHERE s.id = c.id
+                  AND (s.usage_count, s.avoidance_count, s.preference_count)
+                      IS DISTINCT FROM (c.usage_count, c.avoidance_count, c.preference_count)
+                """);
+    }
+}
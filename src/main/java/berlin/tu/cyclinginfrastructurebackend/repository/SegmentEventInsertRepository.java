@@ -0,0 +1,143 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.SegmentEvent;
+import berlin.tu.cyclinginfrastructurebackend.util.TimeOrderedUuid;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Set-based insert of the segment events of an analyzed ride.
+ * <p>
+ * The events arrive as entities built with {@link SegmentEvent#of} and are written as parallel
+ * arrays with one {@code INSERT ... SELECT FROM unnest(...)}, so a ride costs one round trip
+ * however many events it produces, instead of a Hibernate batch per event. Nothing is merged
+ * into the persistence context.
+ */
+@Repository
+public class SegmentEventInsertRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SegmentEventInsertRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the events, referencing segments by id in ascending order, the order every other
+     * writer locks segments in. Events without an id get one assigned.
+     *
+     * @return the number of events inserted
+     */
+    public int insertAll(List<SegmentEvent> events) {
+        if (events.isEmpty()) return 0;
+
+        Columns columns = Columns.of(events);
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            // new events start unenriched, matching the field defaults of SegmentEvent
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO segment_events (
+                        id, event_type, segment_id, ride_id, event_timestamp, day_of_week, hour_of_day,
+                        path_bearing_degrees, ride_intent, analysis_version,
+                        weather_enriched, weather_processing_status,
+                        berlin_open_data_enriched, berlin_open_data_processing_status,
+                        ohsome_enriched, ohsome_processing_status,
+                        traffic_enriched, traffic_processing_status
+                    )
+                    SELECT e.id, e.event_type, e.segment_id, e.ride_id, e.event_timestamp, e.day_of_week,
+                           e.hour_of_day, e.bearing, e.ride_intent, e.analysis_version,
+                           false, 'PENDING', false, 'PENDING', false, 'PENDING', false, 'PENDING'
+                    FROM unnest(?, ?, ?, ?, ?, ?, ?, ?, ?, ?) WITH ORDINALITY
+                         AS e(id, event_type, segment_id, ride_id, event_timestamp, day_of_week,
+                              hour_of_day, bearing, ride_intent, analysis_version, position)
+                    ORDER BY e.position
+                    """)) {
+                columns.bind(connection, statement);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Inserts the events of an analysis with a version that is not active yet into
+     * {@code candidate_segment_events}; nothing locks street segments.
+     *
+     * @return the number of events inserted
+     */
+    public int insertCandidates(List<SegmentEvent> events) {
+        if (events.isEmpty()) return 0;
+
+        Columns columns = Columns.of(events);
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO candidate_segment_events (
+                        id, event_type, segment_id, ride_id, event_timestamp, day_of_week, hour_of_day,
+                        path_bearing_degrees, ride_intent, analysis_version
+                    )
+                    SELECT e.id, e.event_type, e.segment_id, e.ride_id, e.event_timestamp, e.day_of_week,
+                           e.hour_of_day, e.bearing, e.ride_intent, e.analysis_version
+                    FROM unnest(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                         AS e(id, event_type, segment_id, ride_id, event_timestamp, day_of_week,
+                              hour_of_day, bearing, ride_intent, analysis_version)
+                    """)) {
+                columns.bind(connection, statement);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * The events as parallel arrays, sorted by segment id.
+     */
+    private record Columns(UUID[] ids, String[] types, Long[] segmentIds, UUID[] rideIds, Long[] timestamps,
+                           String[] daysOfWeek, Integer[] hours, Double[] bearings, String[] rideIntents,
+                           String[] analysisVersions) {
+
+        static Columns of(List<SegmentEvent> events) {
+            List<SegmentEvent> sorted = events.stream()
+                    .sorted(Comparator.comparing(event -> event.getSegment().getId()))
+                    .toList();
+            int size = sorted.size();
+            Columns columns = new Columns(new UUID[size], new String[size], new Long[size], new UUID[size],
+                    new Long[size], new String[size], new Integer[size], new Double[size], new String[size],
+                    new String[size]);
+            for (int i = 0; i < size; i++) {
+                SegmentEvent event = sorted.get(i);
+                if (event.getId() == null) {
+                    event.setId(TimeOrderedUuid.next());
+                }
+                columns.ids[i] = event.getId();
+                columns.types[i] = event.getEventType().name();
+                columns.segmentIds[i] = event.getSegment().getId();
+                columns.rideIds[i] = event.getRide().getId();
+                columns.timestamps[i] = event.getEventTimestamp();
+                columns.daysOfWeek[i] = event.getDayOfWeek() != null ? event.getDayOfWeek().name() : null;
+                columns.hours[i] = event.getHourOfDay();
+                columns.bearings[i] = event.getPathBearingDegrees();
+                columns.rideIntents[i] = event.getRideIntent() != null ? event.getRideIntent().name() : null;
+                columns.analysisVersions[i] = event.getAnalysisVersion();
+            }
+            return columns;
+        }
+
+        void bind(Connection connection, PreparedStatement statement) throws SQLException {
+            statement.setArray(1, connection.createArrayOf("uuid", ids));
+            statement.setArray(2, connection.createArrayOf("varchar", types));
+            statement.setArray(3, connection.createArrayOf("bigint", segmentIds));
+            statement.setArray(4, connection.createArrayOf("uuid", rideIds));
+            statement.setArray(5, connection.createArrayOf("bigint", timestamps));
+            statement.setArray(6, connection.createArrayOf("varchar", daysOfWeek));
+            statement.setArray(7, connection.createArrayOf("integer", hours));
+            statement.setArray(8, connection.createArrayOf("float8", bearings));
+            statement.setArray(9, connection.createArrayOf("varchar", rideIntents));
+            statement.setArray(10, connection.createArrayOf("varchar", analysisVersions));
+        }
+    }
+}
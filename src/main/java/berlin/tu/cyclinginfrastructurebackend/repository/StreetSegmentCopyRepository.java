@@ -0,0 +1,97 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.StreetSegment;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Bulk insert path for street segments precomputed from the routing graph.
+ * <p>
+ * Each chunk of segments is written with binary COPY into a temporary table and moved into
+ * {@code street_segments} with one {@code INSERT ... ON CONFLICT DO NOTHING} in ascending id
+ * order, so segments that ride processing created in the meantime are kept and the row locks are
+ * taken in the same order as everywhere else. Every chunk is its own transaction, which only
+ * holds a connection while the already built segments are written.
+ */
+@Repository
+public class StreetSegmentCopyRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StreetSegmentCopyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return the ids of all stored segments
+     */
+    public BitSet findExistingIds() {
+        BitSet ids = new BitSet();
+        jdbcTemplate.query("SELECT id FROM street_segments",
+                (RowCallbackHandler) resultSet -> ids.set(Math.toIntExact(resultSet.getLong(1))));
+        return ids;
+    }
+
+    /**
+     * Inserts new segments with zero counters; ids that already exist are skipped.
+     *
+     * @param segments segments with id, street name, geometry and gradient
+     * @return the number of segments inserted
+     */
+    @Transactional
+    public int insertMissing(List<StreetSegment> segments) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("""
+                        CREATE TEMP TABLE street_segments_load (
+                            id bigint,
+                            street_name text,
+                            geometry geometry(LineString, 4326),
+                            gradient_percent double precision
+                        ) ON COMMIT DROP
+                        """);
+            }
+
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try (BinaryCopyWriter writer = new BinaryCopyWriter(new PGCopyOutputStream(pgConnection, """
+                    COPY street_segments_load (id, street_name, geometry, gradient_percent)
+                    FROM STDIN (FORMAT BINARY)
+                    """))) {
+                for (StreetSegment segment : segments) {
+                    writer.startRow(4);
+                    writer.writeLong(segment.getId());
+                    writer.writeText(segment.getStreetName());
+                    writer.writeGeometry(segment.getGeometry());
+                    writer.writeDouble(segment.getGradientPercent());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("COPY of street segments failed", e);
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO street_segments (
+                        id, street_name, geometry, usage_count, avoidance_count, avoidance_ratio,
+                        preference_count, preference_ratio, gradient_percent
+                    )
+                    SELECT id, street_name, geometry, 0, 0, NULL, 0, NULL, gradient_percent
+                    FROM street_segments_load
+                    ORDER BY id
+                    ON CONFLICT (id) DO NOTHING
+                    """)) {
+                return statement.executeUpdate();
+            }
+        });
+    }
+}
@@ -13,60 +13,6 @@ import java.util.List;
 @Repository
 public interface StreetSegmentRepository extends JpaRepository<StreetSegment, Long> {
 
-    @Modifying
-    @Transactional
-    @Query("UPDATE StreetSegment s SET s.usageCount = s.usageCount + 1, " +
-            "s.avoidanceRatio = CAST(s.avoidanceCount AS double) / (s.usageCount + 1 + s.avoidanceCount), " +
-            "s.preferenceRatio = CAST(s.preferenceCount AS double) / (s.usageCount + 1) " +
-            "WHERE s.id = :id")
-    int incrementUsage(Long id);
-
-    /**
-     * Pre-locks rows in ascending id order before any batched increments. If a
-     * transaction calls both incrementAvoidanceAll and incrementPreferenceAll,
-     * call this first with the union of their ids: each of those methods only
-     * orders locks within its own call, so back-to-back calls could still lock
-     * out of order across two transactions and deadlock.
-     */
-    @Query(value = "SELECT id FROM street_segments WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
-    List<Long> lockForUpdate(Collection<Long> ids);
-
-    /**
-     * Set-based increment for a whole batch of segments in one round trip. The
-     * FOR UPDATE subquery locks the rows in ascending id order, preserving that
-     * order to prevent deadlock between concurrent calls to this same method.
-     * See {@link #lockForUpdate} for the cross-method deadlock this alone does
-     * not prevent.
-     */
-    @Modifying
-    @Transactional
-    @Query(value = """
-        UPDATE street_segments s
-        SET avoidance_count = s.avoidance_count + 1,
-            avoidance_ratio = CAST(s.avoidance_count + 1 AS double precision)
-                              / (s.usage_count + s.avoidance_count + 1)
-        FROM (SELECT id FROM street_segments WHERE id IN :ids ORDER BY id FOR UPDATE) locked
-        WHERE s.id = locked.id
-        """, nativeQuery = true)
-    int incrementAvoidanceAll(Collection<Long> ids);
-
-    /**
-     * See {@link #incrementAvoidanceAll} and {@link #lockForUpdate}: this method's
-     * own ORDER BY only orders locks relative to itself, not relative to a prior
-     * incrementAvoidanceAll call in the same transaction.
-     */
-    @Modifying
-    @Transactional
-    @Query(value = """
-        UPDATE street_segments s
-        SET preference_count = s.preference_count + 1,
-            preference_ratio = CAST(s.preference_count + 1 AS double precision)
-                               / NULLIF(s.usage_count, 0)
-        FROM (SELECT id FROM street_segments WHERE id IN :ids ORDER BY id FOR UPDATE) locked
-        WHERE s.id = locked.id
-        """, nativeQuery = true)
-    int incrementPreferenceAll(Collection<Long> ids);
-
     @Modifying
     @Transactional
     @Query(value = """
@@ -215,19 +161,6 @@ public interface StreetSegmentRepository extends JpaRepository<StreetSegment, Lo
             int limit
     );
 
-    /**
-     * Returns the ids of the given edges that lie within the given distance (meters) of a
-     * reference geometry. Uses ST_DWithin with geography cast for meter-accurate distance
-     * on WGS84 data.
-     */
-    @Query(value = """
-        SELECT s.id
-        FROM street_segments s
-        WHERE s.id IN :edgeIds
-          AND ST_DWithin(s.geometry::geography, CAST(:referenceGeom AS geography), :distanceMeters)
-        """, nativeQuery = true)
-    List<Long> findEdgeIdsWithinDistance(Collection<Long> edgeIds, Object referenceGeom, double distanceMeters);
-
     /**
      * Ranks same-named street corridors (spatially connected clusters of segments sharing
      * a street name, via ST_ClusterDBSCAN) by distinct rides carrying an avoidance or
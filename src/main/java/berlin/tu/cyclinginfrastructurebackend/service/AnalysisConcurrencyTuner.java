@@ -0,0 +1,229 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.service.dto.api.AnalysisConcurrencyDto;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Resizes the detour analysis workers at runtime (additive increase, multiplicative decrease).
+ * <p>
+ * Every {@code pipeline.analysis.concurrency.interval-ms} the rides finished since the last
+ * check are turned into rides/sec and an error rate, and the Hikari pool is asked how many
+ * threads are waiting for a connection. Too many errors or any thread waiting for a connection
+ * cut the workers by {@code decrease-factor}. If all workers were busy, one is added; if the
+ * throughput then drops, the worker is taken away again and no increase is tried for a few
+ * intervals. The analysis executor and {@link DetourAnalysisScheduler} (rides in flight and
+ * claim size) are resized together, always within {@code min-threads} and {@code max-threads}.
+ * <p>
+ * Connection waits are not attributed to a pool, so import threads waiting for a connection cut
+ * the analysis workers as well. The import persist pool is therefore sized against
+ * {@code max-threads}, leaving waits to be caused by the analysis itself or by other work such
+ * as exports. The controller is off by default until its tuning has been validated under load.
+ * <p>
+ * The recent decisions are kept for {@code GET /api/admin/analysis/concurrency}.
+ */
+@Component
+public class AnalysisConcurrencyTuner {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisConcurrencyTuner.class);
+
+    static final int DECISION_HISTORY = 20;
+    static final int PROBE_BACKOFF_INTERVALS = 10;
+
+    private final DetourAnalysisScheduler scheduler;
+    private final ThreadPoolTaskExecutor analysisExecutor;
+    private final HikariDataSource connectionPool;
+    private final boolean enabled;
+    private final int minThreads;
+    private final int maxThreads;
+    private final double maxErrorRate;
+    private final double decreaseFactor;
+
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private long lastSampleNanos;
+    private long lastFinished;
+    private long lastErrors;
+    private boolean probing;
+    private double throughputBeforeProbe;
+    private int probeBackoff;
+
+    public AnalysisConcurrencyTuner(DetourAnalysisScheduler scheduler,
+                                    @Qualifier("analysisExecutor") ThreadPoolTaskExecutor analysisExecutor,
+                                    DataSource dataSource,
+                                    @Value("${pipeline.enabled:true}") boolean pipelineEnabled,
+                                    @Value("${pipeline.analysis.enabled:false}") boolean analysisEnabled,
+                                    @Value("${pipeline.analysis.concurrency.adaptive:false}") boolean adaptive,
+                                    @Value("${pipeline.analysis.thread-pool-size:8}") int threadPoolSize,
+                                    @Value("${pipeline.analysis.concurrency.min-threads:2}") int minThreads,
+                                    @Value("${pipeline.analysis.concurrency.max-threads:0}") int maxThreads,
+                                    @Value("${pipeline.analysis.concurrency.max-error-rate:0.05}") double maxErrorRate,
+                                    @Value("${pipeline.analysis.concurrency.decrease-factor:0.75}")
+                                    double decreaseFactor) {
+        this.scheduler = scheduler;
+        this.analysisExecutor = analysisExecutor;
+        this.connectionPool = connectionPool(dataSource);
+        this.enabled = pipelineEnabled && analysisEnabled && adaptive;
+        this.maxThreads = maxThreads > 0 ? maxThreads : threadPoolSize;
+        this.minThreads = Math.min(Math.max(1, minThreads), Math.max(1, threadPoolSize));
+        this.maxErrorRate = maxErrorRate;
+        this.decreaseFactor = decreaseFactor;
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException(
+                    "pipeline.analysis.concurrency.decrease-factor must be between 0 and 1");
+        }
+        if (threadPoolSize > this.maxThreads) {
+            throw new IllegalArgumentException(
+                    "pipeline.analysis.thread-pool-size must not exceed pipeline.analysis.concurrency.max-threads");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pipeline.analysis.concurrency.interval-ms:30000}",
+            initialDelayString = "${pipeline.analysis.concurrency.interval-ms:30000}")
+    public void adjust() {
+        if (!enabled || !scheduler.isRunning()) return;
+
+        long now = System.nanoTime();
+        long errors = scheduler.completed(Status.ERROR);
+        long finished = errors + scheduler.completed(Status.PROCESSED) + scheduler.completed(Status.SKIPPED);
+        if (lastSampleNanos == 0) {
+            // the first call only sets the baseline
+            lastSampleNanos = now;
+            lastFinished = finished;
+            lastErrors = errors;
+            return;
+        }
+        double seconds = Math.max((now - lastSampleNanos) / 1e9, 0.001);
+        long done = finished - lastFinished;
+        Sample sample = new Sample(done, done / seconds,
+                done > 0 ? (double) (errors - lastErrors) / done : 0.0,
+                threadsAwaitingConnection(), scheduler.inFlight());
+        lastSampleNanos = now;
+        lastFinished = finished;
+        lastErrors = errors;
+
+        Decision decision = decide(sample, scheduler.workers());
+        if (decision.newWorkers() != decision.previousWorkers()) {
+            apply(decision.newWorkers());
+            log.info("Analysis workers {} -> {}: {}",
+                    decision.previousWorkers(), decision.newWorkers(), decision.reason());
+        }
+        record(decision);
+    }
+
+    /**
+     * Picks the next worker count from one interval's measurements.
+     */
+    Decision decide(Sample sample, int workers) {
+        int next = workers;
+        String reason;
+        boolean wasProbing = probing;
+        probing = false;
+        if (probeBackoff > 0) probeBackoff--;
+
+        if (sample.finished() == 0) {
+            reason = "idle";
+        } else if (sample.errorRate() > maxErrorRate) {
+            next = decrease(workers);
+            reason = String.format("error rate %.1f%% above %.1f%%", sample.errorRate() * 100, maxErrorRate * 100);
+        } else if (sample.threadsAwaitingConnection() > 0) {
+            next = decrease(workers);
+            reason = sample.threadsAwaitingConnection() + " threads waiting for a database connection";
+        } else if (wasProbing && sample.ridesPerSecond() < throughputBeforeProbe) {
+            next = Math.max(minThreads, workers - 1);
+            probeBackoff = PROBE_BACKOFF_INTERVALS;
+            reason = String.format("throughput fell from %.2f to %.2f rides/sec after adding a worker",
+                    throughputBeforeProbe, sample.ridesPerSecond());
+        } else if (sample.inFlight() >= workers && workers < maxThreads && probeBackoff == 0) {
+            next = workers + 1;
+            probing = true;
+            throughputBeforeProbe = sample.ridesPerSecond();
+            reason = "all workers busy";
+        } else {
+            reason = "steady";
+        }
+        return new Decision(System.currentTimeMillis(), workers, next,
+                sample.ridesPerSecond(), sample.errorRate(), sample.threadsAwaitingConnection(), reason);
+    }
+
+    private int decrease(int workers) {
+        int decreased = Math.min(workers - 1, (int) Math.floor(workers * decreaseFactor));
+        return Math.max(minThreads, decreased);
+    }
+
+    private void apply(int workers) {
+        // the core size may never exceed the maximum, so the order depends on the direction
+        if (workers > analysisExecutor.getMaxPoolSize()) {
+            analysisExecutor.setMaxPoolSize(workers);
+            analysisExecutor.setCorePoolSize(workers);
+        } else {
+            analysisExecutor.setCorePoolSize(workers);
+            analysisExecutor.setMaxPoolSize(workers);
+        }
+        scheduler.resize(workers);
+    }
+
+    private int threadsAwaitingConnection() {
+        // the pool bean only exists once the first connection was requested
+        HikariPoolMXBean pool = connectionPool != null ? connectionPool.getHikariPoolMXBean() : null;
+        return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+    }
+
+    private synchronized void record(Decision decision) {
+        if (decisions.size() == DECISION_HISTORY) {
+            decisions.removeFirst();
+        }
+        decisions.addLast(decision);
+    }
+
+    public synchronized AnalysisConcurrencyDto getStatus() {
+        return new AnalysisConcurrencyDto(enabled, scheduler.workers(), scheduler.claimSize(),
+                scheduler.inFlight(), minThreads, maxThreads,
+                decisions.reversed().stream().map(Decision::toDto).toList());
+    }
+
+    private static HikariDataSource connectionPool(DataSource dataSource) {
+        try {
+            if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.warn("Cannot monitor the connection pool: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Measurements of one interval.
+     *
+     * @param finished                  rides finished in the interval
+     * @param ridesPerSecond            finished rides per second
+     * @param errorRate                 share of the finished rides that ended in ERROR
+     * @param threadsAwaitingConnection threads blocked on the Hikari pool when sampled
+     * @param inFlight                  rides claimed and not yet finished when sampled
+     */
+    record Sample(long finished, double ridesPerSecond, double errorRate,
+                  int threadsAwaitingConnection, int inFlight) {
+    }
+
+    record Decision(long timestamp, int previousWorkers, int newWorkers, double ridesPerSecond,
+                    double errorRate, int threadsAwaitingConnection, String reason) {
+
+        AnalysisConcurrencyDto.DecisionDto toDto() {
+            return new AnalysisConcurrencyDto.DecisionDto(timestamp, previousWorkers, newWorkers,
+                    ridesPerSecond, errorRate, threadsAwaitingConnection, reason);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.AnalysisVersion;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.repository.AnalysisVersionRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentCounterRepository;
+import berlin.tu.cyclinginfrastructurebackend.service.dto.api.AnalysisVersionDto;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tags detour analyses with the version of the parameters they ran with.
+ * <p>
+ * The version is derived from {@code analysis.spatial.proximity-meters},
+ * {@code analysis.detour.threshold} and {@code analysis.route-overlap.minimum-ratio} unless
+ * {@code analysis.parameter-version} names it. Exactly one version is active: its results are the
+ * ones in {@code rides} and {@code segment_events} that everything else reads. While this
+ * instance's version is not the active one, its analyses are kept in
+ * {@code ride_analysis_results} and {@code candidate_segment_events}: the scheduler leaves
+ * PENDING rides to the active version and re-analyzes the already analyzed rides from their
+ * stored matched edges, without map matching them again. {@link #activate} then swaps the
+ * results in and recounts the segment counters from {@code segment_events}.
+ * <p>
+ * On the first start with versioning the configured version becomes the active one, since the
+ * existing results were produced with it. Rides analyzed before have no version.
+ */
+@Service
+public class AnalysisVersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisVersionService.class);
+
+    private final AnalysisVersionRepository repository;
+    private final SegmentCounterBuffer segmentCounterBuffer;
+    private final SegmentCounterRepository segmentCounterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean pipelineEnabled;
+    private final double proximityMeters;
+    private final double detourThreshold;
+    private final double minimumOverlapRatio;
+    private final String version;
+
+    public AnalysisVersionService(AnalysisVersionRepository repository,
+                                  SegmentCounterBuffer segmentCounterBuffer,
+                                  SegmentCounterRepository segmentCounterRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${pipeline.enabled:true}") boolean pipelineEnabled,
+                                  @Value("${analysis.spatial.proximity-meters}") double proximityMeters,
+                                  @Value("${analysis.detour.threshold}") double detourThreshold,
+                                  @Value("${analysis.route-overlap.minimum-ratio}") double minimumOverlapRatio,
+                                  @Value("${analysis.parameter-version:}") String parameterVersion) {
+        this.repository = repository;
+        this.segmentCounterBuffer = segmentCounterBuffer;
+        this.segmentCounterRepository = segmentCounterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pipelineEnabled = pipelineEnabled;
+        this.proximityMeters = proximityMeters;
+        this.detourThreshold = detourThreshold;
+        this.minimumOverlapRatio = minimumOverlapRatio;
+        this.version = parameterVersion == null || parameterVersion.isBlank()
+                ? deriveVersion(proximityMeters, detourThreshold, minimumOverlapRatio)
+                : parameterVersion.strip();
+        if (version.length() > 64) {
+            throw new IllegalArgumentException("analysis.parameter-version must not exceed 64 characters");
+        }
+    }
+
+    static String deriveVersion(double proximityMeters, double detourThreshold, double minimumOverlapRatio) {
+        return "p" + proximityMeters + "-d" + detourThreshold + "-o" + minimumOverlapRatio;
+    }
+
+    /**
+     * Registers the configured version before the pipeline starts.
+     */
+    @PostConstruct
+    public void register() {
+        if (!pipelineEnabled) return;
+
+        boolean activated = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            repository.register(version, proximityMeters, detourThreshold, minimumOverlapRatio,
+                    System.currentTimeMillis());
+            return repository.activateIfNoneActive(version, System.currentTimeMillis());
+        }));
+        if (activated) {
+            log.info("Analysis parameter version {} registered as the active version", version);
+        } else if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> repository.lockShared(version)))) {
+            log.info("Analysis parameter version {} is not active: pending rides are left to the active "
+                    + "version, analyzed rides are re-analyzed with it and kept apart until it is activated", version);
+        }
+    }
+
+    /**
+     * @return the version of the configured analysis parameters
+     */
+    public String version() {
+        return version;
+    }
+
+    /**
+     * Holds off activation for the rest of the caller's transaction.
+     *
+     * @return whether results have to be kept apart as candidates, because the configured
+     * version is not the active one
+     */
+    @Transactional
+    public boolean lockForAnalysis() {
+        Boolean active = repository.lockShared(version);
+        if (active == null) {
+            throw new IllegalStateException("Analysis parameter version " + version + " is not registered");
+        }
+        return !active;
+    }
+
+    public List<AnalysisVersionDto> versions() {
+        return repository.findAll().stream().map(this::toDto).toList();
+    }
+
+    /**
+     * Makes a version the active one once every analyzed ride has a result of it: replaces the
+     * live ride results and segment events by the version's and recounts the segment counters.
+     * The segment counter buffer is held for the whole switch, see
+     * {@link SegmentCounterBuffer#recountAround}.
+     */
+    public AnalysisVersionDto activate(String candidate) {
+        Boolean active = repository.findAll().stream()
+                .filter(v -> v.getVersion().equals(candidate))
+                .map(AnalysisVersion::isActive)
+                .findFirst()
+                .orElse(null);
+        // checked before the counter buffer is held and again under the lock
+        if (!checkActivatable(candidate, active)) {
+            long start = System.nanoTime();
+            segmentCounterBuffer.recountAround(() -> transactionTemplate.execute(status -> {
+                if (checkActivatable(candidate, repository.lockExclusive(candidate))) return null;
+
+                int rides = repository.promote(candidate, System.currentTimeMillis());
+                int segments = segmentCounterRepository.recount();
+                log.info("Activated analysis parameter version {} in {} ms: {} rides promoted, {} segment "
+                        + "counters corrected", candidate, (System.nanoTime() - start) / 1_000_000, rides, segments);
+                return null;
+            }));
+        }
+        return repository.findAll().stream()
+                .filter(v -> v.getVersion().equals(candidate))
+                .map(this::toDto)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * @return whether the version is already active
+     * @throws ResponseStatusException if the version is unknown or not yet complete
+     */
+    private boolean checkActivatable(String candidate, Boolean active) {
+        if (active == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown analysis version " + candidate);
+        }
+        if (active) return true;
+
+        long inProgress = repository.countResultsByStatus(candidate).getOrDefault(Status.ANALYZING.name(), 0L);
+        long remaining = repository.countRidesToReanalyze(candidate);
+        if (inProgress > 0 || remaining > 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(
+                    "Analysis version %s is incomplete: %d rides in progress, %d rides to re-analyze",
+                    candidate, inProgress, remaining));
+        }
+        return false;
+    }
+
+    /**
+     * Deletes a version that is neither active nor configured, with its candidate results.
+     */
+    @Transactional
+    public void discard(String candidate) {
+        Boolean active = repository.lockExclusive(candidate);
+        if (active == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown analysis version " + candidate);
+        }
+        if (active || candidate.equals(version)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Analysis version " + candidate + " is active or configured and cannot be discarded");
+        }
+        repository.delete(candidate);
+        log.info("Discarded analysis parameter version {}", candidate);
+    }
+
+    private AnalysisVersionDto toDto(AnalysisVersion analysisVersion) {
+        String name = analysisVersion.getVersion();
+        long analyzed = 0;
+        long inProgress = 0;
+        long remaining = 0;
+        long candidateEvents = 0;
+        if (!analysisVersion.isActive()) {
+            Map<String, Long> results = repository.countResultsByStatus(name);
+            inProgress = results.getOrDefault(Status.ANALYZING.name(), 0L);
+            analyzed = results.values().stream().mapToLong(Long::longValue).sum() - inProgress;
+            remaining = repository.countRidesToReanalyze(name);
+            candidateEvents = repository.countCandidateEvents(name);
+        }
+        return new AnalysisVersionDto(name, analysisVersion.getProximityMeters(),
+                analysisVersion.getDetourThreshold(), analysisVersion.getMinimumOverlapRatio(),
+                analysisVersion.isActive(), name.equals(version), analysisVersion.getCreatedAt(),
+                analysisVersion.getActivatedAt(), analyzed, inProgress, remaining, candidateEvents);
+    }
+}
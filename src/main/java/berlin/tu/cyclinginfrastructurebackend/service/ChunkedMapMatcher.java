@@ -0,0 +1,191 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.matching.EdgeMatch;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Map matches long observation sequences in overlapping windows that run concurrently.
+ * <p>
+ * GraphHopper's HMM keeps a candidate lattice for the whole sequence, so a multi-hour ride holds
+ * one thread and a lot of memory for seconds. Above {@code chunkThreshold} observations the
+ * sequence is cut into windows of {@code chunkSize} observations, each sharing
+ * {@code chunkOverlap} observations with the next. Each window is matched on the chunk executor.
+ * The edge lists are joined at an edge both windows agree on in the middle of their overlap,
+ * where neither window is affected by its open ends. If two windows share no edge there, the
+ * ride is matched in one piece instead, so the result never has a gap.
+ * <p>
+ * The matched length is the sum of the full lengths of the traversed edges on both paths, so a
+ * ride gets the same length whether it was matched in windows or not. GraphHopper's own match
+ * length cuts the first and last edge at the snapped points and cannot be joined across windows.
+ */
+@Component
+public class ChunkedMapMatcher {
+    private static final Logger log = LoggerFactory.getLogger(ChunkedMapMatcher.class);
+
+    private final GraphHopperService hopperService;
+    private final Executor chunkExecutor;
+    private final int chunkThreshold;
+    private final int chunkSize;
+    private final int chunkOverlap;
+
+    public ChunkedMapMatcher(GraphHopperService hopperService,
+                             @Qualifier("matchChunkExecutor") Executor chunkExecutor,
+                             @Value("${import.matching.chunk-threshold-observations:0}") int chunkThreshold,
+                             @Value("${import.matching.chunk-size-observations:400}") int chunkSize,
+                             @Value("${import.matching.chunk-overlap-observations:80}") int chunkOverlap) {
+        if (chunkThreshold > 0 && (chunkOverlap < 2 || chunkOverlap >= chunkSize)) {
+            throw new IllegalArgumentException(
+                    "import.matching.chunk-overlap-observations must be at least 2 and below the chunk size");
+        }
+        this.hopperService = hopperService;
+        this.chunkExecutor = chunkExecutor;
+        this.chunkThreshold = chunkThreshold;
+        this.chunkSize = chunkSize;
+        this.chunkOverlap = chunkOverlap;
+    }
+
+    /**
+     * @param observations the ride's observations in time order
+     * @return the traversed edges in order and their total length
+     * @throws InterruptedException if interrupted while waiting for a matcher
+     */
+    public Match match(List<Observation> observations) throws InterruptedException {
+        if (chunkThreshold <= 0 || observations.size() <= chunkThreshold) {
+            return single(observations);
+        }
+
+        List<Integer> starts = new ArrayList<>();
+        int step = chunkSize - chunkOverlap;
+        for (int start = 0; ; start += step) {
+            starts.add(start);
+            if (start + chunkSize >= observations.size()) break;
+        }
+
+        List<CompletableFuture<List<EdgeMatch>>> windows = new ArrayList<>(starts.size());
+        for (int start : starts) {
+            List<Observation> window = observations.subList(start, Math.min(start + chunkSize, observations.size()));
+            windows.add(CompletableFuture.supplyAsync(() -> matchWindow(window), chunkExecutor));
+        }
+
+        List<List<EdgeMatch>> matched = new ArrayList<>(windows.size());
+        try {
+            for (CompletableFuture<List<EdgeMatch>> window : windows) {
+                matched.add(window.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            // a window the matcher cannot connect says nothing about the whole ride
+            log.debug("Chunked matching failed ({}), matching {} observations in one piece",
+                    e.getCause().getMessage(), observations.size());
+            return single(observations);
+        }
+
+        List<EdgeMatch> stitched = stitch(observations, starts, matched);
+        if (stitched == null) {
+            log.debug("Chunks of {} observations share no edge in their overlap, matching in one piece",
+                    observations.size());
+            return single(observations);
+        }
+        return new Match(stitched, length(stitched));
+    }
+
+    private List<EdgeMatch> matchWindow(List<Observation> window) {
+        try {
+            return hopperService.match(window).getEdgeMatches();
+        } catch (InterruptedException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Match single(List<Observation> observations) throws InterruptedException {
+        List<EdgeMatch> edgeMatches = hopperService.match(observations).getEdgeMatches();
+        return new Match(edgeMatches, length(edgeMatches));
+    }
+
+    private static double length(List<EdgeMatch> edgeMatches) {
+        return edgeMatches.stream().mapToDouble(m -> m.getEdgeState().getDistance()).sum();
+    }
+
+    /**
+     * Joins the windows' edge lists, each at the shared edge closest to the middle of its overlap
+     * with the previous window.
+     *
+     * @return the joined edges, or {@code null} if two neighbouring windows share no edge
+     */
+    private List<EdgeMatch> stitch(List<Observation> observations, List<Integer> starts,
+                                   List<List<EdgeMatch>> windows) {
+        List<EdgeMatch> stitched = new ArrayList<>(windows.getFirst());
+        int previousFrom = 0;
+
+        for (int w = 1; w < windows.size(); w++) {
+            List<EdgeMatch> next = windows.get(w);
+            int overlapEnd = Math.min(starts.get(w - 1) + chunkSize, observations.size());
+            Set<Observation> overlap = Collections.newSetFromMap(new IdentityHashMap<>());
+            overlap.addAll(observations.subList(starts.get(w), overlapEnd));
+
+            // edges of the joined list from the first one snapped to an overlap observation
+            int tailFrom = -1;
+            for (int i = previousFrom; i < stitched.size() && tailFrom < 0; i++) {
+                if (carriesAny(stitched.get(i), overlap)) tailFrom = i;
+            }
+            // edges of the next window up to the last one snapped to an overlap observation
+            int headTo = -1;
+            for (int j = next.size() - 1; j >= 0 && headTo < 0; j--) {
+                if (carriesAny(next.get(j), overlap)) headTo = j;
+            }
+            if (tailFrom < 0 || headTo < 0) return null;
+
+            Map<Integer, Integer> tail = new HashMap<>();
+            for (int i = tailFrom; i < stitched.size(); i++) {
+                tail.putIfAbsent(stitched.get(i).getEdgeState().getEdgeKey(), i);
+            }
+            int joinHead = -1;
+            for (int j = 0; j <= headTo; j++) {
+                if (tail.containsKey(next.get(j).getEdgeState().getEdgeKey())
+                        && (joinHead < 0 || Math.abs(2 * j - headTo) < Math.abs(2 * joinHead - headTo))) {
+                    joinHead = j;
+                }
+            }
+            if (joinHead < 0) return null;
+
+            int joinTail = tail.get(next.get(joinHead).getEdgeState().getEdgeKey());
+            stitched.subList(joinTail + 1, stitched.size()).clear();
+            previousFrom = joinTail;
+            stitched.addAll(next.subList(joinHead + 1, next.size()));
+        }
+        return stitched;
+    }
+
+    private static boolean carriesAny(EdgeMatch match, Set<Observation> observations) {
+        for (State state : match.getStates()) {
+            if (observations.contains(state.getEntry())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param edgeMatches traversed edges in order, repeats included
+     * @param length      summed length of the traversed edges in meters
+     */
+    public record Match(List<EdgeMatch> edgeMatches, double length) {
+    }
+}
@@ -0,0 +1,48 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.util.ImportMetrics;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * One stage of the SimRa import pipeline: a fixed-size executor with a bounded hand-off queue.
+ * {@link #submit} blocks the producing stage while all workers are busy and the queue is full,
+ * so a slow stage throttles the ones before it instead of piling up parsed rides in memory.
+ */
+final class ImportStage {
+
+    private final ImportMetrics.Stage stage;
+    private final ThreadPoolTaskExecutor executor;
+    private final Semaphore slots;
+
+    ImportStage(ImportMetrics.Stage stage, ThreadPoolTaskExecutor executor, int queueCapacity) {
+        this.stage = stage;
+        this.executor = executor;
+        // One slot per worker plus one per queue entry, so execute() never hits the rejection policy
+        this.slots = new Semaphore(executor.getMaxPoolSize() + queueCapacity);
+    }
+
+    void submit(ImportMetrics metrics, Runnable task) throws InterruptedException {
+        slots.acquire();
+        metrics.recordQueueDepth(stage, executor.getQueueSize());
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    metrics.recordStage(stage, System.nanoTime() - start);
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    int threads() {
+        return executor.getMaxPoolSize();
+    }
+}
@@ -0,0 +1,138 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideRejectionReason;
+import berlin.tu.cyclinginfrastructurebackend.util.RegionWkt;
+import com.graphhopper.util.DistanceCalcEarth;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Decides while a file is being parsed whether its ride is worth map matching.
+ * <p>
+ * The parser feeds every GPS row into a per-file {@link Inspection}. Region and jump checks are
+ * decided on the spot, so a ride that leaves the region of interest or teleports stops being
+ * parsed at the offending row. Median accuracy and duration need the whole track and are decided
+ * by {@link Inspection#finish()}. A limit of {@code 0} disables the corresponding check.
+ */
+@Component
+public class RideQualityGate {
+
+    // Approximate bounding box of Germany, the former hard-coded import region
+    static final String DEFAULT_REGION_WKT = "POLYGON ((5.8 47.2, 15.1 47.2, 15.1 55.1, 5.8 55.1, 5.8 47.2))";
+
+    private final PreparedGeometry region;
+    private final double maxMedianAccuracyMeters;
+    private final double maxJumpSpeedMetersPerSecond;
+    private final long minDurationMillis;
+
+    public RideQualityGate(@Value("${import.quality.region-wkt:" + DEFAULT_REGION_WKT + "}") String regionWkt,
+                           @Value("${import.quality.max-median-accuracy-meters:30}") double maxMedianAccuracyMeters,
+                           @Value("${import.quality.max-jump-speed-kmh:100}") double maxJumpSpeedKmh,
+                           @Value("${import.quality.min-duration-seconds:60}") long minDurationSeconds) {
+        this.region = RegionWkt.prepare(regionWkt, "import.quality.region-wkt");
+        this.maxMedianAccuracyMeters = maxMedianAccuracyMeters;
+        this.maxJumpSpeedMetersPerSecond = maxJumpSpeedKmh / 3.6;
+        this.minDurationMillis = minDurationSeconds * 1000;
+    }
+
+    public Inspection inspect() {
+        return new Inspection();
+    }
+
+    /**
+     * Quality state of one file. Not thread-safe; a file is parsed by a single thread.
+     */
+    public final class Inspection {
+        private RideRejectionReason rejection;
+
+        private int locatedPoints;
+        private double previousLat;
+        private double previousLon;
+        private Long previousTimestamp;
+        private Long firstTimestamp;
+        private Long lastTimestamp;
+
+        private double[] accuracies = new double[256];
+        private int accuracyCount;
+
+        private Inspection() {
+        }
+
+        /**
+         * @return {@code false} once the ride is rejected; the caller can stop reading
+         */
+        public boolean accept(RidePoint point) {
+            if (rejection != null) return false;
+
+            Long timestamp = point.getTimestamp();
+            if (timestamp != null) {
+                if (firstTimestamp == null) firstTimestamp = timestamp;
+                lastTimestamp = timestamp;
+            }
+
+            if (point.getLocation() == null) return true;
+
+            if (region != null && !region.covers(point.getLocation())) {
+                rejection = RideRejectionReason.OUTSIDE_REGION;
+                return false;
+            }
+
+            double lat = point.getLocation().getY();
+            double lon = point.getLocation().getX();
+            if (maxJumpSpeedMetersPerSecond > 0 && locatedPoints > 0
+                    && timestamp != null && previousTimestamp != null && timestamp > previousTimestamp) {
+                double meters = DistanceCalcEarth.DIST_EARTH.calcDist(previousLat, previousLon, lat, lon);
+                double seconds = (timestamp - previousTimestamp) / 1000.0;
+                if (meters / seconds > maxJumpSpeedMetersPerSecond) {
+                    rejection = RideRejectionReason.IMPLAUSIBLE_JUMP;
+                    return false;
+                }
+            }
+
+            Double accuracy = point.getGpsAccuracy();
+            if (accuracy != null && Double.isFinite(accuracy)) {
+                if (accuracyCount == accuracies.length) {
+                    accuracies = Arrays.copyOf(accuracies, accuracyCount * 2);
+                }
+                accuracies[accuracyCount++] = accuracy;
+            }
+
+            locatedPoints++;
+            previousLat = lat;
+            previousLon = lon;
+            if (timestamp != null) previousTimestamp = timestamp;
+            return true;
+        }
+
+        /**
+         * Runs the whole-track checks after the last row.
+         *
+         * @return the rejection reason, or {@code null} if the ride should be map matched
+         */
+        public RideRejectionReason finish() {
+            if (rejection != null) return rejection;
+
+            if (locatedPoints == 0) {
+                rejection = RideRejectionReason.NO_GPS_POINTS;
+            } else if (maxMedianAccuracyMeters > 0 && accuracyCount > 0
+                    && medianAccuracy() > maxMedianAccuracyMeters) {
+                rejection = RideRejectionReason.POOR_GPS_ACCURACY;
+            } else if (minDurationMillis > 0 && firstTimestamp != null
+                    && lastTimestamp - firstTimestamp < minDurationMillis) {
+                rejection = RideRejectionReason.TOO_SHORT;
+            }
+            return rejection;
+        }
+
+        private double medianAccuracy() {
+            double[] sorted = Arrays.copyOf(accuracies, accuracyCount);
+            Arrays.sort(sorted);
+            int middle = accuracyCount / 2;
+            return accuracyCount % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+        }
+    }
+}
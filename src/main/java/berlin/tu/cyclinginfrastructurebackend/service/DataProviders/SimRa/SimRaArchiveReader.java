@@ -0,0 +1,86 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Locale;
+
+/**
+ * Streams the entries of a SimRa export bundle ({@code .zip}, {@code .tar.gz} or {@code .tgz})
+ * without extracting it. Entries are visited in the order they are stored, so a tarball is
+ * decompressed exactly once.
+ */
+final class SimRaArchiveReader {
+
+    private SimRaArchiveReader() {
+    }
+
+    static boolean isArchive(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    /**
+     * Calls {@code handler} for every regular file in the archive. The content stream is only
+     * valid during the call; closing it does not close the archive.
+     */
+    static void forEachEntry(Path archive, EntryHandler handler) throws IOException, InterruptedException {
+        if (archive.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            forEachZipEntry(archive, handler);
+        } else {
+            forEachTarEntry(archive, handler);
+        }
+    }
+
+    private static void forEachZipEntry(Path archive, EntryHandler handler) throws IOException, InterruptedException {
+        try (ZipFile zip = ZipFile.builder().setPath(archive).get()) {
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (entry.isDirectory()) continue;
+                try (InputStream content = zip.getInputStream(entry)) {
+                    handler.accept(entry.getName(), entry.getSize(), entry.getTime(), content);
+                }
+            }
+        }
+    }
+
+    private static void forEachTarEntry(Path archive, EntryHandler handler) throws IOException, InterruptedException {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(
+                new BufferedInputStream(Files.newInputStream(archive), 1 << 16), true))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isFile()) continue;
+                handler.accept(entry.getName(), entry.getSize(), entry.getLastModifiedDate().getTime(),
+                        new UnclosableInputStream(tar));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryHandler {
+        void accept(String name, long size, long lastModified, InputStream content)
+                throws IOException, InterruptedException;
+    }
+
+    // The parser closes its reader; the tar stream has to stay open for the next entry
+    private static final class UnclosableInputStream extends FilterInputStream {
+        private UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Forward-only CSV tokenizer for SimRa ride files.
+ * <p>
+ * Each physical line is read into a reusable char buffer and split into field boundaries, so
+ * numeric columns are parsed straight from the buffer without allocating a {@code String} per
+ * line or per value. Quoted fields are unescaped in place, but a record never spans more than
+ * one physical line: a stray quote in a free-text column cannot swallow the rest of the file.
+ * <p>
+ * Not thread-safe; one instance reads one file.
+ */
+final class SimRaCsvReader implements Closeable {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Any mantissa with at most 15 significant digits is exactly representable as a double
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int bufferPosition;
+    private int bufferLimit;
+    private boolean skipLineFeed;
+
+    private char[] line = new char[512];
+    private int lineLength;
+
+    private int[] fieldStarts = new int[32];
+    private int[] fieldEnds = new int[32];
+    private int fieldCount;
+
+    SimRaCsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next physical line into the line buffer. Accepts {@code \n}, {@code \r\n} and
+     * {@code \r} terminators like {@link java.io.BufferedReader#readLine()}.
+     *
+     * @return {@code false} once the end of the stream has been reached
+     */
+    boolean nextLine() throws IOException {
+        lineLength = 0;
+        fieldCount = 0;
+        boolean readAny = false;
+
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                int read = reader.read(buffer, 0, buffer.length);
+                if (read <= 0) {
+                    bufferPosition = 0;
+                    bufferLimit = 0;
+                    return readAny;
+                }
+                bufferPosition = 0;
+                bufferLimit = read;
+            }
+
+            char c = buffer[bufferPosition++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') continue;
+            }
+            if (c == '\n') {
+                return true;
+            }
+            if (c == '\r') {
+                skipLineFeed = true;
+                return true;
+            }
+
+            readAny = true;
+            if (lineLength == line.length) {
+                char[] grown = new char[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    boolean isBlankLine() {
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    boolean lineContains(String token) {
+        int last = lineLength - token.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < token.length(); j++) {
+                if (line[i + j] != token.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    boolean lineStartsWith(String prefix) {
+        if (prefix.length() > lineLength) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits the current line on commas. A field whose first non-blank character is a double
+     * quote is unescaped in place ({@code ""} becomes {@code "}); anything after its closing
+     * quote up to the next comma is ignored.
+     *
+     * @return the number of fields on the line (number of commas + 1)
+     */
+    int split() {
+        fieldCount = 0;
+        int i = 0;
+        while (true) {
+            int quote = i;
+            while (quote < lineLength && line[quote] == ' ') quote++;
+
+            int start;
+            int end;
+            if (quote < lineLength && line[quote] == '"') {
+                int write = quote;
+                start = write;
+                i = quote + 1;
+                while (i < lineLength) {
+                    char c = line[i];
+                    if (c == '"') {
+                        if (i + 1 < lineLength && line[i + 1] == '"') {
+                            line[write++] = '"';
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    line[write++] = c;
+                    i++;
+                }
+                end = write;
+                while (i < lineLength && line[i] != ',') i++;
+            } else {
+                start = i;
+                while (i < lineLength && line[i] != ',') i++;
+                end = i;
+            }
+
+            addField(start, end);
+            if (i >= lineLength) {
+                return fieldCount;
+            }
+            i++;
+        }
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns {@code true} if the column is absent from the current row (short rows are treated
+     * as if padded with empty fields) or contains only whitespace.
+     */
+    boolean isEmpty(int column) {
+        return column < 0 || column >= fieldCount || trimmedStart(column) == trimmedEnd(column);
+    }
+
+    String stringValue(int column) {
+        if (column < 0) return null;
+        if (column >= fieldCount) return "";
+        return new String(line, fieldStarts[column], fieldEnds[column] - fieldStarts[column]);
+    }
+
+    /**
+     * Parses a decimal value without allocating. Plain decimals with at most 15 significant
+     * digits and 22 fraction digits are converted as one exact division, which yields the same
+     * correctly rounded result as {@link Double#parseDouble}; anything else (exponents, very long
+     * mantissas, {@code NaN}) falls back to it.
+     *
+     * @throws NumberFormatException if the field is not a number
+     */
+    double doubleValue(int column) {
+        int start = trimmedStart(column);
+        int end = trimmedEnd(column);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean anyDigit = false;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            char c = line[i];
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (mantissa != 0 || c != '0') significantDigits++;
+                if (significantDigits > MAX_EXACT_DIGITS) {
+                    return Double.parseDouble(slice(start, end));
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenDot) fractionDigits++;
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return Double.parseDouble(slice(start, end));
+            }
+        }
+        if (!anyDigit || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(slice(start, end));
+        }
+
+        double value = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not an integral number
+     */
+    long longValue(int column) {
+        int start = trimmedStart(column);
+        int end = trimmedEnd(column);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > MAX_LONG_DIGITS) {
+            return Long.parseLong(slice(start, end));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9') {
+                return Long.parseLong(slice(start, end));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @throws NumberFormatException if the field is not an integral number within int range
+     */
+    int intValue(int column) {
+        long value = longValue(column);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Accepts the same spellings as the bean converter used before ({@code true/false},
+     * {@code 1/0}, {@code yes/no}, {@code y/n}, {@code on/off}, case-insensitive).
+     *
+     * @throws IllegalArgumentException if the field is not a recognised boolean
+     */
+    boolean booleanValue(int column) {
+        int start = trimmedStart(column);
+        int length = trimmedEnd(column) - start;
+        if (length == 1) {
+            char c = Character.toLowerCase(line[start]);
+            if (c == '1' || c == 'y') return true;
+            if (c == '0' || c == 'n') return false;
+        }
+        String value = slice(start, start + length).toLowerCase(Locale.ROOT);
+        return switch (value) {
+            case "true", "yes", "on" -> true;
+            case "false", "no", "off" -> false;
+            default -> throw new IllegalArgumentException("Not a boolean: " + value);
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            int[] grownStarts = new int[fieldStarts.length * 2];
+            int[] grownEnds = new int[fieldEnds.length * 2];
+            System.arraycopy(fieldStarts, 0, grownStarts, 0, fieldCount);
+            System.arraycopy(fieldEnds, 0, grownEnds, 0, fieldCount);
+            fieldStarts = grownStarts;
+            fieldEnds = grownEnds;
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private int trimmedStart(int column) {
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        while (start < end && line[start] <= ' ') start++;
+        return start;
+    }
+
+    private int trimmedEnd(int column) {
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        while (end > start && line[end - 1] <= ' ') end--;
+        return end;
+    }
+
+    private String slice(int start, int end) {
+        return new String(line, start, end - start);
+    }
+}
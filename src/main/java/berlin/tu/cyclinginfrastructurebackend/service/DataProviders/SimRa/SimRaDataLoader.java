@@ -1,35 +1,61 @@
 package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
 
 import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ImportOutcome;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideRejectionReason;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideCopyRepository;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa.SimRaFileDiscovery.ImportCandidate;
 import berlin.tu.cyclinginfrastructurebackend.service.MapMatchingService;
+import berlin.tu.cyclinginfrastructurebackend.service.MapMatchingService.MatchedRide;
 import berlin.tu.cyclinginfrastructurebackend.util.ImportMetrics;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
+import org.locationtech.jts.geom.Point;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Imports SimRa ride files as a three-stage pipeline:
+ * <ol>
+ *     <li><b>parse</b> — read and parse the file, checking it against the {@link RideQualityGate};</li>
+ *     <li><b>match</b> — CPU-bound GraphHopper map matching;</li>
+ *     <li><b>persist</b> — segment usage counters and the ride insert.</li>
+ * </ol>
+ * Each stage has its own long-lived executor (see {@code AsyncConfig}) and a bounded queue, so
+ * map matching and JDBC writes no longer compete for the same threads and a slow database
+ * throttles matching instead of letting matched rides pile up.
+ */
 @Component
 public class SimRaDataLoader {
 
     private static final Logger log = LoggerFactory.getLogger(SimRaDataLoader.class);
 
-    private final RideRepository rideRepository;
+    private final SimRaFileDiscovery fileDiscovery;
     private final SimRaFileParser parser;
+    private final RideQualityGate qualityGate;
     private final MapMatchingService mapMatchingService;
-    private final Set<String> attemptedFilesThisRun = ConcurrentHashMap.newKeySet();
+    private final RideRepository rideRepository;
+    private final RideCopyRepository rideCopyRepository;
+    private final ImportStage parseStage;
+    private final ImportStage matchStage;
+    private final ImportStage persistStage;
 
     @Value("${simra.data.path:./data/SimRa}")
     private String dataPath;
@@ -43,15 +69,37 @@ public class SimRaDataLoader {
     @Value("${pipeline.import.batch-size:100}")
     private int importBatchSize;
 
-    @Value("${pipeline.import.thread-pool-size:4}")
-    private int importThreadPoolSize;
+    @Value("${pipeline.import.bulk-copy.enabled:false}")
+    private boolean bulkCopyEnabled;
+
+    @Value("${pipeline.import.track-storage:rows}")
+    private String trackStorage;
 
-    public SimRaDataLoader(RideRepository rideRepository,
+    @Value("${import.duplicates.time-tolerance-ms:2000}")
+    private long duplicateToleranceMs;
+
+    @Value("${import.duplicates.radius-meters:100}")
+    private double duplicateRadiusMeters;
+
+    public SimRaDataLoader(SimRaFileDiscovery fileDiscovery,
                            SimRaFileParser parser,
-                           MapMatchingService mapMatchingService) {
-        this.rideRepository = rideRepository;
+                           RideQualityGate qualityGate,
+                           MapMatchingService mapMatchingService,
+                           RideRepository rideRepository,
+                           RideCopyRepository rideCopyRepository,
+                           @Qualifier("importParseExecutor") ThreadPoolTaskExecutor parseExecutor,
+                           @Qualifier("importMatchExecutor") ThreadPoolTaskExecutor matchExecutor,
+                           @Qualifier("importPersistExecutor") ThreadPoolTaskExecutor persistExecutor,
+                           @Value("${pipeline.import.queue-capacity:64}") int queueCapacity) {
+        this.fileDiscovery = fileDiscovery;
         this.parser = parser;
+        this.qualityGate = qualityGate;
         this.mapMatchingService = mapMatchingService;
+        this.rideRepository = rideRepository;
+        this.rideCopyRepository = rideCopyRepository;
+        this.parseStage = new ImportStage(ImportMetrics.Stage.PARSE, parseExecutor, queueCapacity);
+        this.matchStage = new ImportStage(ImportMetrics.Stage.MATCH, matchExecutor, queueCapacity);
+        this.persistStage = new ImportStage(ImportMetrics.Stage.PERSIST, persistExecutor, queueCapacity);
     }
 
     @Scheduled(fixedDelayString = "${pipeline.import.delay-ms:30000}")
@@ -67,23 +115,13 @@ public class SimRaDataLoader {
             return;
         }
 
-        Set<String> existingFiles = rideRepository.findAllOriginalFilenames();
-
-        List<Path> filesToProcess;
+        List<ImportCandidate> filesToProcess;
         int batchLimit = Math.max(1, importBatchSize);
-        log.info("Scanning SimRa data path {} for up to {} new files.", dataPath, batchLimit);
-
-        try (Stream<Path> stream = Files.walk(startPath)) {
-            filesToProcess = stream.filter(Files::isRegularFile)
-                    .filter(path -> !path.getFileName().toString().startsWith("."))
-                    .filter(path -> path.toString().contains("Rides"))
-                    .filter(path -> path.getFileName().toString().startsWith("VM"))
-                    .filter(path -> !existingFiles.contains(path.getFileName().toString()))
-                    .filter(path -> !attemptedFilesThisRun.contains(path.getFileName().toString()))
-                    .limit(batchLimit)
-                    .toList();
+
+        try {
+            filesToProcess = fileDiscovery.nextBatch(batchLimit);
         } catch (IOException e) {
-            log.error("Error walking file tree", e);
+            log.error("Error scanning SimRa data path", e);
             return;
         }
 
@@ -92,96 +130,334 @@ public class SimRaDataLoader {
             return;
         }
 
-        log.info("Starting SimRa import batch with {} files from {}.", filesToProcess.size(), dataPath);
-        ImportMetrics metrics = new ImportMetrics();
-        int total = filesToProcess.size();
-
-        int threadCount = Math.max(1, importThreadPoolSize);
-
-        try (ForkJoinPool customThreadPool = new ForkJoinPool(threadCount)) {
-            customThreadPool.submit(() ->
-                    filesToProcess.parallelStream().forEach(path -> {
-                        try {
-                            processFile(path, metrics);
-                            int current = metrics.getFilesProcessed();
-                            if (current > 0 && current % 100 == 0) {
-                                log.info("Imported {}/{} rides...", current, total);
-                            }
-                        } catch (Exception e) {
-                            metrics.recordFileFailed();
-                            log.error("Failed to process file: {}", path.getFileName(), e);
-                        } finally {
-                            attemptedFilesThisRun.add(path.getFileName().toString());
-                        }
-                    })
-            ).get();
-        } catch (Exception e) {
-            log.error("Error during import execution", e);
+        log.info("Starting SimRa import batch with {} files from {} (parse={}, match={}, persist={} threads).",
+                filesToProcess.size(), dataPath, parseStage.threads(), matchStage.threads(), persistStage.threads());
+        ImportBatch batch = new ImportBatch();
+
+        try {
+            for (ImportCandidate candidate : filesToProcess) {
+                batch.register();
+                if (candidate.isArchive()) {
+                    parseStage.submit(batch.metrics, () -> parseArchive(candidate, batch));
+                } else {
+                    WorkItem item = new WorkItem(candidate, null);
+                    parseStage.submit(batch.metrics, () -> parse(item, batch));
+                }
+            }
+            batch.awaitCompletion();
+        } catch (InterruptedException e) {
+            // Unfinished files are not in the manifest and will be picked up after the restart
+            Thread.currentThread().interrupt();
+            log.warn("SimRa import interrupted with {} files outstanding.", batch.outstanding());
+            return;
         }
 
-        metrics.finish();
-        metrics.printSummary();
+        batch.metrics.recordMatcherPool(mapMatchingService.matcherPoolStats());
+        batch.metrics.recordEdgeGeometryCache(mapMatchingService.edgeGeometryCacheStats());
+        batch.metrics.finish();
+        batch.metrics.printSummary();
     }
 
-    private void processFile(Path path, ImportMetrics metrics) {
-        String filename = path.getFileName().toString();
-        try (FileInputStream fis = new FileInputStream(path.toFile())) {
-            // 1. Parse
-            long parseStart = System.nanoTime();
-            Ride ride;
-            try {
-                ride = parser.parse(fis, filename);
-            } catch (IOException e) {
-                if (e.getMessage() != null && (e.getMessage().contains("separator not found") || e.getMessage().contains("file is empty"))) {
-                    log.debug("Skipping invalid file ({}): {}", e.getMessage(), filename);
-                    metrics.recordFileInvalid();
-                    return;
+    private void parse(WorkItem item, ImportBatch batch) {
+        Path path = item.candidate().file();
+        try (InputStream in = Files.newInputStream(path)) {
+            handleParsed(item, parseAndValidate(in, path.getFileName().toString(), batch), batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.abandon(item);
+        } catch (Exception e) {
+            batch.fail(item, e);
+        }
+    }
+
+    /**
+     * Streams an export bundle on this parse thread, entry by entry, and feeds every new ride
+     * entry into the match stage. Backpressure from the match stage pauses the stream.
+     */
+    private void parseArchive(ImportCandidate archiveCandidate, ImportBatch batch) {
+        ArchiveProgress archive = new ArchiveProgress(archiveCandidate);
+        log.info("Streaming SimRa archive {}", archiveCandidate.key());
+        try {
+            SimRaArchiveReader.forEachEntry(archiveCandidate.file(), (name, size, lastModified, content) -> {
+                ImportCandidate entry = fileDiscovery.archiveEntry(archiveCandidate, name, size, lastModified);
+                if (entry == null) return;
+
+                WorkItem item = new WorkItem(entry, archive);
+                batch.register();
+                archive.register();
+                try {
+                    String filename = name.substring(name.lastIndexOf('/') + 1);
+                    handleParsed(item, parseAndValidate(content, filename, batch), batch);
+                } catch (InterruptedException e) {
+                    batch.abandon(item);
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    batch.fail(item, e);
                 }
-                throw e;
-            }
-            metrics.recordParse(System.nanoTime() - parseStart);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            archive.abandon();
+        } catch (Exception e) {
+            log.error("Failed to read SimRa archive {}", archiveCandidate.key(), e);
+            archive.markFailed();
+        } finally {
+            archive.arrive();
+            batch.arrive();
+        }
+    }
 
-            if (ride.getRidePoints().isEmpty()) {
-                log.debug("Ride has 0 points (skipping): {}", filename);
-                metrics.recordFileSkipped();
-                return;
-            }
+    private void handleParsed(WorkItem item, ParsedFile parsed, ImportBatch batch) throws InterruptedException {
+        if (parsed.rejection() != null) {
+            batch.complete(item, parsed.rejection(), parsed.failureReason());
+            return;
+        }
+        matchStage.submit(batch.metrics, () -> match(item, parsed.ride(), batch));
+    }
 
-            if (!isRideInGermany(ride)) {
-                log.debug("Ride contains points outside Germany (skipping): {}", filename);
-                metrics.recordFileSkipped();
+    private void match(WorkItem item, Ride ride, ImportBatch batch) {
+        try {
+            long matchStart = System.nanoTime();
+            MatchedRide matched = mapMatchingService.match(ride);
+            batch.metrics.recordMapMatch(System.nanoTime() - matchStart, matched != null);
+            if (matched == null) {
+                batch.metrics.recordFileFailed();
+                batch.release(ride);
+                batch.complete(item, ImportOutcome.MATCH_FAILED, null);
                 return;
             }
+            persistStage.submit(batch.metrics, () -> persist(item, matched, batch));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.release(ride);
+            batch.abandon(item);
+        } catch (Exception e) {
+            batch.release(ride);
+            batch.fail(item, e);
+        }
+    }
 
-            // 2. Map Match & Persist
-            long processingStart = System.nanoTime();
-            boolean success = mapMatchingService.processRide(ride);
-            metrics.recordMapMatch(System.nanoTime() - processingStart, success);
-
-            if (success) {
-                metrics.recordFileProcessed();
+    private void persist(WorkItem item, MatchedRide matched, ImportBatch batch) {
+        try {
+            long saveStart = System.nanoTime();
+            if ("compact".equalsIgnoreCase(trackStorage)) {
+                RideTrackCodec.compact(matched.ride());
+            }
+            if (bulkCopyEnabled) {
+                mapMatchingService.persist(matched, rideCopyRepository::insert);
             } else {
-                metrics.recordFileFailed();
+                mapMatchingService.persist(matched, rideRepository::save);
             }
+            batch.metrics.recordDbSave(System.nanoTime() - saveStart);
+            batch.metrics.recordFileProcessed();
+            batch.complete(item, ImportOutcome.IMPORTED, null);
+        } catch (Exception e) {
+            batch.release(matched.ride());
+            batch.fail(item, e);
+        }
+    }
 
+    private ParsedFile parseAndValidate(InputStream in, String filename, ImportBatch batch) throws IOException {
+        ImportMetrics metrics = batch.metrics;
+        long parseStart = System.nanoTime();
+        RideQualityGate.Inspection inspection = qualityGate.inspect();
+        Ride ride;
+        try {
+            ride = parser.parse(in, filename, inspection);
         } catch (IOException e) {
-            throw new RuntimeException("Error reading file " + filename, e);
+            if (e.getMessage() != null && (e.getMessage().contains("separator not found") || e.getMessage().contains("file is empty"))) {
+                log.debug("Skipping invalid file ({}): {}", e.getMessage(), filename);
+                metrics.recordFileInvalid();
+                return ParsedFile.rejected(ImportOutcome.INVALID, null);
+            }
+            throw e;
+        }
+        metrics.recordParse(System.nanoTime() - parseStart);
+
+        RideRejectionReason rejection = inspection.finish();
+        if (rejection != null) {
+            log.debug("Ride rejected before map matching ({}): {}", rejection, filename);
+            metrics.recordRejected(rejection);
+            return ParsedFile.rejected(ImportOutcome.SKIPPED, rejection.name());
+        }
+
+        String duplicateOf = findDuplicate(ride, batch);
+        if (duplicateOf != null) {
+            log.debug("Ride {} is a duplicate of {} (skipping)", filename, duplicateOf);
+            metrics.recordRejected(RideRejectionReason.DUPLICATE);
+            return ParsedFile.rejected(ImportOutcome.SKIPPED, RideRejectionReason.DUPLICATE + " of " + duplicateOf);
+        }
+
+        return new ParsedFile(ride, null, null);
+    }
+
+    /**
+     * Looks for the same recording among stored rides and among rides of this batch that have
+     * not been persisted yet. A ride without points has no fingerprint and is never a duplicate.
+     *
+     * @return the id of the stored ride, the filename of the in-flight one, or {@code null}
+     */
+    private String findDuplicate(Ride ride, ImportBatch batch) {
+        if (ride.getFingerprint() == null) {
+            return null;
+        }
+        String inFlight = batch.fingerprints.putIfAbsent(ride.getFingerprint(), ride.getOriginalFilename());
+        if (inFlight != null) {
+            return inFlight;
         }
+
+        Point start = ride.getStartPoint();
+        Point end = ride.getEndPoint();
+        boolean nearMatch = duplicateToleranceMs > 0 && start != null && end != null
+                && ride.getStartTime() != null && ride.getEndTime() != null;
+        Optional<UUID> stored;
+        try {
+            stored = rideRepository.findDuplicateOf(
+                    ride.getFingerprint(),
+                    nearMatch ? ride.getStartTime() : 0L,
+                    nearMatch ? ride.getEndTime() : 0L,
+                    nearMatch ? duplicateToleranceMs : 0L,
+                    nearMatch ? start.getX() : 0.0,
+                    nearMatch ? start.getY() : 0.0,
+                    nearMatch ? end.getX() : 0.0,
+                    nearMatch ? end.getY() : 0.0,
+                    duplicateRadiusMeters);
+        } catch (RuntimeException e) {
+            batch.release(ride);
+            throw e;
+        }
+        return stored.map(UUID::toString).orElse(null);
+    }
+
+    private record ParsedFile(Ride ride, ImportOutcome rejection, String failureReason) {
+        static ParsedFile rejected(ImportOutcome rejection, String failureReason) {
+            return new ParsedFile(null, rejection, failureReason);
+        }
+    }
+
+    /**
+     * A file or archive entry on its way through the pipeline.
+     *
+     * @param archive progress of the enclosing archive, {@code null} for plain files
+     */
+    private record WorkItem(ImportCandidate candidate, ArchiveProgress archive) {
     }
 
-    private boolean isRideInGermany(Ride ride) {
-        // Approximate Bounding Box for Germany
-        final double MIN_LAT = 47.2;
-        final double MAX_LAT = 55.1;
-        final double MIN_LON = 5.8;
-        final double MAX_LON = 15.1;
-
-        return ride.getRidePoints().stream()
-                .filter(p -> p.getLocation() != null)
-                .allMatch(p -> {
-                    double lon = p.getLocation().getX();
-                    double lat = p.getLocation().getY();
-                    return lat >= MIN_LAT && lat <= MAX_LAT && lon >= MIN_LON && lon <= MAX_LON;
-                });
+    /**
+     * Tracks the files of one scheduler tick as they leave the pipeline, whichever stage they
+     * leave it from. Archive entries register as they are read, so the count is not known upfront.
+     */
+    private final class ImportBatch {
+        private final ImportMetrics metrics = new ImportMetrics();
+        // fingerprint -> filename of every ride of this batch that is persisted or still on its way
+        private final Map<Long, String> fingerprints = new ConcurrentHashMap<>();
+        private int outstanding;
+
+        // A ride that did not make it must not turn later copies of it into duplicates
+        private void release(Ride ride) {
+            if (ride.getFingerprint() == null) return;
+            fingerprints.remove(ride.getFingerprint(), ride.getOriginalFilename());
+        }
+
+        private synchronized void register() {
+            outstanding++;
+        }
+
+        private synchronized void arrive() {
+            if (--outstanding == 0) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void awaitCompletion() throws InterruptedException {
+            while (outstanding > 0) {
+                wait();
+            }
+        }
+
+        private synchronized int outstanding() {
+            return outstanding;
+        }
+
+        private void complete(WorkItem item, ImportOutcome outcome, String failureReason) {
+            try {
+                fileDiscovery.recordOutcome(item.candidate(), outcome, failureReason);
+            } catch (Exception e) {
+                log.error("Failed to record import outcome for {}", item.candidate().key(), e);
+            } finally {
+                if (item.archive() != null) {
+                    item.archive().entryDone(outcome);
+                }
+                arrive();
+            }
+            int current = metrics.getFilesProcessed();
+            if (outcome == ImportOutcome.IMPORTED && current > 0 && current % 100 == 0) {
+                log.info("Imported {} rides...", current);
+            }
+        }
+
+        private void fail(WorkItem item, Exception e) {
+            metrics.recordFileFailed();
+            log.error("Failed to process file: {}", item.candidate().displayName(), e);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            complete(item, ImportOutcome.ERROR, cause.toString());
+        }
+
+        // Interrupted on shutdown: leave the file out of the manifest so it is retried
+        private void abandon(WorkItem item) {
+            if (item.archive() != null) {
+                item.archive().abandon();
+                item.archive().arrive();
+            }
+            arrive();
+        }
+    }
+
+    /**
+     * Counts the entries of one archive still in the pipeline. The archive is recorded as
+     * {@link ImportOutcome#ARCHIVE_READ} once the stream has ended and every entry has an outcome;
+     * if anything failed it is recorded as {@link ImportOutcome#ERROR} so it is read again after a
+     * restart, skipping the entries that did make it.
+     */
+    private final class ArchiveProgress {
+        private final ImportCandidate archive;
+        // starts at one for the streaming pass itself
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private volatile boolean failed;
+        private volatile boolean abandoned;
+
+        private ArchiveProgress(ImportCandidate archive) {
+            this.archive = archive;
+        }
+
+        private void register() {
+            outstanding.incrementAndGet();
+        }
+
+        private void entryDone(ImportOutcome outcome) {
+            if (outcome == ImportOutcome.ERROR) {
+                failed = true;
+            }
+            arrive();
+        }
+
+        private void markFailed() {
+            failed = true;
+        }
+
+        private void abandon() {
+            abandoned = true;
+        }
+
+        private void arrive() {
+            if (outstanding.decrementAndGet() != 0 || abandoned) return;
+            try {
+                fileDiscovery.recordOutcome(archive,
+                        failed ? ImportOutcome.ERROR : ImportOutcome.ARCHIVE_READ,
+                        failed ? "One or more entries failed" : null);
+            } catch (Exception e) {
+                log.error("Failed to record import outcome for archive {}", archive.key(), e);
+            }
+        }
     }
 }
@@ -0,0 +1,393 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ImportOutcome;
+import berlin.tu.cyclinginfrastructurebackend.repository.ImportManifestBatchRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.ImportManifestRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds SimRa ride files that still need to be imported, backed by the persistent
+ * {@code import_manifest}.
+ * <p>
+ * The manifest is loaded into memory once; afterwards each tick only looks at what changed:
+ * <ul>
+ *     <li>{@code scan} (default) re-lists a directory only when its modification time changed
+ *     since the previous tick, and otherwise just descends into its known subdirectories;</li>
+ *     <li>{@code watch} registers every directory with a {@link WatchService} and only handles
+ *     the create/modify events delivered since the previous tick. Bind mounts of some container
+ *     runtimes do not deliver events, which is why this is opt-in.</li>
+ * </ul>
+ * The first tick always walks the whole tree, so files added while the application was down are
+ * found in both modes. A file is a candidate if its path, size or modification time is not in
+ * the manifest. A file modified within the last two seconds may still be written to; it is looked
+ * at again on the following ticks until it has settled. In {@code scan} mode, a settled file
+ * that is later rewritten in place without its directory changing is only found again after a
+ * restart, since unchanged directories are not listed and their files are not checked.
+ * <p>
+ * Export bundles ({@code .zip}, {@code .tar.gz}, {@code .tgz}) anywhere below the data path are
+ * candidates as a whole. Their entries are only enumerated while the loader streams the archive
+ * and are recorded under {@code <archive path>!/<entry name>}; the archive itself is recorded once
+ * every entry it contains has an outcome.
+ * <p>
+ * Discovery is not thread-safe, but {@link #recordOutcome} may be called from import worker
+ * threads.
+ */
+@Component
+public class SimRaFileDiscovery {
+
+    private static final Logger log = LoggerFactory.getLogger(SimRaFileDiscovery.class);
+
+    // A directory modified this recently may still receive files within the same timestamp tick,
+    // so it is listed again next time instead of being trusted as unchanged. A file modified this
+    // recently may still be written to, so it is not queued yet.
+    private static final long SETTLE_MILLIS = 2_000;
+
+    // legacy rides adopted into the manifest per statement
+    private static final int ADOPTION_BATCH_SIZE = 5_000;
+
+    static final String ARCHIVE_ENTRY_SEPARATOR = "!/";
+
+    private final ImportManifestRepository manifestRepository;
+    private final ImportManifestBatchRepository manifestBatchRepository;
+    private final RideRepository rideRepository;
+
+    @Value("${simra.data.path:./data/SimRa}")
+    private String dataPath;
+
+    @Value("${pipeline.import.discovery-mode:scan}")
+    private String discoveryMode;
+
+    private final Map<String, FileStamp> manifest = new ConcurrentHashMap<>();
+    private final Map<Path, DirectoryState> directories = new HashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final LinkedHashMap<String, ImportCandidate> pending = new LinkedHashMap<>();
+    private final Set<Path> settlingFiles = new LinkedHashSet<>();
+    private final List<ImportCandidate> adopted = new ArrayList<>();
+
+    private Path root;
+    private WatchService watchService;
+    private boolean initialScanDone;
+    private Set<String> legacyImportedFilenames;
+
+    public SimRaFileDiscovery(ImportManifestRepository manifestRepository,
+                              ImportManifestBatchRepository manifestBatchRepository,
+                              RideRepository rideRepository) {
+        this.manifestRepository = manifestRepository;
+        this.manifestBatchRepository = manifestBatchRepository;
+        this.rideRepository = rideRepository;
+    }
+
+    /**
+     * Picks up changes in the data directory and returns up to {@code limit} files that have not
+     * been imported in their current version. An archive counts as one file. Returned candidates
+     * stay reserved until {@link #recordOutcome} is called for them.
+     */
+    public List<ImportCandidate> nextBatch(int limit) throws IOException {
+        if (root == null) {
+            initialize();
+        }
+
+        recheckSettlingFiles();
+        if (!initialScanDone) {
+            log.info("Scanning SimRa data path {} (initial full scan, mode={}).", dataPath, discoveryMode);
+            scanDirectory(root);
+            flushAdopted();
+            initialScanDone = true;
+            legacyImportedFilenames = null;
+            log.info("Initial SimRa scan found {} files to import.", pending.size());
+        } else if (isWatchMode()) {
+            drainWatchEvents();
+        } else {
+            scanDirectory(root);
+        }
+
+        List<ImportCandidate> batch = new ArrayList<>(Math.min(limit, pending.size()));
+        Iterator<ImportCandidate> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < limit) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Persists the outcome for a candidate. Every outcome, including {@link ImportOutcome#ERROR},
+     * keeps the file from being picked up again during this run; only settled outcomes survive a
+     * restart.
+     */
+    public void recordOutcome(ImportCandidate candidate, ImportOutcome outcome, String failureReason) {
+        manifestRepository.upsert(candidate.key(), candidate.size(), candidate.lastModified(),
+                outcome.name(), failureReason, System.currentTimeMillis());
+        manifest.put(candidate.key(), new FileStamp(candidate.size(), candidate.lastModified()));
+    }
+
+    private void initialize() throws IOException {
+        root = Paths.get(dataPath).toAbsolutePath().normalize();
+
+        for (Object[] row : manifestRepository.findSettledFileStamps()) {
+            manifest.put((String) row[0], new FileStamp(((Number) row[1]).longValue(), ((Number) row[2]).longValue()));
+        }
+        log.info("Loaded {} settled SimRa files from the import manifest.", manifest.size());
+
+        // Rides imported before the manifest existed are only known by filename. Adopt them
+        // into the manifest during the first scan instead of parsing them again.
+        if (manifestRepository.count() == 0 && rideRepository.count() > 0) {
+            legacyImportedFilenames = rideRepository.findAllOriginalFilenames();
+            log.info("Import manifest is empty; adopting {} previously imported rides by filename.",
+                    legacyImportedFilenames.size());
+        }
+
+        if (isWatchMode()) {
+            watchService = root.getFileSystem().newWatchService();
+        }
+    }
+
+    private boolean isWatchMode() {
+        return "watch".equalsIgnoreCase(discoveryMode);
+    }
+
+    private void scanDirectory(Path directory) throws IOException {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(directory).toMillis();
+        } catch (NoSuchFileException e) {
+            directories.remove(directory);
+            return;
+        }
+
+        DirectoryState known = directories.get(directory);
+        if (known != null && known.lastModified() == lastModified && !isWatchMode()) {
+            for (Path subdirectory : known.subdirectories()) {
+                scanDirectory(subdirectory);
+            }
+            return;
+        }
+
+        if (isWatchMode() && known == null) {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, directory);
+        }
+
+        List<Path> subdirectories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    subdirectories.add(entry);
+                } else if (attributes.isRegularFile()) {
+                    consider(entry, attributes);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            directories.remove(directory);
+            return;
+        }
+
+        boolean settled = System.currentTimeMillis() - lastModified > SETTLE_MILLIS;
+        directories.put(directory, new DirectoryState(settled ? lastModified : Long.MIN_VALUE, subdirectories));
+        for (Path subdirectory : subdirectories) {
+            scanDirectory(subdirectory);
+        }
+    }
+
+    private void drainWatchEvents() throws IOException {
+        WatchKey key;
+        try {
+            key = watchService.poll();
+        } catch (ClosedWatchServiceException e) {
+            return;
+        }
+
+        boolean overflow = false;
+        while (key != null) {
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (directory == null) continue;
+
+                Path child = directory.resolve((Path) event.context());
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                    if (attributes.isDirectory()) {
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            scanDirectory(child);
+                        }
+                    } else if (attributes.isRegularFile()) {
+                        consider(child, attributes);
+                    }
+                } catch (NoSuchFileException e) {
+                    // created and removed again before we got to it
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+                directories.remove(directory);
+            }
+            key = watchService.poll();
+        }
+
+        if (overflow) {
+            // In watch mode every known directory is listed again, new ones get registered
+            log.warn("SimRa watch service overflowed; rescanning {}", dataPath);
+            scanDirectory(root);
+        }
+    }
+
+    private void recheckSettlingFiles() throws IOException {
+        if (settlingFiles.isEmpty()) return;
+
+        List<Path> files = new ArrayList<>(settlingFiles);
+        settlingFiles.clear();
+        for (Path file : files) {
+            try {
+                consider(file, Files.readAttributes(file, BasicFileAttributes.class));
+            } catch (NoSuchFileException e) {
+                // removed before it settled
+            }
+        }
+    }
+
+    /**
+     * Turns an entry met while streaming {@code archive} into a candidate.
+     *
+     * @return {@code null} if the entry is not a ride file or is already in the manifest
+     */
+    public ImportCandidate archiveEntry(ImportCandidate archive, String entryName, long size, long lastModified) {
+        if (!isRideFile(entryName)) return null;
+
+        String key = archive.key() + ARCHIVE_ENTRY_SEPARATOR + entryName;
+        if (new FileStamp(size, lastModified).equals(manifest.get(key))) return null;
+
+        return new ImportCandidate(key, archive.file(), entryName, size, lastModified);
+    }
+
+    private void consider(Path file, BasicFileAttributes attributes) {
+        boolean archive = SimRaArchiveReader.isArchive(file);
+        if (!archive && !isRideFile(file.toString())) return;
+
+        String key = root.relativize(file.toAbsolutePath().normalize()).toString();
+        FileStamp stamp = new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+        if (stamp.equals(manifest.get(key))) return;
+
+        if (System.currentTimeMillis() - stamp.lastModified() <= SETTLE_MILLIS) {
+            pending.remove(key);
+            settlingFiles.add(file);
+            return;
+        }
+
+        ImportCandidate candidate = new ImportCandidate(key, file, null, stamp.size(), stamp.lastModified());
+        if (!archive && legacyImportedFilenames != null
+                && legacyImportedFilenames.contains(file.getFileName().toString())) {
+            adopted.add(candidate);
+            if (adopted.size() >= ADOPTION_BATCH_SIZE) {
+                flushAdopted();
+            }
+            return;
+        }
+
+        pending.put(key, candidate);
+    }
+
+    private void flushAdopted() {
+        if (adopted.isEmpty()) return;
+
+        int count = adopted.size();
+        String[] paths = new String[count];
+        Long[] sizes = new Long[count];
+        Long[] lastModified = new Long[count];
+        for (int i = 0; i < count; i++) {
+            ImportCandidate candidate = adopted.get(i);
+            paths[i] = candidate.key();
+            sizes[i] = candidate.size();
+            lastModified[i] = candidate.lastModified();
+        }
+        manifestBatchRepository.upsertAll(paths, sizes, lastModified, ImportOutcome.IMPORTED.name(),
+                System.currentTimeMillis());
+        for (ImportCandidate candidate : adopted) {
+            manifest.put(candidate.key(), new FileStamp(candidate.size(), candidate.lastModified()));
+        }
+        adopted.clear();
+    }
+
+    private static boolean isRideFile(String path) {
+        String normalized = path.replace('\\', '/');
+        String filename = normalized.substring(normalized.lastIndexOf('/') + 1);
+        return !filename.startsWith(".")
+                && filename.startsWith("VM")
+                && normalized.contains("Rides");
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * A SimRa file, export bundle or bundle entry selected for import.
+     *
+     * @param key          path relative to the data directory, the manifest's primary key
+     * @param file         absolute path of the file or of the archive containing the entry
+     * @param entryName    name of the entry inside {@code file}, {@code null} for plain files and
+     *                     whole archives
+     * @param size         size in bytes when it was discovered
+     * @param lastModified modification time (epoch ms) when it was discovered
+     */
+    public record ImportCandidate(String key, Path file, String entryName, long size, long lastModified) {
+
+        public boolean isArchive() {
+            return entryName == null && SimRaArchiveReader.isArchive(file);
+        }
+
+        public String displayName() {
+            return entryName != null ? key : file.getFileName().toString();
+        }
+    }
+
+    private record FileStamp(long size, long lastModified) {
+    }
+
+    private record DirectoryState(long lastModified, List<Path> subdirectories) {
+    }
+}
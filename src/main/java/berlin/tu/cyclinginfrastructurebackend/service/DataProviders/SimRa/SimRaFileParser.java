@@ -7,218 +7,243 @@ import berlin.tu.cyclinginfrastructurebackend.domain.enums.BikeType;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.IncidentType;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.ParticipantType;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.PhoneLocation;
-import berlin.tu.cyclinginfrastructurebackend.service.dto.IncidentCsvBean;
-import berlin.tu.cyclinginfrastructurebackend.service.dto.RidePointCsvBean;
-import com.opencsv.bean.CsvToBeanBuilder;
-import org.jspecify.annotations.NonNull;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.springframework.stereotype.Service;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Parses a SimRa ride file in a single pass over the stream.
+ * <p>
+ * The incident section (header starting with {@code key,}) and the GPS section (header starting
+ * with {@code lat,}) are split by a {@code ======} line. Header columns are resolved by name once
+ * per section, then every row is tokenized by {@link SimRaCsvReader} and read straight into the
+ * domain objects. Short rows are treated as if padded with empty trailing fields (some SimRa app
+ * versions omit them); rows with more fields than the header or with an unparseable value are
+ * dropped, which is how the previous bean-binding parser behaved.
+ */
 @Service
 public class SimRaFileParser {
 
-    private static final Logger log = LoggerFactory.getLogger(SimRaFileParser.class);
+    private static final String SEPARATOR = "======";
+    private static final String INCIDENT_HEADER_MARKER = "key,";
+    private static final String RIDE_HEADER_MARKER = "lat,";
+
+    // -5 is often used as a dummy or 'nothing' placeholder in SimRa
+    private static final int DUMMY_INCIDENT_CODE = -5;
+
+    private static final ParticipantType[] PARTICIPANT_COLUMNS = {
+            ParticipantType.BUS,
+            ParticipantType.CYCLIST,
+            ParticipantType.PEDESTRIAN,
+            ParticipantType.DELIVERY_VAN,
+            ParticipantType.TRUCK,
+            ParticipantType.MOTORCYCLE,
+            ParticipantType.CAR,
+            ParticipantType.TAXI,
+            ParticipantType.OTHER,
+            ParticipantType.SCOOTER
+    };
+
+    private static final long FINGERPRINT_SEED = 0x5133_5241_4649_4E47L;
+    private static final double FINGERPRINT_SCALE = 1e5;
 
     private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
 
     public Ride parse(InputStream inputStream, String filename) throws IOException {
+        return parse(inputStream, filename, null);
+    }
+
+    /**
+     * Parses the file and hands every GPS row to {@code inspection} as it is read. Reading stops
+     * at the first row the inspection rejects, so the returned ride is then incomplete.
+     */
+    public Ride parse(InputStream inputStream, String filename, RideQualityGate.Inspection inspection)
+            throws IOException {
         Ride ride = new Ride();
         ride.setOriginalFilename(filename);
 
-        List<String> incidentLines = new ArrayList<>();
-        List<String> rideLines = new ArrayList<>();
+        List<Incident> incidents = new ArrayList<>();
+        List<RidePoint> points = new ArrayList<>();
+        IncidentColumns incidentColumns = null;
+        RideColumns rideColumns = null;
         boolean separatorFound = false;
+        boolean hasContent = false;
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.contains("======")) {
+        try (SimRaCsvReader reader = new SimRaCsvReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            while (reader.nextLine()) {
+                if (reader.lineContains(SEPARATOR)) {
                     separatorFound = true;
-                    continue; // Skip the separator itself
+                    continue;
                 }
-
-                if (line.trim().isEmpty()) continue;
+                if (reader.isBlankLine()) continue;
+                hasContent = true;
 
                 if (!separatorFound) {
-                    incidentLines.add(line);
+                    if (incidentColumns == null) {
+                        // lines before the header (e.g. the app version line) are ignored
+                        if (reader.lineStartsWith(INCIDENT_HEADER_MARKER)) {
+                            incidentColumns = new IncidentColumns(readHeader(reader));
+                        }
+                        continue;
+                    }
+                    readIncidentRow(reader, incidentColumns, ride, incidents);
                 } else {
-                    rideLines.add(line);
+                    if (rideColumns == null) {
+                        if (reader.lineStartsWith(RIDE_HEADER_MARKER)) {
+                            rideColumns = new RideColumns(readHeader(reader));
+                        }
+                        continue;
+                    }
+                    RidePoint point = readRidePointRow(reader, rideColumns, ride, points);
+                    if (point != null && inspection != null && !inspection.accept(point)) {
+                        break;
+                    }
                 }
             }
         }
 
-        if (incidentLines.isEmpty() && rideLines.isEmpty()) {
+        if (!hasContent) {
             throw new IOException("Invalid file format: file is empty or contains no data");
         }
 
-        parseIncidents(ride, incidentLines);
-        parseRidePoints(ride, rideLines);
-
-        return ride;
-    }
-
-    private void parseIncidents(Ride ride, List<String> lines) {
-        List<IncidentCsvBean> beans = mapLinesToBeans(lines, "key,", IncidentCsvBean.class);
-
-        List<Incident> incidents = new ArrayList<>();
-        for (IncidentCsvBean bean : beans) {
-           Incident incident = mapToIncident(bean, ride);
-           if (incident != null) {
-               incidents.add(incident);
-           }
-
-           // Extract ride metadata from the first valid incident row (often row 0 has metadata)
-           if (bean.getBike() != null && ride.getBikeType() == null) {
-               ride.setBikeType(BikeType.fromCode(bean.getBike()));
-               ride.setChildTransport(Boolean.TRUE.equals(bean.getChildCheckBox()));
-               ride.setTrailerAttached(Boolean.TRUE.equals(bean.getTrailerCheckBox()));
-               if (bean.getPLoc() != null) {
-                   ride.setPhoneLocation(PhoneLocation.fromCode(bean.getPLoc()));
-               }
-           }
-        }
         ride.setIncidents(incidents);
-    }
-
-    private void parseRidePoints(Ride ride, List<String> lines) {
-        List<RidePointCsvBean> beans = mapLinesToBeans(lines, "lat,", RidePointCsvBean.class);
-
-        List<RidePoint> points = new ArrayList<>();
-        int sequence = 0;
-        for (RidePointCsvBean bean : beans) {
-            RidePoint point = mapToRidePoint(bean, sequence++, ride);
-            points.add(point);
-        }
         ride.setRidePoints(points);
         addPointsToRide(ride, points);
+        return ride;
     }
 
-    private <T> List<T> mapLinesToBeans(List<String> lines, String headerMarker, Class<T> type) {
-        if (lines == null || lines.isEmpty()) return new ArrayList<>();
-
-        int headerIndex = -1;
-        for (int i = 0; i < lines.size(); i++) {
-            if (lines.get(i).startsWith(headerMarker)) {
-                headerIndex = i;
-                break;
-            }
-        }
-
-        if (headerIndex == -1) {
-            return new ArrayList<>(); // Header not found in this section
-        }
-
-        StringBuilder cleanCsvBuffer = sanitizeCsv(lines, headerIndex);
-
-        try {
-            return new CsvToBeanBuilder<T>(new java.io.StringReader(cleanCsvBuffer.toString()))
-                    .withType(type)
-                    .withIgnoreLeadingWhiteSpace(true)
-                    .withIgnoreEmptyLine(true)
-                    .withThrowExceptions(false)
-                    .build()
-                    .parse();
-        } catch (RuntimeException e) {
-            log.error("CSV Parsing failed for type {}: {}", type.getSimpleName(), e.getMessage());
-            return new ArrayList<>();
+    private static Header readHeader(SimRaCsvReader reader) {
+        int width = reader.split();
+        Map<String, Integer> indexByName = new HashMap<>();
+        for (int i = 0; i < width; i++) {
+            // column names are matched case-insensitively, like the former header mapping strategy
+            indexByName.putIfAbsent(reader.stringValue(i).trim().toUpperCase(Locale.ROOT), i);
         }
+        return new Header(indexByName, width);
     }
 
-    private static @NonNull StringBuilder sanitizeCsv(List<String> lines, int headerIndex) {
-        String header = lines.get(headerIndex);
-        int expectedCols = countCommas(header) + 1;
-
-        StringBuilder cleanCsvBuffer = new StringBuilder();
-        for (int i = headerIndex; i < lines.size(); i++) {
-            String line = lines.get(i);
-            int currentCols = countCommas(line) + 1;
-
-            cleanCsvBuffer.append(line);
-            if (currentCols < expectedCols) {
-                cleanCsvBuffer.append(",".repeat(expectedCols - currentCols));  // padding
+    private void readIncidentRow(SimRaCsvReader reader, IncidentColumns columns, Ride ride, List<Incident> incidents) {
+        if (reader.split() > columns.width) return;
+
+        Integer key;
+        Double lat;
+        Double lon;
+        Long ts;
+        Integer bike;
+        Boolean childCheckBox;
+        Boolean trailerCheckBox;
+        Integer pLoc;
+        Integer incidentCode;
+        Boolean scary;
+        String description;
+        boolean[] participants = new boolean[PARTICIPANT_COLUMNS.length];
+        try {
+            key = optionalInt(reader, columns.key);
+            lat = optionalDouble(reader, columns.lat);
+            lon = optionalDouble(reader, columns.lon);
+            ts = optionalLong(reader, columns.ts);
+            bike = optionalInt(reader, columns.bike);
+            childCheckBox = optionalBoolean(reader, columns.childCheckBox);
+            trailerCheckBox = optionalBoolean(reader, columns.trailerCheckBox);
+            pLoc = optionalInt(reader, columns.pLoc);
+            incidentCode = optionalInt(reader, columns.incident);
+            scary = optionalBoolean(reader, columns.scary);
+            description = reader.stringValue(columns.desc);
+            for (int i = 0; i < participants.length; i++) {
+                participants[i] = Boolean.TRUE.equals(optionalBoolean(reader, columns.participants[i]));
             }
-            cleanCsvBuffer.append("\n");
+        } catch (IllegalArgumentException e) {
+            return; // malformed row, skipped as before
         }
-        return cleanCsvBuffer;
-    }
 
-    private static int countCommas(String str) {
-        int count = 0;
-        for (int i = 0; i < str.length(); i++) {
-            if (str.charAt(i) == ',') {
-                count++;
+        // Extract ride metadata from the first valid incident row (often row 0 has metadata)
+        if (bike != null && ride.getBikeType() == null) {
+            ride.setBikeType(BikeType.fromCode(bike));
+            ride.setChildTransport(Boolean.TRUE.equals(childCheckBox));
+            ride.setTrailerAttached(Boolean.TRUE.equals(trailerCheckBox));
+            if (pLoc != null) {
+                ride.setPhoneLocation(PhoneLocation.fromCode(pLoc));
             }
         }
-        return count;
-    }
 
-    private Incident mapToIncident(IncidentCsvBean bean, Ride ride) {
-        if (bean.getIncident() == null) return null;
-        // -5 is often used as a dummy or 'nothing' placeholder in SimRa
-        if (bean.getIncident() == -5) return null;
+        if (incidentCode == null || incidentCode == DUMMY_INCIDENT_CODE) return;
 
         Incident incident = new Incident();
         incident.setRide(ride);
-        incident.setIncidentKey(bean.getKey());
-
-        if (bean.getLat() != null && bean.getLon() != null) {
-            incident.setLocation(geometryFactory.createPoint(new Coordinate(bean.getLon(), bean.getLat())));
+        incident.setIncidentKey(key);
+        if (lat != null && lon != null) {
+            incident.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+        }
+        incident.setTimestamp(ts);
+        incident.setIncidentType(IncidentType.fromCode(incidentCode));
+        incident.setScary(Boolean.TRUE.equals(scary));
+        incident.setDescription(description);
+
+        Set<ParticipantType> involved = new HashSet<>();
+        for (int i = 0; i < participants.length; i++) {
+            if (participants[i]) involved.add(PARTICIPANT_COLUMNS[i]);
         }
-        incident.setTimestamp(bean.getTs());
-        incident.setIncidentType(IncidentType.fromCode(bean.getIncident()));
-        incident.setScary(Boolean.TRUE.equals(bean.getScary()));
-        incident.setDescription(bean.getDesc());
-
-        Set<ParticipantType> participants = new HashSet<>();
-        if (Boolean.TRUE.equals(bean.getI1())) participants.add(ParticipantType.BUS);
-        if (Boolean.TRUE.equals(bean.getI2())) participants.add(ParticipantType.CYCLIST);
-        if (Boolean.TRUE.equals(bean.getI3())) participants.add(ParticipantType.PEDESTRIAN);
-        if (Boolean.TRUE.equals(bean.getI4())) participants.add(ParticipantType.DELIVERY_VAN);
-        if (Boolean.TRUE.equals(bean.getI5())) participants.add(ParticipantType.TRUCK);
-        if (Boolean.TRUE.equals(bean.getI6())) participants.add(ParticipantType.MOTORCYCLE);
-        if (Boolean.TRUE.equals(bean.getI7())) participants.add(ParticipantType.CAR);
-        if (Boolean.TRUE.equals(bean.getI8())) participants.add(ParticipantType.TAXI);
-        if (Boolean.TRUE.equals(bean.getI9())) participants.add(ParticipantType.OTHER);
-        if (Boolean.TRUE.equals(bean.getI10())) participants.add(ParticipantType.SCOOTER);
-
-        incident.setInvolvedParticipants(participants);
-        return incident;
+        incident.setInvolvedParticipants(involved);
+        incidents.add(incident);
     }
 
-    private RidePoint mapToRidePoint(RidePointCsvBean bean, int sequence, Ride ride) {
+    private RidePoint readRidePointRow(SimRaCsvReader reader, RideColumns columns, Ride ride, List<RidePoint> points) {
+        if (reader.split() > columns.width) return null;
+
         RidePoint point = new RidePoint();
+        try {
+            Double lat = optionalDouble(reader, columns.lat);
+            Double lon = optionalDouble(reader, columns.lon);
+            if (lat != null && lon != null) {
+                point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+            }
+            point.setTimestamp(optionalLong(reader, columns.timeStamp));
+            point.setX(optionalDouble(reader, columns.x));
+            point.setY(optionalDouble(reader, columns.y));
+            point.setZ(optionalDouble(reader, columns.z));
+            point.setGpsAccuracy(optionalDouble(reader, columns.acc));
+            point.setA(optionalDouble(reader, columns.a));
+            point.setB(optionalDouble(reader, columns.b));
+            point.setC(optionalDouble(reader, columns.c));
+            columns.validateUnmappedNumbers(reader);
+        } catch (IllegalArgumentException e) {
+            return null; // malformed row, skipped as before
+        }
+
         point.setRide(ride);
-        point.setSequenceIndex(sequence);
-        point.setTimestamp(bean.getTimeStamp());
+        point.setSequenceIndex(points.size());
+        points.add(point);
+        return point;
+    }
 
-        if (bean.getLat() != null && bean.getLon() != null) {
-            point.setLocation(geometryFactory.createPoint(new Coordinate(bean.getLon(), bean.getLat())));
-        }
+    private static Integer optionalInt(SimRaCsvReader reader, int column) {
+        return reader.isEmpty(column) ? null : reader.intValue(column);
+    }
 
-        point.setX(bean.getX());
-        point.setY(bean.getY());
-        point.setZ(bean.getZ());
-        point.setGpsAccuracy(bean.getAcc());
-        point.setA(bean.getA());
-        point.setB(bean.getB());
-        point.setC(bean.getC());
+    private static Long optionalLong(SimRaCsvReader reader, int column) {
+        return reader.isEmpty(column) ? null : reader.longValue(column);
+    }
 
-        return point;
+    private static Double optionalDouble(SimRaCsvReader reader, int column) {
+        return reader.isEmpty(column) ? null : reader.doubleValue(column);
+    }
+
+    private static Boolean optionalBoolean(SimRaCsvReader reader, int column) {
+        return reader.isEmpty(column) ? null : reader.booleanValue(column);
     }
 
     private void addPointsToRide(Ride ride, List<RidePoint> points) {
@@ -234,6 +259,126 @@ public class SimRaFileParser {
             if (coordinates.length >= 2) {
                 ride.setTrajectory(geometryFactory.createLineString(coordinates));
             }
+            if (coordinates.length > 0) {
+                ride.setStartPoint(geometryFactory.createPoint(coordinates[0]));
+                ride.setEndPoint(geometryFactory.createPoint(coordinates[coordinates.length - 1]));
+            }
+            ride.setFingerprint(fingerprint(ride, points));
+        }
+    }
+
+    /**
+     * 64-bit fingerprint of the recording: start and end time, row count and every GPS fix
+     * rounded to 1e-5° (about 1 m). The same file uploaded under another name gets the same
+     * value; two different recordings practically never do.
+     */
+    static long fingerprint(Ride ride, List<RidePoint> points) {
+        long hash = FINGERPRINT_SEED;
+        hash = mix(hash, ride.getStartTime() != null ? ride.getStartTime() : Long.MIN_VALUE);
+        hash = mix(hash, ride.getEndTime() != null ? ride.getEndTime() : Long.MIN_VALUE);
+        hash = mix(hash, points.size());
+        for (RidePoint point : points) {
+            if (point.getLocation() == null) continue;
+            hash = mix(hash, Math.round(point.getLocation().getY() * FINGERPRINT_SCALE));
+            hash = mix(hash, Math.round(point.getLocation().getX() * FINGERPRINT_SCALE));
+        }
+        return hash;
+    }
+
+    // One round of SplitMix64 over the running hash
+    private static long mix(long hash, long value) {
+        long z = hash + value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private record Header(Map<String, Integer> indexByName, int width) {
+        int indexOf(String name) {
+            return indexByName.getOrDefault(name.toUpperCase(Locale.ROOT), -1);
+        }
+    }
+
+    private static final class IncidentColumns {
+        final int width;
+        final int key;
+        final int lat;
+        final int lon;
+        final int ts;
+        final int bike;
+        final int childCheckBox;
+        final int trailerCheckBox;
+        final int pLoc;
+        final int incident;
+        final int scary;
+        final int desc;
+        final int[] participants = new int[PARTICIPANT_COLUMNS.length];
+
+        IncidentColumns(Header header) {
+            width = header.width();
+            key = header.indexOf("key");
+            lat = header.indexOf("lat");
+            lon = header.indexOf("lon");
+            ts = header.indexOf("ts");
+            bike = header.indexOf("bike");
+            childCheckBox = header.indexOf("childCheckBox");
+            trailerCheckBox = header.indexOf("trailerCheckBox");
+            pLoc = header.indexOf("pLoc");
+            incident = header.indexOf("incident");
+            scary = header.indexOf("scary");
+            desc = header.indexOf("desc");
+            for (int i = 0; i < participants.length; i++) {
+                participants[i] = header.indexOf("i" + (i + 1));
+            }
+        }
+    }
+
+    private static final class RideColumns {
+        // Newer app versions record these alongside the GPS track. They are not stored, but a
+        // malformed value still rejects the row, as it did when the whole row was bound to a bean.
+        private static final String[] UNMAPPED_NUMERIC = {
+                "obsDistanceLeft1", "obsDistanceLeft2", "obsDistanceRight1", "obsDistanceRight2",
+                "RC", "RX", "RY", "RZ", "XL", "YL", "ZL"
+        };
+
+        final int width;
+        final int lat;
+        final int lon;
+        final int x;
+        final int y;
+        final int z;
+        final int timeStamp;
+        final int acc;
+        final int a;
+        final int b;
+        final int c;
+        final int obsClosePassEvent;
+        final int[] unmappedNumeric;
+
+        RideColumns(Header header) {
+            width = header.width();
+            lat = header.indexOf("lat");
+            lon = header.indexOf("lon");
+            x = header.indexOf("X");
+            y = header.indexOf("Y");
+            z = header.indexOf("Z");
+            timeStamp = header.indexOf("timeStamp");
+            acc = header.indexOf("acc");
+            a = header.indexOf("a");
+            b = header.indexOf("b");
+            c = header.indexOf("c");
+            obsClosePassEvent = header.indexOf("obsClosePassEvent");
+            unmappedNumeric = new int[UNMAPPED_NUMERIC.length];
+            for (int i = 0; i < UNMAPPED_NUMERIC.length; i++) {
+                unmappedNumeric[i] = header.indexOf(UNMAPPED_NUMERIC[i]);
+            }
+        }
+
+        void validateUnmappedNumbers(SimRaCsvReader reader) {
+            optionalBoolean(reader, obsClosePassEvent);
+            for (int column : unmappedNumeric) {
+                optionalDouble(reader, column);
+            }
         }
     }
 }
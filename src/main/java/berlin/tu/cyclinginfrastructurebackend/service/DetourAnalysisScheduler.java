@@ -2,47 +2,74 @@ package berlin.tu.cyclinginfrastructurebackend.service;
 
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Keeps the analysis executor busy with PENDING rides.
+ * <p>
+ * A dispatcher thread claims rides in chunks of at most {@code pipeline.analysis.claim-size}
+ * whenever workers free up, instead of claiming a large batch and waiting for its slowest ride.
+ * A semaphore with one permit per worker plus one per queued ride bounds the rides in flight, so
+ * the executor queue never holds more than one ride per worker and rides stay PENDING, claimable
+ * by other instances, until there is capacity for them. When nothing is pending the dispatcher
+ * polls every {@code pipeline.analysis.delay-ms}. While the configured analysis version is not
+ * the active one, pending rides are left to the active version and already analyzed rides are
+ * claimed for re-analysis instead (see {@link AnalysisVersionService}).
+ * <p>
+ * On shutdown no further rides are claimed, queued rides that have not started are put back to
+ * PENDING, and running analyses get up to {@link #SHUTDOWN_TIMEOUT_SECONDS} to finish. Rides
+ * still running after that are reset by {@link PipelineWorkClaimService#resetInterruptedWork()}
+ * on the next start.
+ */
 @Component
 public class DetourAnalysisScheduler {
 
     private static final Logger log = LoggerFactory.getLogger(DetourAnalysisScheduler.class);
 
+    static final int QUEUED_RIDES_PER_WORKER = 1;
+    static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+    private static final int NO_CAPACITY = -1;
+
     private final RideRepository rideRepository;
     private final DetourAnalysisService detourAnalysisService;
     private final Executor analysisExecutor;
     private final PipelineWorkClaimService workClaimService;
     private final TileBuildService tileBuildService;
 
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Map<Status, LongAdder> completedSinceReport = new EnumMap<>(Status.class);
+    private final Map<Status, LongAdder> completedTotal = new EnumMap<>(Status.class);
+    private volatile ResizableSemaphore slots;
+    private volatile Thread dispatcher;
+    private volatile int workers;
+    private volatile int capacity;
+
     @Value("${pipeline.enabled:true}")
     private boolean pipelineEnabled;
 
     @Value("${pipeline.analysis.enabled:false}")
     private boolean isBatchEnabled;
 
-    @Value("${pipeline.analysis.batch-size:500}")
-    private int batchSize;
+    @Value("${pipeline.analysis.claim-size:16}")
+    private int claimSize;
 
     @Value("${pipeline.analysis.delay-ms:10000}")
     private long delayMs;
@@ -63,121 +90,266 @@ public class DetourAnalysisScheduler {
         this.analysisExecutor = analysisExecutor;
         this.workClaimService = workClaimService;
         this.tileBuildService = tileBuildService;
+        for (Status status : Status.values()) {
+            completedSinceReport.put(status, new LongAdder());
+            completedTotal.put(status, new LongAdder());
+        }
     }
 
     @EventListener(ApplicationReadyEvent.class)
-    public void logSchedulerConfiguration() {
+    public void start() {
         if (!pipelineEnabled || !isBatchEnabled) {
             log.info("Detour analysis is DISABLED (pipeline.enabled={}, pipeline.analysis.enabled={})",
                     pipelineEnabled, isBatchEnabled);
             return;
         }
         long pendingRides = rideRepository.countByStatus(Status.PENDING);
-        log.info("Detour analysis is ENABLED: batches of up to {} rides every {}s on {} threads | {} rides pending",
-                batchSize, delayMs / 1000, threadPoolSize, pendingRides);
+        log.info("Detour analysis is ENABLED: {} threads, claiming up to {} rides as workers free up "
+                        + "(idle poll every {}s) | {} rides pending",
+                threadPoolSize, claimSize, delayMs / 1000, pendingRides);
+
+        open();
+        Thread thread = new Thread(this::dispatchLoop, "detour-analysis-dispatcher");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    void open() {
+        if (threadPoolSize < 1 || claimSize < 1) {
+            throw new IllegalArgumentException(
+                    "pipeline.analysis.thread-pool-size and pipeline.analysis.claim-size must be positive");
+        }
+        workers = threadPoolSize;
+        capacity = threadPoolSize * (1 + QUEUED_RIDES_PER_WORKER);
+        slots = new ResizableSemaphore(capacity);
+        running.set(true);
     }
 
     /**
-     * Claims one bounded batch of PENDING rides, submits the claimed rides
-     * to the thread pool in parallel, then returns control to the scheduler.
+     * Changes how many rides are analyzed at once. The executor's pool is resized by the
+     * caller; this adjusts the rides in flight and the claim size to match. Rides already in
+     * flight above a lowered limit finish normally.
      */
-    @Scheduled(fixedDelayString = "${pipeline.analysis.delay-ms:10000}")
-    public void processPendingRides() {
-        if (!pipelineEnabled || !isBatchEnabled) {
-            return;
+    public synchronized void resize(int newWorkers) {
+        if (newWorkers < 1) {
+            throw new IllegalArgumentException("At least one analysis worker is needed");
         }
+        ResizableSemaphore current = slots;
+        if (current == null || newWorkers == workers) return;
 
-        List<UUID> rideIds = workClaimService.claimPendingRidesForAnalysis(batchSize);
-        if (rideIds.isEmpty()) {
-            log.debug("No rides claimed for analysis.");
-            return;
+        int newCapacity = newWorkers * (1 + QUEUED_RIDES_PER_WORKER);
+        int delta = newCapacity - capacity;
+        if (delta > 0) {
+            current.release(delta);
+        } else {
+            current.reduce(-delta);
         }
+        capacity = newCapacity;
+        workers = newWorkers;
+    }
 
-        long pendingAfterClaim = rideRepository.countByStatus(Status.PENDING);
-        log.info("=== Detour analysis batch started: {} rides claimed, {} still pending ===",
-                rideIds.size(), pendingAfterClaim);
-
-        Instant runStart = Instant.now();
-        AtomicInteger completedCount = new AtomicInteger();
-        Map<Status, AtomicInteger> statusCounts = new ConcurrentHashMap<>();
-
-        List<CompletableFuture<Void>> futures = rideIds.stream()
-                .map(id -> CompletableFuture.runAsync(() -> {
-                    Status result;
-                    try {
-                        result = detourAnalysisService.analyzeRide(id);
-                    } catch (Exception e) {
-                        log.error("Uncaught error analyzing ride {}", id, e);
-                        rideRepository.updateStatus(id, Status.ERROR);
-                        result = Status.ERROR;
-                    }
-                    statusCounts.computeIfAbsent(result, s -> new AtomicInteger()).incrementAndGet();
-                    completedCount.incrementAndGet();
-                }, analysisExecutor))
-                .toList();
-
-        awaitWithProgressLogging(
-                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)),
-                completedCount, statusCounts, rideIds.size(), runStart);
-
-        Duration totalDuration = Duration.between(runStart, Instant.now());
-        double ridesPerSec = completedCount.get() / Math.max(totalDuration.toMillis() / 1000.0, 0.001);
-        long pendingAfterBatch = rideRepository.countByStatus(Status.PENDING);
-        log.info("=== Detour analysis batch finished: {} processed, {} skipped, {} errors "
-                        + "in {} ({} rides/sec) | {} rides pending ===",
-                count(statusCounts, Status.PROCESSED),
-                count(statusCounts, Status.SKIPPED),
-                count(statusCounts, Status.ERROR),
-                formatDuration(totalDuration),
-                String.format("%.1f", ridesPerSec),
-                pendingAfterBatch);
-
-        if (completedCount.get() > 0) {
-            tileBuildService.markDataChanged();
-        }
+    public int workers() {
+        return workers;
+    }
+
+    /**
+     * @return the most rides claimed at once: the configured claim size, but never more than
+     * there are workers
+     */
+    public int claimSize() {
+        return Math.min(claimSize, Math.max(1, workers));
     }
 
     /**
-     * Blocks until all analysis tasks finish, emitting a progress log line
-     * every {@code progressLogIntervalMs} so long batches are visible in the logs.
+     * @return rides finished with the given status since startup
      */
-    private void awaitWithProgressLogging(CompletableFuture<Void> allTasks,
-                                          AtomicInteger completedCount,
-                                          Map<Status, AtomicInteger> statusCounts,
-                                          int total,
-                                          Instant runStart) {
-        while (true) {
+    public long completed(Status status) {
+        return completedTotal.get(status).sum();
+    }
+
+    private void dispatchLoop() {
+        long reportStart = System.nanoTime();
+        while (running.get()) {
             try {
-                allTasks.get(progressLogIntervalMs, TimeUnit.MILLISECONDS);
-                return;
-            } catch (TimeoutException e) {
-                logProgress(completedCount.get(), total, statusCounts, runStart);
+                if (dispatchOnce() == 0) {
+                    Thread.sleep(delayMs);
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                log.warn("Interrupted while waiting for analysis batch to finish ({}/{} rides done).",
-                        completedCount.get(), total);
-                return;
-            } catch (ExecutionException e) {
-                // tasks catch their own exceptions, so this should not happen
-                log.error("Unexpected failure while waiting for analysis batch", e.getCause());
-                return;
+                break;
+            } catch (RuntimeException e) {
+                log.error("Claiming rides for analysis failed, retrying in {} ms", delayMs, e);
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            long elapsed = System.nanoTime() - reportStart;
+            if (elapsed >= TimeUnit.MILLISECONDS.toNanos(progressLogIntervalMs)) {
+                logProgress(Duration.ofNanos(elapsed));
+                reportStart = System.nanoTime();
             }
         }
     }
 
-    private void logProgress(int done, int total, Map<Status, AtomicInteger> statusCounts, Instant runStart) {
-        double elapsedSec = Math.max(Duration.between(runStart, Instant.now()).toMillis() / 1000.0, 0.001);
-        double ridesPerSec = done / elapsedSec;
-        String eta = ridesPerSec > 0
-                ? formatDuration(Duration.ofSeconds((long) ((total - done) / ridesPerSec)))
-                : "unknown";
-        log.info("Detour analysis progress: {}/{} rides done ({} errors) | {} rides/sec, ~{} remaining",
-                done, total, count(statusCounts, Status.ERROR), String.format("%.1f", ridesPerSec), eta);
+    /**
+     * Waits up to a second for a free worker, then claims as many rides as there is room for,
+     * at most {@code claimSize}, and hands them to the executor.
+     *
+     * @return the number of rides claimed, 0 if none are pending, or a negative number if no
+     * worker became free
+     */
+    int dispatchOnce() throws InterruptedException {
+        if (!slots.tryAcquire(1, TimeUnit.SECONDS)) {
+            return NO_CAPACITY;
+        }
+        int free = 1 + slots.drainPermits();
+        int wanted = Math.min(free, claimSize());
+        slots.release(free - wanted);
+
+        List<UUID> rideIds;
+        List<UUID> reanalysisIds = List.of();
+        try {
+            rideIds = workClaimService.claimPendingRidesForAnalysis(wanted);
+            if (rideIds.size() < wanted) {
+                reanalysisIds = workClaimService.claimRidesForReanalysis(wanted - rideIds.size());
+            }
+        } catch (RuntimeException e) {
+            slots.release(wanted);
+            throw e;
+        }
+        slots.release(wanted - rideIds.size() - reanalysisIds.size());
+
+        for (UUID rideId : rideIds) {
+            submit(rideId, false);
+        }
+        for (UUID rideId : reanalysisIds) {
+            submit(rideId, true);
+        }
+        return rideIds.size() + reanalysisIds.size();
     }
 
-    private int count(Map<Status, AtomicInteger> statusCounts, Status status) {
-        AtomicInteger counter = statusCounts.get(status);
-        return counter != null ? counter.get() : 0;
+    private void submit(UUID rideId, boolean reanalysis) {
+        try {
+            analysisExecutor.execute(() -> {
+                try {
+                    analyze(rideId, reanalysis);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // the executor is shutting down
+            slots.release();
+            log.warn("Could not submit ride {} for analysis: {}", rideId, e.getMessage());
+            release(rideId, reanalysis);
+        }
+    }
+
+    private void analyze(UUID rideId, boolean reanalysis) {
+        if (!running.get()) {
+            // claimed but not started before shutdown: leave it for the next run
+            release(rideId, reanalysis);
+            return;
+        }
+
+        Status result;
+        try {
+            result = detourAnalysisService.analyzeRide(rideId);
+        } catch (Exception e) {
+            log.error("Uncaught error analyzing ride {}", rideId, e);
+            if (reanalysis) {
+                // the ride keeps its current result
+                workClaimService.releaseReanalysis(rideId);
+            } else {
+                rideRepository.updateStatus(rideId, Status.ERROR);
+            }
+            result = Status.ERROR;
+        }
+        completedSinceReport.get(result).increment();
+        completedTotal.get(result).increment();
+        if (result == Status.PROCESSED) {
+            tileBuildService.markDataChanged();
+        }
+    }
+
+    private void release(UUID rideId, boolean reanalysis) {
+        if (reanalysis) {
+            workClaimService.releaseReanalysis(rideId);
+        } else {
+            rideRepository.updateStatus(rideId, Status.PENDING);
+        }
+    }
+
+    boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return rides claimed and not yet finished
+     */
+    public int inFlight() {
+        Semaphore current = slots;
+        return current != null ? capacity - current.availablePermits() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running.getAndSet(false)) return;
+
+        Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        try {
+            if (thread != null) {
+                thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+            }
+            // every finished or released ride returns its permit
+            if (slots.tryAcquire(capacity, SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.info("Detour analysis stopped with no rides in flight");
+            } else {
+                log.warn("Detour analysis stopped with {} rides still running; they are reset to PENDING "
+                        + "on the next start", inFlight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logProgress(Duration interval) {
+        long processed = completedSinceReport.get(Status.PROCESSED).sumThenReset();
+        long skipped = completedSinceReport.get(Status.SKIPPED).sumThenReset();
+        long errors = completedSinceReport.get(Status.ERROR).sumThenReset();
+        long done = processed + skipped + errors;
+        if (done == 0) return;
+
+        double ridesPerSec = done / Math.max(interval.toMillis() / 1000.0, 0.001);
+        ShortestPathCache.Stats routeCache = detourAnalysisService.shortestPathCacheStats();
+        log.info("Detour analysis progress: {} rides in the last {} ({} processed, {} skipped, {} errors) "
+                        + "| {} rides/sec, {} in flight | {} rides pending | shortest path cache hit rate {}%",
+                done, formatDuration(interval), processed, skipped, errors,
+                String.format("%.1f", ridesPerSec), inFlight(),
+                rideRepository.countByStatus(Status.PENDING),
+                routeCache != null ? String.format("%.1f", routeCache.hitRate() * 100) : "N/A");
+    }
+
+    /**
+     * A semaphore whose number of permits can shrink while they are held.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        void reduce(int permits) {
+            reducePermits(permits);
+        }
     }
 
     private String formatDuration(Duration d) {
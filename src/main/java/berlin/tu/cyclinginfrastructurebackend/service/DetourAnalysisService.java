@@ -4,20 +4,18 @@ import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
 import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.RouteComparisonType;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideAnalysisRepository;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
-import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentRepository;
 import berlin.tu.cyclinginfrastructurebackend.util.BearingCalculator;
+import berlin.tu.cyclinginfrastructurebackend.util.EdgeTimeline;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
 import com.graphhopper.ResponsePath;
-import com.graphhopper.util.DistanceCalcEarth;
-import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.details.PathDetail;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.io.WKTWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -33,43 +31,73 @@ public class DetourAnalysisService {
 
     private final GraphHopperService graphHopperService;
     private final RideRepository rideRepository;
+    private final RideAnalysisRepository rideAnalysisRepository;
     private final StreetSegmentService streetSegmentService;
-    private final StreetSegmentRepository streetSegmentRepository;
     private final RideIntentClassifier rideIntentClassifier;
     private final RouteComparisonClassifier routeComparisonClassifier;
+    private final RouteOverlapCalculator routeOverlapCalculator;
+    private final ParallelEdgeIndex parallelEdgeIndex;
+    private final AnalysisVersionService analysisVersionService;
     private final TransactionTemplate transactionTemplate;
     private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
-    private final WKTWriter wktWriter = new WKTWriter();
 
     @Value("${analysis.spatial.proximity-meters}")
     private double proximityMeters;
 
     public DetourAnalysisService(GraphHopperService graphHopperService,
                                  RideRepository rideRepository,
+                                 RideAnalysisRepository rideAnalysisRepository,
                                  StreetSegmentService streetSegmentService,
-                                 StreetSegmentRepository streetSegmentRepository,
                                  RideIntentClassifier rideIntentClassifier,
                                  RouteComparisonClassifier routeComparisonClassifier,
+                                 RouteOverlapCalculator routeOverlapCalculator,
+                                 ParallelEdgeIndex parallelEdgeIndex,
+                                 AnalysisVersionService analysisVersionService,
                                  PlatformTransactionManager transactionManager) {
         this.graphHopperService = graphHopperService;
         this.rideRepository = rideRepository;
+        this.rideAnalysisRepository = rideAnalysisRepository;
         this.streetSegmentService = streetSegmentService;
-        this.streetSegmentRepository = streetSegmentRepository;
         this.rideIntentClassifier = rideIntentClassifier;
         this.routeComparisonClassifier = routeComparisonClassifier;
+        this.routeOverlapCalculator = routeOverlapCalculator;
+        this.parallelEdgeIndex = parallelEdgeIndex;
+        this.analysisVersionService = analysisVersionService;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * Analyzes a claimed ride. The ride is read through {@link RideAnalysisRepository} as a
+     * detached read model, and only the columns the analysis sets are written back, together
+     * with the ride's segment events in one transaction. While the configured analysis version
+     * is not the active one, only rides claimed for re-analysis are analyzed, and their results
+     * are kept apart as candidates of that version.
+     */
     public Status analyzeRide(UUID rideId) {
         Status result = transactionTemplate.execute(txStatus -> {
-            Ride ride = rideRepository.findById(rideId).orElse(null);
+            Ride ride = rideAnalysisRepository.findForAnalysis(rideId).orElse(null);
             if (ride == null) {
                 log.warn("Ride with ID {} not found during analysis.", rideId);
                 return Status.ERROR;
             }
 
             try {
-                return analyzeLoadedRide(ride);
+                boolean candidate = analysisVersionService.lockForAnalysis();
+                if (candidate && ride.getStatus() == Status.ANALYZING) {
+                    // claimed while the configured version was still active: leave it to the active one
+                    rideRepository.updateStatus(rideId, Status.PENDING);
+                    return Status.PENDING;
+                }
+                ride.setAnalysisVersion(analysisVersionService.version());
+                Status status = analyzeLoadedRide(ride, candidate);
+                if (candidate) {
+                    rideAnalysisRepository.saveCandidateResult(ride);
+                } else if (status == Status.PROCESSED) {
+                    rideAnalysisRepository.saveResult(ride);
+                } else {
+                    rideRepository.updateStatus(rideId, status);
+                }
+                return status;
             } catch (Exception e) {
                 log.error("Failed to analyze ride {}", rideId, e);
                 txStatus.setRollbackOnly();
@@ -78,46 +106,34 @@ public class DetourAnalysisService {
         });
 
         if (result == Status.ERROR) {
-            rideRepository.updateStatus(rideId, Status.ERROR);
+            transactionTemplate.executeWithoutResult(txStatus -> {
+                if (analysisVersionService.lockForAnalysis()) {
+                    rideAnalysisRepository.saveCandidateStatus(rideId, analysisVersionService.version(), Status.ERROR);
+                } else {
+                    rideRepository.updateStatus(rideId, Status.ERROR);
+                }
+            });
         }
         return result;
     }
 
     Status analyzeLoadedRide(Ride ride) {
-        List<RidePoint> points = ride.getRidePoints().stream()
-                .filter(p -> p.getLocation() != null)
-                .sorted(Comparator.comparingLong(RidePoint::getTimestamp))
-                .toList();
-
-        if (points.size() < 2 || ride.getTraversedEdgeIds().isEmpty() || ride.getTrajectory() == null) {
-            ride.setStatus(Status.SKIPPED);
-            return Status.SKIPPED;
-        }
-
-        RidePoint start = points.getFirst();
-        RidePoint end = points.getLast();
-
-        ResponsePath shortestPath = graphHopperService.getShortestPath(
-                start.getLocation().getY(), start.getLocation().getX(),
-                end.getLocation().getY(), end.getLocation().getX()
-        );
+        return analyzeLoadedRide(ride, false);
+    }
 
-        if (shortestPath == null) {
+    Status analyzeLoadedRide(Ride ride, boolean candidate) {
+        RoutedRide routed = route(ride);
+        if (routed == null) {
             ride.setStatus(Status.SKIPPED);
             return Status.SKIPPED;
         }
 
-        Set<Integer> shortestEdges = extractEdgeIds(shortestPath);
+        List<RidePoint> points = routed.points();
+        ResponsePath shortestPath = routed.shortestPath();
+        Set<Integer> shortestEdges = routed.shortestEdges();
+        LineString shortestPathGeometry = routed.shortestPathGeometry();
         Set<Integer> actualEdges = new HashSet<>(ride.getTraversedEdgeIds());
 
-        // Build shortest-path geometry and persist (can be removed in the future)
-        PointList ghPoints = shortestPath.getPoints();
-        Coordinate[] coords = new Coordinate[ghPoints.size()];
-        for (int i = 0; i < ghPoints.size(); i++) {
-            coords[i] = new Coordinate(ghPoints.getLon(i), ghPoints.getLat(i));
-        }
-        LineString shortestPathGeometry = geometryFactory.createLineString(coords);
-
         ride.setShortestPath(shortestPathGeometry);
         ride.setShortestPathEdgeIds(new ArrayList<>(shortestEdges));
 
@@ -149,12 +165,8 @@ public class DetourAnalysisService {
 
             ensureEdgesExist(allEdges);
 
-            LineString actualTrajectory = ride.getTrajectory();
-            Set<Integer> avoidedEdges = filterSpatiallyDistantEdges(
-                    shortestEdges, actualEdges, actualTrajectory);
-
-            Set<Integer> chosenEdges = filterSpatiallyDistantEdges(
-                    actualEdges, shortestEdges, shortestPathGeometry);
+            Set<Integer> avoidedEdges = filterSpatiallyDistantEdges(shortestEdges, actualEdges);
+            Set<Integer> chosenEdges = filterSpatiallyDistantEdges(actualEdges, shortestEdges);
 
             Map<Integer, Double> avoidedEdgeBearings = buildEdgeBearingsFromShortestPath(
                     shortestPath,
@@ -180,7 +192,8 @@ public class DetourAnalysisService {
                     chosenEdgeBearings,
                     chosenEdgeTimestamps,
                     ride,
-                    graphHopperService
+                    graphHopperService,
+                    candidate
             );
 
             return Status.PROCESSED;
@@ -192,6 +205,52 @@ public class DetourAnalysisService {
         return Status.PROCESSED;
     }
 
+    /**
+     * CPU-only half of the analysis: routes the shortest path between the ride's first and last
+     * GPS point and builds its geometry, without touching the database.
+     *
+     * @return {@code null} if the ride cannot be analyzed or no shortest path was found
+     */
+    public RoutedRide route(Ride ride) {
+        List<RidePoint> points = RideTrackCodec.points(ride).stream()
+                .filter(p -> p.getLocation() != null)
+                .sorted(Comparator.comparingLong(RidePoint::getTimestamp))
+                .toList();
+
+        if (points.size() < 2 || ride.getTraversedEdgeIds().isEmpty() || ride.getTrajectory() == null) {
+            return null;
+        }
+
+        RidePoint start = points.getFirst();
+        RidePoint end = points.getLast();
+
+        ResponsePath shortestPath = graphHopperService.getShortestPath(
+                start.getLocation().getY(), start.getLocation().getX(),
+                end.getLocation().getY(), end.getLocation().getX()
+        );
+
+        if (shortestPath == null) {
+            return null;
+        }
+
+        // Build shortest-path geometry and persist (can be removed in the future)
+        PointList ghPoints = shortestPath.getPoints();
+        Coordinate[] coords = new Coordinate[ghPoints.size()];
+        for (int i = 0; i < ghPoints.size(); i++) {
+            coords[i] = new Coordinate(ghPoints.getLon(i), ghPoints.getLat(i));
+        }
+
+        return new RoutedRide(points, shortestPath, extractEdgeIds(shortestPath),
+                geometryFactory.createLineString(coords));
+    }
+
+    /**
+     * @return usage of the shortest path cache, or {@code null} before GraphHopper is loaded
+     */
+    public ShortestPathCache.Stats shortestPathCacheStats() {
+        return graphHopperService.getShortestPathCacheStats();
+    }
+
     private Set<Integer> extractEdgeIds(ResponsePath path) {
         Set<Integer> edges = new HashSet<>();
         List<PathDetail> edgeDetails = path.getPathDetails().get("edge_id");
@@ -204,7 +263,7 @@ public class DetourAnalysisService {
     }
 
     /**
-     * Ensures all edges exist in street_segments so PostGIS ST_DWithin queries can work.
+     * Ensures all edges exist in street_segments before segment events reference them.
      * Processes edge IDs in sorted (ascending) order to prevent deadlocks.
      */
     private void ensureEdgesExist(Set<Integer> edgeIds) {
@@ -213,40 +272,17 @@ public class DetourAnalysisService {
 
     /**
      * Filters source edges to find those physically distant from a reference path.
-     * Uses PostGIS ST_DWithin (meters) to solve the "parallel edge" problem — segregated
-     * cycle paths or opposite-direction edges get different IDs but are spatially close.
+     * Solves the "parallel edge" problem — segregated cycle paths or opposite-direction edges get
+     * different IDs but are spatially close — with the precomputed neighbor lists of
+     * {@link ParallelEdgeIndex}: an edge counts as close if any reference edge lies within
+     * the proximity radius.
      *
-     * @param sourceEdges       Edges to evaluate (e.g., shortest-path edges)
-     * @param referenceEdges    Edges to skip (shared between both paths)
-     * @param referenceGeometry The physical path to measure against
+     * @param sourceEdges    Edges to evaluate (e.g., shortest-path edges)
+     * @param referenceEdges Edges of the path to measure against, also skipped as shared
      * @return Edge IDs that are genuinely spatially divergent from the reference path
      */
-    private Set<Integer> filterSpatiallyDistantEdges(Set<Integer> sourceEdges,
-                                                     Set<Integer> referenceEdges,
-                                                     LineString referenceGeometry) {
-        Set<Integer> filteredEdges = new HashSet<>();
-        String referenceWkt = wktWriter.write(referenceGeometry);
-        List<Long> candidateEdgeIds = sourceEdges.stream()
-                .filter(edgeId -> !referenceEdges.contains(edgeId))
-                .map(Integer::longValue)
-                .toList();
-
-        if (candidateEdgeIds.isEmpty()) {
-            return filteredEdges;
-        }
-
-        Set<Long> closeEdgeIds = new HashSet<>(streetSegmentRepository.findEdgeIdsWithinDistance(
-                candidateEdgeIds,
-                referenceWkt,
-                proximityMeters
-        ));
-
-        for (Long edgeId : candidateEdgeIds) {
-            if (!closeEdgeIds.contains(edgeId)) {
-                filteredEdges.add(edgeId.intValue());
-            }
-        }
-        return filteredEdges;
+    private Set<Integer> filterSpatiallyDistantEdges(Set<Integer> sourceEdges, Set<Integer> referenceEdges) {
+        return parallelEdgeIndex.distantEdges(sourceEdges, referenceEdges);
     }
 
     /**
@@ -254,10 +290,7 @@ public class DetourAnalysisService {
      * around the actual route. Independent of how GraphHopper splits a physical street into edges.
      */
     private double calculateSpatialLengthOverlap(LineString actualPath, LineString shortestPath) {
-        Double overlapRatio = rideRepository.calculateSpatialLengthOverlap(
-                wktWriter.write(actualPath),
-                wktWriter.write(shortestPath),
-                proximityMeters);
+        Double overlapRatio = routeOverlapCalculator.lengthOverlap(actualPath, shortestPath, proximityMeters);
 
         if (overlapRatio == null || !Double.isFinite(overlapRatio)
                 || overlapRatio < 0.0 || overlapRatio > 1.0) {
@@ -349,27 +382,25 @@ public class DetourAnalysisService {
     }
 
     /**
-     * Computes timestamps for avoided edges by finding the closest point on the actual trajectory.
-     * Since these edges weren't traversed, this method estimates when the rider was nearest to them.
-     * Distances are compared in normalized form (monotonic with real distance but without the
-     * final asin/radius step), which is enough to pick the closest point.
+     * Computes timestamps for avoided edges from the point of the actual track nearest to them.
+     * Since these edges weren't traversed, this estimates when the rider was closest to them.
      *
      * @param avoidedEdges the set of edge IDs that were avoided
      * @param ride         the ride containing trajectory and timestamps
      * @param sortedPoints ride points pre-filtered for location and sorted by timestamp
      * @return map of edge ID to estimated timestamp
+     * @see EdgeTimeline
      */
     private Map<Integer, Long> computeAvoidedEdgeTimestamps(Set<Integer> avoidedEdges,
                                                             Ride ride,
                                                             List<RidePoint> sortedPoints) {
         Map<Integer, Long> timestamps = new LinkedHashMap<>();
-        DistanceCalcEarth distCalc = DistanceCalcEarth.DIST_EARTH;
 
-        List<RidePoint> candidatePoints = sortedPoints.stream()
+        EdgeTimeline timeline = EdgeTimeline.of(sortedPoints.stream()
                 .filter(p -> p.getTimestamp() != null)
-                .toList();
+                .toList());
 
-        if (candidatePoints.isEmpty()) {
+        if (timeline.isEmpty()) {
             // fallback start time
             for (Integer edgeId : avoidedEdges) {
                 timestamps.put(edgeId, ride.getStartTime());
@@ -377,44 +408,25 @@ public class DetourAnalysisService {
             return timestamps;
         }
 
-        var baseGraph = graphHopperService.getHopper().getBaseGraph();
         for (Integer edgeId : avoidedEdges) {
-            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
-
-            if (edge == null) {
-                timestamps.put(edgeId, ride.getStartTime());
-                continue;
-            }
-
-            PointList geometry = edge.fetchWayGeometry(FetchMode.ALL);
-            if (geometry == null || geometry.isEmpty()) {
-                timestamps.put(edgeId, ride.getStartTime());
-                continue;
-            }
-
-            // Use edge midpoint
-            int midIdx = geometry.size() / 2;
-            double edgeLat = geometry.getLat(midIdx);
-            double edgeLon = geometry.getLon(midIdx);
-
-            // Find closest RidePoint
-            RidePoint closestPoint = null;
-            double minDistance = Double.MAX_VALUE;
-
-            for (RidePoint point : candidatePoints) {
-                double pointLat = point.getLocation().getY();
-                double pointLon = point.getLocation().getX();
-                double distance = distCalc.calcNormalizedDist(edgeLat, edgeLon, pointLat, pointLon);
-
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closestPoint = point;
-                }
-            }
-
-            timestamps.put(edgeId, closestPoint != null ? closestPoint.getTimestamp() : ride.getStartTime());
+            EdgeGeometryCache.EdgeGeometry geometry = graphHopperService.getEdgeGeometry(edgeId);
+            Long timestamp = geometry != null
+                    ? timeline.timeNear(geometry.midpointLat(), geometry.midpointLon())
+                    : null;
+            timestamps.put(edgeId, timestamp != null ? timestamp : ride.getStartTime());
         }
 
         return timestamps;
     }
+
+    /**
+     * A ride with its shortest path, ready for the spatial comparison.
+     *
+     * @param points GPS points with a location, sorted by timestamp
+     */
+    public record RoutedRide(List<RidePoint> points,
+                             ResponsePath shortestPath,
+                             Set<Integer> shortestEdges,
+                             LineString shortestPathGeometry) {
+    }
 }
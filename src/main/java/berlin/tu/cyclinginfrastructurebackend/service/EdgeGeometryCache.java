@@ -0,0 +1,243 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.util.BearingCalculator;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Geometry and derived attributes of base graph edges, computed once per edge and shared by all
+ * threads.
+ * <p>
+ * Fetching an edge's way geometry allocates a new {@link PointList} every time, and matching,
+ * segment creation and detour analysis all look at the same edges again and again. The cache is
+ * a fixed array of slots indexed by the edge id; base graph edge ids are dense, so neighbouring
+ * ids never collide and an id only displaces the one exactly a capacity apart. Entries are
+ * immutable, so a lookup is a single volatile read and two threads loading the same edge at once
+ * merely do the work twice.
+ */
+public class EdgeGeometryCache {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final IntFunction<EdgeIteratorState> edges;
+    private final AtomicReferenceArray<EdgeGeometry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries upper bound of cached edges, rounded up to a power of two
+     * @param edges      returns the edge with the given id in storage direction, or {@code null}
+     */
+    public EdgeGeometryCache(int maxEntries, IntFunction<EdgeIteratorState> edges) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Edge geometry cache needs room for at least one edge");
+        }
+        int capacity = maxEntries >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit(maxEntries - 1) << 1;
+        capacity = Math.max(1, capacity);
+        this.edges = edges;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the edge's geometry, or {@code null} if the graph has no such edge
+     */
+    public EdgeGeometry get(int edgeId) {
+        int slot = edgeId & mask;
+        EdgeGeometry cached = slots.get(slot);
+        if (cached != null && cached.edgeId() == edgeId) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        EdgeIteratorState edge = edges.apply(edgeId);
+        if (edge == null) return null;
+
+        EdgeGeometry loaded = EdgeGeometry.of(edgeId, edge.fetchWayGeometry(FetchMode.ALL), edge.getDistance());
+        slots.set(slot, loaded);
+        return loaded;
+    }
+
+    public Stats stats() {
+        return new Stats(slots.length(), hits.sum(), misses.sum());
+    }
+
+    /**
+     * Cache usage since startup.
+     *
+     * @param capacity number of slots
+     * @param hits     lookups answered from the cache
+     * @param misses   lookups that fetched the geometry from the graph
+     */
+    public record Stats(int capacity, long hits, long misses) {
+
+        /**
+         * @return share of lookups answered from the cache, 0 before the first lookup
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+    }
+
+    /**
+     * An edge's way geometry in storage direction (base node to adjacent node) with the
+     * attributes derived from it. Coordinates are packed as 1e-7 degree integers, the precision
+     * GraphHopper stores them in.
+     */
+    public static final class EdgeGeometry {
+
+        private static final double COORDINATE_FACTOR = 1e7;
+
+        private final int edgeId;
+        private final int[] coordinates;
+        private final double length;
+        private final double midpointLat;
+        private final double midpointLon;
+        private final Double bearing;
+        private final Double reverseBearing;
+        private final Double gradientPercent;
+
+        private EdgeGeometry(int edgeId, int[] coordinates, double length, double midpointLat, double midpointLon,
+                             Double bearing, Double reverseBearing, Double gradientPercent) {
+            this.edgeId = edgeId;
+            this.coordinates = coordinates;
+            this.length = length;
+            this.midpointLat = midpointLat;
+            this.midpointLon = midpointLon;
+            this.bearing = bearing;
+            this.reverseBearing = reverseBearing;
+            this.gradientPercent = gradientPercent;
+        }
+
+        /**
+         * @param points   the edge's full way geometry in storage direction
+         * @param distance the edge's length in meters as stored in the graph
+         */
+        static EdgeGeometry of(int edgeId, PointList points, double distance) {
+            int n = points.size();
+            int[] coordinates = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                coordinates[2 * i] = (int) Math.round(points.getLat(i) * COORDINATE_FACTOR);
+                coordinates[2 * i + 1] = (int) Math.round(points.getLon(i) * COORDINATE_FACTOR);
+            }
+
+            double[] midpoint = lengthMidpoint(points);
+            Double bearing = n >= 2 ? BearingCalculator.calculateBearing(points, 0, n - 1) : null;
+            Double reverseBearing = n >= 2 ? BearingCalculator.calculateBearing(points.clone(true), 0, n - 1) : null;
+            return new EdgeGeometry(edgeId, coordinates, distance, midpoint[0], midpoint[1],
+                    bearing, reverseBearing, gradientPercent(points, distance));
+        }
+
+        /**
+         * Average gradient (%) from the first to the last point; positive = uphill in storage
+         * direction, {@code null} without elevation data.
+         */
+        private static Double gradientPercent(PointList points, double distance) {
+            if (!points.is3D() || points.isEmpty()) return null;
+            if (distance < 1.0) return 0.0;
+            return ((points.getEle(points.size() - 1) - points.getEle(0)) / distance) * 100.0;
+        }
+
+        /**
+         * Point halfway along the geometry's length; {@code NaN} for an empty geometry.
+         */
+        private static double[] lengthMidpoint(PointList points) {
+            int n = points.size();
+            if (n == 0) return new double[]{Double.NaN, Double.NaN};
+
+            double total = 0;
+            for (int i = 1; i < n; i++) {
+                total += segmentLength(points, i);
+            }
+            double remaining = total / 2;
+            for (int i = 1; i < n; i++) {
+                double length = segmentLength(points, i);
+                if (length >= remaining && length > 0) {
+                    double f = remaining / length;
+                    return new double[]{
+                            points.getLat(i - 1) + f * (points.getLat(i) - points.getLat(i - 1)),
+                            points.getLon(i - 1) + f * (points.getLon(i) - points.getLon(i - 1))};
+                }
+                remaining -= length;
+            }
+            return new double[]{points.getLat(0), points.getLon(0)};
+        }
+
+        private static double segmentLength(PointList points, int i) {
+            return DistanceCalcEarth.DIST_EARTH.calcDist(
+                    points.getLat(i - 1), points.getLon(i - 1), points.getLat(i), points.getLon(i));
+        }
+
+        public int edgeId() {
+            return edgeId;
+        }
+
+        public int size() {
+            return coordinates.length / 2;
+        }
+
+        public boolean isEmpty() {
+            return coordinates.length == 0;
+        }
+
+        /** Latitude of point {@code i} in storage direction. */
+        public double lat(int i) {
+            return coordinates[2 * i] / COORDINATE_FACTOR;
+        }
+
+        /** Longitude of point {@code i} in storage direction. */
+        public double lon(int i) {
+            return coordinates[2 * i + 1] / COORDINATE_FACTOR;
+        }
+
+        /** Latitude of point {@code i} counted in travel direction. */
+        public double lat(int i, boolean reverse) {
+            return lat(reverse ? size() - 1 - i : i);
+        }
+
+        /** Longitude of point {@code i} counted in travel direction. */
+        public double lon(int i, boolean reverse) {
+            return lon(reverse ? size() - 1 - i : i);
+        }
+
+        /** Length in meters as stored in the graph. */
+        public double length() {
+            return length;
+        }
+
+        public double midpointLat() {
+            return midpointLat;
+        }
+
+        public double midpointLon() {
+            return midpointLon;
+        }
+
+        /**
+         * Length-weighted compass bearing in travel direction, see
+         * {@link BearingCalculator#calculateBearing(PointList, int, int)}.
+         *
+         * @return degrees in {@code [0, 360)}, {@code null} for fewer than two points
+         */
+        public Double bearing(boolean reverse) {
+            return reverse ? reverseBearing : bearing;
+        }
+
+        /**
+         * Average gradient (%) in storage direction, {@code null} without elevation data.
+         */
+        public Double gradientPercent() {
+            return gradientPercent;
+        }
+    }
+}
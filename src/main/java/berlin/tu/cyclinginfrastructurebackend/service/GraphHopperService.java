@@ -8,6 +8,12 @@ import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
 import com.graphhopper.reader.dem.SRTMProvider;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
@@ -25,6 +31,7 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -59,9 +66,24 @@ public class GraphHopperService {
     @Value("${graphhopper.elevation.cache_dir}")
     private String elevationCacheDir;
 
+    @Value("${graphhopper.matching.pool-size:0}")
+    private int matcherPoolSize;
+
+    @Value("${graphhopper.edge-cache.max-entries:262144}")
+    private int edgeCacheMaxEntries;
+
+    @Value("${graphhopper.route-cache.max-entries:16384}")
+    private int routeCacheMaxEntries;
+
     @Getter
     private GraphHopper hopper;
-    private final ThreadLocal<MapMatching> mapMatchingThreadLocal = new ThreadLocal<>();
+    // changes with every import of the graph, for caches persisted across restarts
+    @Getter
+    private long graphVersion;
+    private MapMatcherPool matcherPool;
+    private EdgeGeometryCache edgeGeometryCache;
+    private ShortestPathCache shortestPathCache;
+    private EdgeFilter shortestSnapFilter;
 
     @PostConstruct
     public void init() {
@@ -86,18 +108,64 @@ public class GraphHopperService {
         hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(PROFILE_BIKE_SHORTEST));
 
         hopper.importOrLoad();
+        useGraph(hopper);
+    }
+
+    /**
+     * Sets up the matchers, caches and snap filter for an imported graph. A new graph always
+     * gets new caches, so nothing cached for a previous one is ever returned.
+     */
+    void useGraph(GraphHopper graph) {
+        hopper = graph;
+
+        // Create all matchers now so the first imports do not pay for it
+        int poolSize = matcherPoolSize > 0 ? matcherPoolSize : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        matcherPool = new MapMatcherPool(poolSize, () -> MapMatching.fromGraphHopper(
+                hopper,
+                new PMap().putObject("profile", PROFILE_BIKE_MATCH_NEUTRAL)));
+        log.info("Created {} map matchers in {} ms", poolSize, (System.nanoTime() - start) / 1_000_000);
+
+        BaseGraph baseGraph = hopper.getBaseGraph();
+        edgeGeometryCache = new EdgeGeometryCache(
+                Math.max(1, Math.min(edgeCacheMaxEntries, baseGraph.getEdges())),
+                edgeId -> baseGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE));
+
+        // the filter GraphHopper's router snaps bike_shortest requests with
+        shortestSnapFilter = new DefaultSnapFilter(
+                hopper.createWeighting(hopper.getProfile(PROFILE_BIKE_SHORTEST), new PMap()),
+                hopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(PROFILE_BIKE_SHORTEST)));
+        graphVersion = graphVersion(hopper.getProperties().get("datareader.import.date"),
+                baseGraph.getNodes(), baseGraph.getEdges());
+        shortestPathCache = new ShortestPathCache(routeCacheMaxEntries);
     }
 
     /**
-     * Downloads the OSM extract if it is not present. The download goes to a
-     * .part file first and is moved into place only on success, so an aborted
-     * download is never mistaken for a complete file on the next startup.
+     * 64-bit FNV-1a hash of the graph's import time (to the second) and size.
+     */
+    static long graphVersion(String importDate, int nodes, int edges) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : String.valueOf(importDate).getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        hash = (hash ^ nodes) * 0x100000001B3L;
+        return (hash ^ edges) * 0x100000001B3L;
+    }
+
+    /**
+     * Downloads the OSM extract if it is not present and no imported graph exists. The
+     * download goes to a .part file first and is moved into place only on success, so an
+     * aborted download is never mistaken for a complete file on the next startup.
      */
     private void ensureOsmFile() {
         Path target = Path.of(osmFile);
         if (Files.exists(target)) {
             return;
         }
+        if (Files.exists(Path.of(graphLocation, "properties"))) {
+            // an imported graph is loaded without its OSM file
+            return;
+        }
 
         log.info("OSM file not found at {}, downloading from {} (several GB, this can take a while)",
                 osmFile, osmDownloadUrl);
@@ -135,25 +203,71 @@ public class GraphHopperService {
         }
     }
 
-    public MatchResult match(List<Observation> observations) {
-        MapMatching mm = mapMatchingThreadLocal.get();
-        if (mm == null) {
-            mm = MapMatching.fromGraphHopper(
-                    hopper,
-                    new PMap().putObject("profile", PROFILE_BIKE_MATCH_NEUTRAL));
-            mapMatchingThreadLocal.set(mm);
-        }
-        return mm.match(observations);
+    /**
+     * Map matches the observations with a matcher borrowed from the pool, waiting for one if all
+     * are in use.
+     *
+     * @throws InterruptedException if interrupted while waiting for a matcher
+     */
+    public MatchResult match(List<Observation> observations) throws InterruptedException {
+        return matcherPool.withMatcher(mm -> mm.match(observations));
     }
 
+    public MapMatcherPool.Stats getMatcherPoolStats() {
+        return matcherPool != null ? matcherPool.stats() : null;
+    }
+
+    /**
+     * Geometry and derived attributes of a base graph edge in storage direction, from the shared
+     * cache.
+     *
+     * @return the edge's geometry, or {@code null} if the graph has no such edge
+     */
+    public EdgeGeometryCache.EdgeGeometry getEdgeGeometry(int edgeId) {
+        return edgeGeometryCache.get(edgeId);
+    }
+
+    public EdgeGeometryCache.Stats getEdgeGeometryCacheStats() {
+        return edgeGeometryCache != null ? edgeGeometryCache.stats() : null;
+    }
+
+    public ShortestPathCache.Stats getShortestPathCacheStats() {
+        return shortestPathCache != null ? shortestPathCache.stats() : null;
+    }
+
+    /**
+     * Shortest {@code bike_shortest} path between the graph nodes closest to the two positions,
+     * from the shared cache.
+     * <p>
+     * Both positions are snapped to the nearest node of an accessible edge and the path is routed
+     * between the nodes, not the exact positions, so every ride starting and ending at the same
+     * nodes gets the same path. The returned path is shared and must not be modified.
+     *
+     * @return the path, or {@code null} if a position cannot be snapped or no route exists
+     */
     public ResponsePath getShortestPath(double fromLat, double fromLon, double toLat, double toLon) {
-        GHRequest req = new GHRequest(fromLat, fromLon, toLat, toLon)
+        Snap from = hopper.getLocationIndex().findClosest(fromLat, fromLon, shortestSnapFilter);
+        Snap to = hopper.getLocationIndex().findClosest(toLat, toLon, shortestSnapFilter);
+        if (!from.isValid() || !to.isValid()) {
+            log.warn("GraphHopper could not snap coords: {}/{} to {}/{}", fromLat, fromLon, toLat, toLon);
+            return null;
+        }
+
+        int fromNode = from.getClosestNode();
+        int toNode = to.getClosestNode();
+        return shortestPathCache.get(fromNode, toNode, () -> route(fromNode, toNode));
+    }
+
+    private ResponsePath route(int fromNode, int toNode) {
+        NodeAccess nodes = hopper.getBaseGraph().getNodeAccess();
+        GHRequest req = new GHRequest(nodes.getLat(fromNode), nodes.getLon(fromNode),
+                nodes.getLat(toNode), nodes.getLon(toNode))
                 .setProfile(PROFILE_BIKE_SHORTEST)
                 .setPathDetails(List.of("edge_id")); // Explicitly request edge IDs
 
         GHResponse rsp = hopper.route(req);
         if (rsp.hasErrors() || rsp.getAll().isEmpty()) {
-            log.warn("GraphHopper routing failed for coords: {}/{} to {}/{}", fromLat, fromLon, toLat, toLon);
+            log.warn("GraphHopper routing failed between nodes {} and {}", fromNode, toNode);
             return null;
         }
         return rsp.getBest();
@@ -180,20 +294,12 @@ public class GraphHopperService {
 
     /** Computes average gradient (%) for an edge. Positive = uphill, negative = downhill. */
     public Double getGradientPercent(int edgeId) {
-        EdgeIteratorState edge = hopper.getBaseGraph().getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
-        PointList points = edge.fetchWayGeometry(FetchMode.ALL);
-        if (!points.is3D()) {
+        EdgeGeometryCache.EdgeGeometry geometry = edgeGeometryCache.get(edgeId);
+        if (geometry == null) return null;
+        if (geometry.gradientPercent() == null) {
             log.warn("Edge {} has no elevation data (is3D=false)", edgeId);
-            return null;
         }
-
-        double startElevation = points.getEle(0);
-        double endElevation = points.getEle(points.size() - 1);
-        double distance = edge.getDistance();
-
-        if (distance < 1.0) return 0.0;
-
-        return ((endElevation - startElevation) / distance) * 100.0;
+        return geometry.gradientPercent();
     }
 
     @PreDestroy
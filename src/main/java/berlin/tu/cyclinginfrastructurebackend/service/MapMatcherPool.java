@@ -0,0 +1,88 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.matching.MapMatching;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of reusable {@link MapMatching} instances, created up front.
+ * <p>
+ * A {@code MapMatching} is not thread-safe and is costly to create, so each caller borrows one
+ * for the duration of a match and returns it afterwards. Callers beyond the pool size wait for a
+ * free instance, which also bounds how many HMM lattices are in memory at once. Because the
+ * instances belong to the pool and not to threads, it does not matter how the calling executors
+ * create or retire their threads.
+ */
+public class MapMatcherPool {
+
+    private final int size;
+    private final BlockingQueue<MapMatching> idle;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitedBorrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public MapMatcherPool(int size, Supplier<MapMatching> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Map matcher pool size must be at least 1");
+        }
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            idle.add(factory.get());
+        }
+    }
+
+    /**
+     * Runs {@code work} with a borrowed matcher, waiting for one if all are in use.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting, e.g. on shutdown
+     */
+    public <T> T withMatcher(Function<MapMatching, T> work) throws InterruptedException {
+        MapMatching matcher = borrow();
+        try {
+            return work.apply(matcher);
+        } finally {
+            idle.add(matcher);
+        }
+    }
+
+    private MapMatching borrow() throws InterruptedException {
+        borrows.incrementAndGet();
+        MapMatching matcher = idle.poll();
+        if (matcher != null) {
+            return matcher;
+        }
+
+        long start = System.nanoTime();
+        matcher = idle.take();
+        long waited = System.nanoTime() - start;
+        waitedBorrows.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        return matcher;
+    }
+
+    public Stats stats() {
+        return new Stats(size, size - idle.size(), borrows.get(), waitedBorrows.get(),
+                totalWaitNanos.get(), maxWaitNanos.get());
+    }
+
+    /**
+     * Pool usage since startup.
+     *
+     * @param size           number of matchers
+     * @param inUse          matchers borrowed right now
+     * @param borrows        matches run through the pool
+     * @param waitedBorrows  matches that had to wait for a free matcher
+     * @param totalWaitNanos time spent waiting, summed over all matches
+     * @param maxWaitNanos   longest single wait
+     */
+    public record Stats(int size, int inUse, long borrows, long waitedBorrows, long totalWaitNanos, long maxWaitNanos) {
+    }
+}
@@ -4,14 +4,12 @@ import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
 import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
-import berlin.tu.cyclinginfrastructurebackend.util.BearingCalculator;
+import berlin.tu.cyclinginfrastructurebackend.util.EdgeTimeline;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
 import com.graphhopper.matching.EdgeMatch;
-import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.Observation;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
-import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -26,6 +24,7 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,23 +34,72 @@ public class MapMatchingService {
     private final GraphHopperService hopperService;
     private final StreetSegmentService segmentService;
     private final RideRepository rideRepository;
+    private final ObservationThinner observationThinner;
+    private final ChunkedMapMatcher chunkedMatcher;
     private final double minimumOriginDestinationDistanceMeters;
     private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
 
     public MapMatchingService(GraphHopperService hopperService,
                               StreetSegmentService segmentService,
                               RideRepository rideRepository,
+                              ObservationThinner observationThinner,
+                              ChunkedMapMatcher chunkedMatcher,
                               @Value("${analysis.minimum-origin-destination-distance-meters:500}")
                               double minimumOriginDestinationDistanceMeters) {
         this.hopperService = hopperService;
         this.segmentService = segmentService;
         this.rideRepository = rideRepository;
+        this.observationThinner = observationThinner;
+        this.chunkedMatcher = chunkedMatcher;
         this.minimumOriginDestinationDistanceMeters = minimumOriginDestinationDistanceMeters;
     }
 
-    public boolean processRide(Ride ride) {
+    public boolean processRide(Ride ride) throws InterruptedException {
+        return processRide(ride, rideRepository::save);
+    }
+
+    /**
+     * Map-matches a freshly parsed ride and hands it to {@code rideWriter} for persistence,
+     * both when it is matched and when it is stored as skipped.
+     *
+     * @param ride       the parsed ride including its points and incidents
+     * @param rideWriter persists the new ride with all child rows, e.g. via JPA or bulk COPY
+     * @return {@code false} if the ride could not be matched and was not stored
+     * @throws InterruptedException if interrupted while waiting for a matcher
+     */
+    public boolean processRide(Ride ride, Consumer<Ride> rideWriter) throws InterruptedException {
+        MatchedRide matched = match(ride);
+        if (matched == null) return false;
+
+        try {
+            persist(matched, rideWriter);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to process ride {}: {}", ride.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * CPU-only half of {@link #processRide(Ride, Consumer)}: snaps the ride to the road network and
+     * fills in its trajectory and per-edge collections without touching the database. Rides whose
+     * origin and destination are too close together come back with {@link Status#SKIPPED}.
+     *
+     * @return the matched ride, or {@code null} if it has too few valid points or matching failed
+     * @throws InterruptedException if interrupted while waiting for a matcher; the ride is neither
+     *                              matched nor failed and should be left for the next run
+     */
+    public MatchedRide match(Ride ride) throws InterruptedException {
+        return match(ride, observationThinner);
+    }
+
+    /**
+     * Same as {@link #match(Ride)} with a different observation reducer, e.g. to compare thinned
+     * against unthinned matching.
+     */
+    public MatchedRide match(Ride ride, ObservationThinner thinner) throws InterruptedException {
         List<RidePoint> validPoints = filterAndSortPoints(ride);
-        if (validPoints.size() < 2) return false;
+        if (validPoints.size() < 2) return null;
 
         double originDestinationDistanceMeters = calculateOriginDestinationDistanceMeters(validPoints);
         if (originDestinationDistanceMeters < minimumOriginDestinationDistanceMeters) {
@@ -59,21 +107,20 @@ public class MapMatchingService {
                     "Skipping ride {}: origin-destination distance {} m is below the minimum of {} m",
                     ride.getId(), originDestinationDistanceMeters, minimumOriginDestinationDistanceMeters);
             ride.setStatus(Status.SKIPPED);
-            rideRepository.save(ride);
-            return true;
+            return new MatchedRide(ride, List.of());
         }
 
         try {
-            List<Observation> observations = validPoints.stream()
+            List<Observation> observations = thinner.thin(validPoints).stream()
                     .map(p -> new Observation(new GHPoint(p.getLocation().getY(), p.getLocation().getX())))
                     .collect(Collectors.toList());
 
-            MatchResult result = hopperService.match(observations);
-            ride.setActualDistance(result.getMatchLength());
-            updateRideTrajectory(ride, result);
+            ChunkedMapMatcher.Match result = chunkedMatcher.match(observations);
+            ride.setActualDistance(result.length());
+            updateRideTrajectory(ride, result.edgeMatches());
 
             // Extract edge IDs
-            List<EdgeMatch> edgeMatches = result.getEdgeMatches();
+            List<EdgeMatch> edgeMatches = result.edgeMatches();
             List<EdgeIteratorState> edges = edgeMatches.stream()
                     .map(EdgeMatch::getEdgeState)
                     .collect(Collectors.toList());
@@ -82,27 +129,54 @@ public class MapMatchingService {
             ride.setTraversedEdgeBearings(computeEdgeBearings(edgeMatches));
             ride.setTraversedEdgeTimestamps(computeEdgeTimestamps(edgeMatches, validPoints));
 
-            segmentService.recordUsage(edges, hopperService);
-
             ride.setStatus(Status.PENDING);
-            rideRepository.save(ride);
-            return true;
+            return new MatchedRide(ride, edges);
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to process ride {}: {}", ride.getId(), e.getMessage());
-            return false;
+            return null;
         }
     }
 
-    private void updateRideTrajectory(Ride ride, MatchResult result) {
+    /**
+     * @return usage of the map matcher pool, or {@code null} before GraphHopper is loaded
+     */
+    public MapMatcherPool.Stats matcherPoolStats() {
+        return hopperService.getMatcherPoolStats();
+    }
+
+    /**
+     * @return usage of the edge geometry cache, or {@code null} before GraphHopper is loaded
+     */
+    public EdgeGeometryCache.Stats edgeGeometryCacheStats() {
+        return hopperService.getEdgeGeometryCacheStats();
+    }
+
+    /**
+     * Database half of {@link #processRide(Ride, Consumer)}: counts segment usage for matched
+     * rides and stores the ride through {@code rideWriter}.
+     */
+    public void persist(MatchedRide matched, Consumer<Ride> rideWriter) {
+        if (!matched.edges().isEmpty()) {
+            segmentService.recordUsage(matched.edges(), hopperService);
+        }
+        rideWriter.accept(matched.ride());
+    }
+
+    private void updateRideTrajectory(Ride ride, List<EdgeMatch> matches) {
         List<Coordinate> allCoords = new ArrayList<>();
-        List<EdgeMatch> matches = result.getEdgeMatches();
 
         for (int i = 0; i < matches.size(); i++) {
-            PointList pl = matches.get(i).getEdgeState().fetchWayGeometry(FetchMode.ALL);
-            for (int j = 0; j < pl.size(); j++) {
+            EdgeIteratorState edgeState = matches.get(i).getEdgeState();
+            EdgeGeometryCache.EdgeGeometry geometry = hopperService.getEdgeGeometry(edgeState.getEdge());
+            if (geometry == null) continue;
+
+            boolean reverse = edgeState.get(EdgeIteratorState.REVERSE_STATE);
+            for (int j = 0; j < geometry.size(); j++) {
                 // Skip the first point of subsequent edges to avoid duplicates
                 if (i > 0 && j == 0) continue;
-                allCoords.add(new Coordinate(pl.getLon(j), pl.getLat(j)));
+                allCoords.add(new Coordinate(geometry.lon(j, reverse), geometry.lat(j, reverse)));
             }
         }
 
@@ -112,7 +186,7 @@ public class MapMatchingService {
     }
 
     private List<RidePoint> filterAndSortPoints(Ride ride) {
-        return ride.getRidePoints().stream()
+        return RideTrackCodec.points(ride).stream()
                 .filter(p -> p.getLocation() != null && p.getTimestamp() != null)
                 .filter(p -> isValidCoordinate(p.getLocation().getY(), p.getLocation().getX()))
                 .sorted(Comparator.comparingLong(RidePoint::getTimestamp))
@@ -135,10 +209,9 @@ public class MapMatchingService {
     /**
      * Computes compass bearings for each edge in the match result.
      * <p>
-     * This method is called during map matching while the EdgeMatch objects are still available.
-     * The EdgeIteratorState from EdgeMatch.getEdgeState() returns geometry in the direction of
-     * traversal, so the bearing accurately reflects the rider's travel direction without needing
-     * any reversal logic.
+     * The cached geometry is stored in the edge's storage direction; the edge states of the match
+     * result say whether the rider travelled against it, so the bearing reflects the rider's
+     * travel direction.
      *
      * @param edgeMatches the list of edge matches from the map matching result
      * @return a map from edge ID to bearing in degrees (0-360), preserving traversal order;
@@ -156,76 +229,50 @@ public class MapMatchingService {
                 continue;
             }
 
-            PointList geometry = edgeState.fetchWayGeometry(FetchMode.ALL);
-            if (geometry == null || geometry.size() < 2) {
-                bearings.put(edgeId, null);
-                continue;
-            }
-
-            // Geometry is already in traversal direction, so compute bearing from start to end
-            Double bearing = BearingCalculator.calculateBearing(geometry, 0, geometry.size() - 1);
-            bearings.put(edgeId, bearing);
+            EdgeGeometryCache.EdgeGeometry geometry = hopperService.getEdgeGeometry(edgeId);
+            bearings.put(edgeId, geometry != null
+                    ? geometry.bearing(edgeState.get(EdgeIteratorState.REVERSE_STATE))
+                    : null);
         }
 
         return bearings;
     }
 
     /**
-     * Computes timestamps for each edge by finding the closest RidePoint to each edge's geometry.
-     * Uses spatial distance to match GPS points to map-matched edges.
+     * Computes timestamps for each edge from the GPS track, walking the matched edges in
+     * traversal order so that a street passed twice keeps the time of its first pass.
      *
      * @param edgeMatches the list of edge matches from map matching
-     * @param ridePoints the original GPS points with timestamps
+     * @param ridePoints the original GPS points with timestamps, sorted by timestamp
      * @return a map from edge ID to timestamp (milliseconds since epoch)
+     * @see EdgeTimeline
      */
     private Map<Integer, Long> computeEdgeTimestamps(List<EdgeMatch> edgeMatches,
                                                       List<RidePoint> ridePoints) {
-        Map<Integer, Long> timestamps = new LinkedHashMap<>();
-        DistanceCalcEarth distCalc = new DistanceCalcEarth();
-
-        for (EdgeMatch match : edgeMatches) {
-            EdgeIteratorState edgeState = match.getEdgeState();
-            int edgeId = edgeState.getEdge();
-
-            // Skip if already computed
-            if (timestamps.containsKey(edgeId)) {
-                continue;
-            }
-
-            // Get edge geometry
-            PointList geometry = edgeState.fetchWayGeometry(FetchMode.ALL);
-            if (geometry == null || geometry.isEmpty()) {
-                timestamps.put(edgeId, null);
-                continue;
-            }
-
-            // Use edge midpoint
-            int midIdx = geometry.size() / 2;
-            double edgeLat = geometry.getLat(midIdx);
-            double edgeLon = geometry.getLon(midIdx);
-
-            // Find closest RidePoint
-            RidePoint closestPoint = null;
-            double minDistance = Double.MAX_VALUE;
-
-            for (RidePoint point : ridePoints) {
-                if (point.getLocation() == null || point.getTimestamp() == null) {
-                    continue;
-                }
-
-                double pointLat = point.getLocation().getY();
-                double pointLon = point.getLocation().getX();
-                double distance = distCalc.calcDist(edgeLat, edgeLon, pointLat, pointLon);
-
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closestPoint = point;
-                }
-            }
-
-            timestamps.put(edgeId, closestPoint != null ? closestPoint.getTimestamp() : null);
+        double[] lats = new double[edgeMatches.size()];
+        double[] lons = new double[edgeMatches.size()];
+        for (int i = 0; i < edgeMatches.size(); i++) {
+            EdgeGeometryCache.EdgeGeometry geometry =
+                    hopperService.getEdgeGeometry(edgeMatches.get(i).getEdgeState().getEdge());
+            lats[i] = geometry != null ? geometry.midpointLat() : Double.NaN;
+            lons[i] = geometry != null ? geometry.midpointLon() : Double.NaN;
         }
+        Long[] times = EdgeTimeline.of(ridePoints).timesAlongPath(lats, lons);
 
+        Map<Integer, Long> timestamps = new LinkedHashMap<>();
+        for (int i = 0; i < edgeMatches.size(); i++) {
+            timestamps.putIfAbsent(edgeMatches.get(i).getEdgeState().getEdge(), times[i]);
+        }
         return timestamps;
     }
+
+    /**
+     * A ride after map matching, waiting to be persisted.
+     *
+     * @param ride  the ride with trajectory and edge collections filled in
+     * @param edges traversed edges in order (repeats included) for usage counting; empty for
+     *              skipped rides
+     */
+    public record MatchedRide(Ride ride, List<EdgeIteratorState> edges) {
+    }
 }
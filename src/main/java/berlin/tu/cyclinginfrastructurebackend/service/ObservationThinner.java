@@ -0,0 +1,156 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import com.graphhopper.util.DistanceCalcEarth;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Reduces a ride's GPS samples to the ones map matching needs before they become GraphHopper
+ * observations. The HMM's candidate search and transition routing grow with the number of
+ * observations, while a 1 Hz track on a straight street adds nothing after its first and last
+ * sample.
+ * <p>
+ * Two passes run over the time-ordered points:
+ * <ol>
+ *     <li>minimum spacing — a point closer than {@code minDistanceMeters} to the last kept one is
+ *     dropped (standing at traffic lights, GPS jitter);</li>
+ *     <li>Douglas-Peucker — points within {@code toleranceMeters} of the line between their kept
+ *     neighbours are dropped, but kept points are never more than {@code maxGapMeters} apart so
+ *     the matcher does not have to route across long gaps.</li>
+ * </ol>
+ * The first and last point are always kept. Kept points are the original {@link RidePoint}
+ * objects with their timestamps; edge times are still assigned from the full track.
+ */
+@Component
+public class ObservationThinner {
+
+    private static final double METERS_PER_DEGREE = DistanceCalcEarth.METERS_PER_DEGREE;
+
+    private final double minDistanceMeters;
+    private final double toleranceMeters;
+    private final double maxGapMeters;
+
+    public ObservationThinner(@Value("${import.thinning.min-distance-meters:0}") double minDistanceMeters,
+                              @Value("${import.thinning.tolerance-meters:0}") double toleranceMeters,
+                              @Value("${import.thinning.max-gap-meters:250}") double maxGapMeters) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.toleranceMeters = toleranceMeters;
+        this.maxGapMeters = maxGapMeters > 0 ? maxGapMeters : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * A thinner that keeps every point, e.g. to compare against unthinned matching.
+     */
+    public static ObservationThinner disabled() {
+        return new ObservationThinner(0, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return minDistanceMeters > 0 || toleranceMeters > 0;
+    }
+
+    /**
+     * @param points located points sorted by timestamp
+     * @return the points to match, in the same order; {@code points} itself when thinning is off
+     */
+    public List<RidePoint> thin(List<RidePoint> points) {
+        if (!isEnabled() || points.size() <= 2) {
+            return points;
+        }
+        List<RidePoint> spaced = minDistanceMeters > 0 ? space(points) : points;
+        return toleranceMeters > 0 ? simplify(spaced) : spaced;
+    }
+
+    private List<RidePoint> space(List<RidePoint> points) {
+        List<RidePoint> kept = new ArrayList<>();
+        RidePoint last = points.getFirst();
+        kept.add(last);
+        for (int i = 1; i < points.size() - 1; i++) {
+            RidePoint point = points.get(i);
+            if (distance(last, point) >= minDistanceMeters) {
+                kept.add(point);
+                last = point;
+            }
+        }
+        kept.add(points.getLast());
+        return kept;
+    }
+
+    private List<RidePoint> simplify(List<RidePoint> points) {
+        int n = points.size();
+        // local equirectangular projection in meters, accurate enough at the scale of a ride
+        double originLat = points.getFirst().getLocation().getY();
+        double originLon = points.getFirst().getLocation().getX();
+        double lonScale = Math.cos(Math.toRadians(originLat));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (points.get(i).getLocation().getX() - originLon) * lonScale * METERS_PER_DEGREE;
+            y[i] = (points.get(i).getLocation().getY() - originLat) * METERS_PER_DEGREE;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, n - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            if (last - first < 2) continue;
+
+            int farthest = -1;
+            double maxDistance = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+
+            int split;
+            if (maxDistance > toleranceMeters) {
+                split = farthest;
+            } else if (Math.hypot(x[last] - x[first], y[last] - y[first]) > maxGapMeters) {
+                // straight but too long: halve it
+                split = (first + last) >>> 1;
+            } else {
+                continue;
+            }
+            keep[split] = true;
+            ranges.push(new int[]{first, split});
+            ranges.push(new int[]{split, last});
+        }
+
+        List<RidePoint> kept = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) kept.add(points.get(i));
+        }
+        return kept;
+    }
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    private static double distance(RidePoint a, RidePoint b) {
+        return DistanceCalcEarth.DIST_EARTH.calcDist(
+                a.getLocation().getY(), a.getLocation().getX(),
+                b.getLocation().getY(), b.getLocation().getX());
+    }
+}
@@ -0,0 +1,360 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.shapes.BBox;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * For every routing graph edge, the ids of the other edges within
+ * {@code analysis.spatial.proximity-meters} of it: segregated cycle paths next to their road,
+ * the two carriageways of a divided street, and the edges meeting it at a junction.
+ * <p>
+ * The detour analysis uses the lists to drop avoided and chosen edges that merely run parallel
+ * to the other route, with set lookups instead of a PostGIS distance query per ride. A list is
+ * computed the first time an edge is asked for, from the {@code LocationIndex} candidates
+ * around the edge and the minimum distance between the two geometries on a local metric plane.
+ * All lists can also be built at startup. Computed lists are written to
+ * {@code analysis.parallel-edges.cache-file} on shutdown and loaded again on the next start,
+ * as long as the graph import and the radius are unchanged.
+ * <p>
+ * There is at most one list per edge, so memory is bounded by the graph, but a whole country
+ * at roughly 100 bytes per list is several GB. At most {@code analysis.parallel-edges.max-entries}
+ * lists are kept; the lists of further edges are computed again on every use. Rides come from
+ * one region, so the lists they need stay well below the limit.
+ */
+@Component
+public class ParallelEdgeIndex {
+    private static final Logger log = LoggerFactory.getLogger(ParallelEdgeIndex.class);
+
+    private static final int FILE_MAGIC = 0x50454932; // "PEI2"
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final int EDGES_PER_TASK = 10_000;
+
+    private final GraphHopperService hopperService;
+    private final double radiusMeters;
+    private final Path cacheFile;
+    private final boolean buildOnStartup;
+    private final int maxEntries;
+    private final Map<Integer, int[]> neighbors = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean full = new AtomicBoolean();
+
+    public ParallelEdgeIndex(GraphHopperService hopperService,
+                             @Value("${analysis.spatial.proximity-meters}") double radiusMeters,
+                             @Value("${analysis.parallel-edges.cache-file:${graphhopper.graph.location}/parallel-edges.bin}")
+                             String cacheFile,
+                             @Value("${pipeline.enabled:true}") boolean pipelineEnabled,
+                             @Value("${analysis.parallel-edges.build-on-startup:false}") boolean buildOnStartup,
+                             @Value("${analysis.parallel-edges.max-entries:1048576}") int maxEntries) {
+        if (radiusMeters < 0) {
+            throw new IllegalArgumentException("analysis.spatial.proximity-meters must not be negative");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("analysis.parallel-edges.max-entries must be positive");
+        }
+        this.hopperService = hopperService;
+        this.radiusMeters = radiusMeters;
+        this.cacheFile = cacheFile == null || cacheFile.isBlank() ? null : Path.of(cacheFile);
+        this.buildOnStartup = pipelineEnabled && buildOnStartup;
+        this.maxEntries = maxEntries;
+    }
+
+    @PostConstruct
+    public void init() {
+        load();
+        if (buildOnStartup) {
+            buildAll();
+            save();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    /**
+     * @return the source edges not in {@code referenceEdges} that have no neighbor in
+     * {@code referenceEdges}, i.e. that run more than the radius away from the reference route
+     */
+    public Set<Integer> distantEdges(Collection<Integer> sourceEdges, Set<Integer> referenceEdges) {
+        Set<Integer> distant = new HashSet<>();
+        for (Integer edgeId : sourceEdges) {
+            if (edgeId == null || referenceEdges.contains(edgeId)) continue;
+
+            boolean close = false;
+            for (int neighbor : neighbors(edgeId)) {
+                if (referenceEdges.contains(neighbor)) {
+                    close = true;
+                    break;
+                }
+            }
+            if (!close) {
+                distant.add(edgeId);
+            }
+        }
+        return distant;
+    }
+
+    /**
+     * @return the ids of the other edges within the radius, ascending
+     */
+    public int[] neighbors(int edgeId) {
+        int[] cached = neighbors.get(edgeId);
+        if (cached != null) return cached;
+
+        int[] computed = computeNeighbors(edgeId);
+        // concurrent callers may overshoot the limit by a few lists
+        if (neighbors.size() >= maxEntries) {
+            if (!full.getAndSet(true)) {
+                log.warn("Keeping no more than analysis.parallel-edges.max-entries={} parallel edge lists, "
+                        + "further lists are computed on every use", maxEntries);
+            }
+            return computed;
+        }
+        int[] previous = neighbors.putIfAbsent(edgeId, computed);
+        if (previous == null) {
+            dirty.set(true);
+            return computed;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return neighbors.size();
+    }
+
+    private int[] computeNeighbors(int edgeId) {
+        EdgeGeometryCache.EdgeGeometry geometry = hopperService.getEdgeGeometry(edgeId);
+        if (geometry == null || geometry.isEmpty()) return new int[0];
+
+        // local plane around the edge's first point
+        double originLat = geometry.lat(0);
+        double originLon = geometry.lon(0);
+        double lonScale = Math.cos(Math.toRadians(originLat));
+        double[] x = new double[geometry.size()];
+        double[] y = new double[geometry.size()];
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < geometry.size(); i++) {
+            x[i] = (geometry.lon(i) - originLon) * lonScale * METERS_PER_DEGREE;
+            y[i] = (geometry.lat(i) - originLat) * METERS_PER_DEGREE;
+            minLat = Math.min(minLat, geometry.lat(i));
+            maxLat = Math.max(maxLat, geometry.lat(i));
+            minLon = Math.min(minLon, geometry.lon(i));
+            maxLon = Math.max(maxLon, geometry.lon(i));
+        }
+        double latMargin = radiusMeters / METERS_PER_DEGREE;
+        double lonMargin = latMargin / lonScale;
+        BBox bbox = new BBox(minLon - lonMargin, maxLon + lonMargin, minLat - latMargin, maxLat + latMargin);
+
+        Set<Integer> candidates = new HashSet<>();
+        hopperService.getHopper().getLocationIndex().query(bbox, candidates::add);
+        candidates.remove(edgeId);
+
+        int[] result = new int[candidates.size()];
+        int count = 0;
+        for (int candidateId : candidates) {
+            EdgeGeometryCache.EdgeGeometry candidate = hopperService.getEdgeGeometry(candidateId);
+            if (candidate == null || candidate.isEmpty()) continue;
+
+            double[] cx = new double[candidate.size()];
+            double[] cy = new double[candidate.size()];
+            for (int i = 0; i < candidate.size(); i++) {
+                cx[i] = (candidate.lon(i) - originLon) * lonScale * METERS_PER_DEGREE;
+                cy[i] = (candidate.lat(i) - originLat) * METERS_PER_DEGREE;
+            }
+            if (withinDistance(x, y, cx, cy, radiusMeters)) {
+                result[count++] = candidateId;
+            }
+        }
+        int[] neighborIds = Arrays.copyOf(result, count);
+        Arrays.sort(neighborIds);
+        return neighborIds;
+    }
+
+    /**
+     * Whether two polylines come within {@code distance} of each other.
+     */
+    static boolean withinDistance(double[] ax, double[] ay, double[] bx, double[] by, double distance) {
+        double distanceSquared = distance * distance;
+        if (ax.length == 1) {
+            return pointToPolylineSquared(ax[0], ay[0], bx, by) <= distanceSquared;
+        }
+        if (bx.length == 1) {
+            return pointToPolylineSquared(bx[0], by[0], ax, ay) <= distanceSquared;
+        }
+        for (int i = 0; i + 1 < ax.length; i++) {
+            for (int j = 0; j + 1 < bx.length; j++) {
+                if (segmentsCross(ax[i], ay[i], ax[i + 1], ay[i + 1], bx[j], by[j], bx[j + 1], by[j + 1])
+                        || pointToSegmentSquared(ax[i], ay[i], bx[j], by[j], bx[j + 1], by[j + 1]) <= distanceSquared
+                        || pointToSegmentSquared(ax[i + 1], ay[i + 1], bx[j], by[j], bx[j + 1], by[j + 1]) <= distanceSquared
+                        || pointToSegmentSquared(bx[j], by[j], ax[i], ay[i], ax[i + 1], ay[i + 1]) <= distanceSquared
+                        || pointToSegmentSquared(bx[j + 1], by[j + 1], ax[i], ay[i], ax[i + 1], ay[i + 1]) <= distanceSquared) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static double pointToPolylineSquared(double px, double py, double[] x, double[] y) {
+        if (x.length == 1) {
+            return (px - x[0]) * (px - x[0]) + (py - y[0]) * (py - y[0]);
+        }
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i + 1 < x.length; i++) {
+            min = Math.min(min, pointToSegmentSquared(px, py, x[i], y[i], x[i + 1], y[i + 1]));
+        }
+        return min;
+    }
+
+    private static double pointToSegmentSquared(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (x1 + t * dx);
+        double ey = py - (y1 + t * dy);
+        return ex * ex + ey * ey;
+    }
+
+    private static boolean segmentsCross(double x1, double y1, double x2, double y2,
+                                         double x3, double y3, double x4, double y4) {
+        double d1 = orientation(x3, y3, x4, y4, x1, y1);
+        double d2 = orientation(x3, y3, x4, y4, x2, y2);
+        double d3 = orientation(x1, y1, x2, y2, x3, y3);
+        double d4 = orientation(x1, y1, x2, y2, x4, y4);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    /**
+     * Computes the lists of all graph edges on a job-local pool.
+     */
+    void buildAll() {
+        int edgeCount = hopperService.getHopper().getBaseGraph().getEdges();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int from = 0; from < edgeCount; from += EDGES_PER_TASK) {
+                int first = from;
+                int last = Math.min(from + EDGES_PER_TASK, edgeCount);
+                tasks.add(pool.submit(() -> {
+                    for (int edgeId = first; edgeId < last; edgeId++) {
+                        neighbors(edgeId);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            log.info("Built parallel edge lists of {} edges with {} threads in {} ms",
+                    edgeCount, threads, (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to build parallel edge lists: {}", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void load() {
+        if (cacheFile == null || !Files.exists(cacheFile)) return;
+
+        BaseGraph graph = hopperService.getHopper().getBaseGraph();
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readDouble() != radiusMeters
+                    || in.readLong() != hopperService.getGraphVersion()
+                    || in.readInt() != graph.getEdges() || in.readInt() != graph.getNodes()) {
+                log.info("Ignoring {}: built for another graph or radius", cacheFile);
+                return;
+            }
+            int count = Math.min(in.readInt(), maxEntries);
+            for (int i = 0; i < count; i++) {
+                int edgeId = in.readInt();
+                int[] ids = new int[in.readInt()];
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = in.readInt();
+                }
+                neighbors.put(edgeId, ids);
+            }
+            log.info("Loaded parallel edge lists of {} edges from {} in {} ms",
+                    count, cacheFile, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            neighbors.clear();
+            log.warn("Could not read {}, computing parallel edge lists on demand: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all lists to a temporary file first and moves it into place, so an interrupted
+     * write never leaves a truncated cache behind.
+     */
+    void save() {
+        if (cacheFile == null || !dirty.getAndSet(false)) return;
+
+        BaseGraph graph = hopperService.getHopper().getBaseGraph();
+        Path partFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".part");
+        Map<Integer, int[]> snapshot = Map.copyOf(neighbors);
+        try {
+            if (cacheFile.getParent() != null) {
+                Files.createDirectories(cacheFile.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partFile)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeDouble(radiusMeters);
+                out.writeLong(hopperService.getGraphVersion());
+                out.writeInt(graph.getEdges());
+                out.writeInt(graph.getNodes());
+                out.writeInt(snapshot.size());
+                for (Map.Entry<Integer, int[]> entry : snapshot.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int id : entry.getValue()) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+            Files.move(partFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved parallel edge lists of {} edges to {}", snapshot.size(), cacheFile);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.warn("Could not write {}: {}", cacheFile, e.getMessage());
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,12 +21,16 @@ public class PipelineWorkClaimService {
     private static final Logger log = LoggerFactory.getLogger(PipelineWorkClaimService.class);
 
     private final EntityManager entityManager;
+    private final AnalysisVersionService analysisVersionService;
 
-    public PipelineWorkClaimService(EntityManager entityManager) {
+    public PipelineWorkClaimService(EntityManager entityManager, AnalysisVersionService analysisVersionService) {
         this.entityManager = entityManager;
+        this.analysisVersionService = analysisVersionService;
     }
 
+    // before the analysis dispatcher starts claiming rides on the same event
     @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     @Transactional
     public void resetInterruptedWork() {
         int ridesReset = entityManager.createQuery("""
@@ -35,6 +41,12 @@ public class PipelineWorkClaimService {
                 .setParameter("pending", Status.PENDING)
                 .setParameter("analyzing", Status.ANALYZING)
                 .executeUpdate();
+        // rides claimed for re-analysis keep their status and are marked in ride_analysis_results
+        ridesReset += entityManager.createNativeQuery("""
+                        DELETE FROM ride_analysis_results
+                        WHERE status = 'ANALYZING'
+                        """)
+                .executeUpdate();
 
         int weatherInitialized = initializeEnrichmentStatus("weather_processing_status", "weather_enriched");
         int berlinOpenDataInitialized = initializeEnrichmentStatus(
@@ -69,8 +81,16 @@ public class PipelineWorkClaimService {
         }
     }
 
+    /**
+     * Claims PENDING rides while the configured analysis version is the active one. Otherwise
+     * they are left to instances running the active version, so new rides reach the live
+     * results even if the configured version is never activated.
+     */
     @Transactional
     public List<UUID> claimPendingRidesForAnalysis(int batchSize) {
+        if (analysisVersionService.lockForAnalysis()) {
+            return List.of();
+        }
         return claimIds("""
                 UPDATE rides
                 SET status = 'ANALYZING'
@@ -86,6 +106,52 @@ public class PipelineWorkClaimService {
                 """, batchSize);
     }
 
+    /**
+     * Claims analyzed rides without a result of the configured analysis version, while that
+     * version is not the active one. A claimed ride keeps its status; an ANALYZING row in
+     * {@code ride_analysis_results} marks it instead.
+     */
+    @Transactional
+    public List<UUID> claimRidesForReanalysis(int batchSize) {
+        if (!analysisVersionService.lockForAnalysis()) {
+            return List.of();
+        }
+        return entityManager.createNativeQuery("""
+                        INSERT INTO ride_analysis_results (ride_id, analysis_version, status)
+                        SELECT r.id, :version, 'ANALYZING'
+                        FROM rides r
+                        WHERE r.status IN ('PROCESSED', 'SKIPPED')
+                          AND NOT EXISTS (
+                              SELECT 1 FROM ride_analysis_results a
+                              WHERE a.ride_id = r.id AND a.analysis_version = :version
+                          )
+                        ORDER BY r.id
+                        LIMIT :batchSize
+                        ON CONFLICT (ride_id, analysis_version) DO NOTHING
+                        RETURNING ride_id
+                        """)
+                .setParameter("version", analysisVersionService.version())
+                .setParameter("batchSize", Math.max(1, batchSize))
+                .getResultList()
+                .stream()
+                .map(this::toUuid)
+                .toList();
+    }
+
+    /**
+     * Puts back a ride claimed for re-analysis that was not analyzed.
+     */
+    @Transactional
+    public void releaseReanalysis(UUID rideId) {
+        entityManager.createNativeQuery("""
+                        DELETE FROM ride_analysis_results
+                        WHERE ride_id = :rideId AND analysis_version = :version AND status = 'ANALYZING'
+                        """)
+                .setParameter("rideId", rideId)
+                .setParameter("version", analysisVersionService.version())
+                .executeUpdate();
+    }
+
     @Transactional
     public List<UUID> claimWeatherEvents(int batchSize) {
         return claimSegmentEvents("weather_processing_status", batchSize);
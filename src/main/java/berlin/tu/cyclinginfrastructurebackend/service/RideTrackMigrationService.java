@@ -0,0 +1,117 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Converts rides imported with one {@code ride_points} row per sample into the compact
+ * {@code rides.track} blob, a batch per tick, and deletes the converted rows. Each ride is
+ * converted in its own transaction while holding its row lock, so analysis never sees a ride
+ * halfway converted.
+ */
+@Service
+public class RideTrackMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(RideTrackMigrationService.class);
+
+    private final RideRepository rideRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+    @Value("${pipeline.enabled:true}")
+    private boolean pipelineEnabled;
+
+    @Value("${pipeline.track-migration.enabled:false}")
+    private boolean migrationEnabled;
+
+    @Value("${pipeline.track-migration.batch-size:200}")
+    private int batchSize;
+
+    public RideTrackMigrationService(RideRepository rideRepository, PlatformTransactionManager transactionManager) {
+        this.rideRepository = rideRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${pipeline.track-migration.delay-ms:5000}")
+    public void migrateNextBatch() {
+        if (!pipelineEnabled || !migrationEnabled) {
+            return;
+        }
+
+        List<UUID> rideIds = rideRepository.findRideIdsWithPointRows(Math.max(1, batchSize));
+        if (rideIds.isEmpty()) {
+            log.debug("No rides left with ride_points rows to convert.");
+            return;
+        }
+
+        int converted = 0;
+        long deletedRows = 0;
+        for (UUID rideId : rideIds) {
+            try {
+                Integer deleted = transactionTemplate.execute(status -> convertRide(rideId));
+                if (deleted != null && deleted > 0) {
+                    converted++;
+                    deletedRows += deleted;
+                }
+            } catch (Exception e) {
+                log.error("Failed to convert track of ride {}", rideId, e);
+            }
+        }
+        log.info("Converted {} of {} rides to compact track storage, {} ride_points rows removed.",
+                converted, rideIds.size(), deletedRows);
+    }
+
+    /**
+     * @return the number of {@code ride_points} rows replaced, 0 if the ride was skipped
+     */
+    int convertRide(UUID rideId) {
+        if (rideRepository.lockForTrackConversion(rideId).isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> rows = rideRepository.findTrackRows(rideId);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<RidePoint> points = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            RidePoint point = new RidePoint();
+            if (row[0] != null && row[1] != null) {
+                point.setLocation(geometryFactory.createPoint(
+                        new Coordinate(((Number) row[1]).doubleValue(), ((Number) row[0]).doubleValue())));
+            }
+            point.setTimestamp(row[2] != null ? ((Number) row[2]).longValue() : null);
+            point.setGpsAccuracy(toDouble(row[3]));
+            point.setX(toDouble(row[4]));
+            point.setY(toDouble(row[5]));
+            point.setZ(toDouble(row[6]));
+            point.setA(toDouble(row[7]));
+            point.setB(toDouble(row[8]));
+            point.setC(toDouble(row[9]));
+            points.add(point);
+        }
+
+        rideRepository.updateTrack(rideId, RideTrackCodec.encode(points));
+        return rideRepository.deleteRidePoints(rideId);
+    }
+
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -1,5 +1,7 @@
 package berlin.tu.cyclinginfrastructurebackend.service;
 
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
 import com.opencsv.CSVWriter;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
@@ -9,6 +11,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.io.StringWriter;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 public class RouteComparisonExportService {
@@ -56,6 +59,7 @@ public class RouteComparisonExportService {
                            (SELECT COUNT(*) FROM ride_points rp WHERE rp.ride_id = r.id) AS gps_point_count,
                            ST_AsText(r.trajectory) AS actual_route_wkt,
                            ST_AsText(r.shortest_path) AS shortest_route_wkt,
+                           r.track,
                            ROW_NUMBER() OVER (
                                PARTITION BY r.route_comparison_type
                                ORDER BY MD5(CAST(r.id AS text))
@@ -82,7 +86,8 @@ public class RouteComparisonExportService {
                        median_gps_accuracy,
                        gps_point_count,
                        actual_route_wkt,
-                       shortest_route_wkt
+                       shortest_route_wkt,
+                       track
                 FROM comparison_rows
                 WHERE sample_rank <= :perType
                 ORDER BY route_comparison_type, sample_rank
@@ -101,6 +106,12 @@ public class RouteComparisonExportService {
         try (CSVWriter csvWriter = new CSVWriter(output)) {
             csvWriter.writeNext(HEADER);
             for (Object[] row : rows) {
+                if (row.length > 12 && row[12] instanceof byte[] track) {
+                    // Compactly stored rides have no ride_points rows to aggregate in SQL
+                    List<RidePoint> points = RideTrackCodec.decode(track);
+                    row[8] = medianGpsAccuracy(points);
+                    row[9] = points.size();
+                }
                 csvWriter.writeNext(new String[]{
                         value(row[0]),
                         value(row[1]),
@@ -124,6 +135,24 @@ public class RouteComparisonExportService {
         return output.toString();
     }
 
+    /**
+     * Same as {@code PERCENTILE_CONT(0.5)}: the mean of the two middle values for an even count.
+     */
+    private Double medianGpsAccuracy(List<RidePoint> points) {
+        double[] accuracies = points.stream()
+                .map(RidePoint::getGpsAccuracy)
+                .filter(Objects::nonNull)
+                .mapToDouble(Double::doubleValue)
+                .sorted()
+                .toArray();
+        if (accuracies.length == 0) return null;
+
+        int middle = accuracies.length / 2;
+        return accuracies.length % 2 == 1
+                ? accuracies[middle]
+                : (accuracies[middle - 1] + accuracies[middle]) / 2.0;
+    }
+
     private String value(Object value) {
         return value != null ? value.toString() : "";
     }
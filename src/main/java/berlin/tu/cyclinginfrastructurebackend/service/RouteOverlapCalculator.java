@@ -0,0 +1,106 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.springframework.stereotype.Component;
+
+/**
+ * Computes which share of the shortest path's length lies within a metric buffer around the
+ * actual route, in the JVM instead of a PostGIS round trip per ride.
+ * <p>
+ * Both paths are projected to ETRS89 / UTM zone 33N (EPSG:25833), the plane the former SQL
+ * query transformed to, with the Krüger series of the transverse Mercator projection, which is
+ * accurate to well below a millimetre inside the zone and what PROJ uses for it as well. The
+ * buffer (8 segments per quarter circle) and the intersection are the same JTS algorithms
+ * PostGIS runs through GEOS, so the ratios agree with {@code ST_Buffer}/{@code ST_Intersection}
+ * up to floating point noise.
+ */
+@Component
+public class RouteOverlapCalculator {
+
+    // GRS80 ellipsoid and the UTM zone 33N parameters of EPSG:25833
+    private static final double SEMI_MAJOR_AXIS = 6_378_137.0;
+    private static final double FLATTENING = 1 / 298.257222101;
+    private static final double SCALE_FACTOR = 0.9996;
+    private static final double FALSE_EASTING = 500_000.0;
+    private static final double CENTRAL_MERIDIAN = Math.toRadians(15.0);
+
+    private static final double N = FLATTENING / (2 - FLATTENING);
+    private static final double RECTIFYING_RADIUS =
+            SEMI_MAJOR_AXIS / (1 + N) * (1 + N * N / 4 + Math.pow(N, 4) / 64 + Math.pow(N, 6) / 256);
+    private static final double[] ALPHA = {
+            N / 2 - 2 * N * N / 3 + 5 * Math.pow(N, 3) / 16 + 41 * Math.pow(N, 4) / 180
+                    - 127 * Math.pow(N, 5) / 288 + 7891 * Math.pow(N, 6) / 37800,
+            13 * N * N / 48 - 3 * Math.pow(N, 3) / 5 + 557 * Math.pow(N, 4) / 1440
+                    + 281 * Math.pow(N, 5) / 630 - 1983433 * Math.pow(N, 6) / 1935360,
+            61 * Math.pow(N, 3) / 240 - 103 * Math.pow(N, 4) / 140 + 15061 * Math.pow(N, 5) / 26880
+                    + 167603 * Math.pow(N, 6) / 181440,
+            49561 * Math.pow(N, 4) / 161280 - 179 * Math.pow(N, 5) / 168 + 6601661 * Math.pow(N, 6) / 7257600,
+            34729 * Math.pow(N, 5) / 80640 - 3418889 * Math.pow(N, 6) / 1995840,
+            212378941 * Math.pow(N, 6) / 319334400
+    };
+    private static final double CONFORMAL_FACTOR = 2 * Math.sqrt(N) / (1 + N);
+
+    private final GeometryFactory metricFactory = new GeometryFactory(new PrecisionModel(), 25833);
+
+    /**
+     * @param actualPath      the ridden route in WGS84 lon/lat
+     * @param shortestPath    the shortest path in WGS84 lon/lat
+     * @param proximityMeters buffer distance around the actual route
+     * @return the covered share of the shortest path in {@code [0, 1]}, or {@code null} if the
+     * shortest path has no length
+     */
+    public Double lengthOverlap(LineString actualPath, LineString shortestPath, double proximityMeters) {
+        LineString shortest = project(shortestPath);
+        double shortestLength = shortest.getLength();
+        if (!(shortestLength > 0)) {
+            return null;
+        }
+
+        Geometry buffer = project(actualPath).buffer(proximityMeters);
+        double coveredLength = OverlayNGRobust.overlay(shortest, buffer, OverlayNG.INTERSECTION).getLength();
+        return Math.min(1.0, Math.max(0.0, coveredLength / shortestLength));
+    }
+
+    private LineString project(LineString lonLat) {
+        Coordinate[] coordinates = lonLat.getCoordinates();
+        Coordinate[] projected = new Coordinate[coordinates.length];
+        for (int i = 0; i < coordinates.length; i++) {
+            projected[i] = toUtm33(coordinates[i].getX(), coordinates[i].getY());
+        }
+        return metricFactory.createLineString(projected);
+    }
+
+    /**
+     * Forward transverse Mercator projection (Krüger series to sixth order in n) of a WGS84
+     * position to EPSG:25833 easting and northing in metres.
+     */
+    static Coordinate toUtm33(double lon, double lat) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon) - CENTRAL_MERIDIAN;
+
+        double sinPhi = Math.sin(phi);
+        double t = Math.sinh(atanh(sinPhi) - CONFORMAL_FACTOR * atanh(CONFORMAL_FACTOR * sinPhi));
+        double xi = Math.atan2(t, Math.cos(lambda));
+        double eta = atanh(Math.sin(lambda) / Math.sqrt(1 + t * t));
+
+        double easting = eta;
+        double northing = xi;
+        for (int j = 1; j <= ALPHA.length; j++) {
+            easting += ALPHA[j - 1] * Math.cos(2 * j * xi) * Math.sinh(2 * j * eta);
+            northing += ALPHA[j - 1] * Math.sin(2 * j * xi) * Math.cosh(2 * j * eta);
+        }
+        return new Coordinate(
+                FALSE_EASTING + SCALE_FACTOR * RECTIFYING_RADIUS * easting,
+                SCALE_FACTOR * RECTIFYING_RADIUS * northing);
+    }
+
+    private static double atanh(double x) {
+        return 0.5 * Math.log((1 + x) / (1 - x));
+    }
+}
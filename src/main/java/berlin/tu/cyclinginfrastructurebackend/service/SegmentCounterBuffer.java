@@ -0,0 +1,271 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentCounterRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Collects usage, avoidance and preference counts per street segment in memory and writes them
+ * to {@code street_segments} in one set-based statement per flush.
+ * <p>
+ * Incrementing the counters row by row made every import and analysis thread lock the popular
+ * segments in turn. Here a thread only adds to per-segment {@link LongAdder}s; the flush swaps
+ * in an empty buffer and applies the collected deltas, recomputing the ratios in the same
+ * statement. A failed flush puts its deltas back for the next one.
+ * <p>
+ * The counters summarise {@code ride_edges} and {@code segment_events}, which are written
+ * transactionally. Deltas still in memory when the process dies are therefore not lost for
+ * good: with {@code pipeline.segment-counters.recover-on-startup} the counters are recounted
+ * from those tables before the pipeline runs. The recount scans both tables, so it is off by
+ * default; a clean shutdown flushes everything and needs no recount.
+ */
+@Component
+public class SegmentCounterBuffer {
+    private static final Logger log = LoggerFactory.getLogger(SegmentCounterBuffer.class);
+
+    private final SegmentCounterRepository repository;
+    private final boolean recoverOnStartup;
+
+    // adders hold the read lock, the flush takes the write lock only to swap in an empty map
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Map<Long, Deltas> pending = new ConcurrentHashMap<>();
+    // set while a recount is about to overwrite the counters, which makes new deltas redundant
+    private volatile boolean recounting;
+
+    public SegmentCounterBuffer(SegmentCounterRepository repository,
+                                @Value("${pipeline.enabled:true}") boolean pipelineEnabled,
+                                @Value("${pipeline.segment-counters.recover-on-startup:false}")
+                                boolean recoverOnStartup) {
+        this.repository = repository;
+        // without the pipeline nothing changes the counters, so there is nothing to repair
+        this.recoverOnStartup = pipelineEnabled && recoverOnStartup;
+    }
+
+    /**
+     * Recounts the counters once before the scheduled pipeline jobs start, which repairs any
+     * deltas lost with the previous process.
+     */
+    @PostConstruct
+    public void recover() {
+        if (!recoverOnStartup) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            int corrected = repository.recount();
+            log.info("Recounted street segment counters in {} ms, {} segments corrected",
+                    (System.nanoTime() - start) / 1_000_000, corrected);
+        } catch (DataAccessException e) {
+            log.error("Failed to recount street segment counters: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param edgeIds traversed edges, repeats counted
+     */
+    public void addUsage(Collection<Integer> edgeIds) {
+        add(edgeIds, Kind.USAGE);
+    }
+
+    /**
+     * Adds one avoidance per avoided and one preference per chosen edge right away.
+     */
+    public void addEvents(Collection<Integer> avoidedEdgeIds, Collection<Integer> chosenEdgeIds) {
+        add(avoidedEdgeIds, Kind.AVOIDANCE);
+        add(chosenEdgeIds, Kind.PREFERENCE);
+    }
+
+    /**
+     * Same as {@link #addEvents}, but only once the current transaction has committed, so a
+     * rolled-back analysis counts nothing. Without a transaction the counts are added at once.
+     */
+    public void addEventsAfterCommit(Collection<Integer> avoidedEdgeIds, Collection<Integer> chosenEdgeIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addEvents(avoidedEdgeIds, chosenEdgeIds);
+            return;
+        }
+        List<Integer> avoided = List.copyOf(avoidedEdgeIds);
+        List<Integer> chosen = List.copyOf(chosenEdgeIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                addEvents(avoided, chosen);
+            }
+        });
+    }
+
+    private void add(Collection<Integer> edgeIds, Kind kind) {
+        if (edgeIds == null || edgeIds.isEmpty()) return;
+
+        swapLock.readLock().lock();
+        try {
+            if (recounting) return;
+            for (Integer edgeId : edgeIds) {
+                if (edgeId == null) continue;
+                pending.computeIfAbsent(edgeId.longValue(), id -> new Deltas()).adder(kind).increment();
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all buffered deltas in one statement.
+     */
+    @Scheduled(fixedDelayString = "${pipeline.segment-counters.flush-delay-ms:1000}")
+    public synchronized void flush() {
+        write(swap());
+    }
+
+    /**
+     * Runs a change to the rows the counters summarise that ends with a recount of the
+     * counters, for example activating an analysis version. The buffered deltas are written
+     * first, outside the change's transaction. No flush runs during the change, and deltas
+     * added meanwhile are dropped, since the recount covers the rows they were added for. If
+     * the change fails, the counters are recounted on their own instead, so the dropped deltas
+     * are not lost either. Only writes committing after the recount has started lose their
+     * deltas until the next recount.
+     */
+    public synchronized <T> T recountAround(Supplier<T> change) {
+        setRecounting(true);
+        write(swap());
+        boolean changed = false;
+        try {
+            T result = change.get();
+            changed = true;
+            return result;
+        } finally {
+            // deltas of a failed write above are covered by the recount as well
+            swap();
+            setRecounting(false);
+            if (!changed) {
+                recountAfterFailedChange();
+            }
+        }
+    }
+
+    private void recountAfterFailedChange() {
+        try {
+            repository.recount();
+        } catch (DataAccessException e) {
+            log.error("Failed to recount street segment counters, restart with "
+                    + "pipeline.segment-counters.recover-on-startup=true to repair them: {}", e.getMessage());
+        }
+    }
+
+    private void setRecounting(boolean recount) {
+        swapLock.writeLock().lock();
+        try {
+            recounting = recount;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the buffered deltas and leaves an empty buffer.
+     */
+    private Map<Long, Deltas> swap() {
+        swapLock.writeLock().lock();
+        try {
+            Map<Long, Deltas> taken = pending;
+            pending = new ConcurrentHashMap<>();
+            return taken;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    private void write(Map<Long, Deltas> flushing) {
+        if (flushing.isEmpty()) return;
+
+        // ascending ids, the order every other writer locks segments in
+        List<Long> ids = new ArrayList<>(flushing.keySet());
+        ids.sort(null);
+        Long[] idArray = ids.toArray(new Long[0]);
+        Integer[] usage = new Integer[idArray.length];
+        Integer[] avoidance = new Integer[idArray.length];
+        Integer[] preference = new Integer[idArray.length];
+        for (int i = 0; i < idArray.length; i++) {
+            Deltas deltas = flushing.get(idArray[i]);
+            usage[i] = (int) deltas.usage.sum();
+            avoidance[i] = (int) deltas.avoidance.sum();
+            preference[i] = (int) deltas.preference.sum();
+        }
+
+        long start = System.nanoTime();
+        try {
+            int updated = repository.addDeltas(idArray, usage, avoidance, preference);
+            log.debug("Flushed counter deltas of {} segments ({} updated) in {} ms",
+                    idArray.length, updated, (System.nanoTime() - start) / 1_000_000);
+        } catch (DataAccessException e) {
+            log.warn("Failed to flush counter deltas of {} segments, retrying with the next flush: {}",
+                    idArray.length, e.getMessage());
+            restore(idArray, usage, avoidance, preference);
+        }
+    }
+
+    private void restore(Long[] ids, Integer[] usage, Integer[] avoidance, Integer[] preference) {
+        swapLock.readLock().lock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Deltas deltas = pending.computeIfAbsent(ids[i], id -> new Deltas());
+                deltas.usage.add(usage[i]);
+                deltas.avoidance.add(avoidance[i]);
+                deltas.preference.add(preference[i]);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return segments with deltas not yet written
+     */
+    public int pendingSegments() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("Counter deltas of {} segments were not written, restart with "
+                    + "pipeline.segment-counters.recover-on-startup=true to repair them", pending.size());
+        }
+    }
+
+    private enum Kind { USAGE, AVOIDANCE, PREFERENCE }
+
+    private static final class Deltas {
+        final LongAdder usage = new LongAdder();
+        final LongAdder avoidance = new LongAdder();
+        final LongAdder preference = new LongAdder();
+
+        LongAdder adder(Kind kind) {
+            return switch (kind) {
+                case USAGE -> usage;
+                case AVOIDANCE -> avoidance;
+                case PREFERENCE -> preference;
+            };
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.ResponsePath;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shortest paths between snapped origin and destination nodes, shared by all analysis threads.
+ * <p>
+ * Many riders commute the same trips, so consecutive rides often start and end at the same
+ * graph nodes and would route the identical path again. The cache is a fixed array of slots
+ * chosen by a hash of the node pair; a pair only displaces the one sharing its slot. A cache
+ * belongs to one loaded graph: {@link GraphHopperService} creates a new one with every graph.
+ * Cached paths are shared and must be treated as read-only. Two threads missing the same pair at
+ * once merely route it twice; failed routes are not cached.
+ */
+public class ShortestPathCache {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries upper bound of cached paths, rounded up to a power of two
+     */
+    public ShortestPathCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Shortest path cache needs room for at least one path");
+        }
+        int capacity = maxEntries >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit(maxEntries - 1) << 1;
+        capacity = Math.max(1, capacity);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param router routes the path on a miss, returns {@code null} if there is none
+     * @return the cached or newly routed path, or {@code null} if routing failed
+     */
+    public ResponsePath get(int fromNode, int toNode, Supplier<ResponsePath> router) {
+        int slot = slot(fromNode, toNode);
+        Entry cached = slots.get(slot);
+        if (cached != null && cached.fromNode() == fromNode && cached.toNode() == toNode) {
+            hits.increment();
+            return cached.path();
+        }
+
+        misses.increment();
+        ResponsePath routed = router.get();
+        if (routed == null) return null;
+
+        routed.getPoints().makeImmutable();
+        slots.set(slot, new Entry(fromNode, toNode, routed));
+        return routed;
+    }
+
+    private int slot(int fromNode, int toNode) {
+        long key = ((long) fromNode << 32) | (toNode & 0xFFFFFFFFL);
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    public Stats stats() {
+        return new Stats(slots.length(), hits.sum(), misses.sum());
+    }
+
+    private record Entry(int fromNode, int toNode, ResponsePath path) {
+    }
+
+    /**
+     * Cache usage since startup.
+     *
+     * @param capacity number of slots
+     * @param hits     lookups answered from the cache
+     * @param misses   lookups that routed the path
+     */
+    public record Stats(int capacity, long hits, long misses) {
+
+        /**
+         * @return share of lookups answered from the cache, 0 before the first lookup
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+    }
+}
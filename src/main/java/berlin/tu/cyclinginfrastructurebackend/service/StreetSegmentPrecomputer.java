@@ -0,0 +1,207 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.StreetSegment;
+import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentCopyRepository;
+import berlin.tu.cyclinginfrastructurebackend.util.RegionWkt;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import jakarta.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional one-time job that creates the {@code street_segments} rows of all bike-accessible
+ * edges in a region right after the routing graph is loaded.
+ * <p>
+ * Without it, ride processing creates segments edge by edge the first time a ride uses them,
+ * resolving name, geometry and gradient inside the import and analysis transactions. Here the
+ * edges are walked in ascending id ranges on a job-local pool and each finished range is written
+ * with one COPY in its own transaction, in id order, so later rides find their segments already
+ * stored. No transaction stays open while edges are walked. Segments that exist already are
+ * skipped, which makes a restart with the job still enabled cheap.
+ * <p>
+ * The job runs during startup, before the scheduled pipeline jobs begin.
+ */
+@Component
+public class StreetSegmentPrecomputer {
+    private static final Logger log = LoggerFactory.getLogger(StreetSegmentPrecomputer.class);
+
+    // Approximate bounding box of Berlin, where the SimRa rides are concentrated
+    static final String DEFAULT_REGION_WKT =
+            "POLYGON ((13.08 52.33, 13.77 52.33, 13.77 52.68, 13.08 52.68, 13.08 52.33))";
+    static final int EDGES_PER_CHUNK = 50_000;
+
+    private final GraphHopperService hopperService;
+    private final StreetSegmentService segmentService;
+    private final StreetSegmentCopyRepository copyRepository;
+    private final boolean enabled;
+    private final PreparedGeometry region;
+    private final int threads;
+    private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+    public StreetSegmentPrecomputer(GraphHopperService hopperService,
+                                    StreetSegmentService segmentService,
+                                    StreetSegmentCopyRepository copyRepository,
+                                    @Value("${pipeline.enabled:true}") boolean pipelineEnabled,
+                                    @Value("${pipeline.segment-precompute.enabled:false}") boolean enabled,
+                                    @Value("${pipeline.segment-precompute.region-wkt:" + DEFAULT_REGION_WKT + "}")
+                                    String regionWkt,
+                                    @Value("${pipeline.segment-precompute.thread-pool-size:0}") int threadPoolSize) {
+        if (threadPoolSize < 0) {
+            throw new IllegalArgumentException("pipeline.segment-precompute.thread-pool-size must not be negative");
+        }
+        this.hopperService = hopperService;
+        this.segmentService = segmentService;
+        this.copyRepository = copyRepository;
+        this.enabled = pipelineEnabled && enabled;
+        this.region = RegionWkt.prepare(regionWkt, "pipeline.segment-precompute.region-wkt");
+        this.threads = threadPoolSize > 0 ? threadPoolSize : Runtime.getRuntime().availableProcessors();
+    }
+
+    @PostConstruct
+    public void precompute() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            BitSet existing = copyRepository.findExistingIds();
+            int edgeCount = hopperService.getHopper().getBaseGraph().getEdges();
+            AtomicInteger skipped = new AtomicInteger();
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                int inserted = 0;
+                ChunkIterator chunks = new ChunkIterator(pool, edgeCount, existing, skipped);
+                while (chunks.hasNext()) {
+                    List<StreetSegment> chunk = chunks.next();
+                    if (!chunk.isEmpty()) {
+                        inserted += copyRepository.insertMissing(chunk);
+                    }
+                }
+                log.info("Precomputed street segments of {} edges with {} threads in {} ms: {} inserted, "
+                                + "{} already stored",
+                        edgeCount, threads, (System.nanoTime() - start) / 1_000_000, inserted, skipped.get());
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (RuntimeException e) {
+            // the job is an optimisation only and must not stop the startup; rides still create
+            // their segments on demand, and chunks written before the failure are kept. The COPY,
+            // for one, fails with an UncheckedIOException.
+            log.error("Failed to precompute street segments: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the segments of the edges in {@code [from, to)} that are new, bike-accessible and
+     * inside the region, in ascending id order.
+     */
+    List<StreetSegment> buildChunk(int from, int to, BitSet existing, AtomicInteger skipped) {
+        BaseGraph baseGraph = hopperService.getHopper().getBaseGraph();
+        BooleanEncodedValue bikeAccess = hopperService.getHopper().getEncodingManager()
+                .getBooleanEncodedValue(VehicleAccess.key("bike"));
+
+        List<StreetSegment> segments = new ArrayList<>();
+        for (int edgeId = from; edgeId < to; edgeId++) {
+            if (existing.get(edgeId)) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+            if (edge == null || !(edge.get(bikeAccess) || edge.getReverse(bikeAccess))) {
+                continue;
+            }
+            if (region != null) {
+                EdgeGeometryCache.EdgeGeometry geometry = hopperService.getEdgeGeometry(edgeId);
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                Point midpoint = geometryFactory.createPoint(
+                        new Coordinate(geometry.midpointLon(), geometry.midpointLat()));
+                if (!region.intersects(midpoint)) {
+                    continue;
+                }
+            }
+            segmentService.newSegment(edgeId, hopperService).ifPresent(segments::add);
+        }
+        return segments;
+    }
+
+    /**
+     * Hands out the chunks in id order while the pool computes the next few, so at most about two
+     * chunks per thread are held in memory.
+     */
+    private final class ChunkIterator implements Iterator<List<StreetSegment>> {
+        private final ExecutorService pool;
+        private final int edgeCount;
+        private final BitSet existing;
+        private final AtomicInteger skipped;
+        private final Deque<Future<List<StreetSegment>>> inFlight = new ArrayDeque<>();
+        private int nextChunkStart;
+
+        ChunkIterator(ExecutorService pool, int edgeCount, BitSet existing, AtomicInteger skipped) {
+            this.pool = pool;
+            this.edgeCount = edgeCount;
+            this.existing = existing;
+            this.skipped = skipped;
+            for (int i = 0; i < threads * 2; i++) {
+                submitNext();
+            }
+        }
+
+        private void submitNext() {
+            if (nextChunkStart >= edgeCount) return;
+            int from = nextChunkStart;
+            int to = (int) Math.min((long) from + EDGES_PER_CHUNK, edgeCount);
+            nextChunkStart = to;
+            inFlight.add(pool.submit(() -> buildChunk(from, to, existing, skipped)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !inFlight.isEmpty();
+        }
+
+        @Override
+        public List<StreetSegment> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            List<StreetSegment> chunk = await(inFlight.poll());
+            submitNext();
+            return chunk;
+        }
+
+        private List<StreetSegment> await(Future<List<StreetSegment>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Street segment precomputation was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to build street segments", e.getCause());
+            }
+        }
+    }
+}
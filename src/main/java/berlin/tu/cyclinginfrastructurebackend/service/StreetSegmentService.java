@@ -4,12 +4,10 @@ import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
 import berlin.tu.cyclinginfrastructurebackend.domain.SegmentEvent;
 import berlin.tu.cyclinginfrastructurebackend.domain.StreetSegment;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.SegmentEventType;
-import berlin.tu.cyclinginfrastructurebackend.repository.SegmentEventRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentEventInsertRepository;
 import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentRepository;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
-import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.BBox;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -28,42 +26,38 @@ import java.util.*;
 public class StreetSegmentService {
     private static final Logger log = LoggerFactory.getLogger(StreetSegmentService.class);
     private final StreetSegmentRepository repository;
-    private final SegmentEventRepository segmentEventRepository;
-    private final TransactionTemplate transactionTemplate;
+    private final SegmentEventInsertRepository segmentEventInsertRepository;
+    private final SegmentCounterBuffer counterBuffer;
     private final TransactionTemplate segmentCreationTransactionTemplate;
     private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
 
     public StreetSegmentService(StreetSegmentRepository repository,
-                                SegmentEventRepository segmentEventRepository,
+                                SegmentEventInsertRepository segmentEventInsertRepository,
+                                SegmentCounterBuffer counterBuffer,
                                 PlatformTransactionManager transactionManager) {
         this.repository = repository;
-        this.segmentEventRepository = segmentEventRepository;
-        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.segmentEventInsertRepository = segmentEventInsertRepository;
+        this.counterBuffer = counterBuffer;
         this.segmentCreationTransactionTemplate = new TransactionTemplate(transactionManager);
         this.segmentCreationTransactionTemplate.setPropagationBehavior(
                 TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
+    /**
+     * Creates missing segments and counts one use per traversal; the counts reach the
+     * database with the next flush of the {@link SegmentCounterBuffer}.
+     */
     public void recordUsage(List<EdgeIteratorState> edges, GraphHopperService hopperService) {
         if (edges == null || edges.isEmpty()) {
             return;
         }
 
-        List<EdgeIteratorState> sortedEdges = edges.stream()
-                .sorted(Comparator.comparingLong(EdgeIteratorState::getEdge))
-                .toList();
-        List<Integer> edgeIds = sortedEdges.stream()
+        List<Integer> traversedEdgeIds = edges.stream()
                 .map(EdgeIteratorState::getEdge)
-                .distinct()
                 .toList();
 
-        ensureSegmentsExist(edgeIds, hopperService);
-
-        transactionTemplate.executeWithoutResult(status -> {
-            for (EdgeIteratorState edge : sortedEdges) {
-                repository.incrementUsage((long) edge.getEdge());
-            }
-        });
+        ensureSegmentsExist(traversedEdgeIds, hopperService);
+        counterBuffer.addUsage(traversedEdgeIds);
     }
 
     public void ensureSegmentsExist(Collection<Integer> edgeIds, GraphHopperService hopperService) {
@@ -84,9 +78,9 @@ public class StreetSegmentService {
                 sortedEdgeIds.stream().map(Integer::longValue).toList()
         ));
 
-        List<SegmentUpsert> missingSegments = sortedEdgeIds.stream()
+        List<StreetSegment> missingSegments = sortedEdgeIds.stream()
                 .filter(edgeId -> !existingIds.contains(edgeId.longValue()))
-                .map(edgeId -> buildSegmentUpsert(edgeId, hopperService))
+                .map(edgeId -> newSegment(edgeId, hopperService))
                 .flatMap(Optional::stream)
                 .toList();
 
@@ -98,19 +92,29 @@ public class StreetSegmentService {
         // these inserts separately so their subset locks are released before that outer
         // transaction takes the complete, ordered event-segment lock.
         segmentCreationTransactionTemplate.executeWithoutResult(status -> {
-            for (SegmentUpsert segment : missingSegments) {
-                repository.upsertSegment(segment.id(), segment.name(), segment.geometry(), segment.gradientPercent());
+            for (StreetSegment segment : missingSegments) {
+                repository.upsertSegment(segment.getId(), segment.getStreetName(), segment.getGeometry(),
+                        segment.getGradientPercent());
             }
         });
     }
 
+    /**
+     * Stores the avoidance and preference events of an analyzed ride with a single set-based
+     * insert; the segment counters follow through the {@link SegmentCounterBuffer} once the
+     * surrounding transaction commits.
+     * <p>
+     * Events of a candidate analysis version go to {@code candidate_segment_events} instead and
+     * leave the counters alone; they are counted when their version is activated.
+     */
     @Transactional
     public void registerSegmentEvents(Map<Integer, Double> avoidedEdgeBearings,
                                       Map<Integer, Long> avoidedEdgeTimestamps,
                                       Map<Integer, Double> chosenEdgeBearings,
                                       Map<Integer, Long> chosenEdgeTimestamps,
                                       Ride ride,
-                                      GraphHopperService hopperService) {
+                                      GraphHopperService hopperService,
+                                      boolean candidate) {
         boolean hasAvoidedEdges = avoidedEdgeBearings != null && !avoidedEdgeBearings.isEmpty();
         boolean hasChosenEdges = chosenEdgeBearings != null && !chosenEdgeBearings.isEmpty();
         if (!hasAvoidedEdges && !hasChosenEdges) return;
@@ -126,19 +130,6 @@ public class StreetSegmentService {
         List<Integer> sortedEdgeIds = new ArrayList<>(allEdgeIds);
         Collections.sort(sortedEdgeIds);
 
-        // lock every segment this transaction will touch in one ascending pass first incrementAvoidanceAll/incrementPreferenceAll each lock their segments, but
-        // running them in parallel resets the order between the two calls, which let concurrent rides deadlock when one ride's avoided segment is another ride's chosen segment
-        repository.lockForUpdate(sortedEdgeIds.stream().map(Integer::longValue).toList());
-
-        if (hasAvoidedEdges) {
-            repository.incrementAvoidanceAll(
-                    avoidedEdgeBearings.keySet().stream().map(Integer::longValue).toList());
-        }
-        if (hasChosenEdges) {
-            repository.incrementPreferenceAll(
-                    chosenEdgeBearings.keySet().stream().map(Integer::longValue).toList());
-        }
-
         List<SegmentEvent> eventRecords = new ArrayList<>();
         for (Integer edgeId : sortedEdgeIds) {
             StreetSegment segment = repository.getReferenceById(edgeId.longValue());
@@ -174,55 +165,69 @@ public class StreetSegmentService {
             }
         }
 
-        segmentEventRepository.saveAll(eventRecords);
+        if (candidate) {
+            segmentEventInsertRepository.insertCandidates(eventRecords);
+            return;
+        }
+        segmentEventInsertRepository.insertAll(eventRecords);
+
+        // the counters summarise these events, so they only count once the events are committed
+        counterBuffer.addEventsAfterCommit(
+                hasAvoidedEdges ? avoidedEdgeBearings.keySet() : List.of(),
+                hasChosenEdges ? chosenEdgeBearings.keySet() : List.of());
     }
 
-    private Optional<SegmentUpsert> buildSegmentUpsert(int edgeId, GraphHopperService hopperService) {
+    /**
+     * Builds the segment row for an edge from the routing graph: name (or the nearest named
+     * street's), geometry and gradient. Counters start at zero; nothing is stored.
+     *
+     * @return the segment, or empty if the edge does not exist or has no usable geometry
+     */
+    public Optional<StreetSegment> newSegment(int edgeId, GraphHopperService hopperService) {
         EdgeIteratorState edge = hopperService.getHopper().getBaseGraph()
                 .getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+        EdgeGeometryCache.EdgeGeometry geometry = hopperService.getEdgeGeometry(edgeId);
 
-        if (edge == null) {
+        if (edge == null || geometry == null) {
             return Optional.empty();
         }
 
-        String name = resolveEdgeName(edge, hopperService);
-        PointList points = edge.fetchWayGeometry(FetchMode.ALL);
-        Coordinate[] coords = toCoordinates(points);
+        Coordinate[] coords = toCoordinates(geometry);
         if (coords.length < 2) {
             return Optional.empty();
         }
 
-        Double gradient = hopperService.getGradientPercent(edgeId);
-        return Optional.of(new SegmentUpsert(
-                (long) edgeId,
-                name,
-                geometryFactory.createLineString(coords),
-                gradient
-        ));
+        StreetSegment segment = new StreetSegment();
+        segment.setId((long) edgeId);
+        segment.setStreetName(resolveEdgeName(edge, geometry, hopperService));
+        segment.setGeometry(geometryFactory.createLineString(coords));
+        segment.setGradientPercent(hopperService.getGradientPercent(edgeId));
+        return Optional.of(segment);
     }
 
-    private String resolveEdgeName(EdgeIteratorState edge, GraphHopperService hopperService) {
+    private String resolveEdgeName(EdgeIteratorState edge, EdgeGeometryCache.EdgeGeometry geometry,
+                                   GraphHopperService hopperService) {
         String name = edge.getName();
         if (name == null || name.isBlank()) {
-            name = findNearestStreetName(edge, hopperService);
+            name = findNearestStreetName(geometry, hopperService);
         }
         return name != null ? name : "Unknown";
     }
 
-    private Coordinate[] toCoordinates(PointList points) {
-        Coordinate[] coords = new Coordinate[points.size()];
-        for (int i = 0; i < points.size(); i++) {
-            coords[i] = new Coordinate(points.getLon(i), points.getLat(i));
+    private Coordinate[] toCoordinates(EdgeGeometryCache.EdgeGeometry geometry) {
+        Coordinate[] coords = new Coordinate[geometry.size()];
+        for (int i = 0; i < geometry.size(); i++) {
+            coords[i] = new Coordinate(geometry.lon(i), geometry.lat(i));
         }
         return coords;
     }
 
-    private String findNearestStreetName(EdgeIteratorState sourceEdge, GraphHopperService hopperService) {
-        PointList points = sourceEdge.fetchWayGeometry(FetchMode.ALL);
-        if (points.isEmpty()) return null;
+    private String findNearestStreetName(EdgeGeometryCache.EdgeGeometry sourceGeometry,
+                                         GraphHopperService hopperService) {
+        if (sourceGeometry.isEmpty()) return null;
 
-        double lat = points.getLat(points.size() / 2);
-        double lon = points.getLon(points.size() / 2);
+        double lat = sourceGeometry.midpointLat();
+        double lon = sourceGeometry.midpointLon();
         double radius = 0.0003;
         BBox bbox = new BBox(lon - radius, lon + radius, lat - radius, lat + radius);
 
@@ -231,16 +236,16 @@ public class StreetSegmentService {
         final DistanceCalcEarth distCalc = new DistanceCalcEarth();
 
         hopperService.getHopper().getLocationIndex().query(bbox, candidateEdgeId -> {
-            if (candidateEdgeId == sourceEdge.getEdge()) return;
+            if (candidateEdgeId == sourceGeometry.edgeId()) return;
 
             EdgeIteratorState candidate = hopperService.getHopper().getBaseGraph()
                     .getEdgeIteratorState(candidateEdgeId, Integer.MIN_VALUE);
 
             if (candidate != null && candidate.getName() != null && !candidate.getName().isBlank()) {
-                PointList candidatePoints = candidate.fetchWayGeometry(FetchMode.ALL);
-                if (candidatePoints.isEmpty()) return;
+                EdgeGeometryCache.EdgeGeometry candidateGeometry = hopperService.getEdgeGeometry(candidateEdgeId);
+                if (candidateGeometry == null || candidateGeometry.isEmpty()) return;
 
-                double dist = distCalc.calcDist(lat, lon, candidatePoints.getLat(0), candidatePoints.getLon(0));
+                double dist = distCalc.calcDist(lat, lon, candidateGeometry.lat(0), candidateGeometry.lon(0));
                 if (dist < minDistance[0]) {
                     minDistance[0] = dist;
                     bestName[0] = candidate.getName();
@@ -249,12 +254,4 @@ public class StreetSegmentService {
         });
         return bestName[0];
     }
-
-    private record SegmentUpsert(
-            Long id,
-            String name,
-            org.locationtech.jts.geom.LineString geometry,
-            Double gradientPercent
-    ) {
-    }
 }
@@ -0,0 +1,25 @@
+package berlin.tu.cyclinginfrastructurebackend.service.dto.api;
+
+import java.util.List;
+
+public record AnalysisConcurrencyDto(
+        boolean adaptive,
+        int workers,
+        int claimSize,
+        int inFlight,
+        int minWorkers,
+        int maxWorkers,
+        List<DecisionDto> decisions
+) {
+
+    public record DecisionDto(
+            long timestamp,
+            int previousWorkers,
+            int newWorkers,
+            double ridesPerSecond,
+            double errorRate,
+            int threadsAwaitingConnection,
+            String reason
+    ) {
+    }
+}
@@ -0,0 +1,17 @@
+package berlin.tu.cyclinginfrastructurebackend.service.dto.api;
+
+public record AnalysisVersionDto(
+        String version,
+        double proximityMeters,
+        double detourThreshold,
+        double minimumOverlapRatio,
+        boolean active,
+        boolean configured,
+        Long createdAt,
+        Long activatedAt,
+        long ridesAnalyzed,
+        long ridesInProgress,
+        long ridesRemaining,
+        long candidateEvents
+) {
+}
@@ -0,0 +1,319 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import com.graphhopper.util.DistanceCalcEarth;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates when a rider passed a road edge from the ride's GPS track.
+ * <p>
+ * The track is projected onto a local metric plane and every segment between two consecutive GPS
+ * samples is put into the cells of a uniform grid it crosses. An edge is placed at the length
+ * midpoint of its geometry; the nearest track segment is found by searching the grid cells
+ * around it ring by ring, and the timestamp is interpolated between the segment's two samples at
+ * the projected position. A query therefore only looks at the few segments near the edge instead
+ * of every GPS point.
+ * <p>
+ * Edges along the matched path are assigned in path order: among the segments about as close as
+ * the nearest one, the earliest one not before the previous edge's time wins, so a ride passing
+ * the same street twice gets both passes right. Not thread-safe; build one timeline per ride.
+ */
+public final class EdgeTimeline {
+
+    private static final double METERS_PER_DEGREE = DistanceCalcEarth.METERS_PER_DEGREE;
+
+    // Grid cell edge length; a 1 Hz track at cycling speed puts about ten samples into a cell
+    private static final double CELL_METERS = 50.0;
+
+    // Segments at most this much farther away than the nearest one still count as candidates
+    // when assigning edges in path order (GPS error plus the offset of a parallel cycle path)
+    private static final double PATH_ORDER_SLACK_METERS = 25.0;
+
+    private final double originLat;
+    private final double originLon;
+    private final double lonScale;
+
+    private final double[] x;
+    private final double[] y;
+    private final long[] time;
+    private final int segmentCount;
+
+    private final Map<Long, int[]> cells = new HashMap<>();
+    private final int minCellX;
+    private final int maxCellX;
+    private final int minCellY;
+    private final int maxCellY;
+
+    // Per-query scratch space: segments looked at (marked with the query number, and listed in
+    // seen) with their distance to the query point and interpolated time
+    private final int[] seenInQuery;
+    private final int[] seen;
+    private final double[] segmentDistance;
+    private final long[] segmentTime;
+    private int query;
+
+    private EdgeTimeline(List<RidePoint> points) {
+        int n = points.size();
+        originLat = n > 0 ? points.getFirst().getLocation().getY() : 0;
+        originLon = n > 0 ? points.getFirst().getLocation().getX() : 0;
+        lonScale = Math.cos(Math.toRadians(originLat));
+
+        x = new double[n];
+        y = new double[n];
+        time = new long[n];
+        for (int i = 0; i < n; i++) {
+            RidePoint point = points.get(i);
+            x[i] = projectX(point.getLocation().getX());
+            y[i] = projectY(point.getLocation().getY());
+            time[i] = point.getTimestamp();
+        }
+
+        // a single sample is a segment of length zero
+        segmentCount = n == 0 ? 0 : Math.max(1, n - 1);
+        seenInQuery = new int[segmentCount];
+        seen = new int[segmentCount];
+        segmentDistance = new double[segmentCount];
+        segmentTime = new long[segmentCount];
+
+        int lowX = Integer.MAX_VALUE, highX = Integer.MIN_VALUE;
+        int lowY = Integer.MAX_VALUE, highY = Integer.MIN_VALUE;
+        for (int s = 0; s < segmentCount; s++) {
+            int a = s;
+            int b = end(s);
+            int fromX = cell(Math.min(x[a], x[b]));
+            int toX = cell(Math.max(x[a], x[b]));
+            int fromY = cell(Math.min(y[a], y[b]));
+            int toY = cell(Math.max(y[a], y[b]));
+            addToCrossedCells(s, x[a], y[a], x[b], y[b]);
+            lowX = Math.min(lowX, fromX);
+            highX = Math.max(highX, toX);
+            lowY = Math.min(lowY, fromY);
+            highY = Math.max(highY, toY);
+        }
+        minCellX = lowX;
+        maxCellX = highX;
+        minCellY = lowY;
+        maxCellY = highY;
+    }
+
+    /**
+     * Adds segment {@code s} to every cell the line from a to b passes through, walking from
+     * cell border to cell border (a supercover: a line through a cell corner also gets both
+     * cells beside it). The cells grow linearly with the segment's length, so a long GPS gap
+     * costs about length / {@link #CELL_METERS} cells, not its bounding box.
+     */
+    private void addToCrossedCells(int s, double ax, double ay, double bx, double by) {
+        int cx = cell(ax);
+        int cy = cell(ay);
+        int endX = cell(bx);
+        int endY = cell(by);
+        int stepX = Integer.compare(endX, cx);
+        int stepY = Integer.compare(endY, cy);
+        double dx = bx - ax;
+        double dy = by - ay;
+
+        // position along the segment (0..1) at which the next vertical / horizontal border is crossed
+        double nextX = stepX == 0 ? Double.POSITIVE_INFINITY
+                : ((stepX > 0 ? cx + 1 : cx) * CELL_METERS - ax) / dx;
+        double nextY = stepY == 0 ? Double.POSITIVE_INFINITY
+                : ((stepY > 0 ? cy + 1 : cy) * CELL_METERS - ay) / dy;
+        double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : CELL_METERS / Math.abs(dx);
+        double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : CELL_METERS / Math.abs(dy);
+
+        addToCell(cx, cy, s);
+        while (cx != endX || cy != endY) {
+            if (nextX < nextY) {
+                cx += stepX;
+                nextX += deltaX;
+            } else if (nextY < nextX) {
+                cy += stepY;
+                nextY += deltaY;
+            } else {
+                addToCell(cx + stepX, cy, s);
+                addToCell(cx, cy + stepY, s);
+                cx += stepX;
+                cy += stepY;
+                nextX += deltaX;
+                nextY += deltaY;
+            }
+            // rounding must not walk past the last cell
+            if (cx == endX) nextX = Double.POSITIVE_INFINITY;
+            if (cy == endY) nextY = Double.POSITIVE_INFINITY;
+            addToCell(cx, cy, s);
+        }
+    }
+
+    private void addToCell(int cx, int cy, int s) {
+        cells.merge(key(cx, cy), new int[]{1, s}, EdgeTimeline::append);
+    }
+
+    /**
+     * @return grid cells holding at least one segment
+     */
+    int indexedCells() {
+        return cells.size();
+    }
+
+    /**
+     * @param sortedPoints points with location and timestamp, sorted by timestamp
+     */
+    public static EdgeTimeline of(List<RidePoint> sortedPoints) {
+        return new EdgeTimeline(sortedPoints);
+    }
+
+    public boolean isEmpty() {
+        return segmentCount == 0;
+    }
+
+    /**
+     * Assigns times to the edges of a path in traversal order, never going back in time while a
+     * segment about as close as the nearest one lies ahead. Each edge is given by the midpoint of
+     * its geometry, see {@code EdgeGeometryCache.EdgeGeometry}.
+     *
+     * @param lats midpoint latitudes in traversal order, repeats included; {@code NaN} for an
+     *             unknown edge, which gets a {@code null} time and does not affect the others
+     * @param lons midpoint longitudes, same length as {@code lats}
+     * @return one time per edge (epoch ms), {@code null} if unknown
+     */
+    public Long[] timesAlongPath(double[] lats, double[] lons) {
+        Long[] times = new Long[lats.length];
+        if (isEmpty()) return times;
+
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < lats.length; i++) {
+            if (Double.isNaN(lats[i]) || Double.isNaN(lons[i])) continue;
+
+            long t = search(projectX(lons[i]), projectY(lats[i]), PATH_ORDER_SLACK_METERS, previous);
+            times[i] = t;
+            previous = Math.max(previous, t);
+        }
+        return times;
+    }
+
+    /**
+     * Time at which the rider was closest to an edge the ride did not necessarily traverse, given
+     * by its midpoint.
+     *
+     * @return epoch ms, or {@code null} if the midpoint is {@code NaN} or the track is empty
+     */
+    public Long timeNear(double lat, double lon) {
+        if (isEmpty() || Double.isNaN(lat) || Double.isNaN(lon)) return null;
+        return search(projectX(lon), projectY(lat), 0, Long.MIN_VALUE);
+    }
+
+    /**
+     * Finds the nearest track segment by searching grid rings around the query cell.
+     * <p>
+     * With a {@code slack}, every segment within it of the nearest distance is a candidate, and
+     * each run of consecutive candidates is one pass of the rider by the query point. The nearest
+     * segment not before {@code notBefore} of the earliest such pass is returned, or the nearest
+     * segment's time if all passes are earlier.
+     */
+    private long search(double qx, double qy, double slack, long notBefore) {
+        query++;
+        int centerX = cell(qx);
+        int centerY = cell(qy);
+        int maxRing = Math.max(
+                Math.max(Math.abs(centerX - minCellX), Math.abs(centerX - maxCellX)),
+                Math.max(Math.abs(centerY - minCellY), Math.abs(centerY - maxCellY)));
+
+        double best = Double.POSITIVE_INFINITY;
+        long bestTime = 0;
+        int candidates = 0;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // segments not seen yet lie in this ring or beyond, at least ring - 1 cells away
+            if (best + slack < (ring - 1) * CELL_METERS) break;
+
+            for (int cx = centerX - ring; cx <= centerX + ring; cx++) {
+                boolean edgeColumn = cx == centerX - ring || cx == centerX + ring;
+                int step = edgeColumn ? 1 : 2 * ring;
+                for (int cy = centerY - ring; cy <= centerY + ring; cy += Math.max(1, step)) {
+                    int[] segments = cells.get(key(cx, cy));
+                    if (segments == null) continue;
+
+                    for (int k = 1; k <= segments[0]; k++) {
+                        int s = segments[k];
+                        if (seenInQuery[s] == query) continue;
+                        seenInQuery[s] = query;
+
+                        project(s, qx, qy);
+                        if (segmentDistance[s] < best) {
+                            best = segmentDistance[s];
+                            bestTime = segmentTime[s];
+                        }
+                        seen[candidates++] = s;
+                    }
+                }
+            }
+        }
+        if (slack <= 0) return bestTime;
+
+        // candidates form runs of consecutive segments, one per pass; take the nearest segment
+        // not before notBefore from the earliest pass that has one
+        Arrays.sort(seen, 0, candidates);
+        double limit = best + slack;
+        int previousSegment = -2;
+        double passBest = Double.POSITIVE_INFINITY;
+        long passTime = 0;
+        for (int c = 0; c < candidates; c++) {
+            int s = seen[c];
+            if (segmentDistance[s] > limit) continue;
+            if (s != previousSegment + 1 && passBest != Double.POSITIVE_INFINITY) break;
+            previousSegment = s;
+            if (segmentTime[s] >= notBefore && segmentDistance[s] < passBest) {
+                passBest = segmentDistance[s];
+                passTime = segmentTime[s];
+            }
+        }
+        return passBest != Double.POSITIVE_INFINITY ? passTime : bestTime;
+    }
+
+    /**
+     * Stores the distance from the query to segment {@code s} and the interpolated time there.
+     */
+    private void project(int s, double qx, double qy) {
+        int a = s;
+        int b = end(s);
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double lengthSquared = dx * dx + dy * dy;
+        double f = lengthSquared == 0 ? 0
+                : Math.max(0, Math.min(1, ((qx - x[a]) * dx + (qy - y[a]) * dy) / lengthSquared));
+        segmentDistance[s] = Math.hypot(qx - (x[a] + f * dx), qy - (y[a] + f * dy));
+        segmentTime[s] = Math.round(time[a] + f * (time[b] - time[a]));
+    }
+
+    private int end(int segment) {
+        return Math.min(segment + 1, x.length - 1);
+    }
+
+    private double projectX(double lon) {
+        return (lon - originLon) * lonScale * METERS_PER_DEGREE;
+    }
+
+    private double projectY(double lat) {
+        return (lat - originLat) * METERS_PER_DEGREE;
+    }
+
+    private static int cell(double meters) {
+        return (int) Math.floor(meters / CELL_METERS);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    // cell contents are {size, segment...}
+    private static int[] append(int[] existing, int[] added) {
+        int size = existing[0];
+        int[] grown = size + 1 < existing.length ? existing : Arrays.copyOf(existing, existing.length * 2);
+        grown[size + 1] = added[1];
+        grown[0] = size + 1;
+        return grown;
+    }
+}
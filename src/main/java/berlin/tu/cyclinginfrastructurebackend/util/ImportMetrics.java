@@ -1,11 +1,18 @@
 package berlin.tu.cyclinginfrastructurebackend.util;
 
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideRejectionReason;
+import berlin.tu.cyclinginfrastructurebackend.service.EdgeGeometryCache;
+import berlin.tu.cyclinginfrastructurebackend.service.MapMatcherPool;
+import berlin.tu.cyclinginfrastructurebackend.service.ShortestPathCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Thread-safe metrics collector for tracking import performance.
@@ -15,6 +22,10 @@ public class ImportMetrics {
 
     private static final Logger log = LoggerFactory.getLogger(ImportMetrics.class);
 
+    private static final int LATENCY_SUB_BUCKET_BITS = 4;
+    private static final int LATENCY_SUB_BUCKETS = 1 << LATENCY_SUB_BUCKET_BITS;
+    private static final int LATENCY_BUCKETS = (64 - LATENCY_SUB_BUCKET_BITS) * LATENCY_SUB_BUCKETS;
+
     private final long startTimeNanos;
     private volatile long endTimeNanos;
 
@@ -36,8 +47,83 @@ public class ImportMetrics {
     private final AtomicLong maxDbSaveTimeNanos = new AtomicLong(0);
     private final AtomicLong maxMapMatchTimeNanos = new AtomicLong(0);
 
+    // Rides rejected by the quality gate, per reason
+    private final Map<RideRejectionReason, AtomicInteger> rejections = new EnumMap<>(RideRejectionReason.class);
+
+    // Per-stage statistics of the staged import pipeline
+    private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+
+    // Map matcher pool usage at the end of the batch
+    private volatile MapMatcherPool.Stats matcherPool;
+
+    // Edge geometry cache usage at the end of the batch
+    private volatile EdgeGeometryCache.Stats edgeGeometryCache;
+    private volatile ShortestPathCache.Stats shortestPathCache;
+
     public ImportMetrics() {
         this.startTimeNanos = System.nanoTime();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStats());
+        }
+        for (RideRejectionReason reason : RideRejectionReason.values()) {
+            rejections.put(reason, new AtomicInteger(0));
+        }
+    }
+
+    /**
+     * Records one item completed by a pipeline stage and how long the stage worked on it.
+     */
+    public void recordStage(Stage stage, long durationNanos) {
+        long now = System.nanoTime();
+        StageStats stats = stages.get(stage);
+        stats.items.incrementAndGet();
+        stats.busyNanos.addAndGet(durationNanos);
+        stats.latencies.incrementAndGet(bucketOf(durationNanos));
+        updateMin(stats.firstStartNanos, now - durationNanos);
+        updateMax(stats.lastEndNanos, now);
+    }
+
+    /**
+     * Latency of a stage at the given percentile, accurate to about 6%.
+     *
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds, 0 if the stage has not completed any item
+     */
+    public long stagePercentile(Stage stage, double percentile) {
+        StageStats stats = stages.get(stage);
+        long total = 0;
+        for (int i = 0; i < stats.latencies.length(); i++) {
+            total += stats.latencies.get(i);
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < stats.latencies.length(); i++) {
+            seen += stats.latencies.get(i);
+            if (seen >= rank) return bucketUpperBound(i);
+        }
+        return bucketUpperBound(stats.latencies.length() - 1);
+    }
+
+    /**
+     * Items per second a stage completed between its first item starting and its last item
+     * finishing, so stages that ran one after another are not diluted by each other's time.
+     */
+    public double stageThroughput(Stage stage) {
+        StageStats stats = stages.get(stage);
+        long span = stats.lastEndNanos.get() - stats.firstStartNanos.get();
+        return span > 0 ? stats.items.get() / (span / 1_000_000_000.0) : 0;
+    }
+
+    /**
+     * Samples the number of items waiting in front of a stage, taken whenever an item is handed to it.
+     */
+    public void recordQueueDepth(Stage stage, int depth) {
+        StageStats stats = stages.get(stage);
+        stats.queueDepthSum.addAndGet(depth);
+        stats.queueDepthSamples.incrementAndGet();
+        updateMax(stats.maxQueueDepth, depth);
     }
 
     public void recordParse(long durationNanos) {
@@ -64,8 +150,16 @@ public class ImportMetrics {
         filesProcessed.incrementAndGet();
     }
 
-    public void recordFileSkipped() {
+    /**
+     * Records a ride the quality gate rejected before map matching. It also counts as skipped.
+     */
+    public void recordRejected(RideRejectionReason reason) {
         filesSkipped.incrementAndGet();
+        rejections.get(reason).incrementAndGet();
+    }
+
+    public int getRejected(RideRejectionReason reason) {
+        return rejections.get(reason).get();
     }
 
     public void recordFileInvalid() {
@@ -76,6 +170,27 @@ public class ImportMetrics {
         filesFailed.incrementAndGet();
     }
 
+    /**
+     * Adds the map matcher pool's usage to the summary; {@code null} leaves it out.
+     */
+    public void recordMatcherPool(MapMatcherPool.Stats stats) {
+        this.matcherPool = stats;
+    }
+
+    /**
+     * Adds the edge geometry cache's usage to the summary; {@code null} leaves it out.
+     */
+    public void recordEdgeGeometryCache(EdgeGeometryCache.Stats stats) {
+        this.edgeGeometryCache = stats;
+    }
+
+    /**
+     * Adds the shortest path cache's usage to the summary; {@code null} leaves it out.
+     */
+    public void recordShortestPathCache(ShortestPathCache.Stats stats) {
+        this.shortestPathCache = stats;
+    }
+
     public void finish() {
         this.endTimeNanos = System.nanoTime();
     }
@@ -101,7 +216,12 @@ public class ImportMetrics {
         log.info("Total Duration:         {}", formatDuration(totalElapsedNanos));
         log.info("───────────────────────────────────────────────────────────────────");
         log.info("Files Processed:        {}", processed);
-        log.info("Files Skipped (0 pts):  {}", filesSkipped.get());
+        log.info("Files Skipped:          {}", filesSkipped.get());
+        for (Map.Entry<RideRejectionReason, AtomicInteger> entry : rejections.entrySet()) {
+            if (entry.getValue().get() > 0) {
+                log.info("  {} {}", String.format("%-21s", entry.getKey() + ":"), entry.getValue().get());
+            }
+        }
         log.info("Files Invalid:          {}", filesInvalid.get());
         log.info("Files Failed:           {}", filesFailed.get());
         log.info("───────────────────────────────────────────────────────────────────");
@@ -124,6 +244,50 @@ public class ImportMetrics {
                 processed > 0 ? formatDuration(totalMapMatchTimeNanos.get() / processed) : "N/A",
                 formatDuration(maxMapMatchTimeNanos.get()));
         log.info("───────────────────────────────────────────────────────────────────");
+        log.info("PIPELINE STAGES:");
+        for (Map.Entry<Stage, StageStats> entry : stages.entrySet()) {
+            Stage stage = entry.getKey();
+            StageStats stats = entry.getValue();
+            int items = stats.items.get();
+            long samples = stats.queueDepthSamples.get();
+            if (items == 0 && samples == 0) continue;
+            log.info("  {} items={}  throughput={}/s  avg={}  p50={}  p95={}  p99={}  queue avg={} max={}",
+                    String.format("%-8s", stage.label),
+                    items,
+                    String.format("%.2f", stageThroughput(stage)),
+                    items > 0 ? formatDuration(stats.busyNanos.get() / items) : "N/A",
+                    formatDuration(stagePercentile(stage, 50)),
+                    formatDuration(stagePercentile(stage, 95)),
+                    formatDuration(stagePercentile(stage, 99)),
+                    samples > 0 ? String.format("%.1f", stats.queueDepthSum.get() / (double) samples) : "N/A",
+                    stats.maxQueueDepth.get());
+        }
+        log.info("───────────────────────────────────────────────────────────────────");
+        MapMatcherPool.Stats pool = matcherPool;
+        if (pool != null) {
+            log.info("MAP MATCHER POOL (since startup):");
+            log.info("  size={}  in use={}  matches={}  waited={}  avg wait={}  max wait={}",
+                    pool.size(), pool.inUse(), pool.borrows(), pool.waitedBorrows(),
+                    pool.waitedBorrows() > 0 ? formatDuration(pool.totalWaitNanos() / pool.waitedBorrows()) : "N/A",
+                    formatDuration(pool.maxWaitNanos()));
+            log.info("───────────────────────────────────────────────────────────────────");
+        }
+        EdgeGeometryCache.Stats edgeCache = edgeGeometryCache;
+        if (edgeCache != null) {
+            log.info("EDGE GEOMETRY CACHE (since startup):");
+            log.info("  capacity={}  hits={}  misses={}  hit rate={}%",
+                    edgeCache.capacity(), edgeCache.hits(), edgeCache.misses(),
+                    String.format("%.1f", edgeCache.hitRate() * 100));
+            log.info("───────────────────────────────────────────────────────────────────");
+        }
+        ShortestPathCache.Stats routeCache = shortestPathCache;
+        if (routeCache != null) {
+            log.info("SHORTEST PATH CACHE (since startup):");
+            log.info("  capacity={}  hits={}  misses={}  hit rate={}%",
+                    routeCache.capacity(), routeCache.hits(), routeCache.misses(),
+                    String.format("%.1f", routeCache.hitRate() * 100));
+            log.info("───────────────────────────────────────────────────────────────────");
+        }
 
         if (processed > 0) {
             double filesPerSecond = processed / (totalElapsedNanos / 1_000_000_000.0);
@@ -147,6 +311,30 @@ public class ImportMetrics {
         } while (!max.compareAndSet(current, newValue));
     }
 
+    private void updateMin(AtomicLong min, long newValue) {
+        long current;
+        do {
+            current = min.get();
+            if (newValue >= current) return;
+        } while (!min.compareAndSet(current, newValue));
+    }
+
+    // Log-linear buckets: 16 per power of two, so a bucket is at most 1/16 wider than its lower bound
+    private static int bucketOf(long nanos) {
+        if (nanos < LATENCY_SUB_BUCKETS) return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int mantissa = (int) (nanos >>> (exponent - LATENCY_SUB_BUCKET_BITS)) & (LATENCY_SUB_BUCKETS - 1);
+        return (exponent - LATENCY_SUB_BUCKET_BITS + 1) * LATENCY_SUB_BUCKETS + mantissa;
+    }
+
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < LATENCY_SUB_BUCKETS) return bucket;
+        int exponent = bucket / LATENCY_SUB_BUCKETS + LATENCY_SUB_BUCKET_BITS - 1;
+        long mantissa = bucket % LATENCY_SUB_BUCKETS;
+        long width = 1L << (exponent - LATENCY_SUB_BUCKET_BITS);
+        return (1L << exponent) + (mantissa + 1) * width - 1;
+    }
+
     /**
      * Formats a duration in nanoseconds into a human-readable unit for summary logging.
      *
@@ -176,4 +364,28 @@ public class ImportMetrics {
             }
         }
     }
+
+    public enum Stage {
+        PARSE("Parse:"),    // read + parse + validation
+        MATCH("Match:"),    // GraphHopper map matching
+        PERSIST("Persist:"), // usage counters + ride insert
+        ANALYZE("Analyze:"); // shortest path routing of the detour analysis (benchmark only)
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final class StageStats {
+        private final AtomicInteger items = new AtomicInteger(0);
+        private final AtomicLong busyNanos = new AtomicLong(0);
+        private final AtomicLong queueDepthSum = new AtomicLong(0);
+        private final AtomicLong queueDepthSamples = new AtomicLong(0);
+        private final AtomicLong maxQueueDepth = new AtomicLong(0);
+        private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+        private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+    }
 }
@@ -0,0 +1,41 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+/**
+ * Parses the region polygons configured as WKT in WGS84 lon/lat order.
+ */
+public final class RegionWkt {
+
+    private RegionWkt() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * @param wkt      a POLYGON or MULTIPOLYGON, or blank for no region
+     * @param property the configuration property the WKT came from, named in error messages
+     * @return the prepared region, or {@code null} if {@code wkt} is blank
+     * @throws IllegalArgumentException if the WKT is invalid or not a polygon
+     */
+    public static PreparedGeometry prepare(String wkt, String property) {
+        if (wkt == null || wkt.isBlank()) {
+            return null;
+        }
+        try {
+            Geometry geometry = new WKTReader(new GeometryFactory(new PrecisionModel(), 4326)).read(wkt);
+            if (!(geometry instanceof Polygonal)) {
+                throw new IllegalArgumentException(property + " must be a POLYGON or MULTIPOLYGON");
+            }
+            return PreparedGeometryFactory.prepare(geometry);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(property + " is not valid WKT", e);
+        }
+    }
+}
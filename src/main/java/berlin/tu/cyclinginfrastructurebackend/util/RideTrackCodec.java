@@ -0,0 +1,298 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Encodes a ride's GPS track into the compact {@code rides.track} blob used instead of one
+ * {@code ride_points} row per sample.
+ * <p>
+ * The blob is columnar: a version byte and the point count, then one block per channel. Each
+ * block starts with a presence marker (absent everywhere, present everywhere, or followed by a
+ * bitmap) and then holds the present values as zig-zag varint deltas to the previous present
+ * value:
+ * <ul>
+ *     <li>timestamps — epoch ms, exact;</li>
+ *     <li>latitude and longitude — fixed point with 7 decimals (about 1 cm);</li>
+ *     <li>GPS accuracy, accelerometer x/y/z and gyroscope a/b/c — fixed point with 5 decimals.</li>
+ * </ul>
+ * Points keep their stored order, which becomes {@code sequenceIndex} again when decoded. A
+ * typical 1 Hz SimRa track needs about 8–12 bytes per sample with sensors, against several
+ * hundred bytes per {@code ride_points} row including its indexes.
+ */
+public final class RideTrackCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double SENSOR_SCALE = 1e5;
+
+    private static final byte ABSENT = 0;
+    private static final byte PRESENT = 1;
+    private static final byte BITMAP = 2;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    private static final List<SensorChannel> SENSOR_CHANNELS = List.of(
+            new SensorChannel(RidePoint::getGpsAccuracy, RidePoint::setGpsAccuracy),
+            new SensorChannel(RidePoint::getX, RidePoint::setX),
+            new SensorChannel(RidePoint::getY, RidePoint::setY),
+            new SensorChannel(RidePoint::getZ, RidePoint::setZ),
+            new SensorChannel(RidePoint::getA, RidePoint::setA),
+            new SensorChannel(RidePoint::getB, RidePoint::setB),
+            new SensorChannel(RidePoint::getC, RidePoint::setC)
+    );
+
+    private RideTrackCodec() {
+    }
+
+    /**
+     * Returns the ride's points in track order, decoding them from {@code rides.track} when the
+     * ride is stored compactly. Decoded points are detached: they carry no id and no ride.
+     */
+    public static List<RidePoint> points(Ride ride) {
+        if (!ride.getRidePoints().isEmpty() || ride.getTrack() == null) {
+            return ride.getRidePoints();
+        }
+        return decode(ride.getTrack());
+    }
+
+    /**
+     * Moves a new ride's points into {@code rides.track} so they are not written as rows.
+     */
+    public static void compact(Ride ride) {
+        if (ride.getRidePoints().isEmpty()) return;
+        ride.setTrack(encode(ride.getRidePoints()));
+        ride.getRidePoints().clear();
+    }
+
+    public static byte[] encode(List<RidePoint> points) {
+        int count = points.size();
+        Output out = new Output(16 + count * 12);
+        out.writeByte(VERSION);
+        out.writeVarLong(count);
+
+        boolean[] present = new boolean[count];
+        long[] values = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            Long timestamp = points.get(i).getTimestamp();
+            present[i] = timestamp != null;
+            values[i] = timestamp != null ? timestamp : 0;
+        }
+        writeChannel(out, present, values);
+
+        for (int i = 0; i < count; i++) {
+            present[i] = points.get(i).getLocation() != null;
+            values[i] = present[i] ? Math.round(points.get(i).getLocation().getY() * COORDINATE_SCALE) : 0;
+        }
+        writeChannel(out, present, values);
+        for (int i = 0; i < count; i++) {
+            values[i] = present[i] ? Math.round(points.get(i).getLocation().getX() * COORDINATE_SCALE) : 0;
+        }
+        writeChannel(out, present, values);
+
+        for (SensorChannel channel : SENSOR_CHANNELS) {
+            for (int i = 0; i < count; i++) {
+                Double value = channel.getter().apply(points.get(i));
+                present[i] = value != null && Double.isFinite(value);
+                values[i] = present[i] ? Math.round(value * SENSOR_SCALE) : 0;
+            }
+            writeChannel(out, present, values);
+        }
+
+        return out.toByteArray();
+    }
+
+    public static List<RidePoint> decode(byte[] track) {
+        Input in = new Input(track);
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported ride track version " + version);
+        }
+        int count = Math.toIntExact(in.readVarLong());
+
+        List<RidePoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RidePoint point = new RidePoint();
+            point.setSequenceIndex(i);
+            points.add(point);
+        }
+
+        boolean[] present = new boolean[count];
+        long[] values = new long[count];
+
+        readChannel(in, present, values);
+        for (int i = 0; i < count; i++) {
+            if (present[i]) points.get(i).setTimestamp(values[i]);
+        }
+
+        readChannel(in, present, values);
+        boolean[] hasLocation = present.clone();
+        long[] latitudes = values.clone();
+        readChannel(in, present, values);
+        for (int i = 0; i < count; i++) {
+            if (hasLocation[i]) {
+                points.get(i).setLocation(GEOMETRY_FACTORY.createPoint(
+                        new Coordinate(values[i] / COORDINATE_SCALE, latitudes[i] / COORDINATE_SCALE)));
+            }
+        }
+
+        for (SensorChannel channel : SENSOR_CHANNELS) {
+            readChannel(in, present, values);
+            for (int i = 0; i < count; i++) {
+                if (present[i]) channel.setter().accept(points.get(i), values[i] / SENSOR_SCALE);
+            }
+        }
+
+        return points;
+    }
+
+    private static void writeChannel(Output out, boolean[] present, long[] values) {
+        int presentCount = 0;
+        for (boolean p : present) {
+            if (p) presentCount++;
+        }
+
+        if (presentCount == 0) {
+            out.writeByte(ABSENT);
+            return;
+        }
+        if (presentCount == present.length) {
+            out.writeByte(PRESENT);
+        } else {
+            out.writeByte(BITMAP);
+            byte[] bitmap = new byte[(present.length + 7) / 8];
+            for (int i = 0; i < present.length; i++) {
+                if (present[i]) bitmap[i >> 3] |= (byte) (1 << (i & 7));
+            }
+            out.writeBytes(bitmap);
+        }
+
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!present[i]) continue;
+            out.writeVarLong(zigZag(values[i] - previous));
+            previous = values[i];
+        }
+    }
+
+    private static void readChannel(Input in, boolean[] present, long[] values) {
+        byte marker = in.readByte();
+        switch (marker) {
+            case ABSENT -> Arrays.fill(present, false);
+            case PRESENT -> Arrays.fill(present, true);
+            case BITMAP -> {
+                byte[] bitmap = in.readBytes((present.length + 7) / 8);
+                for (int i = 0; i < present.length; i++) {
+                    present[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+                }
+            }
+            default -> throw new IllegalArgumentException("Corrupt ride track: channel marker " + marker);
+        }
+
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!present[i]) {
+                values[i] = 0;
+                continue;
+            }
+            previous += unZigZag(in.readVarLong());
+            values[i] = previous;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private record SensorChannel(Function<RidePoint, Double> getter, BiConsumer<RidePoint, Double> setter) {
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int length;
+
+        private Output(int initialCapacity) {
+            buffer = new byte[Math.max(16, initialCapacity)];
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (length + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        private Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private byte readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Corrupt ride track: unexpected end of data");
+            }
+            return buffer[position++];
+        }
+
+        private byte[] readBytes(int count) {
+            if (position + count > buffer.length) {
+                throw new IllegalArgumentException("Corrupt ride track: unexpected end of data");
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + count);
+            position += count;
+            return bytes;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Corrupt ride track: varint too long");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered UUIDs (version 7, RFC 9562) for rows that are inserted in bulk.
+ * <p>
+ * Random ids put every insert on a random page of the primary key index, so a large import
+ * touches the whole index and splits pages all over it. A version 7 id starts with the Unix
+ * time in milliseconds, so ids generated close together sort close together and new index
+ * entries go to the right-hand edge of the B-tree.
+ * <p>
+ * The 12 bits after the version hold a counter, so ids from the same JVM are strictly
+ * increasing even within one millisecond; more than 4096 ids in a millisecond borrow from the
+ * next one. The remaining 62 bits are random. Entities use Hibernate's version 7 generator,
+ * this class covers the rows written with plain JDBC.
+ */
+public final class TimeOrderedUuid {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_RFC_9562 = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    // Unix millis << 12 | counter of the last id handed out
+    private static final AtomicLong lastTimeAndCounter = new AtomicLong();
+
+    private TimeOrderedUuid() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * @return a new id, greater than every id this JVM generated before
+     */
+    public static UUID next() {
+        return at(System.currentTimeMillis(), lastTimeAndCounter);
+    }
+
+    static UUID at(long epochMillis, AtomicLong state) {
+        long timeAndCounter = state.updateAndGet(last -> Math.max(epochMillis << 12, last + 1));
+        long mostSignificant = (timeAndCounter >>> 12) << 16 | VERSION_7 | (timeAndCounter & 0xFFF);
+        long leastSignificant = ThreadLocalRandom.current().nextLong() & RANDOM_MASK | VARIANT_RFC_9562;
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    /**
+     * @return the Unix time in milliseconds encoded in a version 7 id
+     */
+    public static long epochMillis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+}
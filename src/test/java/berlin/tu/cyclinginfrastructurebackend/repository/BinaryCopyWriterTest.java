@@ -0,0 +1,61 @@
+package berlin.tu.cyclinginfrastructurebackend.repository;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.WKBReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryCopyWriterTest {
+
+    @Test
+    void encodesHeaderRowsNullsAndTrailer() throws Exception {
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+        UUID id = UUID.fromString("0190f0e8-0000-7000-8000-000000000001");
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        try (BinaryCopyWriter writer = new BinaryCopyWriter(target)) {
+            writer.startRow(5);
+            writer.writeUuid(id);
+            writer.writeInt(7);
+            writer.writeDouble(null);
+            writer.writeText("Straße");
+            writer.writeGeometry(geometryFactory.createPoint(new Coordinate(13.4, 52.5)));
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(target.toByteArray()));
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        assertThat(signature).containsExactly('P', 'G', 'C', 'O', 'P', 'Y', '\n', 0xFF, '\r', '\n', 0);
+        assertThat(in.readInt()).isZero();
+        assertThat(in.readInt()).isZero();
+
+        assertThat(in.readShort()).isEqualTo((short) 5);
+        assertThat(in.readInt()).isEqualTo(16);
+        assertThat(new UUID(in.readLong(), in.readLong())).isEqualTo(id);
+        assertThat(in.readInt()).isEqualTo(4);
+        assertThat(in.readInt()).isEqualTo(7);
+        assertThat(in.readInt()).isEqualTo(-1);
+
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        assertThat(new String(text, StandardCharsets.UTF_8)).isEqualTo("Straße");
+
+        byte[] ewkb = new byte[in.readInt()];
+        in.readFully(ewkb);
+        var point = new WKBReader().read(ewkb);
+        assertThat(point.getSRID()).isEqualTo(4326);
+        assertThat(point.getCoordinate().y).isEqualTo(52.5);
+
+        assertThat(in.readShort()).isEqualTo((short) -1);
+        assertThat(in.available()).isZero();
+    }
+}
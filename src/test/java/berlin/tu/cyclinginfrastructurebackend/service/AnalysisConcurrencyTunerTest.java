@@ -0,0 +1,107 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.service.AnalysisConcurrencyTuner.Sample;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisConcurrencyTunerTest {
+
+    private final DetourAnalysisScheduler scheduler = mock(DetourAnalysisScheduler.class);
+    private final ThreadPoolTaskExecutor executor = executor(4);
+    private final AnalysisConcurrencyTuner tuner = tuner(4, 2, 8);
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void addsAWorkerWhileAllAreBusy() {
+        assertThat(tuner.decide(sample(10.0, 0.0, 0, 4), 4).newWorkers()).isEqualTo(5);
+        // some workers idle: nothing to gain from more
+        assertThat(tuner.decide(sample(10.0, 0.0, 0, 2), 5).newWorkers()).isEqualTo(5);
+    }
+
+    @Test
+    void neverGrowsBeyondTheMaximum() {
+        assertThat(tuner.decide(sample(10.0, 0.0, 0, 8), 8).newWorkers()).isEqualTo(8);
+    }
+
+    @Test
+    void cutsWorkersWhenTooManyRidesFail() {
+        AnalysisConcurrencyTuner.Decision decision = tuner.decide(sample(10.0, 0.2, 0, 8), 8);
+
+        assertThat(decision.newWorkers()).isEqualTo(6);
+        assertThat(decision.reason()).startsWith("error rate");
+    }
+
+    @Test
+    void cutsWorkersWhileThreadsWaitForAConnection() {
+        assertThat(tuner.decide(sample(10.0, 0.0, 3, 4), 4).newWorkers()).isEqualTo(3);
+        assertThat(tuner.decide(sample(10.0, 0.0, 3, 3), 3).newWorkers()).isEqualTo(2);
+        assertThat(tuner.decide(sample(10.0, 0.0, 3, 2), 2).newWorkers()).isEqualTo(2);
+    }
+
+    @Test
+    void removesAnAddedWorkerThatDidNotHelpAndHolds() {
+        assertThat(tuner.decide(sample(10.0, 0.0, 0, 4), 4).newWorkers()).isEqualTo(5);
+        assertThat(tuner.decide(sample(9.0, 0.0, 0, 5), 5).newWorkers()).isEqualTo(4);
+
+        for (int i = 0; i < AnalysisConcurrencyTuner.PROBE_BACKOFF_INTERVALS - 1; i++) {
+            assertThat(tuner.decide(sample(10.0, 0.0, 0, 4), 4).newWorkers()).isEqualTo(4);
+        }
+        assertThat(tuner.decide(sample(10.0, 0.0, 0, 4), 4).newWorkers()).isEqualTo(5);
+    }
+
+    @Test
+    void holdsWhileIdle() {
+        assertThat(tuner.decide(new Sample(0, 0.0, 0.0, 0, 0), 4).reason()).isEqualTo("idle");
+    }
+
+    @Test
+    void resizesTheExecutorAndTheScheduler() {
+        when(scheduler.isRunning()).thenReturn(true);
+        when(scheduler.workers()).thenReturn(4);
+        when(scheduler.inFlight()).thenReturn(8);
+        when(scheduler.completed(Status.PROCESSED)).thenReturn(0L, 120L);
+
+        tuner.adjust();
+        tuner.adjust();
+
+        assertThat(executor.getCorePoolSize()).isEqualTo(5);
+        assertThat(executor.getMaxPoolSize()).isEqualTo(5);
+        verify(scheduler).resize(5);
+        assertThat(tuner.getStatus().decisions()).singleElement()
+                .satisfies(decision -> assertThat(decision.reason()).isEqualTo("all workers busy"));
+    }
+
+    @Test
+    void rejectsAStartSizeAboveTheMaximum() {
+        assertThatThrownBy(() -> tuner(8, 2, 4)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private AnalysisConcurrencyTuner tuner(int threads, int minThreads, int maxThreads) {
+        return new AnalysisConcurrencyTuner(scheduler, executor, null, true, true, true,
+                threads, minThreads, maxThreads, 0.05, 0.75);
+    }
+
+    private static Sample sample(double ridesPerSecond, double errorRate, int waiting, int inFlight) {
+        return new Sample(100, ridesPerSecond, errorRate, waiting, inFlight);
+    }
+
+    private static ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,96 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.AnalysisVersion;
+import berlin.tu.cyclinginfrastructurebackend.repository.AnalysisVersionRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentCounterRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AnalysisVersionServiceTest {
+
+    private final AnalysisVersionRepository repository = mock(AnalysisVersionRepository.class);
+    private final SegmentCounterBuffer segmentCounterBuffer = mock(SegmentCounterBuffer.class);
+    private final SegmentCounterRepository segmentCounterRepository = mock(SegmentCounterRepository.class);
+
+    @Test
+    void versionIsDerivedFromTheParametersUnlessNamed() {
+        assertThat(service("").version()).isEqualTo("p20.0-d0.1-o0.3");
+        assertThat(service(" 2026-10-rerun ").version()).isEqualTo("2026-10-rerun");
+    }
+
+    @Test
+    void analysesOfAnInactiveVersionAreCandidates() {
+        AnalysisVersionService service = service("");
+        when(repository.lockShared("p20.0-d0.1-o0.3")).thenReturn(true, false);
+
+        assertThat(service.lockForAnalysis()).isFalse();
+        assertThat(service.lockForAnalysis()).isTrue();
+    }
+
+    @Test
+    void incompleteVersionIsNotActivated() {
+        when(repository.findAll()).thenReturn(List.of(version("p25.0-d0.1-o0.3", false)));
+        when(repository.countResultsByStatus("p25.0-d0.1-o0.3")).thenReturn(Map.of("PROCESSED", 10L));
+        when(repository.countRidesToReanalyze("p25.0-d0.1-o0.3")).thenReturn(3L);
+
+        assertThatThrownBy(() -> service("").activate("p25.0-d0.1-o0.3"))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("3 rides to re-analyze");
+        verify(repository, never()).promote(any(), anyLong());
+        verifyNoInteractions(segmentCounterBuffer, segmentCounterRepository);
+    }
+
+    @Test
+    void activationPromotesAndRecountsWithTheCounterBufferHeld() {
+        when(repository.findAll()).thenReturn(List.of(version("p25.0-d0.1-o0.3", false)));
+        when(repository.lockExclusive("p25.0-d0.1-o0.3")).thenReturn(false);
+        when(segmentCounterBuffer.recountAround(any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+
+        service("").activate("p25.0-d0.1-o0.3");
+
+        InOrder inOrder = inOrder(segmentCounterBuffer, repository, segmentCounterRepository);
+        inOrder.verify(segmentCounterBuffer).recountAround(any());
+        inOrder.verify(repository).promote(eq("p25.0-d0.1-o0.3"), anyLong());
+        inOrder.verify(segmentCounterRepository).recount();
+    }
+
+    @Test
+    void configuredVersionIsNotDiscarded() {
+        when(repository.lockExclusive("p20.0-d0.1-o0.3")).thenReturn(false);
+
+        assertThatThrownBy(() -> service("").discard("p20.0-d0.1-o0.3"))
+                .isInstanceOf(ResponseStatusException.class);
+        verify(repository, never()).delete(any());
+    }
+
+    private static AnalysisVersion version(String name, boolean active) {
+        AnalysisVersion version = new AnalysisVersion();
+        version.setVersion(name);
+        version.setActive(active);
+        return version;
+    }
+
+    private AnalysisVersionService service(String parameterVersion) {
+        return new AnalysisVersionService(repository, segmentCounterBuffer, segmentCounterRepository,
+                mock(PlatformTransactionManager.class), true, 20, 0.10, 0.30, parameterVersion);
+    }
+}
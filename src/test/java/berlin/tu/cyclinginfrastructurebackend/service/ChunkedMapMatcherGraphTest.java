@@ -0,0 +1,154 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.config.Profile;
+import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Matches long rides on a real street grid both in one piece and in windows.
+ */
+class ChunkedMapMatcherGraphTest {
+
+    // street-grid.osm.xml: 6 x 6 junctions, about 100 m apart
+    private static final double LAT0 = 52.1000;
+    private static final double LON0 = 13.1000;
+    private static final double LAT_STEP = 0.0009;
+    private static final double LON_STEP = 0.00146;
+    private static final double SAMPLE_SPACING_METERS = 5.0;
+    private static final double NOISE_METERS = 2.0;
+
+    @TempDir
+    Path tempDirectory;
+
+    private GraphHopper hopper;
+
+    @BeforeEach
+    void importStreetGrid() throws URISyntaxException {
+        Path osmFile = Path.of(Objects.requireNonNull(
+                getClass().getResource("/graphhopper/street-grid.osm.xml")).toURI());
+
+        hopper = new GraphHopper();
+        hopper.setOSMFile(osmFile.toString());
+        hopper.setGraphHopperLocation(tempDirectory.resolve("graph-cache").toString());
+        hopper.setMinNetworkSize(0);
+        hopper.setEncodedValuesString(GraphHopperService.ENCODED_VALUES);
+        hopper.setProfiles(new Profile(GraphHopperService.PROFILE_BIKE_MATCH_NEUTRAL)
+                .setCustomModel(GraphHopperService.createNeutralBicycleModel()));
+        hopper.importOrLoad();
+    }
+
+    @AfterEach
+    void closeGraph() {
+        if (hopper != null) {
+            hopper.close();
+        }
+    }
+
+    @Test
+    void snakeThroughEveryStreetMatchesTheSameEdgesInChunks() throws Exception {
+        List<int[]> junctions = new ArrayList<>();
+        for (int row = 0; row < 6; row++) {
+            junctions.add(new int[]{row, row % 2 == 0 ? 0 : 5});
+            junctions.add(new int[]{row, row % 2 == 0 ? 5 : 0});
+        }
+
+        assertChunkedEqualsSingleShot(ride(junctions, 1));
+    }
+
+    @Test
+    void staircaseWithATurnAtEveryJunctionMatchesTheSameEdgesInChunks() throws Exception {
+        List<int[]> junctions = new ArrayList<>();
+        for (int step = 0; step < 5; step++) {
+            junctions.add(new int[]{step, step});
+            junctions.add(new int[]{step, step + 1});
+        }
+        junctions.add(new int[]{5, 5});
+
+        assertChunkedEqualsSingleShot(ride(junctions, 2));
+    }
+
+    private void assertChunkedEqualsSingleShot(List<Observation> observations) throws Exception {
+        GraphHopperService singleService = matchingService();
+        GraphHopperService chunkedService = matchingService();
+
+        ChunkedMapMatcher.Match single = new ChunkedMapMatcher(singleService, Runnable::run, 0, 0, 0)
+                .match(observations);
+        ChunkedMapMatcher.Match chunked = new ChunkedMapMatcher(chunkedService, Runnable::run, 100, 80, 20)
+                .match(observations);
+
+        // the windows were joined, not replaced by a single-shot fallback
+        verify(chunkedService, atLeast(3)).match(anyList());
+        verify(chunkedService, never()).match(observations);
+
+        assertThat(edgeKeys(chunked)).isNotEmpty().isEqualTo(edgeKeys(single));
+        assertThat(chunked.length()).isEqualTo(single.length());
+    }
+
+    private GraphHopperService matchingService() throws Exception {
+        GraphHopperService service = mock(GraphHopperService.class);
+        // a matcher per call, as MapMatching is not thread-safe
+        when(service.match(anyList())).thenAnswer(invocation -> MapMatching.fromGraphHopper(
+                hopper, new PMap().putObject("profile", GraphHopperService.PROFILE_BIKE_MATCH_NEUTRAL))
+                .match(invocation.getArgument(0)));
+        return service;
+    }
+
+    /**
+     * Samples the straight streets between consecutive junctions every few meters, each sample
+     * shifted by up to {@link #NOISE_METERS} along both axes with a seeded random.
+     */
+    private static List<Observation> ride(List<int[]> junctions, long seed) {
+        Random random = new Random(seed);
+        double metersPerLat = 111_320.0;
+        double metersPerLon = metersPerLat * Math.cos(Math.toRadians(LAT0));
+
+        List<Observation> observations = new ArrayList<>();
+        for (int i = 0; i + 1 < junctions.size(); i++) {
+            double fromLat = LAT0 + junctions.get(i)[0] * LAT_STEP;
+            double fromLon = LON0 + junctions.get(i)[1] * LON_STEP;
+            double toLat = LAT0 + junctions.get(i + 1)[0] * LAT_STEP;
+            double toLon = LON0 + junctions.get(i + 1)[1] * LON_STEP;
+            double length = Math.hypot((toLat - fromLat) * metersPerLat, (toLon - fromLon) * metersPerLon);
+            int samples = (int) Math.round(length / SAMPLE_SPACING_METERS);
+            for (int s = 0; s < samples; s++) {
+                double t = (double) s / samples;
+                double lat = fromLat + t * (toLat - fromLat) + noise(random) / metersPerLat;
+                double lon = fromLon + t * (toLon - fromLon) + noise(random) / metersPerLon;
+                observations.add(new Observation(new GHPoint(lat, lon)));
+            }
+        }
+        int[] last = junctions.getLast();
+        observations.add(new Observation(new GHPoint(LAT0 + last[0] * LAT_STEP, LON0 + last[1] * LON_STEP)));
+        return observations;
+    }
+
+    private static double noise(Random random) {
+        return (random.nextDouble() * 2 - 1) * NOISE_METERS;
+    }
+
+    private static List<Integer> edgeKeys(ChunkedMapMatcher.Match match) {
+        return match.edgeMatches().stream().map(m -> m.getEdgeState().getEdgeKey()).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.matching.EdgeMatch;
+import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.State;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedMapMatcherTest {
+
+    // 300 observations, five on every second edge, so the odd edges are only routed through
+    private static final int OBSERVATIONS = 300;
+    private static final IntUnaryOperator EDGE_OF_OBSERVATION = i -> 2 * (i / 5);
+
+    private final GraphHopperService graphHopperService = mock(GraphHopperService.class);
+    private final List<Observation> observations = observations();
+
+    @Test
+    void chunkedResultEqualsSingleShotResult() throws Exception {
+        when(graphHopperService.match(anyList())).thenAnswer(invocation -> matchAlongPath(invocation.getArgument(0), 0));
+
+        ChunkedMapMatcher.Match single = new ChunkedMapMatcher(graphHopperService, Runnable::run, 0, 0, 0)
+                .match(observations);
+        ChunkedMapMatcher.Match chunked = new ChunkedMapMatcher(graphHopperService, Runnable::run, 100, 80, 20)
+                .match(observations);
+
+        assertThat(edgeKeys(chunked)).isEqualTo(edgeKeys(single));
+        assertThat(edgeKeys(chunked)).hasSize(EDGE_OF_OBSERVATION.applyAsInt(OBSERVATIONS - 1) + 1);
+        assertThat(chunked.length()).isEqualTo(single.length());
+        // one single-shot call above, five windows below
+        verify(graphHopperService, times(6)).match(anyList());
+    }
+
+    @Test
+    void ridesUpToTheThresholdAreMatchedInOnePiece() throws Exception {
+        when(graphHopperService.match(anyList())).thenAnswer(invocation -> matchAlongPath(invocation.getArgument(0), 0));
+
+        new ChunkedMapMatcher(graphHopperService, Runnable::run, OBSERVATIONS, 80, 20).match(observations);
+
+        verify(graphHopperService).match(observations);
+    }
+
+    @Test
+    void windowsWithoutSharedEdgeFallBackToSingleShot() throws Exception {
+        // every window lands on its own edges, as if it had snapped to a parallel road
+        when(graphHopperService.match(anyList())).thenAnswer(invocation -> {
+            List<Observation> window = invocation.getArgument(0);
+            return matchAlongPath(window, window.size() == OBSERVATIONS ? 0 : 1_000 * observations.indexOf(window.getFirst()));
+        });
+
+        ChunkedMapMatcher.Match match = new ChunkedMapMatcher(graphHopperService, Runnable::run, 100, 80, 20)
+                .match(observations);
+
+        assertThat(edgeKeys(match).getFirst()).isZero();
+        verify(graphHopperService).match(observations);
+    }
+
+    @Test
+    void overlapMustFitIntoTheChunk() throws Exception {
+        assertThatThrownBy(() -> new ChunkedMapMatcher(graphHopperService, Runnable::run, 100, 80, 80))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(graphHopperService, never()).match(anyList());
+    }
+
+    /**
+     * Matches a window exactly onto the true path: every edge from the first to the last
+     * observation's edge, each carrying the window's observations that lie on it.
+     */
+    private MatchResult matchAlongPath(List<Observation> window, int edgeKeyOffset) {
+        int firstIndex = observations.indexOf(window.getFirst());
+        int firstEdge = EDGE_OF_OBSERVATION.applyAsInt(firstIndex);
+        int lastEdge = EDGE_OF_OBSERVATION.applyAsInt(firstIndex + window.size() - 1);
+
+        List<EdgeMatch> matches = new ArrayList<>();
+        for (int edge = firstEdge; edge <= lastEdge; edge++) {
+            List<State> states = new ArrayList<>();
+            for (int i = firstIndex; i < firstIndex + window.size(); i++) {
+                if (EDGE_OF_OBSERVATION.applyAsInt(i) == edge) {
+                    State state = mock(State.class);
+                    when(state.getEntry()).thenReturn(observations.get(i));
+                    states.add(state);
+                }
+            }
+            EdgeIteratorState edgeState = mock(EdgeIteratorState.class);
+            when(edgeState.getEdgeKey()).thenReturn(edgeKeyOffset + 2 * edge);
+            when(edgeState.getDistance()).thenReturn(10.0 + edge);
+            EdgeMatch match = mock(EdgeMatch.class);
+            when(match.getEdgeState()).thenReturn(edgeState);
+            when(match.getStates()).thenReturn(states);
+            matches.add(match);
+        }
+
+        MatchResult result = mock(MatchResult.class);
+        when(result.getEdgeMatches()).thenReturn(matches);
+        return result;
+    }
+
+    private static List<Integer> edgeKeys(ChunkedMapMatcher.Match match) {
+        return match.edgeMatches().stream().map(m -> m.getEdgeState().getEdgeKey()).toList();
+    }
+
+    private static List<Observation> observations() {
+        List<Observation> observations = new ArrayList<>();
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            observations.add(new Observation(new GHPoint(52.5 + i * 0.0001, 13.4)));
+        }
+        return observations;
+    }
+}
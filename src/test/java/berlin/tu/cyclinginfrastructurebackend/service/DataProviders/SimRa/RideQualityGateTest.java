@@ -0,0 +1,122 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.RideRejectionReason;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RideQualityGateTest {
+
+    private static final String BERLIN_WKT = "POLYGON ((13.08 52.33, 13.77 52.33, 13.77 52.68, 13.08 52.68, 13.08 52.33))";
+
+    private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+    private final RideQualityGate gate = new RideQualityGate(BERLIN_WKT, 20, 60, 60);
+
+    @Test
+    void plausibleRideInsideRegionPasses() {
+        RideQualityGate.Inspection inspection = gate.inspect();
+
+        for (int i = 0; i < 30; i++) {
+            // ~11 m every 3 s, about 13 km/h
+            assertThat(inspection.accept(point(i * 3_000L, 52.5 + i * 0.0001, 13.4, 5.0))).isTrue();
+        }
+
+        assertThat(inspection.finish()).isNull();
+    }
+
+    @Test
+    void pointOutsideRegionRejectsImmediately() {
+        RideQualityGate.Inspection inspection = gate.inspect();
+
+        assertThat(inspection.accept(point(0L, 52.5, 13.4, 5.0))).isTrue();
+        assertThat(inspection.accept(point(3_000L, 48.1, 11.6, 5.0))).isFalse();
+        assertThat(inspection.accept(point(6_000L, 52.5, 13.4, 5.0))).isFalse();
+
+        assertThat(inspection.finish()).isEqualTo(RideRejectionReason.OUTSIDE_REGION);
+    }
+
+    @Test
+    void teleportingFixIsAnImplausibleJump() {
+        RideQualityGate.Inspection inspection = gate.inspect();
+
+        assertThat(inspection.accept(point(0L, 52.50, 13.4, 5.0))).isTrue();
+        // rows without a location do not reset the jump check
+        assertThat(inspection.accept(point(1_000L, null, null, null))).isTrue();
+        // ~1.1 km in 3 s
+        assertThat(inspection.accept(point(3_000L, 52.51, 13.4, 5.0))).isFalse();
+
+        assertThat(inspection.finish()).isEqualTo(RideRejectionReason.IMPLAUSIBLE_JUMP);
+    }
+
+    @Test
+    void wholeTrackChecksRunOnFinish() {
+        RideQualityGate.Inspection inaccurate = gate.inspect();
+        for (int i = 0; i < 30; i++) {
+            inaccurate.accept(point(i * 3_000L, 52.5, 13.4, i < 20 ? 45.0 : 3.0));
+        }
+        assertThat(inaccurate.finish()).isEqualTo(RideRejectionReason.POOR_GPS_ACCURACY);
+
+        RideQualityGate.Inspection tooShort = gate.inspect();
+        tooShort.accept(point(0L, 52.5, 13.4, 5.0));
+        tooShort.accept(point(30_000L, 52.5005, 13.4, 5.0));
+        assertThat(tooShort.finish()).isEqualTo(RideRejectionReason.TOO_SHORT);
+
+        RideQualityGate.Inspection unlocated = gate.inspect();
+        unlocated.accept(point(0L, null, null, null));
+        assertThat(unlocated.finish()).isEqualTo(RideRejectionReason.NO_GPS_POINTS);
+    }
+
+    @Test
+    void zeroLimitsAndEmptyRegionDisableChecks() {
+        RideQualityGate.Inspection inspection = new RideQualityGate("", 0, 0, 0).inspect();
+
+        inspection.accept(point(0L, 48.1, 11.6, 200.0));
+        inspection.accept(point(1_000L, 52.5, 13.4, 200.0));
+
+        assertThat(inspection.finish()).isNull();
+    }
+
+    @Test
+    void regionMustBeAPolygon() {
+        assertThatThrownBy(() -> new RideQualityGate("POINT (13.4 52.5)", 20, 60, 60))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parserStopsReadingAtTheFirstRejectedRow() throws Exception {
+        String file = """
+                key,lat,lon,ts,bike,childCheckBox,trailerCheckBox,pLoc,incident,i1,i2,i3,i4,i5,i6,i7,i8,i9,scary,desc,i10
+                =========================
+                lat,lon,X,Y,Z,timeStamp,acc,a,b,c
+                52.512,13.393,,,,1710498000000,3.5,,,
+                48.137,11.575,,,,1710498003000,3.5,,,
+                52.513,13.394,,,,1710498006000,3.2,,,
+                """;
+        RideQualityGate.Inspection inspection = gate.inspect();
+
+        Ride ride = new SimRaFileParser().parse(
+                new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)), "VM-test", inspection);
+
+        assertThat(ride.getRidePoints()).hasSize(2);
+        assertThat(inspection.finish()).isEqualTo(RideRejectionReason.OUTSIDE_REGION);
+    }
+
+    private RidePoint point(long timestamp, Double lat, Double lon, Double accuracy) {
+        RidePoint point = new RidePoint();
+        point.setTimestamp(timestamp);
+        if (lat != null) {
+            point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+        }
+        point.setGpsAccuracy(accuracy);
+        return point;
+    }
+}
@@ -0,0 +1,90 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimRaArchiveReaderTest {
+
+    private static final Map<String, String> ENTRIES = Map.of(
+            "Berlin/Rides/VM2_1", "first ride",
+            "Berlin/Rides/VM2_2", "second ride");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void recognisesSupportedArchiveExtensions() {
+        assertThat(SimRaArchiveReader.isArchive(Path.of("a/Berlin.zip"))).isTrue();
+        assertThat(SimRaArchiveReader.isArchive(Path.of("a/Berlin.TAR.GZ"))).isTrue();
+        assertThat(SimRaArchiveReader.isArchive(Path.of("a/Berlin.tgz"))).isTrue();
+        assertThat(SimRaArchiveReader.isArchive(Path.of("a/Rides/VM2_1"))).isFalse();
+    }
+
+    @Test
+    void streamsEveryFileOfATarGzInStoredOrderEvenIfTheHandlerClosesTheStream() throws Exception {
+        Path archive = tempDir.resolve("bundle.tar.gz");
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                new GzipCompressorOutputStream(Files.newOutputStream(archive)))) {
+            tar.putArchiveEntry(new TarArchiveEntry("Berlin/Rides/"));
+            tar.closeArchiveEntry();
+            for (String name : List.of("Berlin/Rides/VM2_1", "Berlin/Rides/VM2_2")) {
+                writeTarEntry(tar, name);
+            }
+        }
+
+        assertThat(readAll(archive)).containsExactly(
+                "Berlin/Rides/VM2_1=first ride", "Berlin/Rides/VM2_2=second ride");
+    }
+
+    @Test
+    void streamsEveryFileOfAZip() throws Exception {
+        Path archive = tempDir.resolve("bundle.zip");
+        try (OutputStream out = Files.newOutputStream(archive);
+             ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+            for (String name : List.of("Berlin/Rides/VM2_1", "Berlin/Rides/VM2_2")) {
+                zip.putArchiveEntry(new ZipArchiveEntry(name));
+                zip.write(ENTRIES.get(name).getBytes(StandardCharsets.UTF_8));
+                zip.closeArchiveEntry();
+            }
+        }
+
+        assertThat(readAll(archive)).containsExactly(
+                "Berlin/Rides/VM2_1=first ride", "Berlin/Rides/VM2_2=second ride");
+    }
+
+    private static void writeTarEntry(TarArchiveOutputStream tar, String name) throws IOException {
+        byte[] content = ENTRIES.get(name).getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+
+    private static List<String> readAll(Path archive) throws Exception {
+        List<String> read = new ArrayList<>();
+        SimRaArchiveReader.forEachEntry(archive, (name, size, lastModified, content) -> {
+            try (InputStream in = content) {
+                read.add(name + "=" + new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        });
+        return read;
+    }
+}
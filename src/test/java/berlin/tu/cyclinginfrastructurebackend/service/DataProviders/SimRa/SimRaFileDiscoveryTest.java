@@ -0,0 +1,164 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ImportOutcome;
+import berlin.tu.cyclinginfrastructurebackend.repository.ImportManifestBatchRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.ImportManifestRepository;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa.SimRaFileDiscovery.ImportCandidate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SimRaFileDiscoveryTest {
+
+    private final ImportManifestRepository manifestRepository = mock(ImportManifestRepository.class);
+    private final ImportManifestBatchRepository manifestBatchRepository = mock(ImportManifestBatchRepository.class);
+    private final RideRepository rideRepository = mock(RideRepository.class);
+
+    @TempDir
+    Path dataPath;
+
+    @Test
+    void returnsOnlyRideFilesMissingFromManifest() throws IOException {
+        Path imported = rideFile("Berlin/Rides/VM2_1");
+        rideFile("Berlin/Rides/VM2_2");
+        rideFile("Berlin/Rides/.VM2_3");
+        rideFile("Berlin/Profiles/VM2_4");
+        when(manifestRepository.findSettledFileStamps()).thenReturn(List.<Object[]>of(stamp(imported)));
+        when(manifestRepository.count()).thenReturn(1L);
+
+        List<ImportCandidate> batch = discovery().nextBatch(10);
+
+        assertThat(batch).extracting(ImportCandidate::key)
+                .containsExactly(Path.of("Berlin", "Rides", "VM2_2").toString());
+    }
+
+    @Test
+    void recordedFilesAreNotReturnedAgainButChangedFilesAre() throws IOException {
+        Path file = rideFile("Berlin/Rides/VM2_1");
+        SimRaFileDiscovery discovery = discovery();
+
+        ImportCandidate candidate = discovery.nextBatch(10).getFirst();
+        discovery.recordOutcome(candidate, ImportOutcome.INVALID, null);
+
+        assertThat(discovery.nextBatch(10)).isEmpty();
+        verify(manifestRepository).upsert(eq(candidate.key()), eq(candidate.size()), eq(candidate.lastModified()),
+                eq("INVALID"), isNull(), anyLong());
+
+        Files.writeString(file, "replaced content");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(candidate.lastModified() + 30_000));
+        touchDirectory(file.getParent());
+
+        assertThat(discovery.nextBatch(10)).extracting(ImportCandidate::key).containsExactly(candidate.key());
+    }
+
+    @Test
+    void emptyManifestAdoptsPreviouslyImportedRidesByFilename() throws IOException {
+        rideFile("Berlin/Rides/VM2_1");
+        rideFile("Berlin/Rides/VM2_2");
+        when(rideRepository.count()).thenReturn(1L);
+        when(rideRepository.findAllOriginalFilenames()).thenReturn(Set.of("VM2_1"));
+
+        List<ImportCandidate> batch = discovery().nextBatch(10);
+
+        assertThat(batch).extracting(c -> c.file().getFileName().toString()).containsExactly("VM2_2");
+        verify(manifestBatchRepository).upsertAll(eq(new String[]{Path.of("Berlin", "Rides", "VM2_1").toString()}),
+                any(), any(), eq("IMPORTED"), anyLong());
+        verify(manifestRepository, never()).upsert(any(), anyLong(), anyLong(), any(), any(), anyLong());
+    }
+
+    @Test
+    void filesStillBeingWrittenAreQueuedOnceTheyHaveSettled() throws IOException {
+        Path file = dataPath.resolve("Berlin/Rides/VM2_1");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "key,lat");
+        SimRaFileDiscovery discovery = discovery();
+
+        assertThat(discovery.nextBatch(10)).isEmpty();
+
+        Files.writeString(file, "key,lat,lon\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        assertThat(discovery.nextBatch(10)).extracting(ImportCandidate::size).containsExactly(Files.size(file));
+    }
+
+    @Test
+    void archivesAreCandidatesAndTheirEntriesAreKeyedByArchivePlusEntryName() throws IOException {
+        Path bundle = dataPath.resolve("exports/Berlin.tar.gz");
+        Files.createDirectories(bundle.getParent());
+        Files.write(bundle, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(bundle, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        String entryKey = Path.of("exports", "Berlin.tar.gz") + "!/Berlin/Rides/VM2_1";
+        when(manifestRepository.findSettledFileStamps()).thenReturn(List.<Object[]>of(new Object[]{entryKey, 10L, 1_000L}));
+        when(manifestRepository.count()).thenReturn(1L);
+        SimRaFileDiscovery discovery = discovery();
+
+        ImportCandidate archive = discovery.nextBatch(10).getFirst();
+
+        assertThat(archive.isArchive()).isTrue();
+        assertThat(discovery.archiveEntry(archive, "Berlin/Rides/VM2_1", 10L, 1_000L)).isNull();
+        assertThat(discovery.archiveEntry(archive, "Berlin/Profiles/VM2_2", 10L, 1_000L)).isNull();
+        ImportCandidate entry = discovery.archiveEntry(archive, "Berlin/Rides/VM2_2", 10L, 1_000L);
+        assertThat(entry.key()).isEqualTo(Path.of("exports", "Berlin.tar.gz") + "!/Berlin/Rides/VM2_2");
+        assertThat(entry.file()).isEqualTo(archive.file());
+        assertThat(entry.isArchive()).isFalse();
+    }
+
+    @Test
+    void batchesAreLimitedAndRemainingFilesStayPending() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            rideFile("Berlin/Rides/VM2_" + i);
+        }
+        SimRaFileDiscovery discovery = discovery();
+
+        assertThat(discovery.nextBatch(2)).hasSize(2);
+        assertThat(discovery.pendingCount()).isEqualTo(3);
+        assertThat(discovery.nextBatch(10)).hasSize(3);
+    }
+
+    private SimRaFileDiscovery discovery() {
+        SimRaFileDiscovery discovery = new SimRaFileDiscovery(manifestRepository, manifestBatchRepository, rideRepository);
+        ReflectionTestUtils.setField(discovery, "dataPath", dataPath.toString());
+        ReflectionTestUtils.setField(discovery, "discoveryMode", "scan");
+        return discovery;
+    }
+
+    private Path rideFile(String relativePath) throws IOException {
+        Path file = dataPath.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "key,lat,lon\n");
+        // files modified in the last seconds are still settling
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        return file;
+    }
+
+    private Object[] stamp(Path file) throws IOException {
+        return new Object[]{
+                dataPath.relativize(file).toString(),
+                Files.size(file),
+                Files.getLastModifiedTime(file).toMillis()
+        };
+    }
+
+    private static void touchDirectory(Path directory) throws IOException {
+        FileTime current = Files.getLastModifiedTime(directory);
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(current.toMillis() + 60_000));
+    }
+}
@@ -0,0 +1,114 @@
+package berlin.tu.cyclinginfrastructurebackend.service.DataProviders.SimRa;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Incident;
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.BikeType;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.IncidentType;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.ParticipantType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimRaFileParserTest {
+
+    private final SimRaFileParser parser = new SimRaFileParser();
+
+    @Test
+    void parsesMetadataIncidentsAndPaddedShortRows() throws IOException {
+        Ride ride = parse("""
+                72#2
+                key,lat,lon,ts,bike,childCheckBox,trailerCheckBox,pLoc,incident,i1,i2,i3,i4,i5,i6,i7,i8,i9,scary,desc,i10
+                0,,,,1,1,0,1,-5,,,,,,,,,,,,
+                1,52.512,13.393,1710498000000,,,,,2,0,1,0,0,0,0,1,0,0,true,"Close pass, ""very"" close",1
+
+                =========================
+                72#2
+                lat,lon,X,Y,Z,timeStamp,acc,a,b,c
+                52.512,13.393,-0.42,0.11,9.82,1710498000000,3.5,0.01,-0.02,0.00
+                ,,-0.40,0.09,9.80,1710498000500
+                52.513,13.394,-0.40,0.09,9.80,1710498001000,3.2,0.01,0.02,0.03
+                """);
+
+        assertThat(ride.getOriginalFilename()).isEqualTo("VM-test");
+        assertThat(ride.getBikeType()).isEqualTo(BikeType.fromCode(1));
+        assertThat(ride.getChildTransport()).isTrue();
+        assertThat(ride.getTrailerAttached()).isFalse();
+
+        assertThat(ride.getIncidents()).hasSize(1);
+        Incident incident = ride.getIncidents().getFirst();
+        assertThat(incident.getIncidentKey()).isEqualTo(1);
+        assertThat(incident.getIncidentType()).isEqualTo(IncidentType.fromCode(2));
+        assertThat(incident.getScary()).isTrue();
+        assertThat(incident.getDescription()).isEqualTo("Close pass, \"very\" close");
+        assertThat(incident.getLocation().getY()).isEqualTo(52.512);
+        assertThat(incident.getInvolvedParticipants())
+                .containsExactlyInAnyOrder(ParticipantType.CYCLIST, ParticipantType.CAR, ParticipantType.SCOOTER);
+
+        assertThat(ride.getRidePoints()).hasSize(3);
+        RidePoint shortRow = ride.getRidePoints().get(1);
+        assertThat(shortRow.getLocation()).isNull();
+        assertThat(shortRow.getZ()).isEqualTo(9.80);
+        assertThat(shortRow.getGpsAccuracy()).isNull();
+        assertThat(shortRow.getSequenceIndex()).isEqualTo(1);
+
+        assertThat(ride.getStartTime()).isEqualTo(1_710_498_000_000L);
+        assertThat(ride.getEndTime()).isEqualTo(1_710_498_001_000L);
+        assertThat(ride.getTrajectory().getNumPoints()).isEqualTo(2);
+        assertThat(ride.getStartPoint().getCoordinate()).isEqualTo(ride.getTrajectory().getCoordinateN(0));
+        assertThat(ride.getEndPoint().getCoordinate()).isEqualTo(ride.getTrajectory().getCoordinateN(1));
+    }
+
+    @Test
+    void dropsRowsWithTooManyFieldsOrMalformedValues() throws IOException {
+        Ride ride = parse("""
+                key,lat,lon,ts,bike,childCheckBox,trailerCheckBox,pLoc,incident
+                =========================
+                lat,lon,X,Y,Z,timeStamp,acc,a,b,c
+                52.512,13.393,-0.42,0.11,9.82,1710498000000,3.5,0.01,-0.02,0.00,surplus
+                52.512,13.393,abc,0.11,9.82,1710498000000,3.5,0.01,-0.02,0.00
+                52.513,13.394,-0.40,0.09,9.80,1710498001000,3.2,0.01,0.02,0.03
+                """);
+
+        assertThat(ride.getRidePoints()).hasSize(1);
+        assertThat(ride.getRidePoints().getFirst().getSequenceIndex()).isZero();
+        assertThat(ride.getIncidents()).isEmpty();
+    }
+
+    @Test
+    void fingerprintIdentifiesTheRecordingNotTheFile() throws IOException {
+        String recording = """
+                72#2
+                key,lat,lon,ts,bike,childCheckBox,trailerCheckBox,pLoc,incident
+                =========================
+                72#2
+                lat,lon,X,Y,Z,timeStamp,acc,a,b,c
+                52.512,13.393,-0.42,0.11,9.82,1710498000000,3.5,0.01,-0.02,0.00
+                52.513,13.394,-0.40,0.09,9.80,1710498003000,3.2,0.01,0.02,0.03
+                """;
+
+        Ride original = parse(recording);
+        Ride reupload = parser.parse(
+                new ByteArrayInputStream(recording.getBytes(StandardCharsets.UTF_8)), "VM-reupload");
+        Ride otherRide = parse(recording.replace("52.513,13.394", "52.514,13.394"));
+
+        assertThat(original.getFingerprint()).isNotNull().isEqualTo(reupload.getFingerprint());
+        assertThat(otherRide.getFingerprint()).isNotEqualTo(original.getFingerprint());
+    }
+
+    @Test
+    void rejectsFileWithoutContent() {
+        assertThatThrownBy(() -> parse("\n======\n\n"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("file is empty");
+    }
+
+    private Ride parse(String content) throws IOException {
+        return parser.parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "VM-test");
+    }
+}
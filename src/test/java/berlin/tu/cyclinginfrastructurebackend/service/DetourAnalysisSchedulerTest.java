@@ -0,0 +1,158 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DetourAnalysisSchedulerTest {
+
+    private final RideRepository rideRepository = mock(RideRepository.class);
+    private final DetourAnalysisService detourAnalysisService = mock(DetourAnalysisService.class);
+    private final PipelineWorkClaimService workClaimService = mock(PipelineWorkClaimService.class);
+    private final List<Runnable> queued = new ArrayList<>();
+    private final DetourAnalysisScheduler scheduler = new DetourAnalysisScheduler(
+            rideRepository, detourAnalysisService, queued::add, workClaimService, mock(TileBuildService.class));
+
+    @Test
+    void claimsOnlyAsManyRidesAsWorkersAndQueueHaveRoomFor() throws Exception {
+        open(2, 16);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt()))
+                .thenAnswer(invocation -> rides(invocation.getArgument(0)));
+
+        // chunks are at most one ride per worker
+        assertThat(scheduler.dispatchOnce()).isEqualTo(2);
+        assertThat(scheduler.dispatchOnce()).isEqualTo(2);
+        assertThat(scheduler.inFlight()).isEqualTo(4);
+
+        queued.removeFirst().run();
+
+        assertThat(scheduler.dispatchOnce()).isEqualTo(1);
+        verify(workClaimService).claimPendingRidesForAnalysis(1);
+    }
+
+    @Test
+    void chunksAreLimitedToTheClaimSize() throws Exception {
+        open(8, 3);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt())).thenReturn(rides(3));
+
+        scheduler.dispatchOnce();
+
+        verify(workClaimService).claimPendingRidesForAnalysis(3);
+    }
+
+    @Test
+    void capacityOfUnclaimedRidesIsReturned() throws Exception {
+        open(2, 16);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt())).thenReturn(rides(1));
+
+        assertThat(scheduler.dispatchOnce()).isEqualTo(1);
+
+        assertThat(scheduler.inFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void finishedRidesReleaseTheirWorker() throws Exception {
+        open(1, 16);
+        List<UUID> rides = rides(2);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt())).thenReturn(rides);
+        when(detourAnalysisService.analyzeRide(any())).thenReturn(Status.PROCESSED);
+
+        scheduler.dispatchOnce();
+        queued.forEach(Runnable::run);
+
+        verify(detourAnalysisService).analyzeRide(rides.get(0));
+        verify(detourAnalysisService).analyzeRide(rides.get(1));
+        assertThat(scheduler.inFlight()).isZero();
+    }
+
+    @Test
+    void ridesNotStartedBeforeShutdownAreReleased() throws Exception {
+        open(1, 16);
+        List<UUID> rides = rides(2);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt())).thenReturn(rides);
+        scheduler.dispatchOnce();
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(scheduler::shutdown);
+        while (scheduler.isRunning()) {
+            Thread.onSpinWait();
+        }
+        queued.forEach(Runnable::run);
+        shutdown.join();
+
+        verify(rideRepository).updateStatus(rides.get(0), Status.PENDING);
+        verify(rideRepository).updateStatus(rides.get(1), Status.PENDING);
+        verify(detourAnalysisService, never()).analyzeRide(any());
+    }
+
+    @Test
+    void capacityLeftByPendingRidesGoesToReanalysis() throws Exception {
+        open(4, 16);
+        List<UUID> reanalysis = rides(3);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt())).thenReturn(rides(1));
+        when(workClaimService.claimRidesForReanalysis(anyInt())).thenReturn(reanalysis);
+
+        assertThat(scheduler.dispatchOnce()).isEqualTo(4);
+        verify(workClaimService).claimRidesForReanalysis(3);
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(scheduler::shutdown);
+        while (scheduler.isRunning()) {
+            Thread.onSpinWait();
+        }
+        queued.forEach(Runnable::run);
+        shutdown.join();
+
+        // re-analyzed rides keep their status and only give up their claim
+        reanalysis.forEach(rideId -> verify(workClaimService).releaseReanalysis(rideId));
+        reanalysis.forEach(rideId -> verify(rideRepository, never()).updateStatus(rideId, Status.PENDING));
+    }
+
+    @Test
+    void resizingChangesTheRidesInFlightAndTheClaimSize() throws Exception {
+        open(4, 16);
+        when(workClaimService.claimPendingRidesForAnalysis(anyInt()))
+                .thenAnswer(invocation -> rides(invocation.getArgument(0)));
+        scheduler.dispatchOnce();
+        assertThat(scheduler.inFlight()).isEqualTo(4);
+
+        scheduler.resize(1);
+
+        assertThat(scheduler.claimSize()).isEqualTo(1);
+        // four rides still running against a capacity of two
+        assertThat(scheduler.inFlight()).isEqualTo(4);
+        queued.removeFirst().run();
+        queued.removeFirst().run();
+        queued.removeFirst().run();
+        assertThat(scheduler.dispatchOnce()).isEqualTo(1);
+
+        scheduler.resize(3);
+
+        assertThat(scheduler.claimSize()).isEqualTo(3);
+        assertThat(scheduler.dispatchOnce()).isEqualTo(3);
+        assertThat(scheduler.inFlight()).isEqualTo(5);
+    }
+
+    private void open(int threads, int claimSize) {
+        ReflectionTestUtils.setField(scheduler, "threadPoolSize", threads);
+        ReflectionTestUtils.setField(scheduler, "claimSize", claimSize);
+        scheduler.open();
+    }
+
+    private static List<UUID> rides(int count) {
+        return IntStream.range(0, count).mapToObj(i -> UUID.randomUUID()).toList();
+    }
+}
@@ -4,8 +4,8 @@ import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
 import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.RouteComparisonType;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
+import berlin.tu.cyclinginfrastructurebackend.repository.RideAnalysisRepository;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
-import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentRepository;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.util.PointList;
 import org.junit.jupiter.api.Test;
@@ -16,12 +16,16 @@ import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
@@ -29,9 +33,12 @@ class DetourAnalysisServiceTest {
 
     private final GraphHopperService graphHopperService = mock(GraphHopperService.class);
     private final RideRepository rideRepository = mock(RideRepository.class);
+    private final RideAnalysisRepository rideAnalysisRepository = mock(RideAnalysisRepository.class);
     private final StreetSegmentService streetSegmentService = mock(StreetSegmentService.class);
-    private final StreetSegmentRepository streetSegmentRepository = mock(StreetSegmentRepository.class);
     private final RideIntentClassifier rideIntentClassifier = mock(RideIntentClassifier.class);
+    private final RouteOverlapCalculator routeOverlapCalculator = mock(RouteOverlapCalculator.class);
+    private final ParallelEdgeIndex parallelEdgeIndex = mock(ParallelEdgeIndex.class);
+    private final AnalysisVersionService analysisVersionService = mock(AnalysisVersionService.class);
     private final DetourAnalysisService service = service();
 
     @Test
@@ -40,7 +47,7 @@ class DetourAnalysisServiceTest {
         ResponsePath shortestPath = shortestPath(1_000.0);
         when(graphHopperService.getShortestPath(52.5, 13.4, 52.5, 13.41))
                 .thenReturn(shortestPath);
-        when(rideRepository.calculateSpatialLengthOverlap(anyString(), anyString(), eq(20.0)))
+        when(routeOverlapCalculator.lengthOverlap(any(), any(), eq(20.0)))
                 .thenReturn(0.75);
 
         Status result = service.analyzeLoadedRide(ride);
@@ -50,7 +57,7 @@ class DetourAnalysisServiceTest {
         assertThat(ride.getOverlapRatio()).isEqualTo(0.75);
         assertThat(ride.getRouteComparisonType()).isEqualTo(RouteComparisonType.EQUIVALENT_ROUTE);
         verify(rideIntentClassifier).classify(ride);
-        verifyNoInteractions(streetSegmentService, streetSegmentRepository);
+        verifyNoInteractions(streetSegmentService, parallelEdgeIndex);
     }
 
     @Test
@@ -59,7 +66,7 @@ class DetourAnalysisServiceTest {
         ResponsePath shortestPath = shortestPath(1_000.0);
         when(graphHopperService.getShortestPath(52.5, 13.4, 52.5, 13.41))
                 .thenReturn(shortestPath);
-        when(rideRepository.calculateSpatialLengthOverlap(anyString(), anyString(), eq(20.0)))
+        when(routeOverlapCalculator.lengthOverlap(any(), any(), eq(20.0)))
                 .thenReturn(0.2999);
 
         Status result = service.analyzeLoadedRide(ride);
@@ -70,7 +77,7 @@ class DetourAnalysisServiceTest {
         assertThat(ride.getOverlapRatio()).isEqualTo(0.2999);
         assertThat(ride.getRouteComparisonType()).isEqualTo(RouteComparisonType.CORRIDOR_ALTERNATIVE);
         verify(rideIntentClassifier).classify(ride);
-        verifyNoInteractions(streetSegmentService, streetSegmentRepository);
+        verifyNoInteractions(streetSegmentService, parallelEdgeIndex);
     }
 
     @Test
@@ -79,11 +86,9 @@ class DetourAnalysisServiceTest {
         ResponsePath shortestPath = shortestPath(1_000.0);
         when(graphHopperService.getShortestPath(52.5, 13.4, 52.5, 13.41))
                 .thenReturn(shortestPath);
-        when(rideRepository.calculateSpatialLengthOverlap(anyString(), anyString(), eq(20.0)))
+        when(routeOverlapCalculator.lengthOverlap(any(), any(), eq(20.0)))
                 .thenReturn(0.30);
-        when(streetSegmentRepository.findEdgeIdsWithinDistance(
-                org.mockito.ArgumentMatchers.anyList(), anyString(), eq(20.0)))
-                .thenReturn(List.of());
+        when(parallelEdgeIndex.distantEdges(any(), any())).thenReturn(Set.of());
         when(graphHopperService.getHopper()).thenReturn(mock(com.graphhopper.GraphHopper.class));
 
         Status result = service.analyzeLoadedRide(ride);
@@ -96,17 +101,94 @@ class DetourAnalysisServiceTest {
                 org.mockito.ArgumentMatchers.anyMap(),
                 org.mockito.ArgumentMatchers.anyMap(),
                 eq(ride),
-                eq(graphHopperService));
+                eq(graphHopperService),
+                eq(false));
+    }
+
+    @Test
+    void analyzeRideReadsTheAnalysisModelAndWritesOnlyTheResult() {
+        UUID rideId = UUID.randomUUID();
+        Ride ride = ride(1_050.0);
+        ride.setId(rideId);
+        when(rideAnalysisRepository.findForAnalysis(rideId)).thenReturn(Optional.of(ride));
+        when(graphHopperService.getShortestPath(52.5, 13.4, 52.5, 13.41))
+                .thenReturn(shortestPath(1_000.0));
+        when(routeOverlapCalculator.lengthOverlap(any(), any(), eq(20.0)))
+                .thenReturn(0.75);
+
+        Status result = service.analyzeRide(rideId);
+
+        assertThat(result).isEqualTo(Status.PROCESSED);
+        verify(rideAnalysisRepository).saveResult(ride);
+        verify(rideRepository, never()).findById(any());
+        verify(rideRepository, never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void skippedRideOnlyUpdatesItsStatus() {
+        UUID rideId = UUID.randomUUID();
+        Ride ride = ride(1_050.0);
+        ride.setId(rideId);
+        when(rideAnalysisRepository.findForAnalysis(rideId)).thenReturn(Optional.of(ride));
+
+        Status result = service.analyzeRide(rideId);
+
+        assertThat(result).isEqualTo(Status.SKIPPED);
+        verify(rideRepository).updateStatus(rideId, Status.SKIPPED);
+        verify(rideAnalysisRepository, never()).saveResult(any());
+    }
+
+    @Test
+    void resultOfAnInactiveVersionIsKeptApart() {
+        UUID rideId = UUID.randomUUID();
+        Ride ride = ride(1_050.0);
+        ride.setId(rideId);
+        ride.setStatus(Status.PROCESSED);
+        when(rideAnalysisRepository.findForAnalysis(rideId)).thenReturn(Optional.of(ride));
+        when(analysisVersionService.lockForAnalysis()).thenReturn(true);
+        when(analysisVersionService.version()).thenReturn("p25.0-d0.1-o0.3");
+        when(graphHopperService.getShortestPath(52.5, 13.4, 52.5, 13.41))
+                .thenReturn(shortestPath(1_000.0));
+        when(routeOverlapCalculator.lengthOverlap(any(), any(), eq(20.0)))
+                .thenReturn(0.75);
+
+        Status result = service.analyzeRide(rideId);
+
+        assertThat(result).isEqualTo(Status.PROCESSED);
+        assertThat(ride.getAnalysisVersion()).isEqualTo("p25.0-d0.1-o0.3");
+        verify(rideAnalysisRepository).saveCandidateResult(ride);
+        verify(rideAnalysisRepository, never()).saveResult(any());
+        verify(rideRepository, never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void pendingRideIsLeftToTheActiveVersion() {
+        UUID rideId = UUID.randomUUID();
+        Ride ride = ride(1_050.0);
+        ride.setId(rideId);
+        ride.setStatus(Status.ANALYZING);
+        when(rideAnalysisRepository.findForAnalysis(rideId)).thenReturn(Optional.of(ride));
+        when(analysisVersionService.lockForAnalysis()).thenReturn(true);
+
+        Status result = service.analyzeRide(rideId);
+
+        assertThat(result).isEqualTo(Status.PENDING);
+        verify(rideRepository).updateStatus(rideId, Status.PENDING);
+        verify(rideAnalysisRepository, never()).saveCandidateResult(any());
+        verifyNoInteractions(graphHopperService);
     }
 
     private DetourAnalysisService service() {
         DetourAnalysisService result = new DetourAnalysisService(
                 graphHopperService,
                 rideRepository,
+                rideAnalysisRepository,
                 streetSegmentService,
-                streetSegmentRepository,
                 rideIntentClassifier,
                 new RouteComparisonClassifier(0.10, 0.30),
+                routeOverlapCalculator,
+                parallelEdgeIndex,
+                analysisVersionService,
                 mock(PlatformTransactionManager.class));
         ReflectionTestUtils.setField(result, "proximityMeters", 20.0);
         return result;
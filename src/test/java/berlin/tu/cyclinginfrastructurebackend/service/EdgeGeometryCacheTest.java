@@ -0,0 +1,107 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EdgeGeometryCacheTest {
+
+    @Test
+    void geometryIsFetchedOncePerEdge() {
+        AtomicInteger fetched = new AtomicInteger();
+        EdgeGeometryCache cache = new EdgeGeometryCache(16, edgeId -> {
+            fetched.incrementAndGet();
+            return edge(northward(3), 222.0);
+        });
+
+        EdgeGeometryCache.EdgeGeometry first = cache.get(7);
+        EdgeGeometryCache.EdgeGeometry second = cache.get(7);
+
+        assertThat(second).isSameAs(first);
+        assertThat(fetched).hasValue(1);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+        assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void edgesSharingASlotReplaceEachOther() {
+        AtomicInteger fetched = new AtomicInteger();
+        EdgeGeometryCache cache = new EdgeGeometryCache(4, edgeId -> {
+            fetched.incrementAndGet();
+            return edge(northward(2), 111.0);
+        });
+
+        assertThat(cache.get(1).edgeId()).isEqualTo(1);
+        assertThat(cache.get(5).edgeId()).isEqualTo(5);
+        assertThat(cache.get(1).edgeId()).isEqualTo(1);
+
+        assertThat(cache.stats().capacity()).isEqualTo(4);
+        assertThat(fetched).hasValue(3);
+    }
+
+    @Test
+    void derivedAttributesFollowTheTravelDirection() {
+        PointList points = new PointList(3, true);
+        points.add(52.500, 13.4, 30.0);
+        points.add(52.501, 13.4, 31.0);
+        points.add(52.502, 13.4, 34.0);
+        EdgeGeometryCache.EdgeGeometry geometry = EdgeGeometryCache.EdgeGeometry.of(3, points, 200.0);
+
+        assertThat(geometry.size()).isEqualTo(3);
+        assertThat(geometry.lat(0)).isEqualTo(52.500);
+        assertThat(geometry.lat(0, true)).isEqualTo(52.502);
+        assertThat(geometry.midpointLat()).isCloseTo(52.501, within(1e-9));
+        assertThat(geometry.midpointLon()).isCloseTo(13.4, within(1e-9));
+        assertThat(geometry.bearing(false)).isCloseTo(0.0, within(1e-6));
+        assertThat(geometry.bearing(true)).isCloseTo(180.0, within(1e-6));
+        assertThat(geometry.gradientPercent()).isCloseTo(2.0, within(1e-9));
+        assertThat(geometry.length()).isEqualTo(200.0);
+    }
+
+    @Test
+    void edgesWithoutElevationHaveNoGradient() {
+        EdgeGeometryCache.EdgeGeometry geometry = EdgeGeometryCache.EdgeGeometry.of(3, northward(2), 111.0);
+
+        assertThat(geometry.gradientPercent()).isNull();
+    }
+
+    @Test
+    void missingEdgesAreNotCached() {
+        EdgeGeometryCache cache = new EdgeGeometryCache(4, edgeId -> null);
+
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.stats().misses()).isEqualTo(2);
+    }
+
+    @Test
+    void cacheNeedsAtLeastOneSlot() {
+        assertThatThrownBy(() -> new EdgeGeometryCache(0, edgeId -> null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static EdgeIteratorState edge(PointList points, double distance) {
+        EdgeIteratorState edge = mock(EdgeIteratorState.class);
+        when(edge.fetchWayGeometry(FetchMode.ALL)).thenReturn(points);
+        when(edge.getDistance()).thenReturn(distance);
+        return edge;
+    }
+
+    private static PointList northward(int size) {
+        PointList points = new PointList();
+        for (int i = 0; i < size; i++) {
+            points.add(52.5 + i * 0.001, 13.4);
+        }
+        return points;
+    }
+}
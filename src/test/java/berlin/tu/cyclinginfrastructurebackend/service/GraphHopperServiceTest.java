@@ -0,0 +1,115 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.Profile;
+import com.graphhopper.util.DistanceCalcEarth;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GraphHopperServiceTest {
+
+    // street-grid.osm.xml: 6 x 6 junctions, about 100 m apart
+    private static final double LAT0 = 52.1000;
+    private static final double LON0 = 13.1000;
+    private static final double LAT_STEP = 0.0009;
+    private static final double LON_STEP = 0.00146;
+
+    @TempDir
+    Path tempDirectory;
+
+    private GraphHopper hopper;
+    private GraphHopperService service;
+
+    @BeforeEach
+    void importStreetGrid() throws URISyntaxException {
+        Path osmFile = Path.of(Objects.requireNonNull(
+                getClass().getResource("/graphhopper/street-grid.osm.xml")).toURI());
+
+        hopper = new GraphHopper();
+        hopper.setOSMFile(osmFile.toString());
+        hopper.setGraphHopperLocation(tempDirectory.resolve("graph-cache").toString());
+        hopper.setMinNetworkSize(0);
+        hopper.setEncodedValuesString(GraphHopperService.ENCODED_VALUES);
+        hopper.setProfiles(
+                new Profile(GraphHopperService.PROFILE_BIKE_MATCH_NEUTRAL)
+                        .setCustomModel(GraphHopperService.createNeutralBicycleModel()),
+                new Profile(GraphHopperService.PROFILE_BIKE_SHORTEST)
+                        .setCustomModel(GraphHopperService.createNeutralBicycleModel()));
+        hopper.getCHPreparationHandler().setCHProfiles(
+                new CHProfile(GraphHopperService.PROFILE_BIKE_SHORTEST));
+        hopper.importOrLoad();
+
+        service = new GraphHopperService();
+        ReflectionTestUtils.setField(service, "matcherPoolSize", 1);
+        ReflectionTestUtils.setField(service, "edgeCacheMaxEntries", 64);
+        ReflectionTestUtils.setField(service, "routeCacheMaxEntries", 16);
+        service.useGraph(hopper);
+    }
+
+    @AfterEach
+    void closeGraph() {
+        if (hopper != null) {
+            hopper.close();
+        }
+    }
+
+    @Test
+    void shortestPathRunsBetweenTheNodesNearestToStartAndEnd() {
+        // start 30 % into the block east of junction (0, 0), end 30 % short of junction (3, 5)
+        double fromLat = LAT0;
+        double fromLon = LON0 + 0.3 * LON_STEP;
+        double toLat = LAT0 + 3 * LAT_STEP;
+        double toLon = LON0 + 4.7 * LON_STEP;
+
+        double nodeToNode = service.getShortestPath(fromLat, fromLon, toLat, toLon).getDistance();
+        double pointToPoint = routeBetweenSnappedPoints(fromLat, fromLon, toLat, toLon).getDistance();
+
+        // the path starts 0.3 blocks before the first fix and ends 0.3 blocks after the last one
+        double block = DistanceCalcEarth.DIST_EARTH.calcDist(LAT0, LON0, LAT0, LON0 + LON_STEP);
+        assertThat(nodeToNode - pointToPoint).isCloseTo(0.6 * block, within(1.0));
+    }
+
+    @Test
+    void shortestPathBetweenJunctionsIsTheRoutedDistance() {
+        double fromLat = LAT0;
+        double fromLon = LON0;
+        double toLat = LAT0 + 3 * LAT_STEP;
+        double toLon = LON0 + 5 * LON_STEP;
+
+        assertThat(service.getShortestPath(fromLat, fromLon, toLat, toLon).getDistance())
+                .isCloseTo(routeBetweenSnappedPoints(fromLat, fromLon, toLat, toLon).getDistance(), within(0.1));
+    }
+
+    @Test
+    void graphVersionChangesWithTheImport() {
+        long version = GraphHopperService.graphVersion("2026-01-01T00:00:00Z", 36, 60);
+
+        assertThat(GraphHopperService.graphVersion("2026-01-01T00:00:00Z", 36, 60)).isEqualTo(version);
+        assertThat(GraphHopperService.graphVersion("2026-01-01T00:00:01Z", 36, 60)).isNotEqualTo(version);
+        assertThat(GraphHopperService.graphVersion("2026-01-01T00:00:00Z", 36, 61)).isNotEqualTo(version);
+        assertThat(GraphHopperService.graphVersion(null, 36, 60)).isNotEqualTo(version);
+    }
+
+    // how the shortest path was routed before it ran between graph nodes
+    private ResponsePath routeBetweenSnappedPoints(double fromLat, double fromLon, double toLat, double toLon) {
+        GHResponse response = hopper.route(new GHRequest(fromLat, fromLon, toLat, toLon)
+                .setProfile(GraphHopperService.PROFILE_BIKE_SHORTEST));
+
+        assertThat(response.getErrors()).isEmpty();
+        return response.getBest();
+    }
+}
@@ -0,0 +1,127 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.matching.MapMatching;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class MapMatcherPoolTest {
+
+    @Test
+    void matchersAreCreatedUpFrontAndReused() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        MapMatcherPool pool = new MapMatcherPool(2, () -> {
+            created.incrementAndGet();
+            return mock(MapMatching.class);
+        });
+        Set<MapMatching> used = ConcurrentHashMap.newKeySet();
+
+        for (int i = 0; i < 10; i++) {
+            pool.withMatcher(used::add);
+        }
+
+        assertThat(created).hasValue(2);
+        assertThat(used).hasSizeLessThanOrEqualTo(2);
+        assertThat(pool.stats().borrows()).isEqualTo(10);
+        assertThat(pool.stats().waitedBorrows()).isZero();
+        assertThat(pool.stats().inUse()).isZero();
+    }
+
+    @Test
+    void callersBeyondThePoolSizeWaitForAFreeMatcher() throws Exception {
+        MapMatcherPool pool = new MapMatcherPool(2, () -> mock(MapMatching.class));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(callers.submit(() -> pool.withMatcher(matcher -> {
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inUse.decrementAndGet();
+                    return matcher;
+                })));
+            }
+            // let two callers queue up behind the two that hold the matchers
+            Thread.sleep(200);
+            assertThat(pool.stats().inUse()).isEqualTo(2);
+            release.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertThat(maxInUse).hasValue(2);
+        assertThat(pool.stats().waitedBorrows()).isBetween(1L, 2L);
+        assertThat(pool.stats().maxWaitNanos()).isPositive();
+    }
+
+    @Test
+    void matcherIsReturnedWhenMatchingThrows() {
+        MapMatcherPool pool = new MapMatcherPool(1, () -> mock(MapMatching.class));
+
+        assertThatThrownBy(() -> pool.withMatcher(matcher -> {
+            throw new IllegalArgumentException("no path");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(pool.stats().inUse()).isZero();
+    }
+
+    @Test
+    void interruptedWaitForAMatcherIsReportedAsInterruption() throws Exception {
+        MapMatcherPool pool = new MapMatcherPool(1, () -> mock(MapMatching.class));
+        CountDownLatch borrowed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try {
+                pool.withMatcher(matcher -> {
+                    borrowed.countDown();
+                    try {
+                        return release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        borrowed.await(5, TimeUnit.SECONDS);
+
+        Thread.currentThread().interrupt();
+        assertThatThrownBy(() -> pool.withMatcher(matcher -> matcher))
+                .isInstanceOf(InterruptedException.class);
+        release.countDown();
+        holder.join(5_000);
+
+        assertThat(pool.stats().inUse()).isZero();
+    }
+
+    @Test
+    void poolNeedsAtLeastOneMatcher() {
+        assertThatThrownBy(() -> new MapMatcherPool(0, () -> mock(MapMatching.class)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
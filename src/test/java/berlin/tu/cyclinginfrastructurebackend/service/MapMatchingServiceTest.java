@@ -4,27 +4,36 @@ import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
 import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
 import berlin.tu.cyclinginfrastructurebackend.domain.enums.Status;
 import berlin.tu.cyclinginfrastructurebackend.repository.RideRepository;
+import com.graphhopper.matching.Observation;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 class MapMatchingServiceTest {
 
     private final GraphHopperService graphHopperService = mock(GraphHopperService.class);
     private final StreetSegmentService streetSegmentService = mock(StreetSegmentService.class);
     private final RideRepository rideRepository = mock(RideRepository.class);
+    private final ChunkedMapMatcher chunkedMatcher = new ChunkedMapMatcher(graphHopperService, Runnable::run, 0, 0, 0);
     private final MapMatchingService service = new MapMatchingService(
-            graphHopperService, streetSegmentService, rideRepository, 500.0);
+            graphHopperService, streetSegmentService, rideRepository, ObservationThinner.disabled(), chunkedMatcher, 500.0);
     private final GeometryFactory geometryFactory = new GeometryFactory();
 
     @Test
-    void skipsRideBelowMinimumOriginDestinationDistanceBeforeMapMatchingAndUsageCounting() {
+    void skipsRideBelowMinimumOriginDestinationDistanceBeforeMapMatchingAndUsageCounting() throws Exception {
         Ride ride = new Ride();
         ride.getRidePoints().add(point(52.5200, 13.4050, 1_000L));
         ride.getRidePoints().add(point(52.5205, 13.4055, 2_000L));
@@ -37,6 +46,63 @@ class MapMatchingServiceTest {
         verifyNoInteractions(graphHopperService, streetSegmentService);
     }
 
+    @Test
+    void matchDoesNotWriteAndPersistHandsRideToWriter() throws Exception {
+        Ride ride = new Ride();
+        ride.getRidePoints().add(point(52.5200, 13.4050, 1_000L));
+        ride.getRidePoints().add(point(52.5205, 13.4055, 2_000L));
+        List<Ride> written = new ArrayList<>();
+
+        MapMatchingService.MatchedRide matched = service.match(ride);
+
+        assertThat(matched).isNotNull();
+        assertThat(matched.edges()).isEmpty();
+        verifyNoInteractions(rideRepository);
+
+        service.persist(matched, written::add);
+
+        assertThat(written).containsExactly(ride);
+        verifyNoInteractions(streetSegmentService);
+    }
+
+    @Test
+    void matchReturnsNullForRidesWithFewerThanTwoValidPoints() throws Exception {
+        Ride ride = new Ride();
+        ride.getRidePoints().add(point(52.5200, 13.4050, 1_000L));
+
+        assertThat(service.match(ride)).isNull();
+        verifyNoInteractions(graphHopperService, rideRepository);
+    }
+
+    @Test
+    void interruptedMatchIsNotReportedAsFailure() throws Exception {
+        when(graphHopperService.match(anyList())).thenThrow(new InterruptedException());
+        Ride ride = new Ride();
+        ride.getRidePoints().add(point(52.5200, 13.4050, 1_000L));
+        ride.getRidePoints().add(point(52.5300, 13.4050, 2_000L));
+
+        assertThatThrownBy(() -> service.match(ride)).isInstanceOf(InterruptedException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void thinnedPointsBecomeTheObservations() throws Exception {
+        MapMatchingService thinningService = new MapMatchingService(graphHopperService, streetSegmentService,
+                rideRepository, new ObservationThinner(10, 5, 250), chunkedMatcher, 500.0);
+        Ride ride = new Ride();
+        for (int i = 0; i <= 100; i++) {
+            // straight 1 km north at 1 Hz
+            ride.getRidePoints().add(point(52.5200 + i * 0.00009, 13.4050, 1_000L * i));
+        }
+        ArgumentCaptor<List<Observation>> observations = ArgumentCaptor.forClass(List.class);
+
+        thinningService.match(ride);
+
+        verify(graphHopperService).match(observations.capture());
+        assertThat(observations.getValue()).hasSizeBetween(2, 10);
+        assertThat(observations.getValue().getFirst().getPoint().getLat()).isEqualTo(52.5200);
+    }
+
     private RidePoint point(double lat, double lon, long timestamp) {
         RidePoint point = new RidePoint();
         point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
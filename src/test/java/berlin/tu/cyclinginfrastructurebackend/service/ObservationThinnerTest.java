@@ -0,0 +1,79 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObservationThinnerTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    void straightTrackKeepsEndpointsAndRespectsMaximumGap() {
+        List<RidePoint> points = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            // 1 km north, a sample every 10 m
+            points.add(point(52.5200 + i * 0.00009, 13.4050, 1_000L * i));
+        }
+
+        List<RidePoint> thinned = new ObservationThinner(10, 5, 250).thin(points);
+
+        assertThat(thinned).hasSizeLessThan(10);
+        assertThat(thinned.getFirst()).isSameAs(points.getFirst());
+        assertThat(thinned.getLast()).isSameAs(points.getLast());
+        for (int i = 1; i < thinned.size(); i++) {
+            double gapDegrees = thinned.get(i).getLocation().getY() - thinned.get(i - 1).getLocation().getY();
+            assertThat(gapDegrees * 111_195).isLessThanOrEqualTo(250);
+        }
+    }
+
+    @Test
+    void turnsSurviveSimplification() {
+        List<RidePoint> points = new ArrayList<>();
+        for (int i = 0; i <= 50; i++) {
+            points.add(point(52.5200 + i * 0.00009, 13.4050, i));
+        }
+        RidePoint corner = points.getLast();
+        for (int i = 1; i <= 50; i++) {
+            points.add(point(corner.getLocation().getY(), 13.4050 + i * 0.00015, 50 + i));
+        }
+
+        List<RidePoint> thinned = new ObservationThinner(0, 5, 0).thin(points);
+
+        assertThat(thinned).containsExactly(points.getFirst(), corner, points.getLast());
+    }
+
+    @Test
+    void stationaryJitterIsCollapsedButTimestampsAreKept() {
+        List<RidePoint> points = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            // waiting at a traffic light, ~1 m jitter
+            points.add(point(52.5200 + (i % 2) * 0.00001, 13.4050, 1_000L * i));
+        }
+        points.add(point(52.5300, 13.4050, 99_000L));
+
+        List<RidePoint> thinned = new ObservationThinner(10, 0, 0).thin(points);
+
+        assertThat(thinned).extracting(RidePoint::getTimestamp).containsExactly(0L, 99_000L);
+    }
+
+    @Test
+    void disabledThinnerReturnsTheInput() {
+        List<RidePoint> points = List.of(point(52.52, 13.405, 0L), point(52.52, 13.405, 1L), point(52.53, 13.405, 2L));
+
+        assertThat(ObservationThinner.disabled().thin(points)).isSameAs(points);
+    }
+
+    private RidePoint point(double lat, double lon, long timestamp) {
+        RidePoint point = new RidePoint();
+        point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+        point.setTimestamp(timestamp);
+        return point;
+    }
+}
@@ -0,0 +1,129 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.BaseGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+class ParallelEdgeIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parallelLinesAreWithinTheRadiusOnlyWhenCloseEnough() {
+        double[] x = {0, 100};
+        double[] y = {0, 0};
+
+        assertThat(ParallelEdgeIndex.withinDistance(x, y, x, new double[]{10, 10}, 20.0)).isTrue();
+        assertThat(ParallelEdgeIndex.withinDistance(x, y, x, new double[]{30, 30}, 20.0)).isFalse();
+    }
+
+    @Test
+    void crossingSegmentsHaveNoDistance() {
+        assertThat(ParallelEdgeIndex.withinDistance(
+                new double[]{0, 100}, new double[]{0, 100},
+                new double[]{0, 100}, new double[]{100, 0}, 0.0)).isTrue();
+    }
+
+    @Test
+    void singlePointGeometriesAreMeasuredToTheOtherLine() {
+        double[] x = {0, 100};
+        double[] y = {0, 0};
+
+        assertThat(ParallelEdgeIndex.withinDistance(new double[]{50}, new double[]{15}, x, y, 20.0)).isTrue();
+        assertThat(ParallelEdgeIndex.withinDistance(x, y, new double[]{130}, new double[]{0}, 20.0)).isFalse();
+    }
+
+    @Test
+    void edgesWithANeighborOnTheReferencePathAreNotDistant() {
+        ParallelEdgeIndex index = spy(index(graph(10, 10)));
+        doReturn(new int[]{7}).when(index).neighbors(1);
+        doReturn(new int[]{8, 9}).when(index).neighbors(2);
+
+        Set<Integer> distant = index.distantEdges(List.of(1, 2, 3), Set.of(3, 7));
+
+        assertThat(distant).containsExactly(2);
+    }
+
+    @Test
+    void computedListsSurviveARestartOfTheSameGraph() {
+        GraphHopperService hopperService = graph(10, 10);
+        ParallelEdgeIndex index = index(hopperService);
+        index.neighbors(4);
+        index.shutdown();
+
+        ParallelEdgeIndex restarted = index(hopperService);
+        restarted.init();
+
+        assertThat(restarted.size()).isEqualTo(1);
+        assertThat(Files.exists(tempDir.resolve("parallel-edges.bin.part"))).isFalse();
+    }
+
+    @Test
+    void listsOfAnotherGraphAreIgnored() {
+        ParallelEdgeIndex index = index(graph(10, 10));
+        index.neighbors(4);
+        index.shutdown();
+
+        ParallelEdgeIndex rebuilt = index(graph(11, 10));
+        rebuilt.init();
+
+        assertThat(rebuilt.size()).isZero();
+    }
+
+    @Test
+    void listsOfAnotherImportOfTheSameSizeAreIgnored() {
+        ParallelEdgeIndex index = index(graph(10, 10, 1L));
+        index.neighbors(4);
+        index.shutdown();
+
+        ParallelEdgeIndex reimported = index(graph(10, 10, 2L));
+        reimported.init();
+
+        assertThat(reimported.size()).isZero();
+    }
+
+    @Test
+    void listsBeyondTheLimitAreComputedButNotKept() {
+        ParallelEdgeIndex index = new ParallelEdgeIndex(graph(10, 10), 20.0, "", true, false, 2);
+
+        index.neighbors(1);
+        index.neighbors(2);
+        index.neighbors(3);
+
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    private ParallelEdgeIndex index(GraphHopperService hopperService) {
+        return new ParallelEdgeIndex(hopperService, 20.0,
+                tempDir.resolve("parallel-edges.bin").toString(), true, false, 1024);
+    }
+
+    private GraphHopperService graph(int edges, int nodes) {
+        return graph(edges, nodes, 0L);
+    }
+
+    private GraphHopperService graph(int edges, int nodes, long version) {
+        BaseGraph baseGraph = mock(BaseGraph.class);
+        when(baseGraph.getEdges()).thenReturn(edges);
+        when(baseGraph.getNodes()).thenReturn(nodes);
+        GraphHopper hopper = mock(GraphHopper.class);
+        when(hopper.getBaseGraph()).thenReturn(baseGraph);
+        GraphHopperService hopperService = mock(GraphHopperService.class);
+        when(hopperService.getHopper()).thenReturn(hopper);
+        when(hopperService.getGraphVersion()).thenReturn(version);
+        return hopperService;
+    }
+}
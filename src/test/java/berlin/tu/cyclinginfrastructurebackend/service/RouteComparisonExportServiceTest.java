@@ -1,5 +1,7 @@
 package berlin.tu.cyclinginfrastructurebackend.service;
 
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import berlin.tu.cyclinginfrastructurebackend.util.RideTrackCodec;
 import com.opencsv.CSVReader;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
@@ -72,10 +74,39 @@ class RouteComparisonExportServiceTest {
         assertThat(sql.getValue()).contains("PARTITION BY r.route_comparison_type");
     }
 
+    @Test
+    void compactlyStoredTrackProvidesMedianAccuracyAndPointCount() throws Exception {
+        Query query = mock(Query.class);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        byte[] track = RideTrackCodec.encode(List.of(
+                point(1_000L, 4.0), point(2_000L, 9.0), point(3_000L, null), point(4_000L, 5.0), point(5_000L, 3.0)));
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{
+                UUID.randomUUID(), 1_000L, "LOCAL_DETOUR", 1_200.0, 1_000.0, 200.0, 0.20, 0.55,
+                null, 0L, "LINESTRING (13.4 52.5, 13.5 52.6)", "LINESTRING (13.4 52.5, 13.45 52.55)", track
+        }));
+
+        String csv = service.exportCalibrationSample(null, null, 50);
+
+        List<String[]> records;
+        try (CSVReader reader = new CSVReader(new StringReader(csv))) {
+            records = reader.readAll();
+        }
+        assertThat(records.get(1)[8]).isEqualTo("4.5");
+        assertThat(records.get(1)[9]).isEqualTo("5");
+    }
+
     @Test
     void invertedDateRangeIsRejectedBeforeQuerying() {
         assertThatThrownBy(() -> service.exportCalibrationSample(2_000L, 1_000L, 50))
                 .isInstanceOfSatisfying(ResponseStatusException.class,
                         error -> assertThat(error.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
     }
+
+    private RidePoint point(long timestamp, Double gpsAccuracy) {
+        RidePoint point = new RidePoint();
+        point.setTimestamp(timestamp);
+        point.setGpsAccuracy(gpsAccuracy);
+        return point;
+    }
 }
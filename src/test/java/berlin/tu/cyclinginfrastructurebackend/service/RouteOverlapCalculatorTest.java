@@ -0,0 +1,143 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.WKTWriter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RouteOverlapCalculatorTest {
+
+    // about 10 m and 30 m of latitude
+    private static final double TEN_METERS = 0.00009;
+    private static final double THIRTY_METERS = 0.00027;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+    private final RouteOverlapCalculator calculator = new RouteOverlapCalculator();
+
+    @Test
+    void projectionMatchesEtrs89Utm33() {
+        // on the central meridian the northing is the scaled meridian arc
+        assertThat(RouteOverlapCalculator.toUtm33(15.0, 52.5).getY()).isCloseTo(5_816_652.006, within(0.001));
+        assertThat(RouteOverlapCalculator.toUtm33(15.0, 52.5).getX()).isCloseTo(500_000.0, within(0.001));
+    }
+
+    @Test
+    void routesWithinTheBufferOverlapCompletely() {
+        LineString shortest = line(13.40, 52.5, 13.41, 52.5);
+
+        assertThat(calculator.lengthOverlap(shortest, shortest, 20.0)).isCloseTo(1.0, within(1e-9));
+        assertThat(calculator.lengthOverlap(line(13.40, 52.5 + TEN_METERS, 13.41, 52.5 + TEN_METERS), shortest, 20.0))
+                .isCloseTo(1.0, within(1e-9));
+    }
+
+    @Test
+    void parallelRoutesOutsideTheBufferDoNotOverlap() {
+        LineString shortest = line(13.40, 52.5, 13.41, 52.5);
+        LineString parallel = line(13.40, 52.5 + THIRTY_METERS, 13.41, 52.5 + THIRTY_METERS);
+
+        assertThat(calculator.lengthOverlap(parallel, shortest, 20.0)).isEqualTo(0.0);
+    }
+
+    @Test
+    void routeLeavingHalfwayCoversHalfThePathPlusTheBuffer() {
+        LineString shortest = line(13.40, 52.5, 13.41, 52.5);
+        LineString actual = geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(13.40, 52.5),
+                new Coordinate(13.405, 52.5),
+                new Coordinate(13.405, 52.505)
+        });
+
+        double length = RouteOverlapCalculator.toUtm33(13.40, 52.5).distance(RouteOverlapCalculator.toUtm33(13.41, 52.5));
+        double half = RouteOverlapCalculator.toUtm33(13.40, 52.5).distance(RouteOverlapCalculator.toUtm33(13.405, 52.5));
+
+        assertThat(calculator.lengthOverlap(actual, shortest, 20.0)).isCloseTo((half + 20.0) / length, within(1e-3));
+    }
+
+    @Test
+    void shortestPathWithoutLengthHasNoRatio() {
+        LineString point = line(13.40, 52.5, 13.40, 52.5);
+
+        assertThat(calculator.lengthOverlap(line(13.40, 52.5, 13.41, 52.5), point, 20.0)).isNull();
+    }
+
+    /**
+     * Compares random detours around Berlin with the former PostGIS query. Runs only when a
+     * PostGIS database is configured, like the application, through SPRING_DATASOURCE_URL.
+     */
+    @Test
+    @EnabledIfEnvironmentVariable(named = "SPRING_DATASOURCE_URL", matches = "jdbc:postgresql:.*")
+    void agreesWithPostGis() throws Exception {
+        WKTWriter wktWriter = new WKTWriter();
+        Random random = new Random(7L);
+        try (Connection connection = DriverManager.getConnection(
+                System.getenv("SPRING_DATASOURCE_URL"),
+                System.getenv("SPRING_DATASOURCE_USERNAME"),
+                System.getenv("SPRING_DATASOURCE_PASSWORD"));
+             PreparedStatement statement = connection.prepareStatement("""
+                     WITH paths AS (
+                         SELECT ST_Transform(ST_GeomFromText(?, 4326), 25833) AS shortest_path,
+                                ST_Transform(ST_GeomFromText(?, 4326), 25833) AS actual_path
+                     )
+                     SELECT LEAST(1.0, GREATEST(0.0,
+                                ST_Length(ST_Intersection(shortest_path, ST_Buffer(actual_path, ?)))
+                                / ST_Length(shortest_path)))
+                     FROM paths
+                     """)) {
+            for (int i = 0; i < 50; i++) {
+                LineString shortest = randomWalk(random, 13.3 + random.nextDouble() * 0.2, 52.45 + random.nextDouble() * 0.1);
+                LineString actual = perturb(random, shortest);
+                statement.setString(1, wktWriter.write(shortest));
+                statement.setString(2, wktWriter.write(actual));
+                statement.setDouble(3, 20.0);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    assertThat(calculator.lengthOverlap(actual, shortest, 20.0))
+                            .isCloseTo(resultSet.getDouble(1), within(1e-4));
+                }
+            }
+        }
+    }
+
+    private LineString line(double lon1, double lat1, double lon2, double lat2) {
+        return geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(lon1, lat1),
+                new Coordinate(lon2, lat2)
+        });
+    }
+
+    private LineString randomWalk(Random random, double lon, double lat) {
+        Coordinate[] coordinates = new Coordinate[40];
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(lon, lat);
+            heading += random.nextGaussian() * 0.4;
+            lon += Math.sin(heading) * 0.0007;
+            lat += Math.cos(heading) * 0.00045;
+        }
+        return geometryFactory.createLineString(coordinates);
+    }
+
+    // shifts every other stretch of the path sideways by a few tens of metres, like a ride on parallel streets
+    private LineString perturb(Random random, LineString path) {
+        Coordinate[] coordinates = path.getCoordinates();
+        Coordinate[] shifted = new Coordinate[coordinates.length];
+        double offset = 0;
+        for (int i = 0; i < coordinates.length; i++) {
+            if (i % 8 == 0) offset = random.nextDouble() < 0.5 ? 0 : random.nextGaussian() * 0.0004;
+            shifted[i] = new Coordinate(coordinates[i].getX() + offset, coordinates[i].getY() + offset * 0.6);
+        }
+        return geometryFactory.createLineString(shifted);
+    }
+}
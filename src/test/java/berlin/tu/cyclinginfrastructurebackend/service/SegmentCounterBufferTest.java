@@ -0,0 +1,129 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentCounterRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SegmentCounterBufferTest {
+
+    private final SegmentCounterRepository repository = mock(SegmentCounterRepository.class);
+    private final SegmentCounterBuffer buffer = new SegmentCounterBuffer(repository, true, true);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deltasAreSummedPerSegmentAndWrittenInAscendingOrder() {
+        buffer.addUsage(List.of(9, 7, 9));
+        buffer.addEvents(List.of(9), List.of(3));
+
+        buffer.flush();
+
+        verify(repository).addDeltas(
+                new Long[]{3L, 7L, 9L},
+                new Integer[]{0, 1, 2},
+                new Integer[]{0, 0, 1},
+                new Integer[]{1, 0, 0});
+        assertThat(buffer.pendingSegments()).isZero();
+    }
+
+    @Test
+    void emptyBufferIsNotFlushed() {
+        buffer.flush();
+
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void failedFlushKeepsItsDeltasForTheNextOne() {
+        when(repository.addDeltas(any(), any(), any(), any()))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(1);
+        buffer.addUsage(List.of(5));
+
+        buffer.flush();
+        buffer.addUsage(List.of(5));
+        buffer.flush();
+
+        verify(repository, times(2)).addDeltas(any(), any(), any(), any());
+        verify(repository).addDeltas(new Long[]{5L}, new Integer[]{2}, new Integer[]{0}, new Integer[]{0});
+    }
+
+    @Test
+    void eventsCountOnlyAfterTheTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.addEventsAfterCommit(List.of(1), List.of(2));
+        assertThat(buffer.pendingSegments()).isZero();
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+
+        assertThat(buffer.pendingSegments()).isEqualTo(2);
+    }
+
+    @Test
+    void rolledBackEventsAreNeverCounted() {
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.addEventsAfterCommit(List.of(1), List.of(2));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        buffer.flush();
+
+        verify(repository, never()).addDeltas(any(), any(), any(), any());
+    }
+
+    @Test
+    void deltasAddedDuringARecountAreDroppedAfterTheBufferedOnesAreWritten() {
+        buffer.addUsage(List.of(4));
+
+        buffer.recountAround(() -> {
+            verify(repository).addDeltas(new Long[]{4L}, new Integer[]{1}, new Integer[]{0}, new Integer[]{0});
+            buffer.addUsage(List.of(6));
+            return null;
+        });
+
+        assertThat(buffer.pendingSegments()).isZero();
+        verify(repository, never()).recount();
+        buffer.addUsage(List.of(6));
+        assertThat(buffer.pendingSegments()).isEqualTo(1);
+    }
+
+    @Test
+    void failedChangeIsFollowedByARecount() {
+        assertThatThrownBy(() -> buffer.recountAround(() -> {
+            buffer.addUsage(List.of(6));
+            throw new IllegalStateException("rolled back");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(repository).recount();
+        assertThat(buffer.pendingSegments()).isZero();
+    }
+
+    @Test
+    void startupRecountCanBeSwitchedOff() {
+        new SegmentCounterBuffer(repository, true, false).recover();
+        new SegmentCounterBuffer(repository, false, true).recover();
+        verify(repository, never()).recount();
+
+        buffer.recover();
+        verify(repository).recount();
+    }
+}
@@ -0,0 +1,79 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShortestPathCacheTest {
+
+    @Test
+    void pathIsRoutedOncePerNodePair() {
+        AtomicInteger routed = new AtomicInteger();
+        ShortestPathCache cache = new ShortestPathCache(16);
+
+        ResponsePath first = cache.get(3, 9, () -> path(routed));
+        ResponsePath second = cache.get(3, 9, () -> path(routed));
+
+        assertThat(second).isSameAs(first);
+        assertThat(routed).hasValue(1);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+        assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void directionMatters() {
+        AtomicInteger routed = new AtomicInteger();
+        ShortestPathCache cache = new ShortestPathCache(16);
+
+        cache.get(3, 9, () -> path(routed));
+        cache.get(9, 3, () -> path(routed));
+
+        assertThat(routed).hasValue(2);
+    }
+
+    @Test
+    void failedRoutesAreNotCached() {
+        AtomicInteger routed = new AtomicInteger();
+        ShortestPathCache cache = new ShortestPathCache(16);
+
+        assertThat(cache.get(3, 9, () -> {
+            routed.incrementAndGet();
+            return null;
+        })).isNull();
+        assertThat(cache.get(3, 9, () -> path(routed))).isNotNull();
+
+        assertThat(routed).hasValue(2);
+    }
+
+    @Test
+    void cachedPointsCannotBeModified() {
+        ShortestPathCache cache = new ShortestPathCache(16);
+
+        ResponsePath path = cache.get(3, 9, () -> path(new AtomicInteger()));
+
+        assertThat(path.getPoints().isImmutable()).isTrue();
+    }
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertThat(new ShortestPathCache(1000).stats().capacity()).isEqualTo(1024);
+        assertThatThrownBy(() -> new ShortestPathCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ResponsePath path(AtomicInteger routed) {
+        routed.incrementAndGet();
+        PointList points = new PointList();
+        points.add(52.5, 13.4);
+        points.add(52.5, 13.41);
+        ResponsePath path = new ResponsePath();
+        path.setPoints(points);
+        path.setDistance(680.0);
+        return path;
+    }
+}
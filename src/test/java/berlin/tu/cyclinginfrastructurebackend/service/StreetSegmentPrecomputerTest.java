@@ -0,0 +1,155 @@
+package berlin.tu.cyclinginfrastructurebackend.service;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.StreetSegment;
+import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentCopyRepository;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class StreetSegmentPrecomputerTest {
+
+    private final GraphHopperService hopperService = mock(GraphHopperService.class);
+    private final StreetSegmentService segmentService = mock(StreetSegmentService.class);
+    private final StreetSegmentCopyRepository copyRepository = mock(StreetSegmentCopyRepository.class);
+    private final BaseGraph baseGraph = mock(BaseGraph.class);
+    private final BooleanEncodedValue bikeAccess = mock(BooleanEncodedValue.class);
+
+    @Test
+    void onlyNewBikeAccessibleEdgesInsideTheRegionAreBuilt() {
+        stubGraph();
+        edge(0, true, false, 52.50);  // already stored
+        edge(1, false, false, 52.50); // no bike access
+        edge(2, false, true, 52.50);  // bike access against the edge direction only
+        edge(3, true, true, 53.50);   // outside the region
+        edge(4, true, true, 52.51);
+        when(segmentService.newSegment(anyInt(), eq(hopperService)))
+                .thenAnswer(invocation -> Optional.of(segment(invocation.getArgument(0))));
+        BitSet existing = new BitSet();
+        existing.set(0);
+        AtomicInteger skipped = new AtomicInteger();
+
+        List<StreetSegment> segments = precomputer(true, StreetSegmentPrecomputer.DEFAULT_REGION_WKT)
+                .buildChunk(0, 5, existing, skipped);
+
+        assertThat(segments).extracting(StreetSegment::getId).containsExactly(2L, 4L);
+        assertThat(skipped).hasValue(1);
+    }
+
+    @Test
+    void blankRegionCoversTheWholeGraph() {
+        stubGraph();
+        edge(0, true, true, 53.50);
+        when(segmentService.newSegment(anyInt(), eq(hopperService)))
+                .thenAnswer(invocation -> Optional.of(segment(invocation.getArgument(0))));
+
+        List<StreetSegment> segments = precomputer(true, "")
+                .buildChunk(0, 1, new BitSet(), new AtomicInteger());
+
+        assertThat(segments).extracting(StreetSegment::getId).containsExactly(0L);
+    }
+
+    @Test
+    void disabledJobDoesNotTouchTheDatabase() {
+        precomputer(false, StreetSegmentPrecomputer.DEFAULT_REGION_WKT).precompute();
+
+        verifyNoInteractions(copyRepository);
+    }
+
+    @Test
+    void builtChunksAreCopiedOneByOneInIdOrder() {
+        stubGraph();
+        int edges = StreetSegmentPrecomputer.EDGES_PER_CHUNK + 1;
+        when(baseGraph.getEdges()).thenReturn(edges);
+        edge(0, true, true, 52.50);
+        edge(1, true, true, 52.50);
+        edge(edges - 1, true, true, 52.50);
+        when(segmentService.newSegment(anyInt(), eq(hopperService)))
+                .thenAnswer(invocation -> Optional.of(segment(invocation.getArgument(0))));
+        when(copyRepository.findExistingIds()).thenReturn(new BitSet());
+        List<List<Long>> copied = new ArrayList<>();
+        when(copyRepository.insertMissing(any())).thenAnswer(invocation -> {
+            List<StreetSegment> segments = invocation.getArgument(0);
+            copied.add(segments.stream().map(StreetSegment::getId).toList());
+            return segments.size();
+        });
+
+        precomputer(true, StreetSegmentPrecomputer.DEFAULT_REGION_WKT).precompute();
+
+        assertThat(copied).containsExactly(List.of(0L, 1L), List.of((long) edges - 1));
+    }
+
+    @Test
+    void failedCopyDoesNotAbortStartup() {
+        stubGraph();
+        when(baseGraph.getEdges()).thenReturn(0);
+        when(copyRepository.findExistingIds()).thenReturn(new BitSet());
+        when(copyRepository.insertMissing(any()))
+                .thenThrow(new UncheckedIOException("COPY of street segments failed", new IOException("broken pipe")));
+
+        assertThatCode(() -> precomputer(true, StreetSegmentPrecomputer.DEFAULT_REGION_WKT).precompute())
+                .doesNotThrowAnyException();
+    }
+
+    @Test
+    void regionMustBeAPolygon() {
+        assertThatThrownBy(() -> precomputer(true, "POINT (13.4 52.5)"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> precomputer(true, "POLYGON ((13.4"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private StreetSegmentPrecomputer precomputer(boolean enabled, String regionWkt) {
+        return new StreetSegmentPrecomputer(hopperService, segmentService, copyRepository,
+                true, enabled, regionWkt, 2);
+    }
+
+    private void stubGraph() {
+        GraphHopper hopper = mock(GraphHopper.class);
+        EncodingManager encodingManager = mock(EncodingManager.class);
+        when(hopperService.getHopper()).thenReturn(hopper);
+        when(hopper.getBaseGraph()).thenReturn(baseGraph);
+        when(hopper.getEncodingManager()).thenReturn(encodingManager);
+        when(encodingManager.getBooleanEncodedValue(VehicleAccess.key("bike"))).thenReturn(bikeAccess);
+    }
+
+    private void edge(int edgeId, boolean forward, boolean backward, double lat) {
+        EdgeIteratorState edge = mock(EdgeIteratorState.class);
+        when(edge.get(bikeAccess)).thenReturn(forward);
+        when(edge.getReverse(bikeAccess)).thenReturn(backward);
+        when(baseGraph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE)).thenReturn(edge);
+
+        PointList points = new PointList();
+        points.add(lat, 13.40);
+        points.add(lat, 13.41);
+        when(hopperService.getEdgeGeometry(edgeId)).thenReturn(EdgeGeometryCache.EdgeGeometry.of(edgeId, points, 680.0));
+    }
+
+    private static StreetSegment segment(int edgeId) {
+        StreetSegment segment = new StreetSegment();
+        segment.setId((long) edgeId);
+        return segment;
+    }
+}
@@ -1,11 +1,14 @@
 package berlin.tu.cyclinginfrastructurebackend.service;
 
-import berlin.tu.cyclinginfrastructurebackend.repository.SegmentEventRepository;
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.SegmentEvent;
+import berlin.tu.cyclinginfrastructurebackend.domain.StreetSegment;
+import berlin.tu.cyclinginfrastructurebackend.domain.enums.SegmentEventType;
+import berlin.tu.cyclinginfrastructurebackend.repository.SegmentEventInsertRepository;
 import berlin.tu.cyclinginfrastructurebackend.repository.StreetSegmentRepository;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.PointList;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -14,12 +17,17 @@ import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class StreetSegmentServiceTest {
@@ -43,11 +51,11 @@ class StreetSegmentServiceTest {
         when(graphHopper.getBaseGraph()).thenReturn(baseGraph);
         when(baseGraph.getEdgeIteratorState(42, Integer.MIN_VALUE)).thenReturn(edge);
         when(edge.getName()).thenReturn("Teststraße");
-        when(edge.fetchWayGeometry(FetchMode.ALL)).thenReturn(geometry);
+        when(graphHopperService.getEdgeGeometry(42)).thenReturn(EdgeGeometryCache.EdgeGeometry.of(42, geometry, 1_300.0));
         when(graphHopperService.getGradientPercent(42)).thenReturn(1.5);
 
         StreetSegmentService service = new StreetSegmentService(
-                repository, mock(SegmentEventRepository.class), transactionManager);
+                repository, mock(SegmentEventInsertRepository.class), mock(SegmentCounterBuffer.class), transactionManager);
 
         service.ensureSegmentsExist(List.of(42), graphHopperService);
 
@@ -59,4 +67,85 @@ class StreetSegmentServiceTest {
         verify(repository).upsertSegment(eq(42L), eq("Teststraße"), any(), eq(1.5));
         verify(transactionManager).commit(transactionStatus);
     }
+
+    @Test
+    void usageIsBufferedPerTraversalInsteadOfUpdatedPerEdge() {
+        StreetSegmentRepository repository = mock(StreetSegmentRepository.class);
+        SegmentCounterBuffer counterBuffer = mock(SegmentCounterBuffer.class);
+        when(repository.findExistingIds(List.of(7L, 9L))).thenReturn(List.of(7L, 9L));
+        EdgeIteratorState first = mock(EdgeIteratorState.class);
+        EdgeIteratorState second = mock(EdgeIteratorState.class);
+        when(first.getEdge()).thenReturn(9);
+        when(second.getEdge()).thenReturn(7);
+
+        StreetSegmentService service = new StreetSegmentService(
+                repository, mock(SegmentEventInsertRepository.class), counterBuffer,
+                mock(PlatformTransactionManager.class));
+
+        service.recordUsage(List.of(first, second, first), mock(GraphHopperService.class));
+
+        verify(counterBuffer).addUsage(List.of(9, 7, 9));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void segmentEventsOfARideAreInsertedWithOneStatement() {
+        StreetSegmentRepository repository = mock(StreetSegmentRepository.class);
+        SegmentEventInsertRepository eventInsertRepository = mock(SegmentEventInsertRepository.class);
+        SegmentCounterBuffer counterBuffer = mock(SegmentCounterBuffer.class);
+        when(repository.getReferenceById(any())).thenAnswer(invocation -> {
+            StreetSegment segment = new StreetSegment();
+            segment.setId(invocation.getArgument(0));
+            return segment;
+        });
+        Ride ride = new Ride();
+        ride.setStartTime(1_700_000_000_000L);
+
+        StreetSegmentService service = new StreetSegmentService(
+                repository, eventInsertRepository, counterBuffer, mock(PlatformTransactionManager.class));
+
+        service.registerSegmentEvents(
+                Map.of(5, 90.0, 3, 180.0), Map.of(5, 1_700_000_001_000L, 3, 1_700_000_002_000L),
+                Map.of(8, 0.0), null,
+                ride, mock(GraphHopperService.class), false);
+
+        ArgumentCaptor<List<SegmentEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(eventInsertRepository).insertAll(events.capture());
+        assertThat(events.getValue())
+                .extracting(event -> event.getSegment().getId(), SegmentEvent::getEventType, SegmentEvent::getEventTimestamp)
+                .containsExactly(
+                        tuple(3L, SegmentEventType.AVOIDANCE, 1_700_000_002_000L),
+                        tuple(5L, SegmentEventType.AVOIDANCE, 1_700_000_001_000L),
+                        tuple(8L, SegmentEventType.PREFERENCE, 1_700_000_000_000L));
+        verify(counterBuffer).addEventsAfterCommit(Set.of(3, 5), Set.of(8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void candidateEventsAreKeptApartAndNotCounted() {
+        StreetSegmentRepository repository = mock(StreetSegmentRepository.class);
+        SegmentEventInsertRepository eventInsertRepository = mock(SegmentEventInsertRepository.class);
+        SegmentCounterBuffer counterBuffer = mock(SegmentCounterBuffer.class);
+        when(repository.getReferenceById(any())).thenAnswer(invocation -> {
+            StreetSegment segment = new StreetSegment();
+            segment.setId(invocation.getArgument(0));
+            return segment;
+        });
+        Ride ride = new Ride();
+        ride.setStartTime(1_700_000_000_000L);
+        ride.setAnalysisVersion("p25.0-d0.1-o0.3");
+
+        StreetSegmentService service = new StreetSegmentService(
+                repository, eventInsertRepository, counterBuffer, mock(PlatformTransactionManager.class));
+
+        service.registerSegmentEvents(Map.of(5, 90.0), null, Map.of(8, 0.0), null,
+                ride, mock(GraphHopperService.class), true);
+
+        ArgumentCaptor<List<SegmentEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(eventInsertRepository).insertCandidates(events.capture());
+        assertThat(events.getValue()).extracting(SegmentEvent::getAnalysisVersion)
+                .containsOnly("p25.0-d0.1-o0.3");
+        verify(eventInsertRepository, never()).insertAll(any());
+        verifyNoInteractions(counterBuffer);
+    }
 }
@@ -0,0 +1,159 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EdgeTimelineTest {
+
+    // about 11 m of latitude
+    private static final double STEP = 0.0001;
+
+    private final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), 4326);
+
+    @Test
+    void timeIsInterpolatedAtTheEdgeMidpoint() {
+        // one sample every 10 s, 11 m apart
+        EdgeTimeline timeline = EdgeTimeline.of(List.of(
+                point(52.5, 13.4, 0L),
+                point(52.5 + STEP, 13.4, 10_000L),
+                point(52.5 + 2 * STEP, 13.4, 20_000L)));
+
+        // midpoint of an edge from the second sample halfway to the third
+        Long time = timeline.timeNear(52.5 + 1.25 * STEP, 13.4);
+
+        assertThat(time).isCloseTo(12_500L, within(100L));
+    }
+
+    @Test
+    void pathOrderKeepsBothPassesOfAnOutAndBackRide() {
+        List<RidePoint> points = new ArrayList<>();
+        for (int i = 0; i <= 20; i++) {
+            points.add(point(52.5 + i * STEP, 13.4, i * 1_000L));
+        }
+        for (int i = 19; i >= 0; i--) {
+            points.add(point(52.5 + i * STEP, 13.4, (40 - i) * 1_000L));
+        }
+        // midpoints of the 20 edges out and the same 20 edges back
+        double[] lats = new double[40];
+        double[] lons = new double[40];
+        for (int i = 0; i < 20; i++) {
+            lats[i] = 52.5 + (i + 0.5) * STEP;
+            lats[39 - i] = lats[i];
+        }
+        Arrays.fill(lons, 13.4);
+
+        Long[] times = EdgeTimeline.of(points).timesAlongPath(lats, lons);
+
+        // the first edge is passed at 0.5 s and again at 39.5 s; each pass gets its own time
+        assertThat(times[0]).isCloseTo(500L, within(100L));
+        assertThat(times[39]).isCloseTo(39_500L, within(100L));
+        for (int i = 1; i < times.length; i++) {
+            assertThat(times[i]).isGreaterThanOrEqualTo(times[i - 1]);
+        }
+    }
+
+    @Test
+    void gridSearchFindsTheSameSegmentAsAFullScan() {
+        Random random = new Random(7);
+        List<RidePoint> points = new ArrayList<>();
+        double lat = 52.5;
+        double lon = 13.4;
+        for (int i = 0; i < 2_000; i++) {
+            lat += (random.nextDouble() - 0.3) * STEP;
+            lon += (random.nextDouble() - 0.3) * STEP;
+            points.add(point(lat, lon, i * 1_000L));
+        }
+        EdgeTimeline timeline = EdgeTimeline.of(points);
+
+        for (int q = 0; q < 200; q++) {
+            double queryLat = 52.5 + random.nextDouble() * 700 * STEP;
+            double queryLon = 13.4 + random.nextDouble() * 700 * STEP;
+
+            Long time = timeline.timeNear(queryLat, queryLon);
+
+            assertThat(time).isCloseTo(nearestByFullScan(points, queryLat, queryLon), within(1L));
+        }
+    }
+
+    @Test
+    void longDiagonalGapIsIndexedAlongItsLineOnly() {
+        // two samples about 7 km apart diagonally: 140 x 140 cells in the bounding box
+        List<RidePoint> points = List.of(
+                point(52.5, 13.4, 0L),
+                point(52.5 + 630 * STEP, 13.4 + 1_030 * STEP, 600_000L),
+                point(52.5 + 640 * STEP, 13.4 + 1_030 * STEP, 610_000L));
+        EdgeTimeline timeline = EdgeTimeline.of(points);
+
+        assertThat(timeline.indexedCells()).isLessThan(400);
+
+        Random random = new Random(11);
+        for (int q = 0; q < 200; q++) {
+            double queryLat = 52.5 + random.nextDouble() * 640 * STEP;
+            double queryLon = 13.4 + random.nextDouble() * 1_030 * STEP;
+
+            Long time = timeline.timeNear(queryLat, queryLon);
+
+            assertThat(time).isCloseTo(nearestByFullScan(points, queryLat, queryLon), within(1L));
+        }
+    }
+
+    @Test
+    void missingGeometryOrTrackHasNoTime() {
+        EdgeTimeline timeline = EdgeTimeline.of(List.of(point(52.5, 13.4, 1_000L)));
+
+        assertThat(timeline.timeNear(Double.NaN, Double.NaN)).isNull();
+        assertThat(timeline.timeNear(52.6, 13.5)).isEqualTo(1_000L);
+        assertThat(timeline.timesAlongPath(new double[]{Double.NaN, 52.5}, new double[]{Double.NaN, 13.4}))
+                .containsExactly(null, 1_000L);
+
+        EdgeTimeline empty = EdgeTimeline.of(List.of());
+        assertThat(empty.isEmpty()).isTrue();
+        assertThat(empty.timeNear(52.5, 13.4)).isNull();
+    }
+
+    private static long nearestByFullScan(List<RidePoint> points, double lat, double lon) {
+        double originLat = points.getFirst().getLocation().getY();
+        double originLon = points.getFirst().getLocation().getX();
+        double scale = Math.cos(Math.toRadians(originLat));
+        double qx = (lon - originLon) * scale;
+        double qy = lat - originLat;
+
+        double best = Double.POSITIVE_INFINITY;
+        long bestTime = 0;
+        for (int i = 0; i + 1 < points.size(); i++) {
+            RidePoint a = points.get(i);
+            RidePoint b = points.get(i + 1);
+            double ax = (a.getLocation().getX() - originLon) * scale;
+            double ay = a.getLocation().getY() - originLat;
+            double dx = (b.getLocation().getX() - originLon) * scale - ax;
+            double dy = b.getLocation().getY() - originLat - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double f = lengthSquared == 0 ? 0
+                    : Math.max(0, Math.min(1, ((qx - ax) * dx + (qy - ay) * dy) / lengthSquared));
+            double distance = Math.hypot(qx - (ax + f * dx), qy - (ay + f * dy));
+            if (distance < best) {
+                best = distance;
+                bestTime = Math.round(a.getTimestamp() + f * (b.getTimestamp() - a.getTimestamp()));
+            }
+        }
+        return bestTime;
+    }
+
+    private RidePoint point(double lat, double lon, long timestamp) {
+        RidePoint point = new RidePoint();
+        point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+        point.setTimestamp(timestamp);
+        return point;
+    }
+}
@@ -0,0 +1,31 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ImportMetricsTest {
+
+    @Test
+    void stagePercentilesAreWithinBucketPrecision() {
+        ImportMetrics metrics = new ImportMetrics();
+        for (int i = 1; i <= 1_000; i++) {
+            metrics.recordStage(ImportMetrics.Stage.MATCH, i * 1_000_000L);
+        }
+
+        assertThat((double) metrics.stagePercentile(ImportMetrics.Stage.MATCH, 50)).isCloseTo(500e6, within(35e6));
+        assertThat((double) metrics.stagePercentile(ImportMetrics.Stage.MATCH, 95)).isCloseTo(950e6, within(65e6));
+        assertThat((double) metrics.stagePercentile(ImportMetrics.Stage.MATCH, 99)).isCloseTo(990e6, within(65e6));
+        assertThat(metrics.stagePercentile(ImportMetrics.Stage.MATCH, 99))
+                .isGreaterThanOrEqualTo(990_000_000L);
+    }
+
+    @Test
+    void stagesWithoutItemsReportZero() {
+        ImportMetrics metrics = new ImportMetrics();
+
+        assertThat(metrics.stagePercentile(ImportMetrics.Stage.PARSE, 99)).isZero();
+        assertThat(metrics.stageThroughput(ImportMetrics.Stage.PARSE)).isZero();
+    }
+}
@@ -0,0 +1,37 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RegionWktTest {
+
+    @Test
+    void polygonIsPrepared() {
+        GeometryFactory geometryFactory = new GeometryFactory();
+
+        var region = RegionWkt.prepare("POLYGON ((13 52, 14 52, 14 53, 13 53, 13 52))", "test.region");
+
+        assertThat(region.covers(geometryFactory.createPoint(new Coordinate(13.4, 52.5)))).isTrue();
+        assertThat(region.covers(geometryFactory.createPoint(new Coordinate(15.0, 52.5)))).isFalse();
+    }
+
+    @Test
+    void blankWktMeansNoRegion() {
+        assertThat(RegionWkt.prepare(" ", "test.region")).isNull();
+        assertThat(RegionWkt.prepare(null, "test.region")).isNull();
+    }
+
+    @Test
+    void errorsNameTheProperty() {
+        assertThatThrownBy(() -> RegionWkt.prepare("LINESTRING (13 52, 14 53)", "test.region"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("test.region must be a POLYGON or MULTIPOLYGON");
+        assertThatThrownBy(() -> RegionWkt.prepare("POLYGON ((13", "test.region"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("test.region is not valid WKT");
+    }
+}
@@ -0,0 +1,97 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import berlin.tu.cyclinginfrastructurebackend.domain.Ride;
+import berlin.tu.cyclinginfrastructurebackend.domain.RidePoint;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class RideTrackCodecTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    void roundTripKeepsOrderTimestampsAndPresenceOfEveryChannel() {
+        List<RidePoint> points = List.of(
+                point(52.5123456, 13.3934567, 1_710_498_000_000L, 3.5, -0.42),
+                point(null, null, 1_710_498_000_250L, null, -0.40),
+                point(52.5124001, 13.3935002, 1_710_498_001_000L, 4.0, null),
+                point(52.5123999, 13.3934999, null, 4.0, 9.80665));
+
+        List<RidePoint> decoded = RideTrackCodec.decode(RideTrackCodec.encode(points));
+
+        assertThat(decoded).hasSize(4);
+        assertThat(decoded).extracting(RidePoint::getSequenceIndex).containsExactly(0, 1, 2, 3);
+        assertThat(decoded).extracting(RidePoint::getTimestamp)
+                .containsExactly(1_710_498_000_000L, 1_710_498_000_250L, 1_710_498_001_000L, null);
+        assertThat(decoded.get(1).getLocation()).isNull();
+        assertThat(decoded.get(0).getLocation().getY()).isEqualTo(52.5123456);
+        assertThat(decoded.get(0).getLocation().getX()).isEqualTo(13.3934567);
+        assertThat(decoded.get(0).getLocation().getSRID()).isEqualTo(4326);
+        assertThat(decoded).extracting(RidePoint::getGpsAccuracy).containsExactly(3.5, null, 4.0, 4.0);
+        assertThat(decoded).extracting(RidePoint::getX).containsExactly(-0.42, -0.40, null, 9.80665);
+        assertThat(decoded).extracting(RidePoint::getA).containsOnlyNulls();
+    }
+
+    @Test
+    void coordinatesAreStoredWithSevenDecimals() {
+        RidePoint decoded = RideTrackCodec.decode(RideTrackCodec.encode(
+                List.of(point(52.512345678, 13.393456789, 0L, null, null)))).getFirst();
+
+        assertThat(decoded.getLocation().getY()).isCloseTo(52.512345678, within(1e-7));
+        assertThat(decoded.getLocation().getX()).isCloseTo(13.393456789, within(1e-7));
+    }
+
+    @Test
+    void hourLongTrackNeedsFarLessThanOneRowPerPoint() {
+        List<RidePoint> points = new ArrayList<>();
+        for (int i = 0; i < 3_600; i++) {
+            points.add(point(52.5 + i * 1e-5, 13.4 + i * 2e-5, 1_710_498_000_000L + i * 1_000L, 5.0, 0.01 * (i % 7)));
+        }
+
+        byte[] track = RideTrackCodec.encode(points);
+
+        assertThat(track.length).isLessThan(points.size() * 12);
+        assertThat(RideTrackCodec.decode(track)).hasSize(3_600);
+    }
+
+    @Test
+    void compactMovesPointsIntoTrackAndPointsDecodesThem() {
+        Ride ride = new Ride();
+        RidePoint original = point(52.5, 13.4, 1_000L, 5.0, null);
+        ride.getRidePoints().add(original);
+
+        assertThat(RideTrackCodec.points(ride)).containsExactly(original);
+
+        RideTrackCodec.compact(ride);
+
+        assertThat(ride.getRidePoints()).isEmpty();
+        assertThat(ride.getTrack()).isNotNull();
+        assertThat(RideTrackCodec.points(ride)).singleElement()
+                .satisfies(point -> assertThat(point.getTimestamp()).isEqualTo(1_000L));
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThatThrownBy(() -> RideTrackCodec.decode(new byte[]{9, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private RidePoint point(Double lat, Double lon, Long timestamp, Double accuracy, Double x) {
+        RidePoint point = new RidePoint();
+        if (lat != null && lon != null) {
+            point.setLocation(geometryFactory.createPoint(new Coordinate(lon, lat)));
+        }
+        point.setTimestamp(timestamp);
+        point.setGpsAccuracy(accuracy);
+        point.setX(x);
+        return point;
+    }
+}
@@ -0,0 +1,49 @@
+package berlin.tu.cyclinginfrastructurebackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidTest {
+
+    @Test
+    void idsAreVersion7WithTheirCreationTime() {
+        long now = System.currentTimeMillis();
+        UUID id = TimeOrderedUuid.next();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(TimeOrderedUuid.epochMillis(id)).isBetween(now, System.currentTimeMillis());
+    }
+
+    @Test
+    void idsIncreaseWithinOneMillisecondAndBeyondTheCounter() {
+        AtomicLong state = new AtomicLong();
+        long now = System.currentTimeMillis();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            ids.add(TimeOrderedUuid.at(now, state));
+        }
+
+        // UUID.compareTo compares signed longs; the textual form sorts like PostgreSQL's uuid type
+        List<String> sorted = ids.stream().map(UUID::toString).sorted().toList();
+        assertThat(ids).extracting(UUID::toString).containsExactlyElementsOf(sorted);
+        assertThat(ids).doesNotHaveDuplicates();
+        assertThat(TimeOrderedUuid.epochMillis(ids.getFirst())).isEqualTo(now);
+        assertThat(TimeOrderedUuid.epochMillis(ids.getLast())).isEqualTo(now + 1);
+    }
+
+    @Test
+    void aClockGoingBackwardsDoesNotBreakTheOrder() {
+        AtomicLong state = new AtomicLong();
+        UUID later = TimeOrderedUuid.at(1_700_000_060_000L, state);
+        UUID earlierClock = TimeOrderedUuid.at(1_700_000_000_000L, state);
+
+        assertThat(earlierClock.toString()).isGreaterThan(later.toString());
+    }
+}